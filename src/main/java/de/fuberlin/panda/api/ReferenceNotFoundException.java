@@ -0,0 +1,45 @@
+package de.fuberlin.panda.api;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+/**
+ * HTTP 404 for a reference that does not exist in a resource, like a missing
+ * sheet, a table past the end, a page beyond the last page or an XPath
+ * expression without result. Unlike other errors answered with 404, these
+ * results are remembered in the
+ * {@link de.fuberlin.panda.data.caching.NegativeResultCache}.
+ * 
+ * @author Christoph Schrder
+ */
+public class ReferenceNotFoundException extends WebApplicationException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ReferenceNotFoundException() {
+        super(Response.Status.NOT_FOUND);
+    }
+}
@@ -0,0 +1,55 @@
+package de.fuberlin.panda.api.data;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.util.Map;
+
+import de.fuberlin.panda.data.caching.CacheStatistics.Summary;
+
+/**
+ * Counters of the whole cache and of each resource, serialized as JSON by the
+ * administration resource.
+ * 
+ * @author Christoph Schrder
+ */
+public class CacheStatisticsBean {
+    private Summary              total     = null;
+    private Map<String, Summary> resources = null;
+
+    public void setTotal(Summary total) {
+        this.total = total;
+    }
+
+    public Summary getTotal() {
+        return this.total;
+    }
+
+    public void setResources(Map<String, Summary> resources) {
+        this.resources = resources;
+    }
+
+    public Map<String, Summary> getResources() {
+        return this.resources;
+    }
+}
@@ -23,7 +23,6 @@ package de.fuberlin.panda.api.jersey;
  */
 
 
-import java.io.File;
 import java.util.Date;
 import java.util.logging.Logger;
 
@@ -36,6 +35,7 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Response.ResponseBuilder;
 
+import de.fuberlin.panda.data.caching.ResourceWatcher.ResourceVersion;
 import de.fuberlin.panda.data.configuration.PandaSettings;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
 
@@ -70,10 +70,10 @@ public abstract class AbstractJerseyResource {
         String filePath = resInfo.getFilePath();
 
         if (filePath != null) {
-            File file = new File(filePath);
-            if (file.exists()) {
-                lastModified = new Date(file.lastModified());
-                eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
+            ResourceVersion version = pandaSettings.getResourceWatcher().getVersion(resID);
+            if (version.exists()) {
+                lastModified = version.getLastModified();
+                eTag = version.getETag();
                 ResponseBuilder builder = request.evaluatePreconditions(lastModified, eTag);
 
                 // resource not modified
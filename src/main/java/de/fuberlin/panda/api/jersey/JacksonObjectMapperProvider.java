@@ -36,13 +36,17 @@ import com.fasterxml.jackson.databind.SerializationFeature;
  */
 public class JacksonObjectMapperProvider implements ContextResolver<ObjectMapper> {
     
-    private ObjectMapper objectMapper = null;
+    // mapper is thread safe once it is configured
+    private final ObjectMapper objectMapper;
 
-    @Override
-    public ObjectMapper getContext(Class<?> arg0) {
+    public JacksonObjectMapperProvider() {
         objectMapper = new ObjectMapper();
         objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
         objectMapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+    }
+
+    @Override
+    public ObjectMapper getContext(Class<?> arg0) {
         return objectMapper;
     }
 
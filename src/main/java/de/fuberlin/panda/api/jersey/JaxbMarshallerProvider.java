@@ -23,6 +23,7 @@ package de.fuberlin.panda.api.jersey;
  */
 
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import javax.ws.rs.ext.ContextResolver;
@@ -42,12 +43,19 @@ public class JaxbMarshallerProvider implements ContextResolver<Marshaller> {
     
     protected Logger logger = Logger.getLogger(this.getClass().getName());
 
+    // contexts are thread safe and expensive to create, marshallers are not
+    private final ConcurrentHashMap<Class<?>, JAXBContext> contexts = new ConcurrentHashMap<Class<?>, JAXBContext>();
+
     @Override
     public Marshaller getContext(Class<?> type) {
         Marshaller marshaller = null;
 
         try {
-            JAXBContext context = JAXBContext.newInstance(type);
+            JAXBContext context = contexts.get(type);
+            if (context == null) {
+                context = JAXBContext.newInstance(type);
+                contexts.putIfAbsent(type, context);
+            }
             marshaller = context.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
 
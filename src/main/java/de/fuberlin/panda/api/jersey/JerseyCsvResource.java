@@ -22,14 +22,22 @@ package de.fuberlin.panda.api.jersey;
  * #L%
  */
 
+import java.io.IOException;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Providers;
+
+import de.fuberlin.panda.api.ReferenceNotFoundException;
+import de.fuberlin.panda.api.data.ValueExchange.Value;
 import de.fuberlin.panda.api.data.ValueExchangeExt;
 import de.fuberlin.panda.data.resources.DataCsvResource;
+import de.fuberlin.panda.data.resources.ValueReader;
 
 /**
  * This class defines the REST interface for requests to CSV documents.
@@ -38,6 +46,9 @@ import de.fuberlin.panda.data.resources.DataCsvResource;
  */
 public class JerseyCsvResource extends AbstractJerseyResource {
 
+    @Context
+    Providers providers;
+
     /**
      * Method for request of CSV table data as XML.
      * 
@@ -49,7 +60,7 @@ public class JerseyCsvResource extends AbstractJerseyResource {
     @Produces(MediaType.APPLICATION_XML)
     public Response getCsvValuesXML() throws WebApplicationException {
         Response response = null;
-        ValueExchangeExt valList = new ValueExchangeExt();
+        Object valList = null;
 
         try {
             if (pandaSettings.getUseClientCaching()) {
@@ -58,7 +69,7 @@ public class JerseyCsvResource extends AbstractJerseyResource {
                     return response;
                 }
             }
-            valList = getCsvValues();
+            valList = getCsvValues(MediaType.APPLICATION_XML_TYPE);
         } catch (WebApplicationException e) {
             throw e;
         } catch (Exception e) {
@@ -82,7 +93,7 @@ public class JerseyCsvResource extends AbstractJerseyResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response getCsvValuesJSON() throws WebApplicationException {
         Response response = null;
-        ValueExchangeExt valList = null;
+        Object valList = null;
 
         try {
             if (pandaSettings.getUseClientCaching()) {
@@ -91,7 +102,7 @@ public class JerseyCsvResource extends AbstractJerseyResource {
                     return response;
                 }
             }
-            valList = getCsvValues();
+            valList = getCsvValues(MediaType.APPLICATION_JSON_TYPE);
         } catch (WebApplicationException e) {
             throw e;
         } catch (Exception e) {
@@ -105,18 +116,39 @@ public class JerseyCsvResource extends AbstractJerseyResource {
     }
 
     /**
-     * Request values from file or cache.
+     * Request values from file or cache. Values of requests to many rows are
+     * written to the client while they are read.
      * 
-     * @return ValueExchangeExt list of values.
+     * @param mediaType requested MediaType
+     * @return ValueExchangeExt list of values or StreamingOutput of values.
+     * @throws IOException
      */
-    private ValueExchangeExt getCsvValues() {
+    private Object getCsvValues(MediaType mediaType) throws IOException {
         ValueExchangeExt valList = new ValueExchangeExt();
         DataCsvResource csvResource = new DataCsvResource();
+        String reference = uriInfo.getPathSegments().get(2).getPath();
+        if (DataCsvResource.isBulkRequest(reference)) {
+            ValueReader reader = csvResource.openCsvValues(uriInfo, pandaSettings);
+            Value firstValue = null;
+            try {
+                firstValue = reader.next();
+            } finally {
+                if (firstValue == null) {
+                    reader.close();
+                }
+            }
+            // 404 if no values found
+            if (firstValue == null) {
+                throw new ReferenceNotFoundException();
+            }
+            return new ValueStreamingOutput(reader, firstValue, mediaType, providers);
+        }
+
         valList = csvResource.getCsvValues(uriInfo, pandaSettings);
 
         // 404 if no values found
         if (valList.getValue().isEmpty()) {
-            throw new WebApplicationException(404);
+            throw new ReferenceNotFoundException();
         }
 
         return valList;
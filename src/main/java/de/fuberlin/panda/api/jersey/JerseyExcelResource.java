@@ -30,6 +30,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import de.fuberlin.panda.api.ReferenceNotFoundException;
 import de.fuberlin.panda.api.data.ImageData;
 import de.fuberlin.panda.api.data.ValueExchangeExt;
 import de.fuberlin.panda.data.resources.DataExcelResource;
@@ -179,7 +180,7 @@ public class JerseyExcelResource extends AbstractJerseyResource {
 
         // Throw 404 WebApplicationException if no values found
         if (valList.getValue().isEmpty()) {
-            throw new WebApplicationException(404);
+            throw new ReferenceNotFoundException();
         }
 
         return valList;
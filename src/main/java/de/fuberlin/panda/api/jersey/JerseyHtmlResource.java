@@ -30,6 +30,7 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import de.fuberlin.panda.api.ReferenceNotFoundException;
 import de.fuberlin.panda.data.resources.DataHtmlResource;
 
 /**
@@ -65,7 +66,7 @@ public class JerseyHtmlResource extends AbstractJerseyResource {
 
             // Throw 404 WebApplicationException if no values found
             if (htmlDoc.isEmpty()) {
-                throw new WebApplicationException(404);
+                throw new ReferenceNotFoundException();
             }
         } catch (WebApplicationException e) {
             throw e;
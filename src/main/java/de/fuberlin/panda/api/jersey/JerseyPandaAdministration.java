@@ -25,6 +25,8 @@ package de.fuberlin.panda.api.jersey;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
 
 import javax.inject.Singleton;
 import javax.ws.rs.DefaultValue;
@@ -32,7 +34,9 @@ import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.core.CacheControl;
@@ -43,7 +47,11 @@ import org.apache.commons.lang3.StringEscapeUtils;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.server.mvc.Viewable;
 
+import de.fuberlin.panda.api.data.CacheStatisticsBean;
 import de.fuberlin.panda.api.data.PandaAdministrationBean;
+import de.fuberlin.panda.data.caching.CacheManagement;
+import de.fuberlin.panda.data.caching.CacheStatistics.Summary;
+import de.fuberlin.panda.data.caching.CacheWarmUp;
 import de.fuberlin.panda.enums.RangeDelimiter;
 
 @Singleton
@@ -71,21 +79,150 @@ public class JerseyPandaAdministration extends AbstractJerseyResource {
     @Produces("text/html")
     public Response setAdminForm(
             @DefaultValue("false") @FormParam("useServerCaching") Boolean useServerCaching,
+            @DefaultValue("false") @FormParam("useAsyncCacheFill") Boolean useAsyncCacheFill,
+            @DefaultValue("false") @FormParam("useCacheSnapshots") Boolean useCacheSnapshots,
+            @DefaultValue("false") @FormParam("useResponseCache") Boolean useResponseCache,
+            @DefaultValue("false") @FormParam("useDocCompression") Boolean useDocCompression,
+            @DefaultValue("false") @FormParam("useWarmUp") Boolean useWarmUp,
+            @FormParam("warmUpOrder") String warmUpOrder,
             @DefaultValue("false") @FormParam("namespaceAwareness") Boolean namespaceAwareness,
             @DefaultValue("false") @FormParam("useClientCaching") Boolean useClientCaching,
             @DefaultValue("false") @FormParam("useJtidy") Boolean useJtidy,
             @DefaultValue("false") @FormParam("useVtdXml") Boolean useVtdXml,
-            @FormParam("rangeDelimiter") RangeDelimiter rangeDelimiter) {
+            @FormParam("rangeDelimiter") RangeDelimiter rangeDelimiter,
+            @FormParam("cacheMemoryLimit") Long cacheMemoryLimit,
+            @FormParam("negativeCacheTime") Integer negativeCacheTime,
+            @FormParam("compressionThreshold") Integer compressionThreshold,
+            @FormParam("partialCacheSize") Long partialCacheSize,
+            @FormParam("remoteCacheTime") Integer remoteCacheTime) {
+        // snapshots must be set first, they are restored when caching is turned on
+        this.pandaSettings.setCacheSnapshots(useCacheSnapshots);
         this.pandaSettings.setServerCacheUsage(useServerCaching);
+        this.pandaSettings.setAsyncCacheFill(useAsyncCacheFill);
+        this.pandaSettings.setResponseCacheUsage(useResponseCache);
+        this.pandaSettings.setDocumentCompression(useDocCompression);
         this.pandaSettings.setNamespaceAwareness(namespaceAwareness);
         this.pandaSettings.setUseClientCaching(useClientCaching);
         this.pandaSettings.setUseJtidy(useJtidy);
         this.pandaSettings.setVtdUsage(useVtdXml);
         this.pandaSettings.setRangeDelimiter(rangeDelimiter);
+        if (cacheMemoryLimit != null) {
+            // memory limit is set in MB
+            this.pandaSettings.setCacheMemoryLimit(cacheMemoryLimit * 1024 * 1024);
+        }
+        if (negativeCacheTime != null) {
+            this.pandaSettings.setNegativeCacheTime(negativeCacheTime);
+        }
+        if (compressionThreshold != null) {
+            this.pandaSettings.setDocumentCompressionThreshold(compressionThreshold * 1024);
+        }
+        if (partialCacheSize != null) {
+            this.pandaSettings.setPartialCacheSize(partialCacheSize * 1024 * 1024);
+        }
+        if (remoteCacheTime != null) {
+            this.pandaSettings.setRemoteCacheTime(remoteCacheTime);
+        }
+        if (warmUpOrder != null) {
+            this.pandaSettings.setWarmUpOrder(warmUpOrder);
+        }
+        // warm-up is started if it is not running yet
+        this.pandaSettings.setWarmUpUsage(useWarmUp);
+        if (useWarmUp) {
+            this.pandaSettings.getCacheWarmUp().start();
+        }
 
         return getAdminForm();
     }
 
+    /**
+     * Readiness of the server for load balancers.
+     * 
+     * @return HTTP 200 if cache warm-up is disabled or finished, HTTP 503 until
+     *         an enabled warm-up has finished
+     */
+    @GET
+    @Path("ready")
+    @Produces("text/plain")
+    public Response getReadiness() {
+        CacheWarmUp warmUp = this.pandaSettings.getCacheWarmUp();
+        if (warmUp.isReady()) {
+            return Response.ok("ready").cacheControl(cacheControl).build();
+        }
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .entity("warm-up " + warmUp.getDoneCount() + "/" + warmUp.getTotalCount())
+                .cacheControl(cacheControl).build();
+    }
+
+    /**
+     * Counters of the whole cache and of each resource of the resource map.
+     * 
+     * @return statistics as JSON
+     */
+    @GET
+    @Path("cache")
+    @Produces("application/json")
+    public Response getCacheStatistics() {
+        CacheManagement management = new CacheManagement(this.pandaSettings);
+        Map<String, Summary> resources = new TreeMap<String, Summary>();
+        for (String resID : this.pandaSettings.getResourceMap().getMap().keySet()) {
+            resources.put(resID, management.getResourceStatistics(resID));
+        }
+
+        CacheStatisticsBean statistics = new CacheStatisticsBean();
+        statistics.setTotal(management.getTotal());
+        statistics.setResources(resources);
+        return Response.ok(statistics).cacheControl(cacheControl).build();
+    }
+
+    /**
+     * Counters of a single resource.
+     * 
+     * @param resID unique ID of resource
+     * @return statistics as JSON
+     */
+    @GET
+    @Path("cache/{resID}")
+    @Produces("application/json")
+    public Response getCacheStatistics(@PathParam("resID") String resID) {
+        checkResource(resID);
+        Summary statistics = new CacheManagement(this.pandaSettings).getResourceStatistics(resID);
+        return Response.ok(statistics).cacheControl(cacheControl).build();
+    }
+
+    /**
+     * Remove a resource from the cache.
+     * 
+     * @param resID unique ID of resource
+     * @return statistics of resource as JSON
+     */
+    @POST
+    @Path("cache/{resID}/evict")
+    @Produces("application/json")
+    public Response evictResource(@PathParam("resID") String resID) {
+        checkResource(resID);
+        new CacheManagement(this.pandaSettings).evict(resID);
+        return getCacheStatistics(resID);
+    }
+
+    /**
+     * Load a resource into the cache.
+     * 
+     * @param resID unique ID of resource
+     * @return statistics of resource as JSON, HTTP 503 if resource could not
+     *         be loaded, e.g. server caching is disabled
+     */
+    @POST
+    @Path("cache/{resID}/warm")
+    @Produces("application/json")
+    public Response warmResource(@PathParam("resID") String resID) {
+        checkResource(resID);
+        CacheManagement management = new CacheManagement(this.pandaSettings);
+        Response.Status status = management.warmUp(resID) ? Response.Status.OK
+                : Response.Status.SERVICE_UNAVAILABLE;
+        return Response.status(status).entity(management.getResourceStatistics(resID))
+                .cacheControl(cacheControl).build();
+    }
+
     @GET
     @Path("test")
     @Produces("text/html")
@@ -131,6 +268,18 @@ public class JerseyPandaAdministration extends AbstractJerseyResource {
         return response;
     }
 
+    /**
+     * Check if resource is part of the resource map.
+     * 
+     * @param resID unique ID of resource
+     * @throws WebApplicationException HTTP 404 if resource is unknown
+     */
+    private void checkResource(String resID) {
+        if (!this.pandaSettings.getResourceMap().getMap().containsKey(resID)) {
+            throw new WebApplicationException(404);
+        }
+    }
+
     /**
      * Prepares a new client and cache control.
      */
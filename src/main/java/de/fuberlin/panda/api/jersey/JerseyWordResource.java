@@ -31,6 +31,7 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import de.fuberlin.panda.api.ReferenceNotFoundException;
 import de.fuberlin.panda.api.data.ImageData;
 import de.fuberlin.panda.api.data.ValueExchange.Value;
 import de.fuberlin.panda.api.data.ValueExchangeExt;
@@ -287,7 +288,7 @@ public class JerseyWordResource extends AbstractJerseyResource {
 
         // Throw 404 WebApplicationException if no values found
         if (valList.getValue().isEmpty()) {
-            throw new WebApplicationException(404);
+            throw new ReferenceNotFoundException();
         }
 
         return valList;
@@ -316,7 +317,7 @@ public class JerseyWordResource extends AbstractJerseyResource {
 
         // Throw 404 WebApplicationException if no values found
         if (valList.getValue().isEmpty()) {
-            throw new WebApplicationException(404);
+            throw new ReferenceNotFoundException();
         }
 
         return valList;
@@ -33,6 +33,7 @@ import javax.ws.rs.core.Response;
 import org.json.JSONObject;
 import org.json.XML;
 
+import de.fuberlin.panda.api.ReferenceNotFoundException;
 import de.fuberlin.panda.data.resources.DataXmlResource;
 
 /**
@@ -68,7 +69,7 @@ public class JerseyXmlResource extends AbstractJerseyResource {
 
             // Throw 404 WebApplicationException if no values found
             if (xmlDoc.isEmpty()) {
-                throw new WebApplicationException(404);
+                throw new ReferenceNotFoundException();
             }
         } catch (WebApplicationException e) {
             throw e;
@@ -112,7 +113,7 @@ public class JerseyXmlResource extends AbstractJerseyResource {
             
             // Throw 404 WebApplicationException if no values found
             if (jsonDoc.isEmpty()) {
-                throw new WebApplicationException(404);
+                throw new ReferenceNotFoundException();
             }
         } catch (WebApplicationException e) {
             throw e;
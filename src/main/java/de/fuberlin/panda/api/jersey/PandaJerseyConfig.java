@@ -24,6 +24,7 @@ package de.fuberlin.panda.api.jersey;
 
 
 import java.io.File;
+import java.io.IOException;
 
 import javax.ws.rs.ApplicationPath;
 import javax.xml.bind.JAXBContext;
@@ -35,7 +36,10 @@ import org.glassfish.jersey.jackson.JacksonFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.server.mvc.MvcFeature;
 import org.glassfish.jersey.server.mvc.jsp.JspMvcFeature;
+import org.glassfish.jersey.server.spi.AbstractContainerLifecycleListener;
+import org.glassfish.jersey.server.spi.Container;
 
+import de.fuberlin.panda.data.caching.CacheManagement;
 import de.fuberlin.panda.data.configuration.PandaSettings;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
 
@@ -51,7 +55,7 @@ public class PandaJerseyConfig extends ResourceConfig {
     // contains system wide used settings and objects
     private PandaSettings pandaSettings = new PandaSettings();
 
-    public PandaJerseyConfig() throws JAXBException {
+    public PandaJerseyConfig() throws JAXBException, IOException {
         packages("de.fuberlin.panda.api.jersey");
         setApplicationName("PANDA");
 
@@ -61,6 +65,19 @@ public class PandaJerseyConfig extends ResourceConfig {
         File configFile = new File(pandaSettings.getResourceConfFilePath());
         pandaSettings.setResourceMap((ResourceMap) unmarshaller.unmarshal(configFile));
 
+        // settings of the deployment, snapshots are restored if server caching
+        // is enabled
+        pandaSettings.loadConfiguration(new File(pandaSettings.getConfigFilePath()));
+
+        // statistics and operations of the cache for JMX clients
+        CacheManagement.register(pandaSettings);
+
+        // fill cache before requests arrive
+        if (pandaSettings.getWarmUpUsage()) {
+            pandaSettings.setServerCacheUsage(true);
+            pandaSettings.getCacheWarmUp().start();
+        }
+
         // create default settings
         register(new AbstractBinder() {
             @Override
@@ -69,6 +86,16 @@ public class PandaJerseyConfig extends ResourceConfig {
             }
         });
 
+        // stop threads and remove MBean when the application is undeployed,
+        // a reload keeps this configuration and its settings
+        register(new AbstractContainerLifecycleListener() {
+            @Override
+            public void onShutdown(Container container) {
+                CacheManagement.unregister();
+                pandaSettings.shutdown();
+            }
+        });
+
         // register class for JSON support
         this.register(JacksonFeature.class);
 
@@ -82,6 +109,10 @@ public class PandaJerseyConfig extends ResourceConfig {
         // Custom Jackson ObjectMapper provider
         this.register(JacksonObjectMapperProvider.class);
 
+        // cache of encoded responses and missing references
+        this.register(ResponseCacheFilter.class);
+        this.register(ReferenceNotFoundMapper.class);
+
     }
 
     public PandaSettings getResourceSettings() {
@@ -0,0 +1,66 @@
+package de.fuberlin.panda.api.jersey;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+import de.fuberlin.panda.api.ReferenceNotFoundException;
+import de.fuberlin.panda.data.caching.NegativeResultCache;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+
+/**
+ * Answers references which do not exist in a resource with 404 and remembers
+ * them in the {@link NegativeResultCache}, if the request was prepared for it
+ * by the {@link ResponseCacheFilter}. Other errors answered with 404, e.g.
+ * failed reads of a resource, are not remembered. Has to be registered with
+ * the filter.
+ * 
+ * @author Christoph Schrder
+ */
+public class ReferenceNotFoundMapper implements ExceptionMapper<ReferenceNotFoundException> {
+
+    @Inject
+    PandaSettings                     pandaSettings;
+
+    @Inject
+    Provider<ContainerRequestContext> requestContext;
+
+    @Override
+    public Response toResponse(ReferenceNotFoundException exception) {
+        ContainerRequestContext context = requestContext.get();
+        String reference = (String) context.getProperty(ResponseCacheFilter.REFERENCE_PROPERTY);
+        if (reference != null) {
+            pandaSettings.getResourceCache().getNegativeResultCache()
+                    .put((String) context.getProperty(ResponseCacheFilter.RESID_PROPERTY),
+                            reference,
+                            (EntityTag) context.getProperty(ResponseCacheFilter.ETAG_PROPERTY));
+        }
+        return exception.getResponse();
+    }
+}
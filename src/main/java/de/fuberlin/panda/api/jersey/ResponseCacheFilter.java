@@ -0,0 +1,178 @@
+package de.fuberlin.panda.api.jersey;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import de.fuberlin.panda.data.caching.NegativeResultCache;
+import de.fuberlin.panda.data.caching.ResponseCache;
+import de.fuberlin.panda.data.caching.ResponseCache.CachedResponse;
+import de.fuberlin.panda.data.caching.ResourceWatcher.ResourceVersion;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+
+/**
+ * Serves requests to resources from the {@link ResponseCache} and adds encoded
+ * responses of resource classes to it. Only successful GET requests to local
+ * file resources are cached, and only while server caching is enabled.
+ * Streamed responses are not cached. References which do not exist in a
+ * resource are remembered in the {@link NegativeResultCache} by the
+ * {@link ReferenceNotFoundMapper} and answered with 404 until the resource
+ * changes or the result expires.
+ * 
+ * @author Christoph Schrder
+ */
+@Provider
+public class ResponseCacheFilter implements ContainerRequestFilter, ContainerResponseFilter,
+        WriterInterceptor {
+
+    // request properties of a response that shall be cached
+    private static final String KEY_PROPERTY       = "panda.responseCache.key";
+    static final String         RESID_PROPERTY     = "panda.responseCache.resID";
+    static final String         REFERENCE_PROPERTY = "panda.responseCache.reference";
+    static final String         ETAG_PROPERTY      = "panda.responseCache.eTag";
+
+    @Inject
+    PandaSettings               pandaSettings;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (!pandaSettings.getServerCacheUsage()
+                || !requestContext.getMethod().equals(HttpMethod.GET)) {
+            return;
+        }
+
+        // requests to resources have the path data/{ResourceID}/...
+        List<PathSegment> pathSegments = requestContext.getUriInfo().getPathSegments();
+        if (pathSegments.size() < 2 || !pathSegments.get(0).getPath().equals("data")) {
+            return;
+        }
+        String resID = pathSegments.get(1).getPath();
+        if (pandaSettings.getResourceMap() == null
+                || !pandaSettings.getResourceMap().getMap().containsKey(resID)) {
+            return;
+        }
+        ResourceVersion version = pandaSettings.getResourceWatcher().getVersion(resID);
+        if (version == null || !version.exists()) {
+            return;
+        }
+
+        // known missing reference of this resource version
+        EntityTag eTag = version.getETag();
+        String reference = requestContext.getUriInfo().getPath();
+        NegativeResultCache negativeResults = pandaSettings.getResourceCache()
+                .getNegativeResultCache();
+        if (negativeResults.contains(resID, reference, eTag)) {
+            requestContext.abortWith(Response.status(Response.Status.NOT_FOUND).build());
+            return;
+        }
+        requestContext.setProperty(RESID_PROPERTY, resID);
+        requestContext.setProperty(REFERENCE_PROPERTY, reference);
+        requestContext.setProperty(ETAG_PROPERTY, eTag);
+
+        if (!pandaSettings.getResponseCacheUsage()) {
+            return;
+        }
+        String key = ResponseCache.createKey(requestContext.getUriInfo().getRequestUri()
+                .toString(), requestContext.getHeaderString(HttpHeaders.ACCEPT), eTag);
+        ResponseCache responseCache = pandaSettings.getResourceCache().getResponseCache();
+        CachedResponse cachedResponse = responseCache.get(key);
+        if (cachedResponse == null) {
+            // remember key to add response after it was encoded
+            requestContext.setProperty(KEY_PROPERTY, key);
+            return;
+        }
+
+        ResponseBuilder builder;
+        if (pandaSettings.getUseClientCaching()) {
+            builder = requestContext.getRequest().evaluatePreconditions(
+                    version.getLastModified(), eTag);
+            if (builder != null) {
+                // resource not modified
+                builder.cacheControl(pandaSettings.getCacheControl());
+            } else {
+                builder = Response.ok(cachedResponse.getEntity(), cachedResponse.getMediaType());
+            }
+            builder.lastModified(version.getLastModified()).tag(eTag);
+        } else {
+            builder = Response.ok(cachedResponse.getEntity(), cachedResponse.getMediaType());
+        }
+        requestContext.abortWith(builder.build());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext,
+            ContainerResponseContext responseContext) throws IOException {
+        // only complete responses are cached
+        if (responseContext.getStatus() != Response.Status.OK.getStatusCode()
+                || !responseContext.hasEntity()) {
+            requestContext.removeProperty(KEY_PROPERTY);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException,
+            WebApplicationException {
+        // streamed responses are not buffered
+        String key = (String) context.getProperty(KEY_PROPERTY);
+        if (key == null || context.getEntity() instanceof StreamingOutput) {
+            context.proceed();
+            return;
+        }
+
+        // encode response into buffer, then add it to cache and send it
+        OutputStream out = context.getOutputStream();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        context.setOutputStream(buffer);
+        try {
+            context.proceed();
+        } finally {
+            context.setOutputStream(out);
+        }
+        byte[] entity = buffer.toByteArray();
+        pandaSettings.getResourceCache().getResponseCache()
+                .put((String) context.getProperty(RESID_PROPERTY), key, entity,
+                        context.getMediaType());
+        out.write(entity);
+    }
+}
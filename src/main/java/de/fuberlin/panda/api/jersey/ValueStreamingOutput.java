@@ -0,0 +1,237 @@
+package de.fuberlin.panda.api.jersey;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Providers;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.PropertyException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import de.fuberlin.panda.api.data.ValueExchange.Value;
+import de.fuberlin.panda.api.data.ValueExchangeExt;
+import de.fuberlin.panda.data.resources.ValueReader;
+
+/**
+ * Writes the values of a {@link ValueReader} to the client while they are
+ * read. The output is the same as the output of a {@link ValueExchangeExt}
+ * that is encoded by the registered JAXB marshaller or Jackson ObjectMapper,
+ * but the values are never held in memory at once.
+ * 
+ * @author Christoph Schrder
+ */
+public class ValueStreamingOutput implements StreamingOutput {
+
+    // indentation of formatted XML output
+    private static final String INDENT = "    ";
+
+    private final ValueReader   reader;
+    private final Value         firstValue;
+    private final MediaType     mediaType;
+    private final Providers     providers;
+
+    /**
+     * @param reader reader of the values, closed after the values were written
+     * @param firstValue first value of the reader, already read to check if
+     *            there are values
+     * @param mediaType MediaType of response, XML or JSON
+     * @param providers providers for the marshaller or ObjectMapper
+     */
+    public ValueStreamingOutput(ValueReader reader, Value firstValue, MediaType mediaType,
+            Providers providers) {
+        this.reader = reader;
+        this.firstValue = firstValue;
+        this.mediaType = mediaType;
+        this.providers = providers;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        try {
+            if (MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType)) {
+                writeJson(output);
+            } else {
+                writeXml(output);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Write values as XML like a JAXB marshaller.
+     * 
+     * @param output stream of response
+     * @throws IOException
+     */
+    private void writeXml(OutputStream output) throws IOException {
+        boolean formatted = isFormattedXml();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output,
+                StandardCharsets.UTF_8));
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+        if (formatted) {
+            writer.write('\n');
+        }
+        writer.write("<PANDA");
+        if (reader.getBaseURI() != null) {
+            writer.write(" baseURI=\"");
+            writeEscaped(writer, reader.getBaseURI(), true);
+            writer.write('"');
+        }
+        writer.write('>');
+
+        for (Value value = firstValue; value != null; value = reader.next()) {
+            if (formatted) {
+                writer.write('\n');
+                writer.write(INDENT);
+            }
+            writer.write("<value type=\"");
+            writeEscaped(writer, value.getType(), true);
+            writer.write('"');
+            if (value.getSubURI() != null) {
+                writer.write(" subURI=\"");
+                writeEscaped(writer, value.getSubURI(), true);
+                writer.write('"');
+            }
+            writer.write('>');
+            writeEscaped(writer, value.getValue().toString(), false);
+            writer.write("</value>");
+        }
+
+        if (formatted) {
+            writer.write('\n');
+        }
+        writer.write("</PANDA>");
+        if (formatted) {
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write values as JSON like the Jackson ObjectMapper.
+     * 
+     * @param output stream of response
+     * @throws IOException
+     */
+    private void writeJson(OutputStream output) throws IOException {
+        ObjectMapper mapper = null;
+        ContextResolver<ObjectMapper> resolver = providers.getContextResolver(
+                ObjectMapper.class, mediaType);
+        if (resolver != null) {
+            mapper = resolver.getContext(ValueExchangeExt.class);
+        }
+        if (mapper == null) {
+            mapper = new ObjectMapper();
+        }
+
+        // values are indented by the pretty printer of the generator
+        JsonGenerator generator = mapper.getFactory().createGenerator(output,
+                JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        if (mapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
+            generator.useDefaultPrettyPrinter();
+        }
+        ObjectWriter valueWriter = mapper.writer().without(SerializationFeature.INDENT_OUTPUT)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("value");
+        for (Value value = firstValue; value != null; value = reader.next()) {
+            valueWriter.writeValue(generator, value);
+        }
+        generator.writeEndArray();
+        generator.writeStringField("baseURI", reader.getBaseURI());
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    /**
+     * Checks if the registered JAXB marshaller formats its output.
+     * 
+     * @return true if XML output is indented
+     */
+    private boolean isFormattedXml() {
+        ContextResolver<Marshaller> resolver = providers.getContextResolver(Marshaller.class,
+                mediaType);
+        if (resolver == null) {
+            return false;
+        }
+        Marshaller marshaller = resolver.getContext(ValueExchangeExt.class);
+        if (marshaller == null) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(marshaller.getProperty(Marshaller.JAXB_FORMATTED_OUTPUT));
+        } catch (PropertyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write text with the characters escaped by JAXB.
+     * 
+     * @param writer the writer
+     * @param text the text
+     * @param attribute true if text is the value of an attribute
+     * @throws IOException
+     */
+    private static void writeEscaped(Writer writer, String text, boolean attribute)
+            throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '&':
+                writer.write("&amp;");
+                break;
+            case '<':
+                writer.write("&lt;");
+                break;
+            case '>':
+                writer.write("&gt;");
+                break;
+            case '"':
+                writer.write(attribute ? "&quot;" : "\"");
+                break;
+            default:
+                writer.write(c);
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * Base of the cache tiers beside the value cache (blocks of rows, package
+ * parts, responses). Entries are stored by key, belong to a resource ID and
+ * may be bound to the EntityTag of the resource version they were read from.
+ * The cache has its own memory budget, least recently used entries are
+ * evicted first. Entries larger than a share of the budget are not cached.
+ * 
+ * @author Christoph Schrder
+ * @param <V> type of cached values
+ */
+public abstract class BudgetedCache<V> {
+
+    private final ConcurrentHashMap<String, CachedEntry<V>> entries      = new ConcurrentHashMap<String, CachedEntry<V>>();
+    // keys of cached entries per resource ID
+    private final HashMap<String, Set<String>>              resourceKeys = new HashMap<String, Set<String>>();
+    private final SegmentedLruPolicy                        evictionPolicy;
+    // share of memory budget a single entry may use
+    private final double                                    maxEntryRatio;
+    private volatile long                                   memoryLimit;
+
+    private final AtomicLong                                hitCount     = new AtomicLong();
+    private final AtomicLong                                missCount    = new AtomicLong();
+
+    /**
+     * @param memoryLimit memory budget in bytes
+     * @param maxEntryRatio share of memory budget a single entry may use
+     */
+    protected BudgetedCache(long memoryLimit, double maxEntryRatio) {
+        this.memoryLimit = memoryLimit;
+        this.maxEntryRatio = maxEntryRatio;
+        this.evictionPolicy = new SegmentedLruPolicy(memoryLimit);
+    }
+
+    /**
+     * Get cached value.
+     * 
+     * @param key key of entry
+     * @param eTag EntityTag of current version of resource, null if the key
+     *            identifies the version
+     * @return value or null if it is not cached for this version
+     */
+    protected V get(String key, EntityTag eTag) {
+        CachedEntry<V> entry = entries.get(key);
+        if (entry == null || (eTag != null && !eTag.equals(entry.eTag))) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        evictionPolicy.recordAccess(key);
+        return entry.value;
+    }
+
+    /**
+     * Add value to cache, an entry with the same key is replaced. Values that
+     * exceed the share of the memory budget of a single entry are not cached.
+     * 
+     * @param resID unique ID of resource
+     * @param key key of entry
+     * @param eTag EntityTag of resource version the value was read from
+     * @param value the value
+     * @param size estimated size of value and key in bytes
+     */
+    protected synchronized void put(String resID, String key, EntityTag eTag, V value,
+            long size) {
+        remove(key);
+        if (size > memoryLimit * maxEntryRatio) {
+            return;
+        }
+
+        entries.put(key, new CachedEntry<V>(resID, eTag, value));
+        Set<String> keys = resourceKeys.get(resID);
+        if (keys == null) {
+            keys = new HashSet<String>();
+            resourceKeys.put(resID, keys);
+        }
+        keys.add(key);
+        evictionPolicy.addSize(key, size);
+        evictIfNeeded();
+    }
+
+    /**
+     * Remove all entries of a resource.
+     * 
+     * @param resID unique ID of resource
+     */
+    public synchronized void removeResource(String resID) {
+        Set<String> keys = resourceKeys.remove(resID);
+        if (keys != null) {
+            for (String key : keys) {
+                entries.remove(key);
+                evictionPolicy.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Set memory budget of cache, entries are evicted immediately if the
+     * cache exceeds the new budget.
+     * 
+     * @param memoryLimit memory budget in bytes
+     */
+    public synchronized void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+        evictionPolicy.setCapacity(memoryLimit);
+        evictIfNeeded();
+    }
+
+    /**
+     * Returns estimated size of all cached entries.
+     * 
+     * @return size in bytes
+     */
+    public long getEstimatedSize() {
+        return evictionPolicy.getSize();
+    }
+
+    /**
+     * Returns number of cached entries.
+     * 
+     * @return number of entries
+     */
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Evict least recently used entries until the cache is within its budget.
+     */
+    private void evictIfNeeded() {
+        String victim;
+        while ((victim = evictionPolicy.getVictim()) != null) {
+            remove(victim);
+        }
+    }
+
+    /**
+     * Remove a single entry.
+     * 
+     * @param key key of entry
+     */
+    private void remove(String key) {
+        CachedEntry<V> entry = entries.remove(key);
+        evictionPolicy.remove(key);
+        if (entry != null) {
+            Set<String> keys = resourceKeys.get(entry.resID);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                resourceKeys.remove(entry.resID);
+            }
+        }
+    }
+
+    /**
+     * Value of a resource version.
+     */
+    private static class CachedEntry<V> {
+        private final String    resID;
+        private final EntityTag eTag;
+        private final V         value;
+
+        public CachedEntry(String resID, EntityTag eTag, V value) {
+            this.resID = resID;
+            this.eTag = eTag;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * Immutable snapshot of a single cached resource. Holds the value subtree or
+ * the cached document of a resource together with its EntityTag. Snapshots
+ * are never modified after they were published in the cache, changes are done
+ * on a copy which replaces the snapshot atomically. The value subtree of a
+ * published snapshot must not be modified either. Each snapshot carries its
+ * estimated size, so the memory budget can be updated by the difference of
+ * the snapshots that were actually replaced.
+ * 
+ * @author Christoph Schrder
+ */
+public class CacheEntry {
+    private final CacheTreeNode valueTree;
+    private final Object        document;
+    private final EntityTag     eTag;
+    private final long          size;
+
+    /**
+     * @param valueTree value subtree, may be null
+     * @param document cached document, may be null
+     * @param eTag EntityTag of resource, may be null
+     * @param size estimated size of values and document in bytes
+     */
+    public CacheEntry(CacheTreeNode valueTree, Object document, EntityTag eTag, long size) {
+        this.valueTree = valueTree;
+        this.document = document;
+        this.eTag = eTag;
+        this.size = size;
+    }
+
+    /**
+     * Returns value subtree of resource, children of returned node are the
+     * path segments following the resource ID.
+     * 
+     * @return value subtree or null if no values are cached
+     */
+    public CacheTreeNode getValueTree() {
+        return this.valueTree;
+    }
+
+    public Object getDocument() {
+        return this.document;
+    }
+
+    public EntityTag getETag() {
+        return this.eTag;
+    }
+
+    /**
+     * Returns estimated size of values and document in cache.
+     * 
+     * @return size in bytes
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Return true if neither values nor a document are cached.
+     * 
+     * @return true if entry is empty
+     */
+    public boolean isEmpty() {
+        return this.valueTree == null && this.document == null;
+    }
+}
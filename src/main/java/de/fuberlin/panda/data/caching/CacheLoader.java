@@ -0,0 +1,224 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes jobs that fill the cache with whole resources. Jobs can be run in
+ * the calling thread or in background by a small pool of daemon threads, so
+ * the request that triggered the fill does not have to wait for the full
+ * parse of its resource. Failed jobs are logged and counted, the resource
+ * simply stays uncached.
+ * 
+ * @author Christoph Schrder
+ */
+public class CacheLoader {
+
+    private static final long                     KEEP_ALIVE_SECONDS = 60;
+
+    private final Logger                          logger             = Logger.getLogger(CacheLoader.class.getName());
+
+    private final ThreadPoolExecutor              executor;
+
+    // start time of running jobs per resource ID
+    private final ConcurrentHashMap<String, Long> running            = new ConcurrentHashMap<String, Long>();
+
+    private final AtomicLong                      completedCount     = new AtomicLong();
+    private final AtomicLong                      failedCount        = new AtomicLong();
+
+    /**
+     * @param threads maximum number of jobs running in background
+     */
+    public CacheLoader(int threads) {
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger threadCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "panda-cache-loader-"
+                                + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // idle threads are stopped, so unused caches do not hold any threads
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run fill job in the calling thread.
+     * 
+     * @param resID unique ID of resource
+     * @param job job that fills the cache with the resource
+     */
+    public void execute(String resID, Callable<?> job) {
+        runJob(resID, job);
+    }
+
+    /**
+     * Queue fill job for execution in background.
+     * 
+     * @param resID unique ID of resource
+     * @param job job that fills the cache with the resource
+     * @throws java.util.concurrent.RejectedExecutionException if loader was
+     *             shut down
+     */
+    public void submit(String resID, Callable<?> job) {
+        submit(resID, job, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    /**
+     * Queue fill job for execution in background.
+     * 
+     * @param resID unique ID of resource
+     * @param job job that fills the cache with the resource
+     * @param onFinish called after job was executed, even if job failed
+     * @throws java.util.concurrent.RejectedExecutionException if loader was
+     *             shut down
+     */
+    public void submit(final String resID, final Callable<?> job, final Runnable onFinish) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runJob(resID, job);
+                } finally {
+                    onFinish.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Queue a task for execution in background, e.g. writing a snapshot of a
+     * resource. Unlike fill jobs, tasks are not counted and errors are only
+     * logged.
+     * 
+     * @param task the task
+     * @throws java.util.concurrent.RejectedExecutionException if loader was
+     *             shut down
+     */
+    public void submitTask(final Runnable task) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Background task of cache failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop background threads. Queued jobs are still executed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns number of jobs waiting for a free thread.
+     * 
+     * @return number of queued jobs
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns IDs of resources which are currently loaded into the cache.
+     * 
+     * @return list of resource IDs
+     */
+    public List<String> getRunningResources() {
+        return new ArrayList<String>(running.keySet());
+    }
+
+    /**
+     * Returns running time of the fill job of a resource.
+     * 
+     * @param resID unique ID of resource
+     * @return time in milliseconds, -1 if resource is not loaded at the moment
+     */
+    public long getRunningTime(String resID) {
+        Long start = running.get(resID);
+        return (start == null) ? -1 : System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Returns number of successfully executed jobs.
+     * 
+     * @return number of jobs
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * Returns number of failed jobs.
+     * 
+     * @return number of jobs
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Execute a fill job and update statistics.
+     * 
+     * @param resID unique ID of resource
+     * @param job job that fills the cache with the resource
+     */
+    private void runJob(String resID, Callable<?> job) {
+        running.put(resID, System.currentTimeMillis());
+        try {
+            job.call();
+            completedCount.incrementAndGet();
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            logger.log(Level.WARNING, "Cache fill of resource " + resID + " failed", e);
+        } finally {
+            running.remove(resID);
+        }
+    }
+}
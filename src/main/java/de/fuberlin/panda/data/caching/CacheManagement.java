@@ -0,0 +1,119 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.fuberlin.panda.data.caching.CacheStatistics.Summary;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+
+/**
+ * Statistics and operations of the {@link ResourceCache} for the
+ * administration resource and for JMX clients.
+ * 
+ * @author Christoph Schrder
+ */
+public class CacheManagement implements CacheManagementMXBean {
+
+    public static final String  OBJECT_NAME = "de.fuberlin.panda:type=ResourceCache";
+
+    private static final Logger logger      = Logger.getLogger(CacheManagement.class.getName());
+
+    private final PandaSettings pandaSettings;
+
+    public CacheManagement(PandaSettings pandaSettings) {
+        this.pandaSettings = pandaSettings;
+    }
+
+    /**
+     * Register management of the cache at the platform MBean server. A bean
+     * registered by a previous deployment of the application is replaced.
+     * 
+     * @param pandaSettings PANDA system settings
+     */
+    public static void register(PandaSettings pandaSettings) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new CacheManagement(pandaSettings), name);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Registration of cache MBean failed", e);
+        }
+    }
+
+    /**
+     * Remove management of the cache from the platform MBean server, e.g.
+     * when the application is undeployed.
+     */
+    public static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Unregistration of cache MBean failed", e);
+        }
+    }
+
+    @Override
+    public Summary getTotal() {
+        ResourceCache cache = pandaSettings.getResourceCache();
+        return cache.getStatistics().getSummary(cache.getEstimatedSize());
+    }
+
+    @Override
+    public List<String> getResourceIDs() {
+        return new ArrayList<String>(pandaSettings.getResourceCache().getStatistics()
+                .getResourceIDs());
+    }
+
+    @Override
+    public Summary getResourceStatistics(String resID) {
+        ResourceCache cache = pandaSettings.getResourceCache();
+        return cache.getStatistics().getSummary(resID, cache.getEstimatedSize(resID));
+    }
+
+    @Override
+    public boolean evict(String resID) {
+        return pandaSettings.getResourceCache().evict(resID);
+    }
+
+    @Override
+    public boolean warmUp(String resID) {
+        return pandaSettings.getCacheWarmUp().warmUp(resID);
+    }
+}
@@ -0,0 +1,69 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.util.List;
+
+import de.fuberlin.panda.data.caching.CacheStatistics.Summary;
+
+/**
+ * JMX interface of the {@link ResourceCache}. Counters are exposed as
+ * composite data, resources can be evicted from or loaded into the cache.
+ * 
+ * @author Christoph Schrder
+ */
+public interface CacheManagementMXBean {
+
+    /**
+     * @return counters of all resources
+     */
+    Summary getTotal();
+
+    /**
+     * @return IDs of all resources with recorded counters
+     */
+    List<String> getResourceIDs();
+
+    /**
+     * @param resID unique ID of resource
+     * @return counters of a single resource
+     */
+    Summary getResourceStatistics(String resID);
+
+    /**
+     * Removes a resource from the cache.
+     * 
+     * @param resID unique ID of resource
+     * @return true if resource was cached
+     */
+    boolean evict(String resID);
+
+    /**
+     * Loads a resource into the cache.
+     * 
+     * @param resID unique ID of resource
+     * @return true if resource is valid in cache
+     */
+    boolean warmUp(String resID);
+}
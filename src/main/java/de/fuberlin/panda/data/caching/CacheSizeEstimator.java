@@ -0,0 +1,175 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+/**
+ * Rough estimation of heap usage of cached objects. The numbers are based on
+ * a 64 bit JVM with compressed references and are only used to keep the cache
+ * within its memory budget, they are not meant to be exact.
+ * 
+ * @author Christoph Schrder
+ */
+public class CacheSizeEstimator {
+
+    // CacheTreeNode object + TreeMap object
+    private static final long NODE_OVERHEAD   = 64;
+    // TreeMap.Entry object
+    private static final long ENTRY_OVERHEAD  = 40;
+    // int key + reference in arrays of indexed children
+    private static final long INDEX_ENTRY     = 8;
+    // Value object with references to value, type and subURI
+    private static final long VALUE_OVERHEAD  = 24;
+    // String object + char array header
+    private static final long STRING_OVERHEAD = 40;
+    // array header
+    private static final long ARRAY_OVERHEAD  = 16;
+    // dictionary ID + type code of a table cell
+    private static final long TABLE_CELL      = 5;
+    // reference in dictionary list
+    private static final long REFERENCE       = 4;
+
+    /**
+     * Estimated size of a new node in the cache tree.
+     * 
+     * @param key key of node in parent node
+     * @return size in bytes
+     */
+    public static long estimateNode(String key) {
+        return NODE_OVERHEAD + ENTRY_OVERHEAD + estimateString(key);
+    }
+
+    /**
+     * Estimated size of a new leaf in the cache tree. The type is not counted
+     * since type strings are shared between values.
+     * 
+     * @param key key of leaf in parent node
+     * @param value the value
+     * @return size in bytes
+     */
+    public static long estimateLeaf(String key, Object value) {
+        return ENTRY_OVERHEAD + estimateString(key) + VALUE_OVERHEAD + estimateObject(value);
+    }
+
+    /**
+     * Estimated size of a new node with a numeric key in the cache tree.
+     * 
+     * @return size in bytes
+     */
+    public static long estimateIndexedNode() {
+        return NODE_OVERHEAD + INDEX_ENTRY;
+    }
+
+    /**
+     * Estimated size of a new leaf with a numeric key in the cache tree.
+     * 
+     * @param value the value
+     * @return size in bytes
+     */
+    public static long estimateIndexedLeaf(Object value) {
+        return INDEX_ENTRY + VALUE_OVERHEAD + estimateObject(value);
+    }
+
+    /**
+     * Estimated size of a cell in a {@link TableCacheNode}. Values are counted
+     * separately since they are stored only once per table.
+     * 
+     * @return size in bytes
+     */
+    public static long estimateTableCell() {
+        return TABLE_CELL;
+    }
+
+    /**
+     * Estimated size of a new value in the dictionary of a
+     * {@link TableCacheNode}.
+     * 
+     * @param value the value
+     * @return size in bytes
+     */
+    public static long estimateTableValue(Object value) {
+        return REFERENCE + estimateObject(value);
+    }
+
+    /**
+     * Estimated size of a block of rows in the {@link RowBlockCache}.
+     * 
+     * @param rows cells of each row
+     * @return size in bytes
+     */
+    public static long estimateRowBlock(String[][] rows) {
+        long size = ARRAY_OVERHEAD + REFERENCE * rows.length;
+        for (String[] row : rows) {
+            size += ARRAY_OVERHEAD + REFERENCE * row.length;
+            for (String cell : row) {
+                size += estimateString(cell);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimated size of a cached document.
+     * 
+     * @param doc document as byte array, String or {@link CompressedDocument}
+     * @return size in bytes
+     */
+    public static long estimateDocument(Object doc) {
+        return estimateObject(doc);
+    }
+
+    /**
+     * Estimated size of a String.
+     * 
+     * @param s the String
+     * @return size in bytes
+     */
+    public static long estimateString(String s) {
+        if (s == null) {
+            return 0;
+        }
+        return STRING_OVERHEAD + 2L * s.length();
+    }
+
+    /**
+     * Estimated size of objects used as cached values or documents.
+     * 
+     * @param obj cached object
+     * @return size in bytes
+     */
+    private static long estimateObject(Object obj) {
+        if (obj == null) {
+            return 0;
+        } else if (obj instanceof byte[]) {
+            return ARRAY_OVERHEAD + ((byte[]) obj).length;
+        } else if (obj instanceof String) {
+            return estimateString((String) obj);
+        } else if (obj instanceof CompressedDocument) {
+            CompressedDocument compressed = (CompressedDocument) obj;
+            return ARRAY_OVERHEAD * (compressed.getBlocks().length + 1)
+                    + compressed.getCompressedSize();
+        } else {
+            return estimateString(obj.toString());
+        }
+    }
+}
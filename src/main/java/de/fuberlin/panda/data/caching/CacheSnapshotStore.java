@@ -0,0 +1,448 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+
+import de.fuberlin.panda.api.data.ValueExchange.Value;
+
+/**
+ * Stores snapshots of cached resources as binary files on local disk, so the
+ * cache can be filled again after a restart without parsing the resources.
+ * Every file holds the EntityTag, the value subtree and the document of a
+ * single resource. Tables are written with their dictionary, so the files are
+ * about as compact as the cached tables.
+ * 
+ * @author Christoph Schrder
+ */
+public class CacheSnapshotStore {
+
+    private static final int     MAGIC      = 0x50414e44;
+    private static final int     VERSION    = 3;
+    private static final String  SUFFIX     = ".snapshot";
+    private static final Charset UTF8       = Charset.forName("UTF-8");
+
+    // type codes of objects
+    private static final byte    NULL       = 0;
+    private static final byte    STRING     = 1;
+    private static final byte    BYTE_ARRAY = 2;
+    private static final byte    COMPRESSED = 3;
+
+    // kinds of children in value tree
+    private static final byte    NODE       = 0;
+    private static final byte    LEAF       = 1;
+
+    private final File           directory;
+
+    /**
+     * @param directory directory of snapshot files, will be created if missing
+     */
+    public CacheSnapshotStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Create a directory which is only accessible by the user running PANDA,
+     * so other users of the host can neither read nor plant files in it.
+     * 
+     * @param directory directory to create, nothing is done if it exists
+     * @throws IOException if directory can't be created
+     */
+    static void createPrivateDirectory(File directory) throws IOException {
+        if (directory.isDirectory()) {
+            return;
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory.toPath(), PosixFilePermissions
+                    .asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(directory.toPath());
+            directory.setReadable(false, false);
+            directory.setReadable(true, true);
+            directory.setWritable(false, false);
+            directory.setWritable(true, true);
+            directory.setExecutable(false, false);
+            directory.setExecutable(true, true);
+        }
+    }
+
+    /**
+     * Write snapshot of a resource. The file is written to a temporary file
+     * first, so an existing snapshot is replaced only by a complete one.
+     * 
+     * @param resID unique ID of resource
+     * @param entry cached resource
+     * @throws IOException if snapshot can't be written or resource contains
+     *             values which are not supported
+     */
+    public void write(String resID, CacheEntry entry) throws IOException {
+        createPrivateDirectory(directory);
+        File tempFile = File.createTempFile("panda", ".tmp", directory);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, entry.getETag().getValue());
+                out.writeBoolean(entry.getETag().isWeak());
+                out.writeBoolean(entry.getValueTree() != null);
+                if (entry.getValueTree() != null) {
+                    writeNode(out, entry.getValueTree());
+                }
+                writeObject(out, entry.getDocument());
+            } finally {
+                out.close();
+            }
+            Files.move(tempFile.toPath(), getFile(resID).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Read only the EntityTag of a snapshot.
+     * 
+     * @param resID unique ID of resource
+     * @return EntityTag of snapshot
+     * @throws IOException if snapshot is missing or invalid
+     */
+    public EntityTag readETag(String resID) throws IOException {
+        DataInputStream in = openSnapshot(resID);
+        try {
+            return readETag(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read snapshot of a resource.
+     * 
+     * @param resID unique ID of resource
+     * @return snapshot of resource
+     * @throws IOException if snapshot is missing or invalid
+     */
+    public CacheEntry read(String resID) throws IOException {
+        DataInputStream in = openSnapshot(resID);
+        try {
+            EntityTag eTag = readETag(in);
+            long[] size = { 0 };
+            CacheTreeNode valueTree = null;
+            if (in.readBoolean()) {
+                valueTree = readNode(in, size);
+                size[0] += CacheSizeEstimator.estimateNode(resID);
+            }
+            Object document = readObject(in);
+            size[0] += CacheSizeEstimator.estimateDocument(document);
+            return new CacheEntry(valueTree, document, eTag, size[0]);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Delete snapshot of a resource.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void delete(String resID) {
+        getFile(resID).delete();
+    }
+
+    /**
+     * Returns IDs of all resources with a snapshot.
+     * 
+     * @return list of resource IDs
+     */
+    public List<String> getResourceIDs() {
+        List<String> resIDs = new ArrayList<String>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return resIDs;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX)) {
+                try {
+                    resIDs.add(URLDecoder.decode(
+                            name.substring(0, name.length() - SUFFIX.length()), "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return resIDs;
+    }
+
+    /**
+     * Write a String which may be null or longer than supported by
+     * {@link DataOutputStream#writeUTF(String)}.
+     * 
+     * @param out output stream
+     * @param s the String
+     * @throws IOException if writing fails
+     */
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read a String written by {@link #writeString(DataOutputStream, String)}.
+     * 
+     * @param in input stream
+     * @return the String, may be null
+     * @throws IOException if reading fails
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Write a cached value or document.
+     * 
+     * @param out output stream
+     * @param obj String, byte array, compressed document or null
+     * @throws IOException if writing fails or object type is not supported
+     */
+    static void writeObject(DataOutputStream out, Object obj) throws IOException {
+        if (obj == null) {
+            out.writeByte(NULL);
+        } else if (obj instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) obj);
+        } else if (obj instanceof byte[]) {
+            out.writeByte(BYTE_ARRAY);
+            out.writeInt(((byte[]) obj).length);
+            out.write((byte[]) obj);
+        } else if (obj instanceof CompressedDocument) {
+            CompressedDocument compressed = (CompressedDocument) obj;
+            out.writeByte(COMPRESSED);
+            out.writeInt(compressed.getLength());
+            out.writeInt(compressed.getBlocks().length);
+            for (byte[] block : compressed.getBlocks()) {
+                out.writeInt(block.length);
+                out.write(block);
+            }
+        } else {
+            throw new IOException("Unsupported value type " + obj.getClass().getName());
+        }
+    }
+
+    /**
+     * Read a value written by {@link #writeObject(DataOutputStream, Object)}.
+     * 
+     * @param in input stream
+     * @return the value, may be null
+     * @throws IOException if reading fails
+     */
+    static Object readObject(DataInputStream in) throws IOException {
+        byte typeCode = in.readByte();
+        switch (typeCode) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case BYTE_ARRAY:
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return bytes;
+        case COMPRESSED:
+            int length = in.readInt();
+            byte[][] blocks = new byte[in.readInt()][];
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = new byte[in.readInt()];
+                in.readFully(blocks[i]);
+            }
+            return new CompressedDocument(length, blocks);
+        default:
+            throw new IOException("Unknown value type " + typeCode);
+        }
+    }
+
+    private File getFile(String resID) {
+        try {
+            return new File(directory, URLEncoder.encode(resID, "UTF-8") + SUFFIX);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Open snapshot file and check its header.
+     * 
+     * @param resID unique ID of resource
+     * @return stream positioned after the header
+     * @throws IOException if snapshot is missing or has an unknown format
+     */
+    private DataInputStream openSnapshot(String resID) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+                getFile(resID))));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            in.close();
+            throw new IOException("Unknown format of snapshot " + getFile(resID));
+        }
+        return in;
+    }
+
+    private EntityTag readETag(DataInputStream in) throws IOException {
+        String value = readString(in);
+        return new EntityTag(value, in.readBoolean());
+    }
+
+    /**
+     * Write a node of the value tree with all its children.
+     * 
+     * @param out output stream
+     * @param node the node
+     * @throws IOException if writing fails
+     */
+    private void writeNode(DataOutputStream out, CacheTreeNode node) throws IOException {
+        out.writeBoolean(node.getTable() != null);
+        if (node.getTable() != null) {
+            node.getTable().write(out);
+        }
+        out.writeInt(node.getIndexCount());
+        for (int pos = 0; pos < node.getIndexCount(); pos++) {
+            out.writeInt(node.getIndex(pos));
+            writeChild(out, node.getIndexedChild(pos));
+        }
+        out.writeInt(node.getNameSet().size());
+        for (String key : node.getNameSet()) {
+            writeString(out, key);
+            writeChild(out, node.getChild(key));
+        }
+    }
+
+    /**
+     * Write a child of a node.
+     * 
+     * @param out output stream
+     * @param child leaf or node
+     * @throws IOException if writing fails
+     */
+    private void writeChild(DataOutputStream out, Object child) throws IOException {
+        if (child instanceof Value) {
+            Value value = (Value) child;
+            out.writeByte(LEAF);
+            writeObject(out, value.getValue());
+            writeString(out, value.getType());
+        } else {
+            out.writeByte(NODE);
+            writeNode(out, (CacheTreeNode) child);
+        }
+    }
+
+    /**
+     * Read a node of the value tree with all its children.
+     * 
+     * @param in input stream
+     * @param size estimated size of read nodes, will be increased
+     * @return the node
+     * @throws IOException if reading fails
+     */
+    private CacheTreeNode readNode(DataInputStream in, long[] size) throws IOException {
+        CacheTreeNode node = new CacheTreeNode();
+        if (in.readBoolean()) {
+            TableCacheNode table = TableCacheNode.read(in);
+            node.setTable(table);
+            size[0] += table.estimateSize();
+        }
+        int indexCount = in.readInt();
+        for (int i = 0; i < indexCount; i++) {
+            int index = in.readInt();
+            Object child = readChild(in, size);
+            node.addChild(index, child);
+            if (child instanceof Value) {
+                size[0] += CacheSizeEstimator.estimateIndexedLeaf(((Value) child).getValue());
+            } else {
+                size[0] += CacheSizeEstimator.estimateIndexedNode();
+            }
+        }
+        int nameCount = in.readInt();
+        for (int i = 0; i < nameCount; i++) {
+            String key = readString(in);
+            Object child = readChild(in, size);
+            node.addChild(key, child);
+            if (child instanceof Value) {
+                size[0] += CacheSizeEstimator.estimateLeaf(key, ((Value) child).getValue());
+            } else {
+                size[0] += CacheSizeEstimator.estimateNode(key);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Read a child of a node.
+     * 
+     * @param in input stream
+     * @param size estimated size of read nodes, will be increased
+     * @return leaf or node
+     * @throws IOException if reading fails
+     */
+    private Object readChild(DataInputStream in, long[] size) throws IOException {
+        if (in.readByte() == LEAF) {
+            Value value = new Value();
+            value.setValue(readObject(in));
+            // type strings are shared between values
+            String type = readString(in);
+            value.setType((type == null) ? null : type.intern());
+            return value;
+        }
+        return readNode(in, size);
+    }
+}
@@ -0,0 +1,243 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.beans.ConstructorProperties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the {@link ResourceCache} for all resources and for each single
+ * resource. Counters of a resource are kept after it was removed from the
+ * cache, so they cover the whole lifetime of the server.
+ * 
+ * @author Christoph Schrder
+ */
+public class CacheStatistics {
+
+    private final ConcurrentHashMap<String, Counters> resources = new ConcurrentHashMap<String, Counters>();
+    private final Counters                            total     = new Counters();
+
+    /**
+     * Record a request which was answered from the cache.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void recordHit(String resID) {
+        total.hits.incrementAndGet();
+        getCounters(resID).hits.incrementAndGet();
+    }
+
+    /**
+     * Record a request which had to load the resource since it was not valid
+     * in cache.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void recordMiss(String resID) {
+        total.misses.incrementAndGet();
+        getCounters(resID).misses.incrementAndGet();
+    }
+
+    /**
+     * Record a resource which was added to the cache.
+     * 
+     * @param resID unique ID of resource
+     * @param fillTime time in nanoseconds needed to load the resource
+     */
+    public void recordFill(String resID, long fillTime) {
+        total.fills.incrementAndGet();
+        total.fillTime.addAndGet(fillTime);
+        Counters counters = getCounters(resID);
+        counters.fills.incrementAndGet();
+        counters.fillTime.addAndGet(fillTime);
+    }
+
+    /**
+     * Record a resource which was removed from the cache since it has changed.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void recordInvalidation(String resID) {
+        total.invalidations.incrementAndGet();
+        getCounters(resID).invalidations.incrementAndGet();
+    }
+
+    /**
+     * Record a resource which was removed from the cache to free memory or by
+     * the administrator.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void recordEviction(String resID) {
+        total.evictions.incrementAndGet();
+        getCounters(resID).evictions.incrementAndGet();
+    }
+
+    /**
+     * Returns IDs of all resources with recorded counters.
+     * 
+     * @return sorted resource IDs
+     */
+    public Set<String> getResourceIDs() {
+        return new TreeSet<String>(resources.keySet());
+    }
+
+    /**
+     * Returns current counters of all resources.
+     * 
+     * @param estimatedSize estimated size of whole cache in bytes
+     * @return summary of counters
+     */
+    public Summary getSummary(long estimatedSize) {
+        return total.summarize(estimatedSize);
+    }
+
+    /**
+     * Returns current counters of a resource.
+     * 
+     * @param resID unique ID of resource
+     * @param estimatedSize estimated size of resource in cache in bytes
+     * @return summary of counters, all counters are 0 for unknown resources
+     */
+    public Summary getSummary(String resID, long estimatedSize) {
+        Counters counters = resources.get(resID);
+        return ((counters == null) ? new Counters() : counters).summarize(estimatedSize);
+    }
+
+    private Counters getCounters(String resID) {
+        Counters counters = resources.get(resID);
+        if (counters == null) {
+            Counters newCounters = new Counters();
+            counters = resources.putIfAbsent(resID, newCounters);
+            if (counters == null) {
+                counters = newCounters;
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Counters of a resource or of the whole cache.
+     */
+    private static class Counters {
+        private final AtomicLong hits          = new AtomicLong();
+        private final AtomicLong misses        = new AtomicLong();
+        private final AtomicLong fills         = new AtomicLong();
+        // time in nanoseconds
+        private final AtomicLong fillTime      = new AtomicLong();
+        private final AtomicLong invalidations = new AtomicLong();
+        private final AtomicLong evictions     = new AtomicLong();
+
+        private Summary summarize(long estimatedSize) {
+            return new Summary(hits.get(), misses.get(), fills.get(),
+                    TimeUnit.NANOSECONDS.toMillis(fillTime.get()), invalidations.get(),
+                    evictions.get(), estimatedSize);
+        }
+    }
+
+    /**
+     * Immutable copy of the counters of a resource or of the whole cache.
+     * Serialized as JSON by the administration resource and as composite data
+     * by the {@link CacheManagementMXBean}.
+     */
+    public static class Summary {
+        private final long hits;
+        private final long misses;
+        private final long fills;
+        private final long fillTime;
+        private final long invalidations;
+        private final long evictions;
+        private final long estimatedSize;
+
+        /**
+         * @param hits number of requests answered from cache
+         * @param misses number of requests which had to load the resource
+         * @param fills number of loads which added the resource to the cache
+         * @param fillTime total time of loads in milliseconds
+         * @param invalidations number of removals of changed resources
+         * @param evictions number of removals to free memory
+         * @param estimatedSize estimated size in cache in bytes
+         */
+        @ConstructorProperties({ "hits", "misses", "fills", "fillTime", "invalidations",
+                "evictions", "estimatedSize" })
+        public Summary(long hits, long misses, long fills, long fillTime, long invalidations,
+                long evictions, long estimatedSize) {
+            this.hits = hits;
+            this.misses = misses;
+            this.fills = fills;
+            this.fillTime = fillTime;
+            this.invalidations = invalidations;
+            this.evictions = evictions;
+            this.estimatedSize = estimatedSize;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getFills() {
+            return fills;
+        }
+
+        /**
+         * Returns total time of all loads which added the resource to the
+         * cache.
+         * 
+         * @return time in milliseconds
+         */
+        public long getFillTime() {
+            return fillTime;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getEstimatedSize() {
+            return estimatedSize;
+        }
+
+        /**
+         * Returns share of requests answered from cache.
+         * 
+         * @return hit rate between 0 and 1, 0 if there were no requests
+         */
+        public double getHitRate() {
+            long requests = hits + misses;
+            return (requests == 0) ? 0 : (double) hits / requests;
+        }
+    }
+}
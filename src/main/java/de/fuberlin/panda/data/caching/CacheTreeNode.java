@@ -22,20 +22,95 @@ package de.fuberlin.panda.data.caching;
  * #L%
  */
 
-
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import de.fuberlin.panda.api.data.ValueExchange.Value;
 
 /**
- * This class defines nodes in value cache tree.
+ * This class defines nodes in value cache tree. Children with a numeric key
+ * (row, column and element indices) are stored in sorted int arrays and can be
+ * looked up by binary search, ranges of them are resolved by positions in the
+ * arrays. All other children are stored in a map of String keys.
  * 
  * @author Christoph Schrder
  */
 public class CacheTreeNode {
-    private TreeMap<String, Object> children = new TreeMap<String, Object>(
-                                                     new PathSegmentComparator());
+    private static final int                INITIAL_CAPACITY = 4;
+    // longest numeric key which always fits into an int
+    private static final int                MAX_INDEX_LENGTH = 9;
+    private static final Comparator<String> COMPARATOR       = new PathSegmentComparator();
+
+    // children with numeric keys, sorted by index
+    private int[]                           indices          = new int[0];
+    private Object[]                        indexedChildren  = new Object[0];
+    private int                             indexCount       = 0;
+    // children with other keys, created on first use
+    private TreeMap<String, Object>         children;
+    // cells of tabular resources replacing row and column levels of tree
+    private TableCacheNode                  table;
+
+    public CacheTreeNode() {
+    }
+
+    /**
+     * Creates a shallow copy of a node. Children are shared with the original
+     * node, a table is copied on write.
+     * 
+     * @param node node to copy
+     */
+    public CacheTreeNode(CacheTreeNode node) {
+        this.indices = Arrays.copyOf(node.indices, node.indexCount);
+        this.indexedChildren = Arrays.copyOf(node.indexedChildren, node.indexCount);
+        this.indexCount = node.indexCount;
+        if (node.children != null) {
+            this.children = new TreeMap<String, Object>(node.children);
+        }
+        if (node.table != null) {
+            this.table = new TableCacheNode(node.table);
+        }
+    }
+
+    /**
+     * Returns index of a numeric key. Only keys without leading zeros are
+     * numeric, so converting the index back to a String gives the same key.
+     * 
+     * @param key key of child
+     * @return index or -1 if key is not numeric
+     */
+    public static int toIndex(String key) {
+        int length = key.length();
+        if (length == 0 || length > MAX_INDEX_LENGTH || (key.charAt(0) == '0' && length > 1)) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    /**
+     * Returns table holding row and column levels below this node.
+     * 
+     * @return table or null if node has no table
+     */
+    public TableCacheNode getTable() {
+        return table;
+    }
+
+    public void setTable(TableCacheNode table) {
+        this.table = table;
+    }
 
     /**
      * Add a child to this node.
@@ -44,14 +119,46 @@ public class CacheTreeNode {
      * @param child child node.
      */
     public void addChild(String key, Object child) {
-        if (child instanceof Value || child instanceof CacheTreeNode) {
-            this.children.put(key, child);
+        int index = toIndex(key);
+        if (index >= 0) {
+            addChild(index, child);
         } else {
-            throw new IllegalArgumentException(
-                    "CacheTreeNode shall not hold objects other than CacheTreeNode or Value objects ");
+            checkChild(child);
+            if (children == null) {
+                children = new TreeMap<String, Object>(COMPARATOR);
+            }
+            this.children.put(key, child);
         }
     }
 
+    /**
+     * Add a child with a numeric key to this node.
+     * 
+     * @param index numeric key of child
+     * @param child child node.
+     */
+    public void addChild(int index, Object child) {
+        checkChild(child);
+        int pos = Arrays.binarySearch(indices, 0, indexCount, index);
+        if (pos >= 0) {
+            indexedChildren[pos] = child;
+            return;
+        }
+
+        // children are mostly added in order of their index
+        pos = -(pos + 1);
+        if (indexCount == indices.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, indexCount * 2);
+            indices = Arrays.copyOf(indices, capacity);
+            indexedChildren = Arrays.copyOf(indexedChildren, capacity);
+        }
+        System.arraycopy(indices, pos, indices, pos + 1, indexCount - pos);
+        System.arraycopy(indexedChildren, pos, indexedChildren, pos + 1, indexCount - pos);
+        indices[pos] = index;
+        indexedChildren[pos] = child;
+        indexCount++;
+    }
+
     /**
      * Returns a child with a given key.
      * 
@@ -59,7 +166,22 @@ public class CacheTreeNode {
      * @return child of this node with given key
      */
     public Object getChild(String key) {
-        return children.get(key);
+        int index = toIndex(key);
+        if (index >= 0) {
+            return getChild(index);
+        }
+        return (children == null) ? null : children.get(key);
+    }
+
+    /**
+     * Returns a child with a given numeric key.
+     * 
+     * @param index numeric key of child
+     * @return child of this node with given key or null
+     */
+    public Object getChild(int index) {
+        int pos = Arrays.binarySearch(indices, 0, indexCount, index);
+        return (pos < 0) ? null : indexedChildren[pos];
     }
 
     /**
@@ -68,7 +190,20 @@ public class CacheTreeNode {
      * @param key key of child.
      */
     public void removeChild(String key) {
-        children.remove(key);
+        int index = toIndex(key);
+        if (index < 0) {
+            if (children != null) {
+                children.remove(key);
+            }
+            return;
+        }
+        int pos = Arrays.binarySearch(indices, 0, indexCount, index);
+        if (pos >= 0) {
+            indexCount--;
+            System.arraycopy(indices, pos + 1, indices, pos, indexCount - pos);
+            System.arraycopy(indexedChildren, pos + 1, indexedChildren, pos, indexCount - pos);
+            indexedChildren[indexCount] = null;
+        }
     }
 
     /**
@@ -78,47 +213,155 @@ public class CacheTreeNode {
      * @return true if node contains child with given key
      */
     public boolean containsKey(String key) {
-        return this.children.containsKey(key);
+        return getChild(key) != null;
     }
 
     /**
-     * Return keySet of node.
+     * Return keys of all children, numeric keys in order of their index first.
      * 
      * @return the KeySet of this node
      */
     public Set<String> getKeySet() {
+        Set<String> keySet = new LinkedHashSet<String>();
+        for (int pos = 0; pos < indexCount; pos++) {
+            keySet.add(String.valueOf(indices[pos]));
+        }
+        keySet.addAll(getNameSet());
+        return keySet;
+    }
+
+    /**
+     * Return keys of all children with non numeric keys.
+     * 
+     * @return keys in order of {@link PathSegmentComparator}
+     */
+    public Set<String> getNameSet() {
+        if (children == null) {
+            return Collections.emptySet();
+        }
         return children.keySet();
     }
 
     /**
-     * Returns a keys of a certain range given by a start key and end key.
+     * Returns a keys of a certain range given by a start key and end key in
+     * order of {@link PathSegmentComparator}. Ranges between two numeric keys
+     * should be resolved by {@link #getStartPosition(int)} and
+     * {@link #getEndPosition(int)}. If one of the keys is not numeric, e.g.
+     * "05:10", numeric keys inside the range are returned as well.
      * 
      * @param startKey key of first child
      * @param endKey key of last child
      * @return subset of keys
      */
     public Set<String> getKeySubset(String startKey, String endKey) {
-        Set<String> keySubset = children.tailMap(startKey, true).headMap(endKey, true).keySet();
+        if (COMPARATOR.compare(startKey, endKey) > 0) {
+            return Collections.emptySet();
+        }
+        Set<String> names = Collections.emptySet();
+        if (children != null) {
+            names = children.subMap(startKey, true, endKey, true).keySet();
+        }
+        // canonical numeric keys are ordered by their index, so the indices
+        // inside the range are found by binary search
+        int startPos = getComparatorPosition(startKey, false);
+        int endPos = getComparatorPosition(endKey, true);
+        if (startPos >= endPos) {
+            return names;
+        }
+        Set<String> keys = new TreeSet<String>(COMPARATOR);
+        for (int pos = startPos; pos < endPos; pos++) {
+            keys.add(String.valueOf(indices[pos]));
+        }
+        keys.addAll(names);
+        return keys;
+    }
+
+    /**
+     * Returns number of children with numeric keys.
+     * 
+     * @return number of indexed children
+     */
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * Returns numeric key of the child at a position.
+     * 
+     * @param position position between 0 and {@link #getIndexCount()}
+     * @return index of child
+     */
+    public int getIndex(int position) {
+        return indices[position];
+    }
 
-        return keySubset;
+    /**
+     * Returns child with numeric key at a position.
+     * 
+     * @param position position between 0 and {@link #getIndexCount()}
+     * @return child node or value
+     */
+    public Object getIndexedChild(int position) {
+        return indexedChildren[position];
     }
 
     /**
-     * Get first key of children.
+     * Returns position of first child with a numeric key greater or equal to
+     * the given index.
      * 
-     * @return first key
+     * @param index first index of a range
+     * @return position, {@link #getIndexCount()} if there is no such child
      */
-    public String getFirstKey() {
-        return children.firstKey();
+    public int getStartPosition(int index) {
+        int pos = Arrays.binarySearch(indices, 0, indexCount, index);
+        return (pos >= 0) ? pos : -(pos + 1);
     }
 
     /**
-     * Get last key of children.
+     * Returns position after the last child with a numeric key lower or equal
+     * to the given index.
      * 
-     * @return last key
+     * @param index last index of a range
+     * @return exclusive end position
      */
-    public String getLastKey() {
-        return children.lastKey();
+    public int getEndPosition(int index) {
+        int pos = Arrays.binarySearch(indices, 0, indexCount, index);
+        return (pos >= 0) ? pos + 1 : -(pos + 1);
+    }
+
+    /**
+     * Returns position of the first child with a numeric key greater than the
+     * given key according to {@link PathSegmentComparator}.
+     * 
+     * @param key any key
+     * @param inclusive true if a numeric key equal to key is skipped as well
+     * @return position, {@link #getIndexCount()} if there is no such child
+     */
+    private int getComparatorPosition(String key, boolean inclusive) {
+        int low = 0;
+        int high = indexCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = COMPARATOR.compare(String.valueOf(indices[mid]), key);
+            if (cmp < 0 || (inclusive && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Only leaves and nodes may be children of a node.
+     * 
+     * @param child child to check
+     */
+    private void checkChild(Object child) {
+        if (!(child instanceof Value || child instanceof CacheTreeNode)) {
+            throw new IllegalArgumentException(
+                    "CacheTreeNode shall not hold objects other than CacheTreeNode or Value objects ");
+        }
     }
 
 }
@@ -0,0 +1,351 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.EntityTag;
+
+import de.fuberlin.panda.data.caching.ResourceWatcher.ResourceVersion;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
+import de.fuberlin.panda.data.resources.DataCsvResource;
+import de.fuberlin.panda.data.resources.DataExcelResource;
+import de.fuberlin.panda.data.resources.DataExcelVtdResource;
+import de.fuberlin.panda.data.resources.DataHtmlResource;
+import de.fuberlin.panda.data.resources.DataPdfResource;
+import de.fuberlin.panda.data.resources.DataWordResource;
+import de.fuberlin.panda.data.resources.DataWordVtdResource;
+import de.fuberlin.panda.data.resources.DataXmlResource;
+import de.fuberlin.panda.enums.DataResourceType;
+
+/**
+ * Fills the cache with resources of the resource map before requests arrive.
+ * Resources are loaded in the configured warm-up order by a bounded number of
+ * threads. The order is a comma separated list of resource IDs, "*" stands for
+ * all resources which are not listed, e.g. "sales, report, *". Resources of
+ * URLs are skipped, since they can't be validated, as well as CSV files that
+ * are cached partially. Progress of the warm-up can be polled, if warm-up is
+ * enabled the cache is ready when the warm-up has finished.
+ * 
+ * @author Christoph Schrder
+ */
+public class CacheWarmUp {
+
+    private final Logger        logger        = Logger.getLogger(CacheWarmUp.class.getName());
+
+    private final PandaSettings pandaSettings;
+
+    private volatile boolean    running       = false;
+    private volatile long       startTime     = -1;
+    private volatile long       endTime       = -1;
+    private volatile int        totalCount    = 0;
+    // threads of the running or last warm-up
+    private ExecutorService     executor;
+
+    private final AtomicInteger doneCount     = new AtomicInteger();
+    private final AtomicInteger warmedCount   = new AtomicInteger();
+    private final AtomicInteger skippedCount  = new AtomicInteger();
+    private final AtomicInteger failedCount   = new AtomicInteger();
+
+    public CacheWarmUp(PandaSettings pandaSettings) {
+        this.pandaSettings = pandaSettings;
+    }
+
+    /**
+     * Start warm-up of all resources selected by the warm-up order. Server
+     * caching has to be enabled.
+     * 
+     * @return true if warm-up was started, false if it is already running or
+     *         server caching is disabled
+     */
+    public synchronized boolean start() {
+        if (running || !pandaSettings.getServerCacheUsage()) {
+            return false;
+        }
+
+        List<String> resIDs = getOrderedResources();
+        doneCount.set(0);
+        warmedCount.set(0);
+        skippedCount.set(0);
+        failedCount.set(0);
+        totalCount = resIDs.size();
+        startTime = System.currentTimeMillis();
+        endTime = -1;
+        running = !resIDs.isEmpty();
+        if (!running) {
+            endTime = startTime;
+            return true;
+        }
+
+        // queue is processed in order, so resources are loaded by priority
+        executor = Executors.newFixedThreadPool(
+                Math.max(1, pandaSettings.getWarmUpThreads()), new ThreadFactory() {
+                    private final AtomicInteger threadCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "panda-warm-up-"
+                                + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        for (final String resID : resIDs) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    warmResource(resID);
+                }
+            });
+        }
+        // threads terminate after the last resource
+        executor.shutdown();
+        return true;
+    }
+
+    /**
+     * Stop a running warm-up. Resources which are loaded are interrupted,
+     * queued resources are not loaded anymore.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (running) {
+            endTime = System.currentTimeMillis();
+            running = false;
+        }
+    }
+
+    /**
+     * Returns resource IDs selected by the warm-up order in the order they are
+     * loaded. Unknown resource IDs are ignored, resources which are not listed
+     * explicitly are sorted by their ID.
+     * 
+     * @return list of resource IDs
+     */
+    public List<String> getOrderedResources() {
+        Map<String, ResourceInfo> resMap = pandaSettings.getResourceMap().getMap();
+        List<String> resIDs = new ArrayList<String>();
+        // position of remaining resources in list
+        int wildcardPos = -1;
+        String order = pandaSettings.getWarmUpOrder();
+        for (String resID : (order == null) ? new String[0] : order.split(",")) {
+            resID = resID.trim();
+            if (resID.equals("*")) {
+                if (wildcardPos < 0) {
+                    wildcardPos = resIDs.size();
+                }
+            } else if (resMap.containsKey(resID) && !resIDs.contains(resID)) {
+                resIDs.add(resID);
+            }
+        }
+        if (wildcardPos >= 0) {
+            Set<String> remaining = new TreeSet<String>(resMap.keySet());
+            remaining.removeAll(resIDs);
+            resIDs.addAll(wildcardPos, remaining);
+        }
+        return resIDs;
+    }
+
+    /**
+     * Returns true if warm-up is disabled or has finished. An enabled warm-up
+     * which was not started yet is not ready.
+     * 
+     * @return true if cache is ready for requests
+     */
+    public boolean isReady() {
+        return !pandaSettings.getWarmUpUsage() || (startTime >= 0 && !running);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns number of resources selected for the running or last warm-up.
+     * 
+     * @return number of resources
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns number of resources which were processed, including skipped and
+     * failed resources.
+     * 
+     * @return number of resources
+     */
+    public int getDoneCount() {
+        return doneCount.get();
+    }
+
+    public int getWarmedCount() {
+        return warmedCount.get();
+    }
+
+    public int getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    public int getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Returns duration of the running or last warm-up.
+     * 
+     * @return time in milliseconds, -1 if warm-up was never started
+     */
+    public long getElapsedTime() {
+        if (startTime < 0) {
+            return -1;
+        }
+        return ((endTime < 0) ? System.currentTimeMillis() : endTime) - startTime;
+    }
+
+    /**
+     * Load a single resource into the cache in the calling thread, e.g. on
+     * request of the administrator. Server caching has to be enabled.
+     * 
+     * @param resID unique ID of resource
+     * @return true if resource is valid in cache, false if it was skipped or
+     *         loading failed
+     */
+    public boolean warmUp(String resID) {
+        if (!pandaSettings.getServerCacheUsage()) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(preload(resID));
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Warm-up of resource " + resID + " failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Load a single resource into the cache and update progress.
+     * 
+     * @param resID unique ID of resource
+     */
+    private void warmResource(String resID) {
+        try {
+            Boolean warmed = preload(resID);
+            if (warmed == null) {
+                skippedCount.incrementAndGet();
+            } else if (warmed) {
+                warmedCount.incrementAndGet();
+            } else {
+                failedCount.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            failedCount.incrementAndGet();
+            logger.log(Level.WARNING, "Warm-up of resource " + resID + " failed", e);
+        } finally {
+            if (doneCount.incrementAndGet() == totalCount) {
+                endTime = System.currentTimeMillis();
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * Load a single resource into the cache. Resources of URLs and CSV files
+     * that are cached partially are skipped.
+     * 
+     * @param resID unique ID of resource
+     * @return true if resource is valid in cache, false if loading failed,
+     *         null if resource was skipped
+     */
+    private Boolean preload(String resID) {
+        ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
+        ResourceVersion version = pandaSettings.getResourceWatcher().getVersion(resID);
+        if (resInfo == null || version == null || !version.exists()) {
+            return null;
+        }
+        // huge CSV files are only cached in blocks of requested rows
+        if (resInfo.getType() == DataResourceType.CSV
+                && DataCsvResource.usesPartialCache(pandaSettings,
+                        new File(resInfo.getFilePath()))) {
+            return null;
+        }
+        EntityTag eTag = version.getETag();
+        Callable<?> fillJob = createCacheFill(resID, resInfo.getType(), eTag);
+        return pandaSettings.getResourceCache().preloadResource(resID, eTag, fillJob);
+    }
+
+    /**
+     * Creates fill job of the reader that is used for requests to a resource.
+     * 
+     * @param resID unique ID of resource
+     * @param type type of resource
+     * @param eTag EntityTag of resource
+     * @return the fill job
+     */
+    private Callable<?> createCacheFill(String resID, DataResourceType type, EntityTag eTag) {
+        boolean useVtdXml = pandaSettings.getVtdUsage();
+        switch (type) {
+        case CSV:
+            return DataCsvResource.createCacheFill(pandaSettings, resID, eTag);
+        case XLSX:
+            if (useVtdXml) {
+                return DataExcelVtdResource.createCacheFill(pandaSettings, resID, eTag);
+            }
+            return DataExcelResource.createCacheFill(pandaSettings, resID, eTag);
+        case XLS:
+            return DataExcelResource.createCacheFill(pandaSettings, resID, eTag);
+        case DOCX:
+            if (useVtdXml) {
+                return DataWordVtdResource.createCacheFill(pandaSettings, resID, eTag);
+            }
+            return DataWordResource.createCacheFill(pandaSettings, resID, eTag);
+        case DOC:
+            return DataWordResource.createCacheFill(pandaSettings, resID, eTag);
+        case PDF:
+            return DataPdfResource.createCacheFill(pandaSettings, resID, eTag);
+        case XML:
+            return DataXmlResource.createCacheFill(pandaSettings, resID, eTag);
+        case HTML:
+            return DataHtmlResource.createCacheFill(pandaSettings, resID, eTag);
+        default:
+            throw new IllegalArgumentException("Unknown resource type " + type);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+
+import de.fuberlin.panda.data.resources.ResourceHelper;
+
+/**
+ * Types of the columns of a version of a table resource like a CSV file. The
+ * schema is inferred once from all cells of the file, so the type of a cell
+ * can be looked up instead of being found by parsing the cell. Columns with
+ * numeric and other values are marked as mixed, their cells still have to be
+ * checked one by one.
+ * 
+ * @author Christoph Schrder
+ */
+public class ColumnSchema {
+
+    public static final String    TYPE_DOUBLE  = "xs:double";
+    public static final String    TYPE_STRING  = "xs:string";
+
+    // date formats recognized in columns without numbers, tried in this order
+    private static final String[] DATE_FORMATS = { "yyyy-MM-dd", "yyyy-MM-dd HH:mm:ss",
+            "dd.MM.yyyy", "MM/dd/yyyy", "dd/MM/yyyy" };
+
+    private final EntityTag       eTag;
+    private final Column[]        columns;
+
+    private ColumnSchema(EntityTag eTag, Column[] columns) {
+        this.eTag = eTag;
+        this.columns = columns;
+    }
+
+    /**
+     * Returns the EntityTag of the version of the resource the schema was
+     * inferred from.
+     * 
+     * @return the EntityTag
+     */
+    public EntityTag getETag() {
+        return eTag;
+    }
+
+    /**
+     * Returns number of columns, i.e. the number of fields of the longest
+     * record.
+     * 
+     * @return number of columns
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Returns schema of a column.
+     * 
+     * @param col index of column, 0 based
+     * @return the column or null if the resource has no such column
+     */
+    public Column getColumn(int col) {
+        return (col < columns.length) ? columns[col] : null;
+    }
+
+    /**
+     * Returns the type shared by all non empty cells of a column.
+     * 
+     * @param col index of column, 0 based
+     * @return {@link #TYPE_DOUBLE} or {@link #TYPE_STRING}, null if the column
+     *         is mixed, empty or unknown
+     */
+    public String getType(int col) {
+        Column column = getColumn(col);
+        return (column == null || column.mixed) ? null : column.type;
+    }
+
+    /**
+     * Schema of a single column.
+     */
+    public static class Column {
+        private final String  type;
+        private final boolean nullable;
+        private final boolean mixed;
+        private final String  dateFormat;
+
+        private Column(String type, boolean nullable, boolean mixed, String dateFormat) {
+            this.type = type;
+            this.nullable = nullable;
+            this.mixed = mixed;
+            this.dateFormat = dateFormat;
+        }
+
+        /**
+         * Returns type of the cells of the column, the type of most cells if
+         * the column is mixed.
+         * 
+         * @return {@link #TYPE_DOUBLE} or {@link #TYPE_STRING}, null if all
+         *         cells are empty
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Checks if some records have an empty or no cell in the column.
+         * 
+         * @return true if the column has empty cells
+         */
+        public boolean isNullable() {
+            return nullable;
+        }
+
+        /**
+         * Checks if the column contains numeric and other cells.
+         * 
+         * @return true if the type of the cells differs
+         */
+        public boolean isMixed() {
+            return mixed;
+        }
+
+        /**
+         * Returns the format of dates if all non empty cells of a column are
+         * dates of the same format, like "yyyy-MM-dd". Such cells keep the
+         * type {@link #TYPE_STRING}.
+         * 
+         * @return pattern of SimpleDateFormat or null if the column doesn't
+         *         contain dates
+         */
+        public String getDateFormat() {
+            return dateFormat;
+        }
+    }
+
+    /**
+     * Collects cells of all records of a resource to infer its schema.
+     */
+    public static class Builder {
+        private final EntityTag          eTag;
+        private final List<ColumnCounts> counts  = new ArrayList<ColumnCounts>();
+        private long                     records = 0;
+
+        /**
+         * @param eTag EntityTag of the version of the resource
+         */
+        public Builder(EntityTag eTag) {
+            this.eTag = eTag;
+        }
+
+        /**
+         * Add next record, its cells have to be added by
+         * {@link #addCell(int, String)}.
+         */
+        public void addRecord() {
+            records++;
+        }
+
+        /**
+         * Add cell of the current record.
+         * 
+         * @param col index of column, 0 based
+         * @param value content of cell
+         */
+        public void addCell(int col, String value) {
+            while (counts.size() <= col) {
+                counts.add(new ColumnCounts());
+            }
+            if (value.isEmpty()) {
+                return;
+            }
+            ColumnCounts column = counts.get(col);
+            column.values++;
+            if (ResourceHelper.isNumeric(value)) {
+                column.numbers++;
+            } else if (column.dateFormats != 0) {
+                for (int i = 0; i < DATE_FORMATS.length; i++) {
+                    if ((column.dateFormats & (1 << i)) != 0
+                            && !isDate(value, DATE_FORMATS[i])) {
+                        column.dateFormats &= ~(1 << i);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Creates the schema of all added records.
+         * 
+         * @return the schema
+         */
+        public ColumnSchema build() {
+            Column[] columns = new Column[counts.size()];
+            for (int col = 0; col < columns.length; col++) {
+                ColumnCounts column = counts.get(col);
+                String type = null;
+                if (column.values > 0) {
+                    type = (column.numbers * 2 > column.values) ? TYPE_DOUBLE : TYPE_STRING;
+                }
+                String dateFormat = null;
+                if (column.values > 0 && column.numbers == 0) {
+                    for (int i = 0; i < DATE_FORMATS.length && dateFormat == null; i++) {
+                        if ((column.dateFormats & (1 << i)) != 0) {
+                            dateFormat = DATE_FORMATS[i];
+                        }
+                    }
+                }
+                columns[col] = new Column(type, column.values < records, column.numbers > 0
+                        && column.numbers < column.values, dateFormat);
+            }
+            return new ColumnSchema(eTag, columns);
+        }
+
+        /**
+         * Checks if a String is a valid date of a format. Letters of the
+         * format stand for digits, all other characters have to match.
+         * 
+         * @param value the String
+         * @param format pattern of SimpleDateFormat with fixed width fields
+         * @return true if the String is a date of the format
+         */
+        private static boolean isDate(String value, String format) {
+            if (value.length() != format.length()) {
+                return false;
+            }
+            int i = 0;
+            while (i < format.length()) {
+                char field = format.charAt(i);
+                if (!Character.isLetter(field)) {
+                    if (value.charAt(i) != field) {
+                        return false;
+                    }
+                    i++;
+                    continue;
+                }
+                int number = 0;
+                for (; i < format.length() && format.charAt(i) == field; i++) {
+                    char c = value.charAt(i);
+                    if (c < '0' || c > '9') {
+                        return false;
+                    }
+                    number = number * 10 + (c - '0');
+                }
+                if ((field == 'M' && (number < 1 || number > 12))
+                        || (field == 'd' && (number < 1 || number > 31))
+                        || (field == 'H' && number > 23)
+                        || ((field == 'm' || field == 's') && number > 59)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Counters of the non empty cells of a column.
+         */
+        private static class ColumnCounts {
+            private long values      = 0;
+            private long numbers     = 0;
+            // bit i is set while all cells match DATE_FORMATS[i]
+            private int  dateFormats = (1 << DATE_FORMATS.length) - 1;
+        }
+    }
+}
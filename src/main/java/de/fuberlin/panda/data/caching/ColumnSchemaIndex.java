@@ -0,0 +1,120 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * Column schemas of table resources like CSV files. The schema of a resource
+ * is inferred once per EntityTag in the background, requests don't wait for
+ * it and type their cells by parsing until the schema is available. A failed
+ * inference is not repeated for the same EntityTag.
+ * 
+ * @author Christoph Schrder
+ */
+public class ColumnSchemaIndex {
+
+    private final Logger logger = Logger.getLogger(ColumnSchemaIndex.class.getName());
+
+    private final ConcurrentHashMap<String, ColumnSchema> schemas    = new ConcurrentHashMap<String, ColumnSchema>();
+    // versions of running inferences per resource ID
+    private final ConcurrentHashMap<String, EntityTag>    inferences = new ConcurrentHashMap<String, EntityTag>();
+    // versions of failed inferences per resource ID
+    private final ConcurrentHashMap<String, EntityTag>    failures   = new ConcurrentHashMap<String, EntityTag>();
+
+    /**
+     * Get schema of a version of a resource.
+     * 
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of current version of resource
+     * @return the schema or null if it is missing or was inferred for another
+     *         version of the resource
+     */
+    public ColumnSchema getSchema(String resID, EntityTag eTag) {
+        ColumnSchema schema = schemas.get(resID);
+        return (schema != null && schema.getETag().equals(eTag)) ? schema : null;
+    }
+
+    /**
+     * Start inference of the schema of a version of a resource unless the
+     * schema is available, already inferred by another request or the
+     * inference failed for this version.
+     * 
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of current version of resource
+     * @param inference job that reads all cells of the resource, returns null
+     *            if the resource changed during the job
+     * @param executor executor of the job
+     */
+    public void inferSchema(final String resID, final EntityTag eTag,
+            final Callable<ColumnSchema> inference, Executor executor) {
+        if (getSchema(resID, eTag) != null || eTag.equals(failures.get(resID))
+                || inferences.putIfAbsent(resID, eTag) != null) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ColumnSchema schema = inference.call();
+                    if (schema != null) {
+                        schemas.put(resID, schema);
+                    }
+                    failures.remove(resID);
+                } catch (Exception e) {
+                    failures.put(resID, eTag);
+                    logger.log(Level.WARNING, "Schema inference of resource " + resID
+                            + " failed", e);
+                } finally {
+                    inferences.remove(resID, eTag);
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove schema and failed inference of a resource.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void removeResource(String resID) {
+        schemas.remove(resID);
+        failures.remove(resID);
+    }
+
+    /**
+     * Returns number of resources with a schema.
+     * 
+     * @return number of schemas
+     */
+    public int size() {
+        return schemas.size();
+    }
+}
@@ -0,0 +1,162 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary document stored in compressed form. The document is split into blocks
+ * which are deflated independently, so no block needs a buffer of the size of
+ * the whole document while compressing. Deflater and Inflater are reused per
+ * thread since creating them allocates native memory.
+ * 
+ * @author Christoph Schrder
+ */
+public class CompressedDocument {
+
+    // size of uncompressed blocks
+    static final int                           BLOCK_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<Deflater> deflaters  = new DeflaterPool();
+    private static final ThreadLocal<Inflater> inflaters  = new InflaterPool();
+
+    private final int                          length;
+    private final byte[][]                     blocks;
+
+    /**
+     * @param length length of uncompressed document
+     * @param blocks deflated blocks of document
+     */
+    public CompressedDocument(int length, byte[][] blocks) {
+        this.length = length;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Compress a document.
+     * 
+     * @param doc uncompressed document
+     * @return compressed document
+     */
+    public static CompressedDocument compress(byte[] doc) {
+        Deflater deflater = deflaters.get();
+        byte[][] blocks = new byte[(doc.length + BLOCK_SIZE - 1) / BLOCK_SIZE][];
+        byte[] buffer = new byte[BLOCK_SIZE + BLOCK_SIZE / 16 + 64];
+        for (int i = 0; i < blocks.length; i++) {
+            int offset = i * BLOCK_SIZE;
+            deflater.reset();
+            deflater.setInput(doc, offset, Math.min(BLOCK_SIZE, doc.length - offset));
+            deflater.finish();
+            int size = 0;
+            while (!deflater.finished()) {
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                size += deflater.deflate(buffer, size, buffer.length - size);
+            }
+            blocks[i] = Arrays.copyOf(buffer, size);
+        }
+        return new CompressedDocument(doc.length, blocks);
+    }
+
+    /**
+     * Decompress document. Blocks are inflated directly into the returned
+     * array.
+     * 
+     * @return uncompressed document
+     * @throws IllegalStateException if compressed data is corrupt
+     */
+    public byte[] decompress() {
+        Inflater inflater = inflaters.get();
+        byte[] doc = new byte[length];
+        try {
+            for (int i = 0; i < blocks.length; i++) {
+                int offset = i * BLOCK_SIZE;
+                int blockLength = Math.min(BLOCK_SIZE, length - offset);
+                inflater.reset();
+                inflater.setInput(blocks[i]);
+                int size = 0;
+                while (size < blockLength) {
+                    int n = inflater.inflate(doc, offset + size, blockLength - size);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IllegalStateException("Truncated compressed block " + i);
+                    }
+                    size += n;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed document", e);
+        }
+        return doc;
+    }
+
+    /**
+     * Returns length of uncompressed document.
+     * 
+     * @return length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns deflated blocks of document.
+     * 
+     * @return compressed blocks
+     */
+    public byte[][] getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Returns size of compressed data.
+     * 
+     * @return size in bytes
+     */
+    public long getCompressedSize() {
+        long size = 0;
+        for (byte[] block : blocks) {
+            size += block.length;
+        }
+        return size;
+    }
+
+    private static class DeflaterPool extends ThreadLocal<Deflater> {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    }
+
+    private static class InflaterPool extends ThreadLocal<Inflater> {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * Short-lived cache of references that do not exist in a resource, like
+ * missing sheets, tables past the end or PDF pages beyond the last page.
+ * Requests to these references can be answered with 404 without opening the
+ * resource. Results are only valid for the version of the resource they were
+ * found in and expire after a fixed time. Results are kept per resource, so
+ * lookups don't lock and all results of a resource can be dropped at once.
+ * The number of results per resource is bounded, if a resource exceeds it,
+ * expired results are removed first and all of its results otherwise.
+ * 
+ * @author Christoph Schrder
+ */
+public class NegativeResultCache {
+
+    private static final int                                 MAX_ENTRIES = 1000;
+
+    // results by resource ID
+    private final ConcurrentHashMap<String, ResourceResults> results     = new ConcurrentHashMap<String, ResourceResults>();
+    private final AtomicLong                                 hitCount    = new AtomicLong();
+    private volatile long                                    timeToLive;
+
+    /**
+     * @param timeToLive time in milliseconds a result is valid, 0 disables
+     *            the cache
+     */
+    public NegativeResultCache(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns true if a reference is known to be missing in the given version
+     * of a resource.
+     * 
+     * @param resID unique ID of resource
+     * @param reference path of request below resource
+     * @param eTag EntityTag of current version of resource
+     * @return true if reference does not exist
+     */
+    public boolean contains(String resID, String reference, EntityTag eTag) {
+        ResourceResults resourceResults = results.get(resID);
+        if (resourceResults == null) {
+            return false;
+        }
+        NegativeResult result = resourceResults.get(reference);
+        if (result == null) {
+            return false;
+        }
+        if (!result.eTag.equals(eTag) || result.expires < System.currentTimeMillis()) {
+            resourceResults.remove(reference, result);
+            return false;
+        }
+        hitCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Remember that a reference does not exist in a version of a resource.
+     * 
+     * @param resID unique ID of resource
+     * @param reference path of request below resource
+     * @param eTag EntityTag of resource version
+     */
+    public void put(String resID, String reference, EntityTag eTag) {
+        long currentTimeToLive = timeToLive;
+        if (currentTimeToLive <= 0) {
+            return;
+        }
+        ResourceResults resourceResults = results.get(resID);
+        if (resourceResults == null) {
+            ResourceResults newResults = new ResourceResults();
+            resourceResults = results.putIfAbsent(resID, newResults);
+            if (resourceResults == null) {
+                resourceResults = newResults;
+            }
+        }
+        if (resourceResults.size() >= MAX_ENTRIES) {
+            removeExpired(resourceResults);
+            if (resourceResults.size() >= MAX_ENTRIES) {
+                resourceResults.clear();
+            }
+        }
+        resourceResults.put(reference, new NegativeResult(eTag, System.currentTimeMillis()
+                + currentTimeToLive));
+    }
+
+    /**
+     * Remove all results of a resource.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void removeResource(String resID) {
+        results.remove(resID);
+    }
+
+    /**
+     * Set time a result is valid. Results are removed if the cache is
+     * disabled.
+     * 
+     * @param timeToLive time in milliseconds, 0 disables the cache
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+        if (timeToLive <= 0) {
+            results.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (ResourceResults resourceResults : results.values()) {
+            size += resourceResults.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    private static void removeExpired(ResourceResults resourceResults) {
+        long currentTime = System.currentTimeMillis();
+        Iterator<NegativeResult> iter = resourceResults.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().expires < currentTime) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Results of a resource by reference.
+     */
+    private static class ResourceResults extends ConcurrentHashMap<String, NegativeResult> {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Missing reference of a resource version.
+     */
+    private static class NegativeResult {
+        private final EntityTag eTag;
+        private final long      expires;
+
+        public NegativeResult(EntityTag eTag, long expires) {
+            this.eTag = eTag;
+            this.expires = expires;
+        }
+    }
+}
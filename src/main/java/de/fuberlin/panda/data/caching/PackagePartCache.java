@@ -0,0 +1,83 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * Second cache tier below the value cache for OOXML resources (XLSX, DOCX).
+ * It keeps the decompressed XML parts of a package, like sheets, shared
+ * strings, styles or the Word document, so a resource evicted from the value
+ * cache can be parsed again without opening and inflating the package. Parts
+ * are stored per resource ID and part name and are only valid for the
+ * EntityTag they were read with. The cache has its own memory budget, least
+ * recently used parts are evicted first. Parts are not removed together with
+ * the values of a resource, only when the resource changes.
+ * 
+ * @author Christoph Schrder
+ */
+public class PackagePartCache extends BudgetedCache<byte[]> {
+
+    // share of memory budget a single part may use
+    private static final double MAX_PART_RATIO = 0.5;
+
+    /**
+     * @param memoryLimit memory budget in bytes
+     */
+    public PackagePartCache(long memoryLimit) {
+        super(memoryLimit, MAX_PART_RATIO);
+    }
+
+    /**
+     * Get decompressed part of a package.
+     * 
+     * @param resID unique ID of resource
+     * @param partName name of part, e.g. "/xl/workbook.xml"
+     * @param eTag EntityTag of current version of resource
+     * @return content of part or null if part is not cached for this version
+     */
+    public byte[] get(String resID, String partName, EntityTag eTag) {
+        return get(createKey(resID, partName), eTag);
+    }
+
+    /**
+     * Add decompressed part of a package, a part of an older version of the
+     * resource is replaced. Parts that exceed half of the memory budget are
+     * not cached.
+     * 
+     * @param resID unique ID of resource
+     * @param partName name of part
+     * @param eTag EntityTag of resource version the part was read from
+     * @param data content of part
+     */
+    public void put(String resID, String partName, EntityTag eTag, byte[] data) {
+        String key = createKey(resID, partName);
+        put(resID, key, eTag, data, CacheSizeEstimator.estimateString(key)
+                + CacheSizeEstimator.estimateDocument(data));
+    }
+
+    private static String createKey(String resID, String partName) {
+        return resID + "\n" + partName;
+    }
+}
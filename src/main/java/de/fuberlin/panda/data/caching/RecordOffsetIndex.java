@@ -0,0 +1,303 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * Sparse index of byte offsets of records in huge delimited text files like
+ * CSV files. The offset of every {@link #INTERVAL}th record is stored, so a
+ * reader can seek to the nearest indexed record in front of a requested row
+ * instead of parsing the file from the start. The index of a file is built
+ * once per EntityTag by a single scan over its bytes, concurrent requests
+ * share the scan. Quoted fields may contain line breaks, they are not counted
+ * as end of record. Files have to be encoded in an ASCII compatible encoding
+ * like UTF-8.
+ * 
+ * @author Christoph Schrder
+ */
+public class RecordOffsetIndex {
+
+    // number of records between indexed records
+    public static final int                                      INTERVAL      = 1024;
+    // smaller files are parsed from the start
+    public static final long                                     MIN_FILE_SIZE = 1024 * 1024;
+    private static final int                                     BUFFER_SIZE   = 64 * 1024;
+
+    // states of scanner
+    private static final int                                     FIELD_START   = 0;
+    private static final int                                     UNQUOTED      = 1;
+    private static final int                                     QUOTED        = 2;
+    private static final int                                     AFTER_QUOTE   = 3;
+
+    private final ConcurrentHashMap<String, Offsets>             indexes       = new ConcurrentHashMap<String, Offsets>();
+    // running scans per resource ID, concurrent requests share them
+    private final ConcurrentHashMap<String, FutureTask<Offsets>> scans         = new ConcurrentHashMap<String, FutureTask<Offsets>>();
+
+    /**
+     * Get index of a file, the index is built if it is missing or was built
+     * for another version of the file.
+     * 
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of current version of resource
+     * @param file the file
+     * @param syntax syntax of records in file
+     * @return offsets of records or null if only an index of another version
+     *         is available, e.g. the file changed during the scan
+     * @throws IOException if file can't be read
+     */
+    public Offsets getOffsets(final String resID, final EntityTag eTag, final File file,
+            final RecordSyntax syntax) throws IOException {
+        Offsets offsets = indexes.get(resID);
+        if (offsets != null && offsets.eTag.equals(eTag)) {
+            return offsets;
+        }
+
+        FutureTask<Offsets> scan = new FutureTask<Offsets>(new Callable<Offsets>() {
+            @Override
+            public Offsets call() throws IOException {
+                Offsets offsets = scan(file, eTag, syntax);
+                indexes.put(resID, offsets);
+                return offsets;
+            }
+        });
+        FutureTask<Offsets> runningScan = scans.putIfAbsent(resID, scan);
+        if (runningScan == null) {
+            runningScan = scan;
+            try {
+                scan.run();
+            } finally {
+                scans.remove(resID, scan);
+            }
+        }
+
+        try {
+            offsets = runningScan.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(503);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        return offsets.eTag.equals(eTag) ? offsets : null;
+    }
+
+    /**
+     * Remove index of a resource.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void removeResource(String resID) {
+        indexes.remove(resID);
+    }
+
+    /**
+     * Returns number of indexed files.
+     * 
+     * @return number of indexes
+     */
+    public int size() {
+        return indexes.size();
+    }
+
+    /**
+     * Scan a file for the start of records.
+     * 
+     * @param file the file
+     * @param eTag EntityTag of scanned version of file
+     * @param syntax syntax of records in file
+     * @return offsets of every {@link #INTERVAL}th record
+     * @throws IOException if file can't be read
+     */
+    static Offsets scan(File file, EntityTag eTag, RecordSyntax syntax) throws IOException {
+        // first record starts at begin of file
+        long[] offsets = new long[16];
+        int count = 1;
+        long record = 0;
+        long pos = 0;
+        int state = FIELD_START;
+        // true if current line contains characters
+        boolean content = false;
+        boolean afterCR = false;
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream in = new FileInputStream(file);
+        try {
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                for (int i = 0; i < length; i++, pos++) {
+                    int b = buffer[i];
+                    if (afterCR) {
+                        afterCR = false;
+                        if (b == '\n') {
+                            // record starts behind CRLF
+                            if (offsets[count - 1] == pos) {
+                                offsets[count - 1] = pos + 1;
+                            }
+                            continue;
+                        }
+                    }
+
+                    if (state == QUOTED) {
+                        if (b == syntax.quoteChar) {
+                            state = AFTER_QUOTE;
+                        }
+                        continue;
+                    } else if (state == AFTER_QUOTE && b == syntax.quoteChar) {
+                        // escaped quote
+                        state = QUOTED;
+                        continue;
+                    }
+
+                    if (b == '\r' || b == '\n') {
+                        afterCR = (b == '\r');
+                        if (content || !syntax.ignoreEmptyLines) {
+                            record++;
+                            if (record % INTERVAL == 0) {
+                                if (count == offsets.length) {
+                                    offsets = Arrays.copyOf(offsets, count * 2);
+                                }
+                                offsets[count++] = pos + 1;
+                            }
+                        }
+                        content = false;
+                        state = FIELD_START;
+                    } else if (b == syntax.delimiter) {
+                        content = true;
+                        state = FIELD_START;
+                    } else if (state == FIELD_START && b == syntax.quoteChar) {
+                        content = true;
+                        state = QUOTED;
+                    } else {
+                        content = true;
+                        // spaces in front of quoted field
+                        if (state != FIELD_START || b != ' ' || !syntax.ignoreSurroundingSpaces) {
+                            state = UNQUOTED;
+                        }
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return new Offsets(eTag, Arrays.copyOf(offsets, count));
+    }
+
+    /**
+     * Characters that separate fields and records of a file. Only ASCII
+     * characters are supported.
+     */
+    public static class RecordSyntax {
+        private final int     delimiter;
+        private final int     quoteChar;
+        private final boolean ignoreEmptyLines;
+        private final boolean ignoreSurroundingSpaces;
+
+        /**
+         * @param delimiter delimiter of fields
+         * @param quoteChar character that encloses fields, null if fields are
+         *            never quoted
+         * @param ignoreEmptyLines true if empty lines are not counted as
+         *            records
+         * @param ignoreSurroundingSpaces true if spaces in front of quoted
+         *            fields are ignored
+         */
+        public RecordSyntax(char delimiter, Character quoteChar, boolean ignoreEmptyLines,
+                boolean ignoreSurroundingSpaces) {
+            if (delimiter > 127 || (quoteChar != null && quoteChar > 127)) {
+                throw new IllegalArgumentException("Only ASCII delimiters are supported");
+            }
+            this.delimiter = delimiter;
+            // no byte value matches a missing quote character
+            this.quoteChar = (quoteChar == null) ? Integer.MIN_VALUE : quoteChar;
+            this.ignoreEmptyLines = ignoreEmptyLines;
+            this.ignoreSurroundingSpaces = ignoreSurroundingSpaces;
+        }
+    }
+
+    /**
+     * Offsets of every {@link #INTERVAL}th record of a version of a file.
+     */
+    public static class Offsets {
+        private final EntityTag eTag;
+        // offsets[n] is the offset of record n * INTERVAL
+        private final long[]    offsets;
+
+        private Offsets(EntityTag eTag, long[] offsets) {
+            this.eTag = eTag;
+            this.offsets = offsets;
+        }
+
+        /**
+         * Returns the nearest indexed record in front of a record.
+         * 
+         * @param record index of record, 0 based
+         * @return index of indexed record
+         */
+        public long getRecord(long record) {
+            return getPosition(record) * (long) INTERVAL;
+        }
+
+        /**
+         * Returns offset of the nearest indexed record in front of a record,
+         * see {@link #getRecord(long)}.
+         * 
+         * @param record index of record, 0 based
+         * @return offset in bytes
+         */
+        public long getOffset(long record) {
+            return offsets[getPosition(record)];
+        }
+
+        /**
+         * Returns number of indexed records, the first record is always
+         * indexed.
+         * 
+         * @return number of indexed records
+         */
+        public int size() {
+            return offsets.length;
+        }
+
+        private int getPosition(long record) {
+            return (int) Math.min(record / INTERVAL, offsets.length - 1);
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.WebApplicationException;
+import javax.xml.bind.DatatypeConverter;
+
+import de.fuberlin.panda.data.configuration.PandaSettings;
+
+/**
+ * Fetches resources located by an URL into a mirror on local disk. A mirrored
+ * resource is only requested again from the upstream server if it is older
+ * than the requested age, and then with a conditional request, so unchanged
+ * resources are not downloaded twice. Concurrent fetches of the same URL share
+ * a single download and the number of concurrent downloads per host is
+ * limited. Connections are reused by the keep-alive cache of
+ * {@link HttpURLConnection}, which requires that responses are read
+ * completely. Parsers read the mirror file as a stream, so fetched resources
+ * are never held in memory as a whole.
+ * 
+ * @author Christoph Schrder
+ */
+public class RemoteFetcher {
+
+    private static final int                                         CONNECT_TIMEOUT  = 1000;
+    private static final int                                         READ_TIMEOUT     = 3000;
+    // time to wait for a free connection to a host
+    private static final long                                        HOST_TIMEOUT     = 10000;
+    private static final String                                      SUFFIX           = ".mirror";
+    private static final String                                      INFO_SUFFIX      = ".properties";
+
+    private final PandaSettings                                      pandaSettings;
+
+    // known mirror entries per URL
+    private final ConcurrentHashMap<String, MirrorEntry>             entries          = new ConcurrentHashMap<String, MirrorEntry>();
+    // running downloads per URL, concurrent fetches share them
+    private final ConcurrentHashMap<String, FutureTask<MirrorEntry>> downloads        = new ConcurrentHashMap<String, FutureTask<MirrorEntry>>();
+    // free connections per host
+    private final ConcurrentHashMap<String, Semaphore>               hostPermits      = new ConcurrentHashMap<String, Semaphore>();
+
+    private final AtomicLong                                         downloadCount    = new AtomicLong();
+    private final AtomicLong                                         notModifiedCount = new AtomicLong();
+    private final AtomicLong                                         mirrorHitCount   = new AtomicLong();
+
+    // mirror directory of this run if no directory is configured
+    private File                                                     tempDirectory;
+
+    public RemoteFetcher(PandaSettings pandaSettings) {
+        this.pandaSettings = pandaSettings;
+    }
+
+    /**
+     * Open a stream to the mirror of a resource, see
+     * {@link #fetch(URL, long)}.
+     * 
+     * @param url URL of resource
+     * @param maxAge time in milliseconds a mirrored resource is used without
+     *            asking the upstream server
+     * @return stream of resource
+     * @throws IOException if resource could not be fetched
+     */
+    public InputStream open(URL url, long maxAge) throws IOException {
+        return fetch(url, maxAge).open();
+    }
+
+    /**
+     * Fetch a resource into the mirror. A mirrored resource that was
+     * validated within the given age is returned without asking the upstream
+     * server, otherwise it is revalidated with a conditional request.
+     * 
+     * @param url URL of resource
+     * @param maxAge time in milliseconds a mirrored resource is used without
+     *            asking the upstream server
+     * @return mirror entry of resource
+     * @throws IOException if resource could not be fetched
+     */
+    public MirrorEntry fetch(final URL url, long maxAge) throws IOException {
+        String key = url.toString();
+        MirrorEntry entry = getEntry(key);
+        if (entry != null && !entry.isExpired(maxAge)) {
+            mirrorHitCount.incrementAndGet();
+            return entry;
+        }
+
+        final MirrorEntry oldEntry = entry;
+        FutureTask<MirrorEntry> download = new FutureTask<MirrorEntry>(new Callable<MirrorEntry>() {
+            @Override
+            public MirrorEntry call() throws IOException {
+                return download(url, oldEntry);
+            }
+        });
+        FutureTask<MirrorEntry> runningDownload = downloads.putIfAbsent(key, download);
+        if (runningDownload == null) {
+            runningDownload = download;
+            try {
+                download.run();
+            } finally {
+                downloads.remove(key, download);
+            }
+        }
+
+        try {
+            return runningDownload.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(503);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public long getDownloadCount() {
+        return downloadCount.get();
+    }
+
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    public long getMirrorHitCount() {
+        return mirrorHitCount.get();
+    }
+
+    /**
+     * Download a resource into the mirror, waits for a free connection to the
+     * host of the resource.
+     * 
+     * @param url URL of resource
+     * @param entry current mirror entry of resource, may be null
+     * @return new or revalidated mirror entry
+     * @throws IOException if download fails
+     */
+    private MirrorEntry download(URL url, MirrorEntry entry) throws IOException {
+        Semaphore permits = getHostPermits(url);
+        try {
+            if (!permits.tryAcquire(HOST_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new IOException("No free connection to host " + url.getHost());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(503);
+        }
+
+        try {
+            URLConnection con = url.openConnection();
+            con.setReadTimeout(READ_TIMEOUT);
+            con.setConnectTimeout(CONNECT_TIMEOUT);
+            if (entry != null && entry.eTag != null) {
+                con.setRequestProperty("If-None-Match", entry.eTag);
+            }
+            if (entry != null && entry.lastModified != null) {
+                con.setRequestProperty("If-Modified-Since", entry.lastModified);
+            }
+
+            if (entry != null && con instanceof HttpURLConnection
+                    && ((HttpURLConnection) con).getResponseCode() == 304) {
+                con.getInputStream().close();
+                notModifiedCount.incrementAndGet();
+                return saveEntry(new MirrorEntry(entry, System.currentTimeMillis()));
+            }
+
+            File dir = getDirectory();
+            File file = new File(dir, getFileName(url.toString()) + SUFFIX);
+            File tempFile = File.createTempFile("panda", ".tmp", dir);
+            try {
+                InputStream in = con.getInputStream();
+                try {
+                    Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    in.close();
+                }
+                Files.move(tempFile.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tempFile.delete();
+            }
+            downloadCount.incrementAndGet();
+
+            // fetch time identifies the downloaded version, so it must change
+            long now = System.currentTimeMillis();
+            long fetched = (entry == null) ? now : Math.max(now, entry.fetched + 1);
+            return saveEntry(new MirrorEntry(url.toString(), file, con.getHeaderField("ETag"),
+                    con.getHeaderField("Last-Modified"), fetched, now));
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Semaphore getHostPermits(URL url) {
+        String host = url.getHost() + ":" + url.getPort();
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            permits = new Semaphore(pandaSettings.getRemoteHostConnections());
+            Semaphore current = hostPermits.putIfAbsent(host, permits);
+            permits = (current == null) ? permits : current;
+        }
+        return permits;
+    }
+
+    /**
+     * Returns mirror entry of an URL, entries of a previous run are read from
+     * the mirror directory.
+     * 
+     * @param key URL of resource
+     * @return the entry or null if resource is not mirrored
+     * @throws IOException if mirror directory can't be created
+     */
+    private MirrorEntry getEntry(String key) throws IOException {
+        MirrorEntry entry = entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+
+        File dir = getDirectory();
+        File infoFile = new File(dir, getFileName(key) + INFO_SUFFIX);
+        File file = new File(dir, getFileName(key) + SUFFIX);
+        if (!infoFile.isFile() || !file.isFile()) {
+            return null;
+        }
+        Properties info = new Properties();
+        try {
+            InputStream in = new FileInputStream(infoFile);
+            try {
+                info.load(in);
+            } finally {
+                in.close();
+            }
+            // validation time in the future would keep the entry from expiring
+            long validated = Math.min(Long.parseLong(info.getProperty("validated")),
+                    System.currentTimeMillis());
+            entry = new MirrorEntry(key, file, info.getProperty("eTag"),
+                    info.getProperty("lastModified"), Long.parseLong(info.getProperty("fetched")),
+                    validated);
+        } catch (Exception e) {
+            // invalid entry is replaced by next download
+            return null;
+        }
+        MirrorEntry current = entries.putIfAbsent(key, entry);
+        return (current == null) ? entry : current;
+    }
+
+    /**
+     * Write information about a mirrored resource next to its file.
+     * 
+     * @param entry mirror entry
+     * @return the entry
+     * @throws IOException if information can't be written
+     */
+    private MirrorEntry saveEntry(MirrorEntry entry) throws IOException {
+        Properties info = new Properties();
+        if (entry.eTag != null) {
+            info.setProperty("eTag", entry.eTag);
+        }
+        if (entry.lastModified != null) {
+            info.setProperty("lastModified", entry.lastModified);
+        }
+        info.setProperty("fetched", Long.toString(entry.fetched));
+        info.setProperty("validated", Long.toString(entry.validated));
+
+        File dir = getDirectory();
+        File tempFile = File.createTempFile("panda", ".tmp", dir);
+        try {
+            OutputStream out = new FileOutputStream(tempFile);
+            try {
+                info.store(out, entry.url);
+            } finally {
+                out.close();
+            }
+            Files.move(tempFile.toPath(), new File(dir, getFileName(entry.url) + INFO_SUFFIX)
+                    .toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+        entries.put(entry.url, entry);
+        return entry;
+    }
+
+    /**
+     * Returns mirror directory, which is created accessible by the owner only.
+     * If no directory is configured, a temporary directory is used for this
+     * run.
+     * 
+     * @return the directory
+     * @throws IOException if directory can't be created
+     */
+    private synchronized File getDirectory() throws IOException {
+        String path = pandaSettings.getRemoteMirrorDirPath();
+        if (path != null) {
+            File dir = new File(path);
+            CacheSnapshotStore.createPrivateDirectory(dir);
+            return dir;
+        }
+        if (tempDirectory == null) {
+            // random name, accessible by the owner only
+            tempDirectory = Files.createTempDirectory("panda-mirror").toFile();
+        }
+        return tempDirectory;
+    }
+
+    /**
+     * URLs may be too long or contain characters not allowed in file names,
+     * so files are named by the hash of the URL.
+     */
+    private static String getFileName(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return DatatypeConverter.printHexBinary(digest.digest(url.getBytes(Charset
+                    .forName("UTF-8"))));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Mirrored version of a resource.
+     */
+    public static class MirrorEntry {
+        private final String url;
+        private final File   file;
+        private final String eTag;
+        private final String lastModified;
+        private final long   fetched;
+        private final long   validated;
+
+        private MirrorEntry(String url, File file, String eTag, String lastModified,
+                long fetched, long validated) {
+            this.url = url;
+            this.file = file;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.fetched = fetched;
+            this.validated = validated;
+        }
+
+        private MirrorEntry(MirrorEntry entry, long validated) {
+            this(entry.url, entry.file, entry.eTag, entry.lastModified, entry.fetched, validated);
+        }
+
+        /**
+         * Open stream to mirror file.
+         * 
+         * @return stream of resource
+         * @throws IOException if mirror file is missing
+         */
+        public InputStream open() throws IOException {
+            return new BufferedInputStream(new FileInputStream(file));
+        }
+
+        /**
+         * Checks if this entry was validated within the given age.
+         * 
+         * @param maxAge age in milliseconds
+         * @return true if resource has to be revalidated
+         */
+        public boolean isExpired(long maxAge) {
+            return System.currentTimeMillis() - validated >= maxAge;
+        }
+
+        /**
+         * Returns time the mirrored version was downloaded, identifies the
+         * version.
+         * 
+         * @return time in milliseconds
+         */
+        public long getFetched() {
+            return fetched;
+        }
+
+        /**
+         * Returns time the mirrored version was last confirmed by the upstream
+         * server.
+         * 
+         * @return time in milliseconds
+         */
+        public long getValidated() {
+            return validated;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+
+import de.fuberlin.panda.data.caching.RemoteFetcher.MirrorEntry;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
+
+/**
+ * Caches documents of resources that are located by an URL instead of a local
+ * file. Since changes of remote resources are not reported, a cached document
+ * is only considered fresh for the time to live of its resource. Requests for
+ * a stale document are answered with the cached document while it is
+ * revalidated in background by the {@link RemoteFetcher} with a conditional
+ * request, which uses the ETag and Last-Modified date of the upstream server.
+ * Each fetched version gets its own EntityTag, so documents are stored in the
+ * {@link ResourceCache} like documents of local files.
+ * 
+ * @author Christoph Schrder
+ */
+public class RemoteResourceCache {
+
+    private static final int                                    THREADS            = 2;
+    private static final long                                   KEEP_ALIVE_SECONDS = 60;
+
+    private final Logger                                        logger             = Logger.getLogger(RemoteResourceCache.class.getName());
+
+    private final PandaSettings                                 pandaSettings;
+    private final RemoteFetcher                                 fetcher;
+    private final ThreadPoolExecutor                            executor;
+
+    // current version per resource ID
+    private final ConcurrentHashMap<String, RemoteVersion>      versions           = new ConcurrentHashMap<String, RemoteVersion>();
+    // running fetches of missing documents, concurrent requests share them
+    private final ConcurrentHashMap<String, FutureTask<byte[]>> loads              = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+    // resource IDs which are revalidated in background
+    private final Set<String>                                   revalidations      = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicLong                                    revalidationCount  = new AtomicLong();
+    private final AtomicLong                                    notModifiedCount   = new AtomicLong();
+
+    /**
+     * @param pandaSettings PANDA system settings
+     * @param fetcher fetches remote resources into the local mirror
+     */
+    public RemoteResourceCache(PandaSettings pandaSettings, RemoteFetcher fetcher) {
+        this.pandaSettings = pandaSettings;
+        this.fetcher = fetcher;
+        this.executor = new ThreadPoolExecutor(THREADS, THREADS, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger threadCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "panda-remote-revalidation-"
+                                + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // idle threads are stopped, so unused caches do not hold any threads
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Stop background threads. Queued revalidations are dropped, the cached
+     * documents are revalidated again on next request.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Converts the content of a fetched resource into the document that is
+     * cached, e.g. cleans HTML.
+     */
+    public interface DocumentLoader {
+        byte[] load(InputStream in) throws IOException;
+    }
+
+    /**
+     * Get document of a remote resource. A missing document is fetched once
+     * for all concurrent requests, a stale document is returned and
+     * revalidated in background.
+     * 
+     * @param resID unique ID of resource
+     * @param url URL of resource
+     * @param loader converts fetched content into the cached document
+     * @return the document
+     * @throws IOException if resource could not be fetched
+     */
+    public byte[] getDocument(String resID, URL url, DocumentLoader loader) throws IOException {
+        ResourceCache cache = pandaSettings.getResourceCache();
+        RemoteVersion version = versions.get(resID);
+        if (version != null && cache.checkValidityDocument(resID, version.getETag())) {
+            Object doc = cache.getDocument(resID);
+            if (doc != null) {
+                if (version.isExpired(getTimeToLive(resID))) {
+                    revalidate(resID, url, loader, version);
+                }
+                return (byte[]) doc;
+            }
+        }
+
+        FutureTask<byte[]> load = new FutureTask<byte[]>(createLoad(resID, url, loader));
+        FutureTask<byte[]> runningLoad = loads.putIfAbsent(resID, load);
+        if (runningLoad == null) {
+            runningLoad = load;
+            try {
+                load.run();
+            } finally {
+                loads.remove(resID, load);
+            }
+        }
+
+        try {
+            return runningLoad.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(503);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns current version of a remote resource.
+     * 
+     * @param resID unique ID of resource
+     * @return version or null if resource was not fetched yet
+     */
+    public RemoteVersion getVersion(String resID) {
+        return versions.get(resID);
+    }
+
+    /**
+     * Returns time to live of a remote resource, configured in the resource
+     * map or the default of the settings.
+     * 
+     * @param resID unique ID of resource
+     * @return time in milliseconds
+     */
+    public long getTimeToLive(String resID) {
+        ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
+        if (resInfo != null && resInfo.getTimeToLive() != null) {
+            return resInfo.getTimeToLive() * 1000L;
+        }
+        return pandaSettings.getRemoteCacheTime() * 1000L;
+    }
+
+    public long getRevalidationCount() {
+        return revalidationCount.get();
+    }
+
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /**
+     * Creates job that fetches a missing document, a mirrored resource is used
+     * if it is younger than the time to live.
+     */
+    private Callable<byte[]> createLoad(final String resID, final URL url,
+            final DocumentLoader loader) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                return store(resID, fetcher.fetch(url, getTimeToLive(resID)), loader);
+            }
+        };
+    }
+
+    /**
+     * Revalidate a stale document in background. Only one revalidation per
+     * resource is running, if it fails the stale document is kept until the
+     * time to live expired again.
+     * 
+     * @param resID unique ID of resource
+     * @param url URL of resource
+     * @param loader converts fetched content into the cached document
+     * @param version version of the cached document
+     */
+    private void revalidate(final String resID, final URL url, final DocumentLoader loader,
+            final RemoteVersion version) {
+        if (!revalidations.add(resID)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    revalidationCount.incrementAndGet();
+                    MirrorEntry entry = fetcher.fetch(url, 0);
+                    if (entry.getFetched() == version.fetched) {
+                        notModifiedCount.incrementAndGet();
+                        versions.replace(resID, version, version.validate());
+                    } else {
+                        store(resID, entry, loader);
+                    }
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Revalidation of resource " + resID + " failed", e);
+                    versions.replace(resID, version, version.validate());
+                } finally {
+                    revalidations.remove(resID);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read a fetched document and add it to the cache as new version of the
+     * resource. Documents of remote resources are not saved as snapshots,
+     * since they can't be validated after a restart.
+     * 
+     * @param resID unique ID of resource
+     * @param entry mirror entry of fetched resource
+     * @param loader converts fetched content into the cached document
+     * @return the document
+     * @throws IOException if reading fails
+     */
+    private byte[] store(String resID, MirrorEntry entry, DocumentLoader loader)
+            throws IOException {
+        byte[] doc;
+        InputStream in = entry.open();
+        try {
+            doc = loader.load(in);
+        } finally {
+            in.close();
+        }
+
+        RemoteVersion version = new RemoteVersion(resID, entry.getFetched(),
+                entry.getValidated());
+        if (pandaSettings.getServerCacheUsage()) {
+            pandaSettings.getResourceCache().addDocument(doc, resID, version.getETag());
+            versions.put(resID, version);
+        }
+        return doc;
+    }
+
+    /**
+     * Version of a remote resource at the time it was fetched.
+     */
+    public static class RemoteVersion {
+        private final EntityTag eTag;
+        private final long      fetched;
+        private final long      validated;
+
+        /**
+         * @param resID unique ID of resource
+         * @param fetched time the version was downloaded
+         * @param validated time the version was last confirmed by the upstream
+         *            server
+         */
+        public RemoteVersion(String resID, long fetched, long validated) {
+            this.eTag = new EntityTag(resID + "_" + fetched, false);
+            this.fetched = fetched;
+            this.validated = validated;
+        }
+
+        private RemoteVersion(RemoteVersion version, long validated) {
+            this.eTag = version.eTag;
+            this.fetched = version.fetched;
+            this.validated = validated;
+        }
+
+        /**
+         * Returns copy of this version which is fresh again.
+         * 
+         * @return the validated version
+         */
+        public RemoteVersion validate() {
+            return new RemoteVersion(this, System.currentTimeMillis());
+        }
+
+        /**
+         * Checks if time to live of this version expired.
+         * 
+         * @param timeToLive time to live in milliseconds
+         * @return true if version has to be revalidated
+         */
+        public boolean isExpired(long timeToLive) {
+            return System.currentTimeMillis() - validated >= timeToLive;
+        }
+
+        public EntityTag getETag() {
+            return this.eTag;
+        }
+    }
+}
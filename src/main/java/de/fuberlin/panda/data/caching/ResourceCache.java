@@ -23,22 +23,37 @@ package de.fuberlin.panda.data.caching;
  */
 
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.ws.rs.NotSupportedException;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.EntityTag;
 
+import de.fuberlin.panda.api.ReferenceNotFoundException;
 import de.fuberlin.panda.api.data.ValueExchange.Value;
 import de.fuberlin.panda.api.data.ValueExchangeExt;
+import de.fuberlin.panda.data.caching.ResourceWatcher.ResourceVersion;
 import de.fuberlin.panda.data.configuration.PandaSettings;
 import de.fuberlin.panda.data.resources.ResourceHelper;
 import de.fuberlin.panda.data.resources.ResourceHelper.TableArea;
@@ -50,27 +65,65 @@ import de.fuberlin.panda.enums.DataResourceType;
  * documents is imitated while using a tree structure, which is leaned on the
  * hierarchical part of the URI. Documents with dynamically structure like XML
  * can be cached as whole binary array. Note: there is no cache invalidation
- * strategy implemented besides last modified date.
+ * strategy implemented besides last modified date. The size of all cached
+ * resources is estimated and limited by a memory budget, if the budget is
+ * exceeded whole resources will be evicted according to a segmented LRU policy.
+ * Rows and columns of tabular resources (CSV, spreadsheets) are stored in a
+ * column oriented {@link TableCacheNode} instead of tree levels.
+ * Every resource is held in an immutable {@link CacheEntry} snapshot which is
+ * replaced atomically when the resource is filled or invalidated (copy on
+ * write), so requests read the cache without any locks. Resources can be
+ * filled in background by the {@link CacheLoader} of the cache. Filled
+ * resources are written to a {@link CacheSnapshotStore} on local disk and
+ * restored from there when the cache is used again after a restart.
  * 
  * @author Christoph Schrder
  */
 public class ResourceCache {
 
-    private PandaSettings                    pandaSettings;
+    // time in milliseconds a request waits for the start of its background
+    // fill, jobs which don't start within this time are queued behind others
+    private static final long                             FILL_START_TIME = 20;
 
-    private final CacheTreeNode              valueCache          = new CacheTreeNode();
-    private final HashMap<String, Object>    docCache            = new HashMap<String, Object>();
-    private final HashMap<String, EntityTag> eTags               = new HashMap<String, EntityTag>();
-    private final ReentrantReadWriteLock     valueCacheLock      = new ReentrantReadWriteLock();
-    private final Lock                       valueCacheWriteLock = valueCacheLock.writeLock();
-    private final Lock                       valueCacheReadLock  = valueCacheLock.readLock();
+    private final Logger                                  logger        = Logger.getLogger(ResourceCache.class.getName());
 
-    private final ReentrantReadWriteLock     docCacheLock        = new ReentrantReadWriteLock();
-    private final Lock                       docCacheWriteLock   = docCacheLock.writeLock();
-    private final Lock                       docCacheReadLock    = docCacheLock.readLock();
+    private PandaSettings                                 pandaSettings;
+
+    // snapshots of cached resources per resource ID
+    private final ConcurrentHashMap<String, CacheEntry>   entries       = new ConcurrentHashMap<String, CacheEntry>();
+
+    // resources currently loaded by a request, other requests wait for them
+    private final ConcurrentHashMap<String, ResourceLoad> loads         = new ConcurrentHashMap<String, ResourceLoad>();
+
+    private final SegmentedLruPolicy                      evictionPolicy;
+    private final AtomicLong                              evictionCount = new AtomicLong();
+    private final CacheStatistics                         statistics    = new CacheStatistics();
+    private final CacheLoader                             loader;
+    private final ResponseCache                           responseCache;
+    private final NegativeResultCache                     negativeResultCache;
+    private final PackagePartCache                        partCache;
+    private final RowBlockCache                           blockCache;
+    private final RecordOffsetIndex                       offsetIndex;
+    private final ColumnSchemaIndex                       schemaIndex;
+    private final RemoteFetcher                           remoteFetcher;
+    private final RemoteResourceCache                     remoteCache;
+    // parses chunks of CSV files and infers their schemas, shared by all requests
+    private final ThreadPoolExecutor                      parsePool;
 
     public ResourceCache(PandaSettings pandaSettings) {
         this.pandaSettings = pandaSettings;
+        this.evictionPolicy = new SegmentedLruPolicy(pandaSettings.getCacheMemoryLimit());
+        this.responseCache = new ResponseCache(pandaSettings.getResponseCacheMemoryLimit());
+        this.negativeResultCache = new NegativeResultCache(
+                pandaSettings.getNegativeCacheTime() * 1000L);
+        this.partCache = new PackagePartCache(pandaSettings.getPartCacheMemoryLimit());
+        this.blockCache = new RowBlockCache(pandaSettings.getBlockCacheMemoryLimit());
+        this.offsetIndex = new RecordOffsetIndex();
+        this.schemaIndex = new ColumnSchemaIndex();
+        this.remoteFetcher = new RemoteFetcher(pandaSettings);
+        this.remoteCache = new RemoteResourceCache(pandaSettings, remoteFetcher);
+        this.loader = new CacheLoader(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        this.parsePool = createParsePool(Math.max(1, pandaSettings.getParseThreads()));
     }
 
     /**
@@ -84,27 +137,17 @@ public class ResourceCache {
      */
     public void addResourceValues(ValueExchangeExt valList, DataResourceType resourceType,
             String resID, EntityTag eTag) {
-        this.eTags.put(resID, eTag);
-        valueCacheWriteLock.lock();
-        try {
-            String baseURI = valList.getBaseURI();
-            for (Value v : valList.getValue()) {
-                String subURI = v.getSubURI();
-                if (subURI == null) {
-                    throw new WebApplicationException(422);
-                } else {
-                    addResourceValue(baseURI + v.getSubURI(), v.getValue(), v.getType(),
-                            resourceType);
-                }
+        for (Value v : valList.getValue()) {
+            if (v.getSubURI() == null) {
+                throw new WebApplicationException(422);
             }
-        } finally {
-            valueCacheWriteLock.unlock();
         }
-
+        putValues(resID, valList.getBaseURI(), valList.getValue(), resourceType, eTag, true);
     }
 
     /**
-     * Add a single value to cache.
+     * Add a single value to cache. Note: every call copies the path to the new
+     * value, use {@link #addResourceValues} to add many values.
      * 
      * @param uri URI of a single value
      * @param value the value
@@ -113,45 +156,150 @@ public class ResourceCache {
      */
     public void addResourceValue(String uri, Object value, String type,
             DataResourceType resourceType) {
+        String resID = handleInputURI(uri, resourceType).getFirst();
+        Value val = new Value();
+        val.setValue(value);
+        val.setType(type);
+        val.setSubURI(uri);
+        putValues(resID, "", Collections.singletonList(val), resourceType, null, false);
+    }
+
+    /**
+     * Insert values into a copy of the value subtree of a resource and publish
+     * the new snapshot. Only nodes on the paths to new values are copied, the
+     * published subtree will not be modified.
+     * 
+     * @param resID unique ID of resource
+     * @param baseURI baseURI of values
+     * @param values values with subURIs
+     * @param resourceType type of resource
+     * @param eTag entity tag of resource for cache validation
+     * @param replaceETag true if eTag shall replace the entity tag of resource
+     */
+    private void putValues(String resID, String baseURI, List<Value> values,
+            DataResourceType resourceType, EntityTag eTag, boolean replaceETag) {
+        CacheEntry oldEntry;
+        long size;
+        do {
+            oldEntry = entries.get(resID);
+            // nodes created or copied for the new snapshot
+            Set<CacheTreeNode> newNodes = Collections
+                    .newSetFromMap(new IdentityHashMap<CacheTreeNode, Boolean>());
+            CacheTreeNode valueTree;
+            if (oldEntry == null || oldEntry.getValueTree() == null) {
+                valueTree = new CacheTreeNode();
+                size = CacheSizeEstimator.estimateNode(resID);
+            } else {
+                valueTree = new CacheTreeNode(oldEntry.getValueTree());
+                size = 0;
+            }
+            newNodes.add(valueTree);
+
+            for (Value v : values) {
+                size += insertValue(valueTree, newNodes, baseURI + v.getSubURI(), v.getValue(),
+                        v.getType(), resourceType);
+            }
+            for (CacheTreeNode node : newNodes) {
+                if (node.getTable() != null) {
+                    node.getTable().trimToSize();
+                }
+            }
+
+            EntityTag newETag = eTag;
+            if (!replaceETag) {
+                newETag = (oldEntry == null) ? null : oldEntry.getETag();
+            }
+            Object document = (oldEntry == null) ? null : oldEntry.getDocument();
+            if (oldEntry != null) {
+                size += oldEntry.getSize();
+            }
+            if (publish(resID, oldEntry, new CacheEntry(valueTree, document, newETag, size))) {
+                break;
+            }
+        } while (true);
+
+        evictIfNeeded();
+    }
+
+    /**
+     * Insert a single value into a value subtree which is not published yet.
+     * Published nodes on the path are copied before modification.
+     * 
+     * @param valueTree head of resource subtree
+     * @param newNodes nodes that are not published and may be modified
+     * @param uri URI of a single value
+     * @param value the value
+     * @param type type entry of value
+     * @param resourceType type of resource
+     * @return estimated size of inserted nodes in bytes
+     */
+    private long insertValue(CacheTreeNode valueTree, Set<CacheTreeNode> newNodes, String uri,
+            Object value, String type, DataResourceType resourceType) {
         // convert URI in list of path segments fitting for cache tree structure
         LinkedList<String> pathSegments = handleInputURI(uri, resourceType);
+        long size = 0;
 
-        // start node is head of cache tree
-        CacheTreeNode currentNode = this.valueCache;
+        // start node is head of resource subtree
+        CacheTreeNode currentNode = valueTree;
 
-        valueCacheWriteLock.lock();
-        try {
-            for (int i = 0; i < pathSegments.size(); i++) {
-                String fragment = pathSegments.get(i);
-                // child exists
-                if (currentNode.containsKey(fragment)) {
-                    Object temp = currentNode.getChild(fragment);
-                    if (!(temp instanceof Value)) {
-                        // child exists but is not a leaf
-                        currentNode = (CacheTreeNode) temp;
-                    } else {
-                        // child exists and is leaf
-                        break;
+        for (int i = 1; i < pathSegments.size(); i++) {
+            String fragment = pathSegments.get(i);
+            // row and column of tabular resources are stored in a table
+            if (isTabular(resourceType) && i == pathSegments.size() - 2) {
+                TableCacheNode table = currentNode.getTable();
+                if (table == null) {
+                    table = new TableCacheNode();
+                    currentNode.setTable(table);
+                }
+                int row = Integer.parseInt(fragment) - 1;
+                int col = Integer.parseInt(pathSegments.get(i + 1));
+                size += table.addCell(row, col, value, type);
+                break;
+            }
+            // child exists
+            if (currentNode.containsKey(fragment)) {
+                Object temp = currentNode.getChild(fragment);
+                if (!(temp instanceof Value)) {
+                    // child exists but is not a leaf, copy if published
+                    CacheTreeNode child = (CacheTreeNode) temp;
+                    if (!newNodes.contains(child)) {
+                        child = new CacheTreeNode(child);
+                        currentNode.addChild(fragment, child);
+                        newNodes.add(child);
                     }
+                    currentNode = child;
+                } else {
+                    // child exists and is leaf
+                    break;
                 }
-                // child does not exist, new child is not a leaf
-                else if (i < (pathSegments.size() - 1)) {
-                    CacheTreeNode newChild = new CacheTreeNode();
-                    currentNode.addChild(fragment, newChild);
-                    currentNode = newChild;
+            }
+            // child does not exist, new child is not a leaf
+            else if (i < (pathSegments.size() - 1)) {
+                CacheTreeNode newChild = new CacheTreeNode();
+                currentNode.addChild(fragment, newChild);
+                newNodes.add(newChild);
+                currentNode = newChild;
+                if (CacheTreeNode.toIndex(fragment) >= 0) {
+                    size += CacheSizeEstimator.estimateIndexedNode();
+                } else {
+                    size += CacheSizeEstimator.estimateNode(fragment);
                 }
-                // child does not exist, new child is a leaf
-                else {
-                    Value val = new Value();
-                    val.setValue(value);
-                    val.setType(type);
-                    currentNode.addChild(fragment, val);
+            }
+            // child does not exist, new child is a leaf
+            else {
+                Value val = new Value();
+                val.setValue(value);
+                val.setType(type);
+                currentNode.addChild(fragment, val);
+                if (CacheTreeNode.toIndex(fragment) >= 0) {
+                    size += CacheSizeEstimator.estimateIndexedLeaf(value);
+                } else {
+                    size += CacheSizeEstimator.estimateLeaf(fragment, value);
                 }
             }
-        } finally {
-            valueCacheWriteLock.unlock();
         }
 
+        return size;
     }
 
     /**
@@ -163,13 +311,29 @@ public class ResourceCache {
      * @param eTag entity tag of document for cache validation
      */
     public void addDocument(Object doc, String resID, EntityTag eTag) {
-        docCacheWriteLock.lock();
-        try {
-            this.docCache.put(resID, doc);
-            this.eTags.put(resID, eTag);
-        } finally {
-            docCacheWriteLock.unlock();
+        // large binary documents are stored compressed if enabled
+        if (doc instanceof byte[] && pandaSettings.getDocumentCompression()
+                && ((byte[]) doc).length >= pandaSettings.getDocumentCompressionThreshold()) {
+            doc = CompressedDocument.compress((byte[]) doc);
         }
+
+        long docSize = CacheSizeEstimator.estimateDocument(doc);
+        CacheEntry oldEntry;
+        do {
+            oldEntry = entries.get(resID);
+            CacheTreeNode valueTree = null;
+            long size = docSize;
+            if (oldEntry != null) {
+                valueTree = oldEntry.getValueTree();
+                size += oldEntry.getSize()
+                        - CacheSizeEstimator.estimateDocument(oldEntry.getDocument());
+            }
+            if (publish(resID, oldEntry, new CacheEntry(valueTree, doc, eTag, size))) {
+                break;
+            }
+        } while (true);
+
+        evictIfNeeded();
     }
 
     /**
@@ -183,77 +347,723 @@ public class ResourceCache {
     public ValueExchangeExt getValues(String uri, DataResourceType resourceType) {
         ValueExchangeExt valList = new ValueExchangeExt();
         LinkedList<String> pathSegments = handleInputURI(uri, resourceType);
+        String resID = pathSegments.getFirst();
 
-        valueCacheReadLock.lock();
-        try {
-            // calculate start node for traversing, set baseURI
-            StringBuilder baseURI = new StringBuilder();
-            CacheTreeNode startNode = getStartNode(pathSegments, valueCache, baseURI, resourceType);
+        CacheEntry entry = entries.get(resID);
+        if (entry == null || entry.getValueTree() == null) {
+            throw new WebApplicationException(404);
+        }
+        evictionPolicy.recordAccess(resID);
+        statistics.recordHit(resID);
 
-            // set baseURI
-            valList.setBaseURI(baseURI.toString());
+        // calculate start node for traversing, set baseURI
+        StringBuilder baseURI = new StringBuilder();
+        CacheTreeNode startNode = getStartNode(pathSegments, entry.getValueTree(), baseURI,
+                resourceType);
 
-            // traverse tree and add values from cache to list
-            valList.addValues(traverseCacheTree(startNode, pathSegments, 0, "", resourceType));
+        // set baseURI
+        valList.setBaseURI(baseURI.toString());
 
-        } finally {
-            valueCacheReadLock.unlock();
-        }
+        // traverse tree and add values from cache to list
+        valList.addValues(traverseCacheTree(startNode, pathSegments, 0, "", resourceType));
 
         return valList;
     }
 
     /**
-     * Get cached document.
+     * Get cached document. Compressed documents are returned decompressed.
      * 
      * @param resID unique ID of resource
      * @return binary document as {@code Object}
      */
     public Object getDocument(String resID) {
-        try {
-            docCacheReadLock.lock();
-            return docCache.get(resID);
-        } finally {
-            docCacheReadLock.unlock();
+        CacheEntry entry = entries.get(resID);
+        if (entry == null || entry.getDocument() == null) {
+            return null;
         }
+        evictionPolicy.recordAccess(resID);
+        statistics.recordHit(resID);
+        if (entry.getDocument() instanceof CompressedDocument) {
+            return ((CompressedDocument) entry.getDocument()).decompress();
+        }
+        return entry.getDocument();
     }
 
     /**
-     * Removes a resource from document cache.
+     * Removes a resource from document cache. Cached responses and missing
+     * references of the resource are removed as well.
      * 
      * @param resID unique ID of resource
      */
     public void removeDocument(String resID) {
-        try {
-            docCacheWriteLock.lock();
-            if (this.docCache.containsKey(resID)) {
-                this.docCache.remove(resID);
+        responseCache.removeResource(resID);
+        negativeResultCache.removeResource(resID);
+        CacheEntry oldEntry;
+        CacheEntry newEntry;
+        do {
+            oldEntry = entries.get(resID);
+            if (oldEntry == null || oldEntry.getDocument() == null) {
+                return;
             }
-            if (this.eTags.containsKey(resID)) {
-                this.eTags.remove(resID);
+            // cached values stay accounted
+            long size = oldEntry.getSize()
+                    - CacheSizeEstimator.estimateDocument(oldEntry.getDocument());
+            newEntry = new CacheEntry(oldEntry.getValueTree(), null, oldEntry.getETag(), size);
+        } while (!publish(resID, oldEntry, newEntry));
+    }
+
+    /**
+     * Removes a resource from value cache. Cached responses and missing
+     * references of the resource are removed as well.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void removeResourceValues(String resID) {
+        responseCache.removeResource(resID);
+        negativeResultCache.removeResource(resID);
+        CacheEntry oldEntry;
+        CacheEntry newEntry;
+        do {
+            oldEntry = entries.get(resID);
+            if (oldEntry == null || oldEntry.getValueTree() == null) {
+                return;
             }
+            // cached document stays accounted
+            long size = CacheSizeEstimator.estimateDocument(oldEntry.getDocument());
+            newEntry = new CacheEntry(null, oldEntry.getDocument(), oldEntry.getETag(), size);
+        } while (!publish(resID, oldEntry, newEntry));
+    }
+
+    /**
+     * Removes values, document, parts and blocks of a resource from the cache
+     * because the resource has changed.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void invalidate(String resID) {
+        if (removeResource(resID)) {
+            statistics.recordInvalidation(resID);
+        }
+    }
+
+    /**
+     * Removes values, document, parts and blocks of a resource from the cache
+     * to free memory.
+     * 
+     * @param resID unique ID of resource
+     * @return true if resource was cached
+     */
+    public boolean evict(String resID) {
+        if (removeResource(resID)) {
+            evictionCount.incrementAndGet();
+            statistics.recordEviction(resID);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove all cached data, the record index and the column schema of a
+     * resource.
+     * 
+     * @param resID unique ID of resource
+     * @return true if values or document of resource were cached
+     */
+    private boolean removeResource(String resID) {
+        boolean cached = entries.containsKey(resID);
+        removeResourceValues(resID);
+        removeDocument(resID);
+        partCache.removeResource(resID);
+        blockCache.removeResource(resID);
+        offsetIndex.removeResource(resID);
+        schemaIndex.removeResource(resID);
+        return cached;
+    }
+
+    /**
+     * Set memory budget of cache. Resources will be evicted immediately if the
+     * cache exceeds the new budget.
+     * 
+     * @param memoryLimit memory budget in bytes
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        evictionPolicy.setCapacity(memoryLimit);
+        evictIfNeeded();
+    }
+
+    /**
+     * Returns estimated size of all cached resources.
+     * 
+     * @return size in bytes
+     */
+    public long getEstimatedSize() {
+        return evictionPolicy.getSize();
+    }
+
+    /**
+     * Returns estimated size of a cached resource.
+     * 
+     * @param resID unique ID of resource
+     * @return size in bytes, 0 if resource is not cached
+     */
+    public long getEstimatedSize(String resID) {
+        return evictionPolicy.getSize(resID);
+    }
+
+    /**
+     * Returns number of resources evicted since start.
+     * 
+     * @return number of evictions
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns hit, miss, fill, invalidation and eviction counters of all
+     * resources.
+     * 
+     * @return the cache statistics
+     */
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns offsets of records of huge CSV files, which are removed together
+     * with the resource.
+     * 
+     * @return the record offset index
+     */
+    public RecordOffsetIndex getOffsetIndex() {
+        return offsetIndex;
+    }
+
+    /**
+     * Returns column schemas of CSV files, which are removed together with the
+     * resource.
+     * 
+     * @return the column schema index
+     */
+    public ColumnSchemaIndex getSchemaIndex() {
+        return schemaIndex;
+    }
+
+    /**
+     * Returns cache of encoded responses, which is invalidated together with
+     * this cache.
+     * 
+     * @return the response cache
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Returns cache of references missing in resources, which is invalidated
+     * together with this cache.
+     * 
+     * @return the negative result cache
+     */
+    public NegativeResultCache getNegativeResultCache() {
+        return negativeResultCache;
+    }
+
+    /**
+     * Returns cache of decompressed OOXML package parts. Parts are kept when
+     * values of a resource are evicted, so the resource can be parsed again
+     * without opening the package.
+     * 
+     * @return the package part cache
+     */
+    public PackagePartCache getPartCache() {
+        return partCache;
+    }
+
+    /**
+     * Returns partial cache for huge CSV files, which holds blocks of rows
+     * instead of the whole resource.
+     * 
+     * @return the row block cache
+     */
+    public RowBlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * Returns cache for documents of resources located by an URL, which
+     * expire and are revalidated with the upstream server.
+     * 
+     * @return the remote resource cache
+     */
+    public RemoteResourceCache getRemoteCache() {
+        return remoteCache;
+    }
+
+    /**
+     * Returns fetcher which mirrors resources of URLs on local disk.
+     * 
+     * @return the remote fetcher
+     */
+    public RemoteFetcher getRemoteFetcher() {
+        return remoteFetcher;
+    }
+
+    /**
+     * Returns loader which executes fill jobs of the cache.
+     * 
+     * @return the cache loader
+     */
+    public CacheLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * Returns pool of threads which parse chunks of CSV files in parallel and
+     * infer their schemas. Jobs of the pool block on reads of the files, so
+     * the number of threads is bounded by the settings and not by the number
+     * of processors.
+     * 
+     * @return the parse pool
+     */
+    public ThreadPoolExecutor getParsePool() {
+        return parsePool;
+    }
+
+    /**
+     * Set number of threads of the parse pool.
+     * 
+     * @param threads maximum number of parallel parse jobs
+     */
+    public void setParseThreads(int threads) {
+        threads = Math.max(1, threads);
+        // maximum size must never be below core size
+        if (threads > parsePool.getMaximumPoolSize()) {
+            parsePool.setMaximumPoolSize(threads);
+            parsePool.setCorePoolSize(threads);
+        } else {
+            parsePool.setCorePoolSize(threads);
+            parsePool.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Stop background threads of the cache, e.g. when the application is
+     * undeployed. Queued fill jobs and snapshots are still finished by the
+     * cache loader, requests fill the cache in their own thread afterwards.
+     * Running parse jobs are interrupted.
+     */
+    public void shutdown() {
+        loader.shutdown();
+        remoteCache.shutdown();
+        parsePool.shutdownNow();
+    }
+
+    private static ThreadPoolExecutor createParsePool(int threads) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger threadCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "panda-csv-parser-"
+                                + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // idle threads are stopped, so unused caches do not hold any threads
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Write snapshot of a cached resource to local disk if snapshots are
+     * enabled. The snapshot is written in background by the cache loader and
+     * should be requested after the load of the resource was finished, so
+     * waiting requests don't wait for the disk. Only resources of local files
+     * are written, since resources from URLs can't be validated on restore.
+     * Errors are logged.
+     * 
+     * @param resID unique ID of resource
+     */
+    public void saveSnapshot(final String resID) {
+        if (!pandaSettings.getCacheSnapshots() || pandaSettings.getCacheSnapshotDirPath() == null) {
+            return;
+        }
+        try {
+            loader.submitTask(new Runnable() {
+                @Override
+                public void run() {
+                    writeSnapshot(resID);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // cache is shut down
+        }
+    }
+
+    /**
+     * Write snapshot of a resource if it is still valid in cache.
+     * 
+     * @param resID unique ID of resource
+     */
+    private void writeSnapshot(String resID) {
+        CacheEntry entry = entries.get(resID);
+        ResourceVersion version = pandaSettings.getResourceWatcher().getVersion(resID);
+        if (entry == null || entry.getETag() == null || version == null
+                || !version.getETag().equals(entry.getETag())) {
+            return;
+        }
+        try {
+            getSnapshotStore().write(resID, entry);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Snapshot of resource " + resID + " failed", e);
+        }
+    }
+
+    /**
+     * Restore all snapshots on local disk whose resource was not changed
+     * since the snapshot was written. Snapshots are restored in background by
+     * the cache loader, outdated snapshots are deleted.
+     * 
+     * @return number of snapshots queued for restore
+     */
+    public int loadSnapshots() {
+        if (pandaSettings.getCacheSnapshotDirPath() == null) {
+            return 0;
+        }
+        final CacheSnapshotStore store = getSnapshotStore();
+        List<String> resIDs = store.getResourceIDs();
+        for (final String resID : resIDs) {
+            loader.submit(resID, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    try {
+                        return restoreSnapshot(store, resID);
+                    } catch (IOException e) {
+                        // snapshot is damaged
+                        store.delete(resID);
+                        throw e;
+                    }
+                }
+            });
+        }
+        return resIDs.size();
+    }
+
+    /**
+     * Restore snapshot of a resource if it is still valid. Requests for the
+     * resource wait until the snapshot was restored.
+     * 
+     * @param store store holding the snapshot
+     * @param resID unique ID of resource
+     * @return true if snapshot was restored
+     * @throws IOException if snapshot can't be read
+     */
+    private boolean restoreSnapshot(CacheSnapshotStore store, String resID) throws IOException {
+        EntityTag eTag = store.readETag(resID);
+        ResourceVersion version = pandaSettings.getResourceWatcher().getVersion(resID);
+        if (version == null || !version.getETag().equals(eTag)) {
+            store.delete(resID);
+            return false;
+        }
+        ResourceLoad load = beginLoad(resID, eTag);
+        if (load == null) {
+            // resource was loaded by a request in the meantime
+            return false;
+        }
+        try {
+            if (isCached(resID, eTag)) {
+                return false;
+            }
+            CacheEntry snapshot = store.read(resID);
+            CacheEntry oldEntry;
+            do {
+                oldEntry = entries.get(resID);
+            } while (!publish(resID, oldEntry, snapshot));
+            evictIfNeeded();
+            return true;
         } finally {
-            docCacheWriteLock.unlock();
+            endLoad(load);
+        }
+    }
+
+    private CacheSnapshotStore getSnapshotStore() {
+        return new CacheSnapshotStore(new File(pandaSettings.getCacheSnapshotDirPath()));
+    }
+
+    /**
+     * Evict whole resources (values and documents) until the estimated size of
+     * the cache is within the memory budget.
+     */
+    private void evictIfNeeded() {
+        String victim;
+        while ((victim = evictionPolicy.getVictim()) != null) {
+            removeResourceValues(victim);
+            removeDocument(victim);
+            synchronized (evictionPolicy) {
+                // never loop on a resource which isn't cached anymore
+                if (!entries.containsKey(victim)) {
+                    evictionPolicy.remove(victim);
+                }
+            }
+            evictionCount.incrementAndGet();
+            statistics.recordEviction(victim);
         }
     }
 
     /**
-     * Removes a resource from value cache.
+     * Replace snapshot of a resource atomically. Empty snapshots will be
+     * removed from cache. The estimated size of the resource is updated by the
+     * difference of the replaced snapshots while the eviction policy is
+     * locked, so concurrent replacements can't leave wrong sizes behind.
      * 
      * @param resID unique ID of resource
+     * @param oldEntry expected current snapshot, null if resource is not cached
+     * @param newEntry new snapshot
+     * @return true if snapshot was replaced, false if current snapshot was
+     *         changed by another thread
      */
-    public void removeResourceValues(String resID) {
+    private boolean publish(String resID, CacheEntry oldEntry, CacheEntry newEntry) {
+        synchronized (evictionPolicy) {
+            boolean published;
+            if (oldEntry == null) {
+                published = newEntry.isEmpty() || entries.putIfAbsent(resID, newEntry) == null;
+            } else if (newEntry.isEmpty()) {
+                published = entries.remove(resID, oldEntry);
+            } else {
+                published = entries.replace(resID, oldEntry, newEntry);
+            }
+            if (published) {
+                if (newEntry.isEmpty()) {
+                    evictionPolicy.remove(resID);
+                } else {
+                    long oldSize = (oldEntry == null) ? 0 : oldEntry.getSize();
+                    evictionPolicy.addSize(resID, newEntry.getSize() - oldSize);
+                }
+            }
+            return published;
+        }
+    }
+
+    /**
+     * Register the calling thread as loader of a resource that is missing in
+     * cache, so concurrent requests for the same resource parse it only once.
+     * If another thread is already loading the resource, this method waits
+     * until that thread calls {@link #endLoad(ResourceLoad)}, but not longer
+     * than the load wait time of the settings. If the resource is not valid in
+     * cache after the load was finished (e.g. loading failed), the calling
+     * thread becomes the loader. If the load is still running after waiting
+     * (e.g. it is filled in background), the caller has to read the resource
+     * itself without adding it to the cache.
+     * 
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @return load of the caller if it has to load the resource and call
+     *         {@link #endLoad(ResourceLoad)} with it afterwards, null if
+     *         resource was loaded by another thread and is valid in cache or
+     *         if it is still loaded by another thread
+     */
+    public ResourceLoad beginLoad(String resID, EntityTag eTag) {
+        while (true) {
+            ResourceLoad load = new ResourceLoad(resID);
+            ResourceLoad runningLoad = loads.putIfAbsent(resID, load);
+            if (runningLoad == null) {
+                statistics.recordMiss(resID);
+                return load;
+            }
+
+            boolean released;
+            try {
+                released = runningLoad.released.await(pandaSettings.getCacheLoadWaitTime(),
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WebApplicationException(503);
+            }
+
+            if (!released || loads.get(resID) == runningLoad || isCached(resID, eTag)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Finish loading of a resource started with
+     * {@link #beginLoad(String, EntityTag)} and wake up waiting requests. Must
+     * be called even if loading failed. If the load was handed to the cache
+     * loader by {@link #fillResource(ResourceLoad, Callable)}, it is finished
+     * by the loader and waiting requests read the resource themselves. Loads
+     * of other callers are never finished by this call.
+     * 
+     * @param load load returned by {@link #beginLoad(String, EntityTag)}
+     */
+    public void endLoad(ResourceLoad load) {
+        if (load.inBackground) {
+            load.released.countDown();
+        } else {
+            finishLoad(load);
+        }
+    }
+
+    /**
+     * Wait until a load was finished.
+     * 
+     * @param load the load
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if load was finished
+     */
+    boolean awaitLoad(ResourceLoad load, long timeout) {
+        return await(load.done, timeout);
+    }
+
+    private static boolean await(CountDownLatch latch, long timeout) {
+        try {
+            return latch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(503);
+        }
+    }
+
+    /**
+     * Load a resource that is not valid in cache with a job which parses the
+     * whole resource. Concurrent requests for the resource wait until it was
+     * loaded by one of them, see {@link #beginLoad(String, EntityTag)}. The
+     * resource is parsed only once and the request is answered from the cache:
+     * if background fill is disabled, the job is executed in the calling
+     * thread, otherwise the caller waits for the job in the cache loader if
+     * the job has started. If the job is queued behind other jobs or does not
+     * finish within the fill wait time of the settings, the caller has to
+     * extract the requested values from the resource itself while the job
+     * finishes in background.
+     * 
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @param fillJob job that adds the whole resource to the cache
+     * @return true if resource is valid in cache, false if it is still filled
+     *         in background, loaded by another request or could not be cached
+     */
+    public boolean loadResource(String resID, EntityTag eTag, Callable<?> fillJob) {
+        ResourceLoad load = beginLoad(resID, eTag);
+        if (load == null) {
+            return isCached(resID, eTag);
+        }
         try {
-            valueCacheWriteLock.lock();
-            if (this.valueCache.containsKey(resID)) {
-                this.valueCache.removeChild(resID);
+            fillResource(load, fillJob);
+            if (load.inBackground && await(load.started, FILL_START_TIME)) {
+                awaitLoad(load, pandaSettings.getCacheFillWaitTime());
             }
-            if (this.eTags.containsKey(resID)) {
-                this.eTags.remove(resID);
+        } finally {
+            endLoad(load);
+        }
+        return isCached(resID, eTag);
+    }
+
+    /**
+     * Fill cache with a resource whose load was started with
+     * {@link #beginLoad(String, EntityTag)}. If background fill is enabled, the
+     * job is queued in the cache loader and the load is finished after the job
+     * was executed. Requests for the resource wait until the calling request
+     * ends its load, afterwards they read the resource themselves until the
+     * fill is finished. Otherwise the job is executed in the calling thread.
+     * Errors of the job are logged by the loader and not passed to the caller.
+     * After the load was finished, a snapshot of the resource is written to
+     * local disk in background.
+     * 
+     * @param load load returned by {@link #beginLoad(String, EntityTag)}
+     * @param job job that adds the resource to the cache
+     */
+    public void fillResource(final ResourceLoad load, final Callable<?> job) {
+        String resID = load.resID;
+        load.snapshot = true;
+        if (pandaSettings.getAsyncCacheFill()) {
+            load.inBackground = true;
+            try {
+                loader.submit(resID, new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        load.started.countDown();
+                        return job.call();
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        finishLoad(load);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                load.inBackground = false;
             }
+        }
+        loader.execute(resID, job);
+    }
+
+    /**
+     * Load a resource that is not valid in cache in the calling thread, even
+     * if background fill is enabled. Used to fill the cache before requests
+     * arrive, requests for the resource wait until it was loaded.
+     * 
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @param fillJob job that adds the whole resource to the cache
+     * @return true if resource is valid in cache
+     */
+    public boolean preloadResource(String resID, EntityTag eTag, Callable<?> fillJob) {
+        if (isCached(resID, eTag)) {
+            return true;
+        }
+        ResourceLoad load = beginLoad(resID, eTag);
+        if (load == null) {
+            return isCached(resID, eTag);
+        }
+        load.snapshot = true;
+        try {
+            loader.execute(resID, fillJob);
         } finally {
-            valueCacheWriteLock.unlock();
+            endLoad(load);
         }
+        return isCached(resID, eTag);
+    }
+
+    /**
+     * Remove load of a resource and wake up waiting requests. Loads which
+     * added the resource to the cache are recorded as fill, a snapshot of
+     * filled resources is written afterwards.
+     * 
+     * @param load the finished load
+     */
+    private void finishLoad(ResourceLoad load) {
+        if (loads.remove(load.resID, load)) {
+            boolean filled = entries.containsKey(load.resID);
+            if (filled) {
+                statistics.recordFill(load.resID, System.nanoTime() - load.startTime);
+            }
+            load.released.countDown();
+            load.done.countDown();
+            if (filled && load.snapshot) {
+                saveSnapshot(load.resID);
+            }
+        }
+    }
+
+    /**
+     * Check if values or document of a resource are valid in cache without
+     * removing invalid resources.
+     * 
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @return true if resource is cached with given EntityTag
+     */
+    private boolean isCached(String resID, EntityTag eTag) {
+        CacheEntry entry = entries.get(resID);
+        if (entry == null || entry.isEmpty()) {
+            return false;
+        }
+        EntityTag cacheTag = entry.getETag();
+        return (cacheTag == null) || cacheTag.equals(eTag);
     }
 
     /**
@@ -268,41 +1078,17 @@ public class ResourceCache {
      * @return validity of value resource as {@code boolean}
      */
     public boolean checkValidityResource(String resID, EntityTag eTag) {
-        boolean valid = false;
-        boolean inCache = false;
-
-        valueCacheReadLock.lock();
-        boolean locked = true;
-        try {
-            if (valueCache.containsKey(resID)) {
-                inCache = true;
-            } else {
-                inCache = false;
-            }
-
-            if (inCache) {
-                if (eTags.containsKey(resID)) {
-                    EntityTag cacheTag = eTags.get(resID);
-                    if (cacheTag == null)
-                        valid = true;
-                    else
-                        valid = eTag.equals(eTags.get(resID));
-
-                    if (!valid) {
-                        valueCacheReadLock.unlock();
-                        locked = false;
-                        removeResourceValues(resID);
-                    }
-                } else {
-                    // this should not happen
-                    valid = false;
-                }
-            }
-        } finally {
-            if (locked)
-                valueCacheReadLock.unlock();
+        CacheEntry entry = entries.get(resID);
+        if (entry == null || entry.getValueTree() == null) {
+            return false;
         }
 
+        EntityTag cacheTag = entry.getETag();
+        boolean valid = (cacheTag == null) || cacheTag.equals(eTag);
+        if (!valid) {
+            removeResourceValues(resID);
+            statistics.recordInvalidation(resID);
+        }
         return valid;
     }
 
@@ -318,39 +1104,16 @@ public class ResourceCache {
      * @return validity of document resource as {@code boolean}
      */
     public boolean checkValidityDocument(String resID, EntityTag eTag) {
-        boolean valid = false;
-        boolean inCache = false;
-
-        docCacheReadLock.lock();
-        boolean locked = true;
-        try {
-            if (docCache.containsKey(resID)) {
-                inCache = true;
-            } else {
-                inCache = false;
-            }
-
-            if (inCache) {
-                if (eTags.containsKey(resID)) {
-                    EntityTag cacheTag = eTags.get(resID);
-                    if (cacheTag == null)
-                        valid = true;
-                    else
-                        valid = eTag.equals(eTags.get(resID));
+        CacheEntry entry = entries.get(resID);
+        if (entry == null || entry.getDocument() == null) {
+            return false;
+        }
 
-                    if (!valid) {
-                        docCacheReadLock.unlock();
-                        locked = false;
-                        removeDocument(resID);
-                    }
-                } else {
-                    // this should not happen
-                    valid = false;
-                }
-            }
-        } finally {
-            if (locked)
-                docCacheReadLock.unlock();
+        EntityTag cacheTag = entry.getETag();
+        boolean valid = (cacheTag == null) || cacheTag.equals(eTag);
+        if (!valid) {
+            removeDocument(resID);
+            statistics.recordInvalidation(resID);
         }
         return valid;
     }
@@ -367,7 +1130,11 @@ public class ResourceCache {
      */
     private List<Value> traverseCacheTree(CacheTreeNode node, LinkedList<String> pathSegments,
             int currentSegment, String path, DataResourceType resourceType) {
-        List<Value> valList = new LinkedList<Value>();
+        if (node.getTable() != null) {
+            return traverseTable(node.getTable(), pathSegments, currentSegment, path);
+        }
+
+        List<Value> valList = new ArrayList<Value>();
         String pathSegment;
         if (currentSegment < pathSegments.size()) {
             pathSegment = pathSegments.get(currentSegment);
@@ -375,37 +1142,163 @@ public class ResourceCache {
             return valList;
         }
 
-        Set<String> keys = new HashSet<String>();
+        // numeric keys are selected by positions, other keys by name
+        int startPos = 0;
+        int endPos = 0;
+        Set<String> keys;
+        String[] token = pathSegment.split(pandaSettings.getRangeDelimiterChar());
 
         if (pathSegment.equals("*")) {
-            keys = node.getKeySet();
-        } else if (pathSegment.split(pandaSettings.getRangeDelimiterChar()).length == 2) {
-            String[] token = pathSegment.split(pandaSettings.getRangeDelimiterChar());
-            keys = node.getKeySubset(token[0], token[1]);
+            endPos = node.getIndexCount();
+            keys = node.getNameSet();
+        } else if (token.length == 2) {
+            int startIndex = CacheTreeNode.toIndex(token[0]);
+            int endIndex = CacheTreeNode.toIndex(token[1]);
+            if (startIndex >= 0 && endIndex >= 0) {
+                startPos = node.getStartPosition(startIndex);
+                endPos = node.getEndPosition(endIndex);
+                keys = Collections.emptySet();
+            } else {
+                // contains numeric keys inside the range as well
+                keys = node.getKeySubset(token[0], token[1]);
+            }
         } else {
-            keys = node.getKeySubset(pathSegment, pathSegment);
+            int index = CacheTreeNode.toIndex(pathSegment);
+            if (index >= 0) {
+                startPos = node.getStartPosition(index);
+                endPos = node.getEndPosition(index);
+                keys = Collections.emptySet();
+            } else {
+                keys = node.getKeySubset(pathSegment, pathSegment);
+            }
         }
 
+        for (int pos = startPos; pos < endPos; pos++) {
+            addChildValues(valList, String.valueOf(node.getIndex(pos)),
+                    node.getIndexedChild(pos), pathSegments, currentSegment, path, resourceType);
+        }
         for (String key : keys) {
-            String newPath;
-            Object obj = node.getChild(key);
-            if (obj instanceof Value) {
-                newPath = handleOutputURI(path + "/" + key, resourceType);
-                Value val = (Value) obj;
-                val.setSubURI(newPath);
-                valList.add(val);
-            } else if (obj instanceof CacheTreeNode) {
-                newPath = path + "/" + key;
-                valList.addAll(traverseCacheTree((CacheTreeNode) obj, pathSegments,
-                        currentSegment + 1, newPath, resourceType));
-            } else {
-                throw new NotSupportedException("Unknown node type in CacheTree!");
+            addChildValues(valList, key, node.getChild(key), pathSegments, currentSegment, path,
+                    resourceType);
+        }
+
+        return valList;
+    }
+
+    /**
+     * Add values of a child found while traversing the cache tree.
+     * 
+     * @param valList list of found values
+     * @param key key of child
+     * @param obj child node or leaf
+     * @param pathSegments all path segments of request URI
+     * @param currentSegment index of current path segment
+     * @param path path to parent node
+     * @param resourceType type of resource
+     */
+    private void addChildValues(List<Value> valList, String key, Object obj,
+            LinkedList<String> pathSegments, int currentSegment, String path,
+            DataResourceType resourceType) {
+        if (obj instanceof Value) {
+            String newPath = handleOutputURI(path + "/" + key, resourceType);
+            // cached values are shared, return a new value with subURI
+            Value cachedVal = (Value) obj;
+            Value val = new Value();
+            val.setValue(cachedVal.getValue());
+            val.setType(cachedVal.getType());
+            val.setSubURI(newPath);
+            valList.add(val);
+        } else if (obj instanceof CacheTreeNode) {
+            valList.addAll(traverseCacheTree((CacheTreeNode) obj, pathSegments,
+                    currentSegment + 1, path + "/" + key, resourceType));
+        } else {
+            throw new NotSupportedException("Unknown node type in CacheTree!");
+        }
+    }
+
+    /**
+     * Get requested cells from a table of a tabular resource.
+     * 
+     * @param table table holding row and column levels
+     * @param pathSegments all path segments of request URI
+     * @param currentSegment index of row path segment
+     * @param path path to table
+     * @return list of values gathered from table as {@code List<Value>}
+     */
+    private List<Value> traverseTable(TableCacheNode table, LinkedList<String> pathSegments,
+            int currentSegment, String path) {
+        List<Value> valList = new ArrayList<Value>();
+        if (currentSegment + 1 >= pathSegments.size()) {
+            return valList;
+        }
+
+        String rowSegment = pathSegments.get(currentSegment);
+        String colSegment = pathSegments.get(currentSegment + 1);
+        int rowStart, rowEnd, colStart, colEnd;
+        String[] token;
+
+        if (rowSegment.equals("*")) {
+            rowStart = 0;
+            rowEnd = table.getRowCount() - 1;
+        } else if ((token = rowSegment.split(pandaSettings.getRangeDelimiterChar())).length == 2) {
+            rowStart = Integer.parseInt(token[0]) - 1;
+            rowEnd = Integer.parseInt(token[1]) - 1;
+        } else {
+            rowStart = rowEnd = Integer.parseInt(rowSegment) - 1;
+        }
+
+        if (colSegment.equals("*")) {
+            colStart = 0;
+            colEnd = table.getColumnCount() - 1;
+        } else if ((token = colSegment.split(pandaSettings.getRangeDelimiterChar())).length == 2) {
+            colStart = Integer.parseInt(token[0]);
+            colEnd = Integer.parseInt(token[1]);
+        } else {
+            colStart = colEnd = Integer.parseInt(colSegment);
+        }
+
+        rowStart = Math.max(rowStart, 0);
+        rowEnd = Math.min(rowEnd, table.getRowCount() - 1);
+        colStart = Math.max(colStart, 0);
+        colEnd = Math.min(colEnd, table.getColumnCount() - 1);
+        if (colStart > colEnd) {
+            return valList;
+        }
+
+        // subURI is path to table followed by cell reference
+        String prefix = path.isEmpty() ? "" : path.substring(1) + "/";
+        String[] colRefs = new String[colEnd - colStart + 1];
+        for (int col = colStart; col <= colEnd; col++) {
+            colRefs[col - colStart] = prefix + ResourceHelper.convertColNumToColRef(col);
+        }
+
+        for (int row = rowStart; row <= rowEnd; row++) {
+            for (int col = colStart; col <= colEnd; col++) {
+                if (table.containsCell(row, col)) {
+                    Value val = new Value();
+                    val.setValue(table.getValue(row, col));
+                    val.setType(table.getType(row, col));
+                    val.setSubURI(colRefs[col - colStart] + (row + 1));
+                    valList.add(val);
+                }
             }
         }
 
         return valList;
     }
 
+    /**
+     * Returns true if rows and columns of resource type are stored in a
+     * {@link TableCacheNode}.
+     * 
+     * @param resourceType type of resource
+     * @return true for tabular resources
+     */
+    private boolean isTabular(DataResourceType resourceType) {
+        return resourceType == DataResourceType.XLS || resourceType == DataResourceType.XLSX
+                || resourceType == DataResourceType.CSV;
+    }
+
     /**
      * Converts URI in a form adjusted for CacheTree. CacheTree can handle only
      * one information per path segment: references like "A1" must be split into
@@ -487,25 +1380,32 @@ public class ResourceCache {
             }
         }
 
-        // combine reference of column and row to cell reference (e.g. "A1")
+        // combine reference of column and row to cell reference (e.g. "A1"),
+        // columns are stored by their index
         if (rowRef >= 0) {
             colRef = rowRef + 1;
-            pathSegments.set(rowRef, pathSegments.get(colRef) + pathSegments.get(rowRef));
+            int col = Integer.parseInt(pathSegments.get(colRef));
+            pathSegments.set(rowRef, ResourceHelper.convertColNumToColRef(col)
+                    + pathSegments.get(rowRef));
             pathSegments.remove(colRef);
         }
 
         // concatenate path segments to String
-        String retPath = new String();
+        StringBuilder retPath = new StringBuilder(path.length());
         for (String segment : pathSegments) {
-            retPath = retPath + segment + "/";
+            if (retPath.length() > 0) {
+                retPath.append('/');
+            }
+            retPath.append(segment);
         }
-        retPath = retPath.substring(0, retPath.length() - 1);
-        return retPath;
+        return retPath.toString();
     }
 
     /**
      * Handle table/cell reference and return list containing a separate row and
-     * column path segment.
+     * column path segment. Rows are numbered from 1 as in the reference,
+     * columns are given by their index starting at 0 (e.g. "B2" is split into
+     * "2" and "1").
      * 
      * @param tableRef reference with pattern
      *            (\\*|[A-Z][A-Z]*[1-9][0-9]*|\\*[1-9][0-9] *|[A-Z][A-
@@ -516,8 +1416,8 @@ public class ResourceCache {
         List<String> segments = new LinkedList<String>();
         TableArea tableArea = ResourceHelper.evalTableReference(tableRef);
         String colStart, colEnd, rowStart, rowEnd;
-        colStart = ResourceHelper.convertColNumToColRef(tableArea.getColStart());
-        colEnd = ResourceHelper.convertColNumToColRef(tableArea.getColEnd());
+        colStart = String.valueOf(tableArea.getColStart());
+        colEnd = String.valueOf(tableArea.getColEnd());
         rowStart = String.valueOf(tableArea.getRowStart() + 1);
         rowEnd = String.valueOf(tableArea.getRowEnd() + 1);
 
@@ -562,7 +1462,7 @@ public class ResourceCache {
      * Get start node for cache tree by traversing baseURI.
      * 
      * @param pathSegments path segments of request URI
-     * @param node current node
+     * @param node head of resource subtree
      * @param baseURI current determined baseURI
      * @param resourceType type of resource
      * @return start node for cache tree traversing as {@code CacheTreeNode}
@@ -575,8 +1475,12 @@ public class ResourceCache {
         int minBaseUriSegments = getMinBaseUriPathSegments(resourceType);
         int startSubUri = pathSegments.size() - getMinSubUriPathSegments(resourceType);
 
+        // first segment is resource ID, head of resource subtree is given
         Iterator<String> iter = pathSegments.iterator();
-        for (int count = 0; iter.hasNext(); count++) {
+        baseURI.append(iter.next() + "/");
+        iter.remove();
+
+        for (int count = 1; iter.hasNext(); count++) {
             String pathSegment = iter.next();
 
             // get next child node if:
@@ -588,8 +1492,9 @@ public class ResourceCache {
                     && pathSegment.split(pandaSettings.getRangeDelimiterChar()).length < 2 && count < startSubUri))
                     || count < minBaseUriSegments) {
 
+                // resource is cached completely, so the reference doesn't exist
                 if (!currentNode.containsKey(pathSegment)) {
-                    throw new WebApplicationException(404);
+                    throw new ReferenceNotFoundException();
                 }
 
                 Object obj = currentNode.getChild(pathSegment);
@@ -652,4 +1557,28 @@ public class ResourceCache {
             return 1;
         }
     }
+
+    /**
+     * Load of a resource started by {@link ResourceCache#beginLoad}. Identifies
+     * the loading caller when the load is finished.
+     */
+    public static final class ResourceLoad {
+        private final String         resID;
+        // released when waiting requests may continue
+        private final CountDownLatch released  = new CountDownLatch(1);
+        // released when the load is finished
+        private final CountDownLatch done      = new CountDownLatch(1);
+        // released when the background fill job starts
+        private final CountDownLatch started   = new CountDownLatch(1);
+        // start of load in nanoseconds
+        private final long           startTime = System.nanoTime();
+        // true if load is finished by the cache loader
+        private volatile boolean     inBackground;
+        // true if a snapshot is written when the load is finished
+        private volatile boolean     snapshot;
+
+        private ResourceLoad(String resID) {
+            this.resID = resID;
+        }
+    }
 }
@@ -0,0 +1,400 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.EntityTag;
+
+import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
+
+/**
+ * Keeps the current version of local file resources in memory, so requests do
+ * not have to stat the file to build its ETag. The directories of the files
+ * are observed by a {@link WatchService}, changed files get a new version and
+ * their values and documents are removed from the {@link ResourceCache}.
+ * Directories on file systems without change notifications are polled in the
+ * configured interval instead.
+ * 
+ * @author Christoph Schrder
+ */
+public class ResourceWatcher {
+
+    // file store types which do not report changes made by other hosts
+    private static final Set<String>                         NETWORK_FILE_STORES = new HashSet<String>(
+                                                                                         Arrays.asList("nfs", "nfs4", "cifs", "smbfs", "smb2", "fuse.sshfs", "afs"));
+
+    private final Logger                                     logger              = Logger.getLogger(ResourceWatcher.class.getName());
+
+    private final PandaSettings                              pandaSettings;
+
+    // current version per resource ID
+    private final ConcurrentHashMap<String, ResourceVersion> versions            = new ConcurrentHashMap<String, ResourceVersion>();
+    // resource IDs per absolute file path
+    private final ConcurrentHashMap<Path, Set<String>>       resources           = new ConcurrentHashMap<Path, Set<String>>();
+    // directories observed by the watch service
+    private final ConcurrentHashMap<WatchKey, Path>          watchedDirs         = new ConcurrentHashMap<WatchKey, Path>();
+    // directories checked in poll interval
+    private final Set<Path>                                  polledDirs          = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+    private final Set<Path>                                  knownDirs           = new HashSet<Path>();
+
+    private final AtomicLong                                 invalidationCount   = new AtomicLong();
+
+    private WatchService                                     watchService;
+    private Thread                                           watchThread;
+
+    public ResourceWatcher(PandaSettings pandaSettings) {
+        this.pandaSettings = pandaSettings;
+    }
+
+    /**
+     * Returns the current version of a local file resource. The file is
+     * checked only on first access, later changes are detected by the watch
+     * service or polling.
+     * 
+     * @param resID unique ID of resource
+     * @return version of resource or null if resource is not a local file
+     */
+    public ResourceVersion getVersion(String resID) {
+        ResourceVersion version = versions.get(resID);
+        if (version != null) {
+            return version;
+        }
+
+        ResourceMap resourceMap = pandaSettings.getResourceMap();
+        ResourceInfo resInfo = (resourceMap == null) ? null : resourceMap.getMap().get(resID);
+        if (resInfo == null || resInfo.getFilePath() == null) {
+            return null;
+        }
+
+        // register file before reading its version, so no change gets lost
+        Path file = Paths.get(resInfo.getFilePath()).toAbsolutePath().normalize();
+        watchFile(resID, file);
+        version = new ResourceVersion(resID, file);
+        ResourceVersion current = versions.putIfAbsent(resID, version);
+        return (current == null) ? version : current;
+    }
+
+    /**
+     * Forget all versions and stop watching their directories, e.g. after the
+     * resource map was changed.
+     */
+    public synchronized void clear() {
+        for (WatchKey key : watchedDirs.keySet()) {
+            key.cancel();
+        }
+        watchedDirs.clear();
+        polledDirs.clear();
+        knownDirs.clear();
+        resources.clear();
+        versions.clear();
+    }
+
+    /**
+     * Stop watch thread and close watch service.
+     */
+    public synchronized void shutdown() {
+        clear();
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Closing watch service failed", e);
+            }
+            watchService = null;
+        }
+    }
+
+    /**
+     * Returns number of resources which were removed from the cache because
+     * their file was changed.
+     * 
+     * @return number of invalidations
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    /**
+     * Returns number of directories observed by the watch service.
+     * 
+     * @return number of directories
+     */
+    public int getWatchedDirCount() {
+        return watchedDirs.size();
+    }
+
+    /**
+     * Returns number of directories checked in poll interval.
+     * 
+     * @return number of directories
+     */
+    public int getPolledDirCount() {
+        return polledDirs.size();
+    }
+
+    /**
+     * Track file of a resource and watch its directory.
+     * 
+     * @param resID unique ID of resource
+     * @param file absolute path to file
+     */
+    private void watchFile(String resID, Path file) {
+        Set<String> resIDs = resources.get(file);
+        if (resIDs == null) {
+            Set<String> newIDs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            resIDs = resources.putIfAbsent(file, newIDs);
+            if (resIDs == null) {
+                resIDs = newIDs;
+            }
+        }
+        resIDs.add(resID);
+        if (file.getParent() != null) {
+            watchDirectory(file.getParent());
+        }
+    }
+
+    /**
+     * Register directory at the watch service. Directories on network file
+     * systems or which can not be registered are polled instead.
+     * 
+     * @param dir absolute path to directory
+     */
+    private synchronized void watchDirectory(Path dir) {
+        if (!knownDirs.add(dir)) {
+            return;
+        }
+
+        boolean polling = pandaSettings.getResourcePolling() || isNetworkFileStore(dir);
+        if (!polling) {
+            try {
+                if (watchService == null) {
+                    watchService = dir.getFileSystem().newWatchService();
+                }
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE,
+                        ENTRY_MODIFY);
+                watchedDirs.put(key, dir);
+            } catch (IOException e) {
+                logger.log(Level.INFO, "Watching " + dir + " failed, polling it instead", e);
+                polling = true;
+            } catch (UnsupportedOperationException e) {
+                logger.log(Level.INFO, "Watching " + dir + " not supported, polling it instead");
+                polling = true;
+            }
+        }
+        if (polling) {
+            polledDirs.add(dir);
+        }
+
+        if (watchThread == null) {
+            watchThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    watchLoop();
+                }
+            }, "panda-resource-watcher");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        }
+    }
+
+    /**
+     * Check if directory is located on a network file system. Those file
+     * systems do not notify about changes made by other hosts.
+     * 
+     * @param dir absolute path to directory
+     * @return true if directory is on a network file system
+     */
+    private boolean isNetworkFileStore(Path dir) {
+        try {
+            return NETWORK_FILE_STORES.contains(Files.getFileStore(dir).type().toLowerCase());
+        } catch (IOException e) {
+            // directory is missing or not accessible, so it can't be watched
+            return true;
+        }
+    }
+
+    private synchronized WatchService getWatchService() {
+        return watchService;
+    }
+
+    /**
+     * Wait for events of the watch service and check polled directories in
+     * the configured interval until the thread is interrupted.
+     */
+    private void watchLoop() {
+        long lastPoll = System.currentTimeMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            long interval = TimeUnit.SECONDS.toMillis(pandaSettings.getResourcePollInterval());
+            long timeout = Math.max(1, lastPoll + interval - System.currentTimeMillis());
+            try {
+                WatchService service = getWatchService();
+                if (service != null) {
+                    WatchKey key = service.poll(timeout, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        processEvents(key);
+                    }
+                } else {
+                    Thread.sleep(timeout);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            if (System.currentTimeMillis() - lastPoll >= interval) {
+                for (Path dir : polledDirs) {
+                    refreshDirectory(dir);
+                }
+                lastPoll = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Refresh versions of all files changed in a watched directory.
+     * 
+     * @param key signalled key of the watch service
+     */
+    private void processEvents(WatchKey key) {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null) {
+                continue;
+            }
+            if (event.kind() == OVERFLOW) {
+                // events were lost, check every file of the directory
+                refreshDirectory(dir);
+            } else {
+                refreshFile(dir.resolve((Path) event.context()));
+            }
+        }
+
+        // directory was deleted or is not accessible anymore
+        if (!key.reset() && dir != null) {
+            watchedDirs.remove(key);
+            polledDirs.add(dir);
+            refreshDirectory(dir);
+        }
+    }
+
+    /**
+     * Refresh versions of all tracked files of a directory.
+     * 
+     * @param dir absolute path to directory
+     */
+    private void refreshDirectory(Path dir) {
+        for (Path file : resources.keySet()) {
+            if (dir.equals(file.getParent())) {
+                refreshFile(file);
+            }
+        }
+    }
+
+    /**
+     * Read new version of a file and remove resources of changed files from
+     * the cache.
+     * 
+     * @param file absolute path to file
+     */
+    private void refreshFile(Path file) {
+        Set<String> resIDs = resources.get(file);
+        if (resIDs == null) {
+            return;
+        }
+
+        ResourceCache cache = pandaSettings.getResourceCache();
+        for (String resID : resIDs) {
+            ResourceVersion version = new ResourceVersion(resID, file);
+            ResourceVersion previous = versions.get(resID);
+            if (previous != null && !previous.getETag().equals(version.getETag())) {
+                cache.invalidate(resID);
+                invalidationCount.incrementAndGet();
+            }
+            versions.put(resID, version);
+        }
+    }
+
+    /**
+     * Version of a local file resource at the time it was read.
+     */
+    public static class ResourceVersion {
+        private final boolean   exists;
+        private final long      lastModified;
+        private final EntityTag eTag;
+
+        /**
+         * @param resID unique ID of resource
+         * @param file path to file of resource
+         */
+        public ResourceVersion(String resID, Path file) {
+            File f = file.toFile();
+            this.exists = f.exists();
+            this.lastModified = f.lastModified();
+            this.eTag = new EntityTag(resID + "_" + lastModified, false);
+        }
+
+        public boolean exists() {
+            return this.exists;
+        }
+
+        public Date getLastModified() {
+            return new Date(this.lastModified);
+        }
+
+        public EntityTag getETag() {
+            return this.eTag;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Cache of encoded responses, so repeated requests for the same values are
+ * answered without marshalling them again. Responses are stored per request
+ * URI, accepted media types and EntityTag of the resource, a changed resource
+ * gets new keys. The cache has its own memory budget, least recently used
+ * responses are evicted first. All responses of a resource are removed when
+ * the resource is removed from the {@link ResourceCache}.
+ * 
+ * @author Christoph Schrder
+ */
+public class ResponseCache extends BudgetedCache<ResponseCache.CachedResponse> {
+
+    // share of memory budget a single response may use
+    private static final double MAX_RESPONSE_RATIO = 0.1;
+
+    /**
+     * @param memoryLimit memory budget in bytes
+     */
+    public ResponseCache(long memoryLimit) {
+        super(memoryLimit, MAX_RESPONSE_RATIO);
+    }
+
+    /**
+     * Create key of a response.
+     * 
+     * @param uri request URI with query
+     * @param accept accepted media types of request
+     * @param eTag EntityTag of resource
+     * @return key of response
+     */
+    public static String createKey(String uri, String accept, EntityTag eTag) {
+        return uri + "\n" + accept + "\n" + eTag.getValue();
+    }
+
+    /**
+     * Get cached response.
+     * 
+     * @param key key of response
+     * @return response or null if not cached
+     */
+    public CachedResponse get(String key) {
+        // keys contain the EntityTag of the resource
+        return get(key, null);
+    }
+
+    /**
+     * Add encoded response to cache. Responses that exceed a tenth of the
+     * memory budget are not cached.
+     * 
+     * @param resID unique ID of resource
+     * @param key key of response
+     * @param entity encoded response entity
+     * @param mediaType media type of entity
+     */
+    public void put(String resID, String key, byte[] entity, MediaType mediaType) {
+        put(resID, key, null, new CachedResponse(resID, entity, mediaType),
+                CacheSizeEstimator.estimateString(key)
+                        + CacheSizeEstimator.estimateDocument(entity));
+    }
+
+    /**
+     * Encoded response entity with its media type.
+     */
+    public static class CachedResponse {
+        private final String    resID;
+        private final byte[]    entity;
+        private final MediaType mediaType;
+
+        public CachedResponse(String resID, byte[] entity, MediaType mediaType) {
+            this.resID = resID;
+            this.entity = entity;
+            this.mediaType = mediaType;
+        }
+
+        public String getResID() {
+            return this.resID;
+        }
+
+        public byte[] getEntity() {
+            return this.entity;
+        }
+
+        public MediaType getMediaType() {
+            return this.mediaType;
+        }
+    }
+}
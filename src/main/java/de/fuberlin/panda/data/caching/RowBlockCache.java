@@ -0,0 +1,94 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * Partial cache for huge table resources like CSV files. Instead of filling
+ * the value cache with the whole resource, the records of a resource are
+ * split into blocks of {@link #BLOCK_ROWS} rows that are loaded and cached
+ * independently when a request touches them. Blocks are only valid for the
+ * EntityTag they were read with. The cache has its own memory budget, least
+ * recently used blocks are evicted first, so memory usage follows the rows
+ * that are actually requested and not the size of the files.
+ * 
+ * @author Christoph Schrder
+ */
+public class RowBlockCache extends BudgetedCache<String[][]> {
+
+    // number of rows per block
+    public static final int     BLOCK_ROWS      = 4096;
+    // share of memory budget a single block may use
+    private static final double MAX_BLOCK_RATIO = 0.5;
+
+    /**
+     * @param memoryLimit memory budget in bytes
+     */
+    public RowBlockCache(long memoryLimit) {
+        super(memoryLimit, MAX_BLOCK_RATIO);
+    }
+
+    /**
+     * Get rows of a block.
+     * 
+     * @param resID unique ID of resource
+     * @param block index of block, block n contains rows n * BLOCK_ROWS to
+     *            (n + 1) * BLOCK_ROWS - 1
+     * @param eTag EntityTag of current version of resource
+     * @return cells of each row or null if block is not cached for this
+     *         version, blocks at the end of the resource contain less rows
+     */
+    public String[][] get(String resID, long block, EntityTag eTag) {
+        return get(createKey(resID, block), eTag);
+    }
+
+    /**
+     * Add rows of a block, a block of an older version of the resource is
+     * replaced. Blocks that exceed half of the memory budget are not cached.
+     * 
+     * @param resID unique ID of resource
+     * @param block index of block
+     * @param eTag EntityTag of resource version the block was read from
+     * @param rows cells of each row
+     */
+    public void put(String resID, long block, EntityTag eTag, String[][] rows) {
+        String key = createKey(resID, block);
+        put(resID, key, eTag, rows, CacheSizeEstimator.estimateString(key)
+                + CacheSizeEstimator.estimateRowBlock(rows));
+    }
+
+    /**
+     * Returns number of cached blocks.
+     * 
+     * @return number of blocks
+     */
+    public int getBlockCount() {
+        return getEntryCount();
+    }
+
+    private static String createKey(String resID, long block) {
+        return resID + "\n" + block;
+    }
+}
@@ -0,0 +1,210 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Segmented LRU eviction policy for whole resources of the cache. New
+ * resources enter the probation segment, resources that are requested again
+ * are promoted to the protected segment. Victims are taken from the least
+ * recently used end of the probation segment first, so resources that were
+ * requested only once will be evicted before frequently used resources.
+ *
+ * @author Christoph Schrder
+ */
+public class SegmentedLruPolicy {
+
+    // share of memory budget reserved for protected segment
+    private static final double                  PROTECTED_RATIO = 0.8;
+
+    // estimated size in bytes of each resource
+    private final HashMap<String, Long>          sizes           = new HashMap<String, Long>();
+    // resource IDs in order of last access, value is not used
+    private final LinkedHashMap<String, Boolean> probation       = new LinkedHashMap<String, Boolean>(
+                                                                         16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> protectedSeg    = new LinkedHashMap<String, Boolean>(
+                                                                         16, 0.75f, true);
+
+    private long                                 probationSize   = 0;
+    private long                                 protectedSize   = 0;
+    private long                                 capacity;
+
+    /**
+     * @param capacity memory budget of cache in bytes
+     */
+    public SegmentedLruPolicy(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Set memory budget of cache.
+     *
+     * @param capacity memory budget in bytes
+     */
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+        demoteProtected();
+    }
+
+    /**
+     * Add estimated bytes to a resource. Unknown resources are added to the
+     * probation segment.
+     *
+     * @param resID unique ID of resource
+     * @param bytes estimated size of added data in bytes
+     */
+    public synchronized void addSize(String resID, long bytes) {
+        Long size = sizes.get(resID);
+        if (size == null) {
+            size = 0L;
+            probation.put(resID, Boolean.TRUE);
+        }
+        sizes.put(resID, size + bytes);
+
+        if (protectedSeg.containsKey(resID)) {
+            protectedSize += bytes;
+            demoteProtected();
+        } else {
+            probationSize += bytes;
+        }
+    }
+
+    /**
+     * Set estimated size of a resource, e.g. after a part of the resource was
+     * removed. Unknown resources are added to the probation segment.
+     *
+     * @param resID unique ID of resource
+     * @param bytes estimated size of resource in bytes
+     */
+    public synchronized void setSize(String resID, long bytes) {
+        Long size = sizes.get(resID);
+        addSize(resID, bytes - ((size == null) ? 0 : size));
+    }
+
+    /**
+     * Record a cache hit of a resource. Resources in probation segment will be
+     * promoted to protected segment.
+     *
+     * @param resID unique ID of resource
+     */
+    public synchronized void recordAccess(String resID) {
+        if (protectedSeg.containsKey(resID)) {
+            // get() moves entry to most recently used position
+            protectedSeg.get(resID);
+        } else if (probation.containsKey(resID)) {
+            long size = sizes.get(resID);
+            probation.remove(resID);
+            probationSize -= size;
+            protectedSeg.put(resID, Boolean.TRUE);
+            protectedSize += size;
+            demoteProtected();
+        }
+    }
+
+    /**
+     * Remove resource from policy.
+     *
+     * @param resID unique ID of resource
+     * @return estimated size of removed resource in bytes
+     */
+    public synchronized long remove(String resID) {
+        Long size = sizes.remove(resID);
+        if (size == null) {
+            return 0;
+        }
+        if (probation.remove(resID) != null) {
+            probationSize -= size;
+        } else if (protectedSeg.remove(resID) != null) {
+            protectedSize -= size;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the next resource that should be evicted if the cache exceeds
+     * its budget.
+     *
+     * @return resource ID of victim or null if cache is within budget
+     */
+    public synchronized String getVictim() {
+        if (probationSize + protectedSize <= capacity) {
+            return null;
+        }
+        if (!probation.isEmpty()) {
+            return probation.keySet().iterator().next();
+        } else if (!protectedSeg.isEmpty()) {
+            return protectedSeg.keySet().iterator().next();
+        }
+        return null;
+    }
+
+    /**
+     * Returns estimated size of a single resource.
+     *
+     * @param resID unique ID of resource
+     * @return size in bytes, 0 if resource is unknown
+     */
+    public synchronized long getSize(String resID) {
+        Long size = sizes.get(resID);
+        return (size == null) ? 0 : size;
+    }
+
+    /**
+     * Returns estimated size of all resources.
+     *
+     * @return size in bytes
+     */
+    public synchronized long getSize() {
+        return probationSize + protectedSize;
+    }
+
+    /**
+     * Returns number of tracked resources.
+     *
+     * @return number of resources
+     */
+    public synchronized int getResourceCount() {
+        return sizes.size();
+    }
+
+    /**
+     * Move least recently used resources of protected segment back to
+     * probation segment while protected segment exceeds its share.
+     */
+    private void demoteProtected() {
+        long maxProtected = (long) (capacity * PROTECTED_RATIO);
+        Iterator<String> iter = protectedSeg.keySet().iterator();
+        while (protectedSize > maxProtected && iter.hasNext()) {
+            String resID = iter.next();
+            iter.remove();
+            long size = sizes.get(resID);
+            protectedSize -= size;
+            probation.put(resID, Boolean.TRUE);
+            probationSize += size;
+        }
+    }
+}
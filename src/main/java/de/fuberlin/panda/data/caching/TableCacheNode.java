@@ -0,0 +1,442 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Column oriented store for cells of a table (CSV file, spreadsheet). Cells
+ * are addressed by row and column index starting at 0. Every column holds
+ * blocks of dictionary IDs of cell values and of type codes, values and type
+ * strings are stored only once per table. Lookups of cells, rows, columns and
+ * ranges are done by array indices. Copies of a table share blocks of columns
+ * and of the dictionary with the original table until they are modified (copy
+ * on write), so adding a cell to a copy only copies the touched block.
+ * 
+ * @author Christoph Schrder
+ */
+public class TableCacheNode {
+    // dictionary ID of empty cells
+    private static final int         EMPTY        = -1;
+    private static final int         INITIAL_ROWS = 16;
+    // number of rows per block of a column and values per block of dictionary
+    private static final int         BLOCK_SIZE   = 1024;
+
+    // blocks of columns, null for columns and blocks without cells
+    private int[][][]                valueIDs     = new int[0][][];
+    private byte[][][]               typeCodes    = new byte[0][][];
+    // false for columns whose list of blocks is shared with the table this
+    // table was copied from
+    private boolean[]                ownColumns   = new boolean[0];
+    // false for blocks shared with the original table, only valid for own
+    // columns
+    private boolean[][]              ownBlocks    = new boolean[0][];
+    private int                      rowCount     = 0;
+
+    // values of dictionary in blocks, full blocks are shared between copies
+    private Object[][]               dictionary   = new Object[0][];
+    private int                      dictionarySize;
+    // false if the last block is shared with the original table
+    private boolean                  ownLastBlock = true;
+    private final ArrayList<String>  types;
+    // index of dictionary, only needed while adding cells
+    private HashMap<Object, Integer> dictionaryIndex;
+    // values added without index since table was copied
+    private int                      unindexedValues;
+
+    public TableCacheNode() {
+        this.types = new ArrayList<String>();
+    }
+
+    /**
+     * Creates a copy of a table which can be modified without changing the
+     * original table. Blocks of columns and of the dictionary are copied on
+     * first modification.
+     * 
+     * @param table table to copy
+     */
+    public TableCacheNode(TableCacheNode table) {
+        this.valueIDs = table.valueIDs.clone();
+        this.typeCodes = table.typeCodes.clone();
+        this.ownColumns = new boolean[valueIDs.length];
+        this.ownBlocks = new boolean[valueIDs.length][];
+        this.rowCount = table.rowCount;
+        this.dictionary = table.dictionary.clone();
+        this.dictionarySize = table.dictionarySize;
+        this.ownLastBlock = false;
+        this.types = new ArrayList<String>(table.types);
+    }
+
+    /**
+     * Add a cell to table. Existing cells will not be replaced.
+     * 
+     * @param row index of row
+     * @param col index of column
+     * @param value value of cell
+     * @param type type of value
+     * @return estimated size of added data in bytes, 0 if cell already exists
+     */
+    public long addCell(int row, int col, Object value, String type) {
+        if (row < 0 || col < 0) {
+            throw new IllegalArgumentException("Row and column index must not be negative.");
+        }
+        if (containsCell(row, col)) {
+            return 0;
+        }
+        ensureCapacity(row, col);
+
+        long size = CacheSizeEstimator.estimateTableCell();
+        // index is built once enough values were added to pay for it, values
+        // added before may be stored twice in the dictionary
+        if (dictionaryIndex == null && unindexedValues >= dictionarySize / 8) {
+            buildDictionaryIndex();
+        }
+        Integer id = (dictionaryIndex == null) ? null : dictionaryIndex.get(value);
+        if (id == null) {
+            id = addDictionaryValue(value);
+            if (dictionaryIndex == null) {
+                unindexedValues++;
+            } else {
+                dictionaryIndex.put(value, id);
+            }
+            size += CacheSizeEstimator.estimateTableValue(value);
+        }
+
+        int typeCode = types.indexOf(type);
+        if (typeCode == -1) {
+            if (types.size() > 255) {
+                throw new IllegalStateException("Too many different types in table.");
+            }
+            typeCode = types.size();
+            types.add(type);
+        }
+
+        valueIDs[col][row / BLOCK_SIZE][row % BLOCK_SIZE] = id;
+        typeCodes[col][row / BLOCK_SIZE][row % BLOCK_SIZE] = (byte) typeCode;
+        rowCount = Math.max(rowCount, row + 1);
+        return size;
+    }
+
+    /**
+     * Returns true if table has a cell at given position.
+     * 
+     * @param row index of row
+     * @param col index of column
+     * @return true if cell exists
+     */
+    public boolean containsCell(int row, int col) {
+        return getValueID(row, col) != EMPTY;
+    }
+
+    /**
+     * Returns value of a cell.
+     * 
+     * @param row index of row
+     * @param col index of column
+     * @return value of cell or null if cell does not exist
+     */
+    public Object getValue(int row, int col) {
+        if (!containsCell(row, col)) {
+            return null;
+        }
+        int id = valueIDs[col][row / BLOCK_SIZE][row % BLOCK_SIZE];
+        return dictionary[id / BLOCK_SIZE][id % BLOCK_SIZE];
+    }
+
+    /**
+     * Returns type of a cell.
+     * 
+     * @param row index of row
+     * @param col index of column
+     * @return type of cell value or null if cell does not exist
+     */
+    public String getType(int row, int col) {
+        if (!containsCell(row, col)) {
+            return null;
+        }
+        return types.get(typeCodes[col][row / BLOCK_SIZE][row % BLOCK_SIZE] & 0xFF);
+    }
+
+    /**
+     * Returns number of rows, including empty rows before last row.
+     * 
+     * @return number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns number of columns, including empty columns before last column.
+     * 
+     * @return number of columns
+     */
+    public int getColumnCount() {
+        return valueIDs.length;
+    }
+
+    /**
+     * Release memory that is only needed while adding cells. Should be called
+     * before table is published in cache.
+     */
+    public void trimToSize() {
+        dictionaryIndex = null;
+        unindexedValues = 0;
+        for (int col = 0; col < valueIDs.length; col++) {
+            if (!ownColumns[col]) {
+                continue;
+            }
+            for (int block = 0; block < valueIDs[col].length; block++) {
+                // shared blocks were trimmed before
+                int rows = Math.min(BLOCK_SIZE, rowCount - block * BLOCK_SIZE);
+                int[] ids = valueIDs[col][block];
+                if (ownBlocks[col][block] && ids != null && ids.length > rows) {
+                    valueIDs[col][block] = Arrays.copyOf(ids, rows);
+                    typeCodes[col][block] = Arrays.copyOf(typeCodes[col][block], rows);
+                }
+            }
+        }
+        int lastBlockSize = dictionarySize % BLOCK_SIZE;
+        if (ownLastBlock && lastBlockSize > 0) {
+            int last = dictionary.length - 1;
+            dictionary[last] = Arrays.copyOf(dictionary[last], lastBlockSize);
+        }
+    }
+
+    /**
+     * Estimated size of the table in cache.
+     * 
+     * @return size in bytes
+     */
+    long estimateSize() {
+        long size = 0;
+        for (int col = 0; col < valueIDs.length; col++) {
+            for (int row = 0; row < rowCount; row++) {
+                if (containsCell(row, col)) {
+                    size += CacheSizeEstimator.estimateTableCell();
+                }
+            }
+        }
+        for (int id = 0; id < dictionarySize; id++) {
+            size += CacheSizeEstimator.estimateTableValue(dictionary[id / BLOCK_SIZE][id
+                    % BLOCK_SIZE]);
+        }
+        return size;
+    }
+
+    /**
+     * Write table to a snapshot of {@link CacheSnapshotStore}.
+     * 
+     * @param out output stream
+     * @throws IOException if writing fails or a value type is not supported
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(rowCount);
+        out.writeInt(types.size());
+        for (String type : types) {
+            CacheSnapshotStore.writeString(out, type);
+        }
+        out.writeInt(dictionarySize);
+        for (int id = 0; id < dictionarySize; id++) {
+            CacheSnapshotStore.writeObject(out, dictionary[id / BLOCK_SIZE][id % BLOCK_SIZE]);
+        }
+        out.writeInt(valueIDs.length);
+        for (int col = 0; col < valueIDs.length; col++) {
+            if (valueIDs[col] == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            out.writeInt(rowCount);
+            for (int row = 0; row < rowCount; row++) {
+                out.writeInt(getValueID(row, col));
+            }
+            for (int row = 0; row < rowCount; row++) {
+                out.writeByte(containsCell(row, col) ? typeCodes[col][row / BLOCK_SIZE][row
+                        % BLOCK_SIZE] : 0);
+            }
+        }
+    }
+
+    /**
+     * Read table from a snapshot of {@link CacheSnapshotStore}.
+     * 
+     * @param in input stream
+     * @return the table
+     * @throws IOException if reading fails
+     */
+    static TableCacheNode read(DataInputStream in) throws IOException {
+        TableCacheNode table = new TableCacheNode();
+        table.rowCount = in.readInt();
+        int typeCount = in.readInt();
+        for (int i = 0; i < typeCount; i++) {
+            // type strings are shared between values
+            String type = CacheSnapshotStore.readString(in);
+            table.types.add((type == null) ? null : type.intern());
+        }
+        int dictionarySize = in.readInt();
+        for (int i = 0; i < dictionarySize; i++) {
+            table.addDictionaryValue(CacheSnapshotStore.readObject(in));
+        }
+        int colCount = in.readInt();
+        table.valueIDs = new int[colCount][][];
+        table.typeCodes = new byte[colCount][][];
+        table.ownColumns = new boolean[colCount];
+        table.ownBlocks = new boolean[colCount][];
+        for (int col = 0; col < colCount; col++) {
+            int length = in.readInt();
+            if (length < 0) {
+                continue;
+            }
+            int[] ids = new int[length];
+            for (int row = 0; row < length; row++) {
+                ids[row] = in.readInt();
+            }
+            byte[] codes = new byte[length];
+            in.readFully(codes);
+            table.ownColumns[col] = true;
+            table.ownBlocks[col] = new boolean[0];
+            table.valueIDs[col] = new int[0][];
+            table.typeCodes[col] = new byte[0][];
+            for (int row = 0; row < length; row++) {
+                if (ids[row] != EMPTY) {
+                    table.ensureCapacity(row, col);
+                    table.valueIDs[col][row / BLOCK_SIZE][row % BLOCK_SIZE] = ids[row];
+                    table.typeCodes[col][row / BLOCK_SIZE][row % BLOCK_SIZE] = codes[row];
+                }
+            }
+        }
+        table.trimToSize();
+        return table;
+    }
+
+    /**
+     * Returns dictionary ID of a cell.
+     * 
+     * @param row index of row
+     * @param col index of column
+     * @return dictionary ID or {@link #EMPTY} if cell does not exist
+     */
+    private int getValueID(int row, int col) {
+        if (row < 0 || col < 0 || col >= valueIDs.length || valueIDs[col] == null) {
+            return EMPTY;
+        }
+        int block = row / BLOCK_SIZE;
+        int pos = row % BLOCK_SIZE;
+        if (block >= valueIDs[col].length || valueIDs[col][block] == null
+                || pos >= valueIDs[col][block].length) {
+            return EMPTY;
+        }
+        return valueIDs[col][block][pos];
+    }
+
+    /**
+     * Grow arrays to hold a cell at given position. The list of blocks of the
+     * column and the block of the cell are copied if they are shared with the
+     * original table.
+     * 
+     * @param row index of row
+     * @param col index of column
+     */
+    private void ensureCapacity(int row, int col) {
+        if (col >= valueIDs.length) {
+            valueIDs = Arrays.copyOf(valueIDs, col + 1);
+            typeCodes = Arrays.copyOf(typeCodes, col + 1);
+            ownColumns = Arrays.copyOf(ownColumns, col + 1);
+            ownBlocks = Arrays.copyOf(ownBlocks, col + 1);
+        }
+        if (!ownColumns[col]) {
+            if (valueIDs[col] == null) {
+                valueIDs[col] = new int[0][];
+                typeCodes[col] = new byte[0][];
+            } else {
+                valueIDs[col] = valueIDs[col].clone();
+                typeCodes[col] = typeCodes[col].clone();
+            }
+            ownBlocks[col] = new boolean[valueIDs[col].length];
+            ownColumns[col] = true;
+        }
+
+        int block = row / BLOCK_SIZE;
+        int pos = row % BLOCK_SIZE;
+        if (block >= valueIDs[col].length) {
+            valueIDs[col] = Arrays.copyOf(valueIDs[col], block + 1);
+            typeCodes[col] = Arrays.copyOf(typeCodes[col], block + 1);
+            ownBlocks[col] = Arrays.copyOf(ownBlocks[col], block + 1);
+        }
+        int[] ids = valueIDs[col][block];
+        if (ids == null) {
+            int length = Math.min(BLOCK_SIZE, Math.max(INITIAL_ROWS, pos + 1));
+            valueIDs[col][block] = new int[length];
+            Arrays.fill(valueIDs[col][block], EMPTY);
+            typeCodes[col][block] = new byte[length];
+        } else if (pos >= ids.length) {
+            int length = Math.min(BLOCK_SIZE, Math.max(pos + 1, ids.length * 2));
+            valueIDs[col][block] = Arrays.copyOf(ids, length);
+            Arrays.fill(valueIDs[col][block], ids.length, length, EMPTY);
+            typeCodes[col][block] = Arrays.copyOf(typeCodes[col][block], length);
+        } else if (!ownBlocks[col][block]) {
+            valueIDs[col][block] = ids.clone();
+            typeCodes[col][block] = typeCodes[col][block].clone();
+        }
+        ownBlocks[col][block] = true;
+    }
+
+    /**
+     * Append a value to the dictionary. The last block is copied if it is
+     * shared with the original table.
+     * 
+     * @param value the value
+     * @return dictionary ID of value
+     */
+    private int addDictionaryValue(Object value) {
+        int block = dictionarySize / BLOCK_SIZE;
+        int pos = dictionarySize % BLOCK_SIZE;
+        if (block == dictionary.length) {
+            dictionary = Arrays.copyOf(dictionary, block + 1);
+            dictionary[block] = new Object[INITIAL_ROWS];
+            ownLastBlock = true;
+        } else if (!ownLastBlock || pos == dictionary[block].length) {
+            dictionary[block] = Arrays.copyOf(dictionary[block],
+                    Math.min(BLOCK_SIZE, Math.max(INITIAL_ROWS, pos * 2)));
+            ownLastBlock = true;
+        }
+        dictionary[block][pos] = value;
+        return dictionarySize++;
+    }
+
+    /**
+     * Build index of dictionary to find IDs of existing values.
+     */
+    private void buildDictionaryIndex() {
+        dictionaryIndex = new HashMap<Object, Integer>(dictionarySize * 2);
+        for (int id = 0; id < dictionarySize; id++) {
+            dictionaryIndex.put(dictionary[id / BLOCK_SIZE][id % BLOCK_SIZE], id);
+        }
+    }
+}
@@ -23,10 +23,18 @@ package de.fuberlin.panda.data.configuration;
  */
 
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
 import javax.ws.rs.core.CacheControl;
 
 import de.fuberlin.panda.api.APIHelper;
+import de.fuberlin.panda.data.caching.CacheWarmUp;
 import de.fuberlin.panda.data.caching.ResourceCache;
+import de.fuberlin.panda.data.caching.ResourceWatcher;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
 import de.fuberlin.panda.data.resources.ResourceHelper;
 import de.fuberlin.panda.enums.RangeDelimiter;
@@ -41,17 +49,68 @@ public class PandaSettings {
     private boolean        useVtdXml             = true;
     private boolean        useServerCaching      = false;
     private boolean        useClientCaching      = false;
+    // fill server cache in background instead of the request thread
+    private boolean        useAsyncCacheFill     = true;
+    // time in milliseconds a request waits for the load of a resource by
+    // another request before it reads the resource itself
+    private long           cacheLoadWaitTime     = 5000;
+    // time in milliseconds a request waits for the running background fill
+    // it started before it extracts its values itself
+    private long           cacheFillWaitTime     = 200;
+    // poll resource directories instead of using file change notifications
+    private boolean        useResourcePolling    = false;
+    // interval in seconds for polling resource directories
+    private int            resourcePollInterval  = 5;
+    // write cached resources to disk and restore them after restart
+    private boolean        useCacheSnapshots     = true;
+    // outside of the web application, so snapshots are kept on deployment
+    private String         cacheSnapshotDirPath  = System.getProperty("user.home")
+                                                         + File.separator + ".panda"
+                                                         + File.separator + "cache";
+    // fill cache with resources at startup
+    private boolean        useWarmUp             = false;
+    // comma separated resource IDs in warm-up order, "*" for all other resources
+    private String         warmUpOrder           = "*";
+    private int            warmUpThreads         = Math.max(1, Runtime.getRuntime()
+                                                         .availableProcessors() / 2);
 
     // use JTidy to clean HTML, HtmlCleaner otherwise
     private boolean        useJtidy              = true;
     private boolean        namespaceAwareness    = false;
 
+    // memory budget of server cache in bytes, must be initialized before cache
+    private long           cacheMemoryLimit      = Runtime.getRuntime().maxMemory() / 4;
+    // cache encoded responses, memory budget in bytes
+    private boolean        useResponseCache      = true;
+    private long           responseCacheLimit    = Runtime.getRuntime().maxMemory() / 16;
+    // memory budget in bytes of decompressed OOXML parts
+    private long           partCacheLimit        = Runtime.getRuntime().maxMemory() / 16;
+    // CSV files from this size in bytes are cached in blocks of rows on demand
+    private long           partialCacheSize      = 64L * 1024 * 1024;
+    private long           blockCacheLimit       = Runtime.getRuntime().maxMemory() / 8;
+    // threads parsing chunks of CSV files in parallel
+    private int            parseThreads          = Runtime.getRuntime().availableProcessors();
+    // time in seconds a missing reference of a resource is cached, 0 disables
+    private int            negativeCacheTime     = 60;
+    // default time in seconds a document of an URL is cached before revalidation
+    private int            remoteCacheTime       = 300;
+    // local copies of resources of URLs, concurrent downloads per host, a
+    // temporary directory of the run is used if no directory is configured
+    private String         remoteMirrorDirPath   = getWorkDirPath("panda-mirror");
+    private int            remoteHostConnections = 4;
+    // store cached XML and HTML documents compressed, minimum size in bytes
+    private boolean        useDocCompression     = false;
+    private int            compressionThreshold  = 1024 * 1024;
     private ResourceCache  resourceCache         = new ResourceCache(this);
+    private ResourceWatcher resourceWatcher      = new ResourceWatcher(this);
+    private CacheWarmUp    cacheWarmUp           = new CacheWarmUp(this);
     private ResourceMap    resourceMap;
     private CacheControl   cacheControl          = new CacheControl();
 
     private final String   resConfigFilePath     = APIHelper.getWebContentDirPath()
                                                          + "configuration/resource_config.xml";
+    private final String   configFilePath        = APIHelper.getWebContentDirPath()
+                                                         + "configuration/panda_config.properties";
     private RangeDelimiter rangeDelimiter        = RangeDelimiter.COLON;
 
     public PandaSettings() {
@@ -68,6 +127,11 @@ public class PandaSettings {
     }
 
     public void setServerCacheUsage(boolean useServerCaching) {
+        // restore snapshots when cache is turned on
+        if (useServerCaching && !this.useServerCaching && this.useCacheSnapshots
+                && this.resourceMap != null) {
+            this.resourceCache.loadSnapshots();
+        }
         this.useServerCaching = useServerCaching;
     }
 
@@ -75,12 +139,225 @@ public class PandaSettings {
         return this.useServerCaching;
     }
 
+    public void setAsyncCacheFill(boolean useAsyncCacheFill) {
+        this.useAsyncCacheFill = useAsyncCacheFill;
+    }
+
+    public boolean getAsyncCacheFill() {
+        return this.useAsyncCacheFill;
+    }
+
+    public void setCacheLoadWaitTime(long cacheLoadWaitTime) {
+        this.cacheLoadWaitTime = cacheLoadWaitTime;
+    }
+
+    public long getCacheLoadWaitTime() {
+        return this.cacheLoadWaitTime;
+    }
+
+    public void setCacheFillWaitTime(long cacheFillWaitTime) {
+        this.cacheFillWaitTime = cacheFillWaitTime;
+    }
+
+    public long getCacheFillWaitTime() {
+        return this.cacheFillWaitTime;
+    }
+
+    public void setResourcePolling(boolean useResourcePolling) {
+        this.useResourcePolling = useResourcePolling;
+        // directories are registered again on next access
+        this.resourceWatcher.clear();
+    }
+
+    public boolean getResourcePolling() {
+        return this.useResourcePolling;
+    }
+
+    public void setResourcePollInterval(int resourcePollInterval) {
+        this.resourcePollInterval = resourcePollInterval;
+    }
+
+    public int getResourcePollInterval() {
+        return this.resourcePollInterval;
+    }
+
+    public void setCacheSnapshots(boolean useCacheSnapshots) {
+        this.useCacheSnapshots = useCacheSnapshots;
+    }
+
+    public boolean getCacheSnapshots() {
+        return this.useCacheSnapshots;
+    }
+
+    public void setCacheSnapshotDirPath(String cacheSnapshotDirPath) {
+        this.cacheSnapshotDirPath = cacheSnapshotDirPath;
+    }
+
+    public String getCacheSnapshotDirPath() {
+        return this.cacheSnapshotDirPath;
+    }
+
+    public void setWarmUpUsage(boolean useWarmUp) {
+        this.useWarmUp = useWarmUp;
+    }
+
+    public boolean getWarmUpUsage() {
+        return this.useWarmUp;
+    }
+
+    public void setWarmUpOrder(String warmUpOrder) {
+        this.warmUpOrder = warmUpOrder;
+    }
+
+    public String getWarmUpOrder() {
+        return this.warmUpOrder;
+    }
+
+    public void setWarmUpThreads(int warmUpThreads) {
+        this.warmUpThreads = warmUpThreads;
+    }
+
+    public int getWarmUpThreads() {
+        return this.warmUpThreads;
+    }
+
+    public CacheWarmUp getCacheWarmUp() {
+        return this.cacheWarmUp;
+    }
+
     public ResourceCache getResourceCache() {
         return this.resourceCache;
     }
 
+    public ResourceWatcher getResourceWatcher() {
+        return this.resourceWatcher;
+    }
+
+    /**
+     * Stop all background threads of the warm-up, the resource watcher and the
+     * cache, so they don't keep the application alive after it was
+     * undeployed.
+     */
+    public void shutdown() {
+        this.cacheWarmUp.shutdown();
+        this.resourceWatcher.shutdown();
+        this.resourceCache.shutdown();
+    }
+
+    public void setCacheMemoryLimit(long cacheMemoryLimit) {
+        this.cacheMemoryLimit = cacheMemoryLimit;
+        this.resourceCache.setMemoryLimit(cacheMemoryLimit);
+    }
+
+    public long getCacheMemoryLimit() {
+        return this.cacheMemoryLimit;
+    }
+
+    public void setResponseCacheUsage(boolean useResponseCache) {
+        this.useResponseCache = useResponseCache;
+    }
+
+    public boolean getResponseCacheUsage() {
+        return this.useResponseCache;
+    }
+
+    public void setResponseCacheMemoryLimit(long responseCacheLimit) {
+        this.responseCacheLimit = responseCacheLimit;
+        this.resourceCache.getResponseCache().setMemoryLimit(responseCacheLimit);
+    }
+
+    public long getResponseCacheMemoryLimit() {
+        return this.responseCacheLimit;
+    }
+
+    public void setPartCacheMemoryLimit(long partCacheLimit) {
+        this.partCacheLimit = partCacheLimit;
+        this.resourceCache.getPartCache().setMemoryLimit(partCacheLimit);
+    }
+
+    public long getPartCacheMemoryLimit() {
+        return this.partCacheLimit;
+    }
+
+    public void setPartialCacheSize(long partialCacheSize) {
+        this.partialCacheSize = partialCacheSize;
+    }
+
+    public long getPartialCacheSize() {
+        return this.partialCacheSize;
+    }
+
+    public void setBlockCacheMemoryLimit(long blockCacheLimit) {
+        this.blockCacheLimit = blockCacheLimit;
+        this.resourceCache.getBlockCache().setMemoryLimit(blockCacheLimit);
+    }
+
+    public long getBlockCacheMemoryLimit() {
+        return this.blockCacheLimit;
+    }
+
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+        this.resourceCache.setParseThreads(parseThreads);
+    }
+
+    public int getParseThreads() {
+        return this.parseThreads;
+    }
+
+    public void setNegativeCacheTime(int negativeCacheTime) {
+        this.negativeCacheTime = negativeCacheTime;
+        this.resourceCache.getNegativeResultCache().setTimeToLive(negativeCacheTime * 1000L);
+    }
+
+    public int getNegativeCacheTime() {
+        return this.negativeCacheTime;
+    }
+
+    public void setRemoteCacheTime(int remoteCacheTime) {
+        this.remoteCacheTime = remoteCacheTime;
+    }
+
+    public int getRemoteCacheTime() {
+        return this.remoteCacheTime;
+    }
+
+    public void setRemoteMirrorDirPath(String remoteMirrorDirPath) {
+        this.remoteMirrorDirPath = remoteMirrorDirPath;
+    }
+
+    public String getRemoteMirrorDirPath() {
+        return this.remoteMirrorDirPath;
+    }
+
+    public void setRemoteHostConnections(int remoteHostConnections) {
+        this.remoteHostConnections = remoteHostConnections;
+    }
+
+    public int getRemoteHostConnections() {
+        return this.remoteHostConnections;
+    }
+
+    public void setDocumentCompression(boolean useDocCompression) {
+        this.useDocCompression = useDocCompression;
+    }
+
+    public boolean getDocumentCompression() {
+        return this.useDocCompression;
+    }
+
+    public void setDocumentCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getDocumentCompressionThreshold() {
+        return this.compressionThreshold;
+    }
+
     public void setResourceMap(ResourceMap resourceMap) {
         this.resourceMap = resourceMap;
+        // versions of the old map may belong to other files
+        this.resourceWatcher.clear();
     }
 
     public ResourceMap getResourceMap() {
@@ -99,6 +376,67 @@ public class PandaSettings {
         return this.resConfigFilePath;
     }
 
+    public String getConfigFilePath() {
+        return this.configFilePath;
+    }
+
+    /**
+     * Read the deployment configuration from a properties file and from
+     * system properties. System properties override the file, so settings of
+     * a host are kept when a new version is deployed.
+     * 
+     * @param configFile configuration file, is ignored if it doesn't exist
+     * @throws IOException if configuration file can't be read
+     * @see #configure(Properties)
+     */
+    public void loadConfiguration(File configFile) throws IOException {
+        Properties config = new Properties();
+        if (configFile.isFile()) {
+            InputStream in = new FileInputStream(configFile);
+            try {
+                config.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("panda.")) {
+                config.setProperty(key, System.getProperty(key));
+            }
+        }
+        configure(config);
+    }
+
+    /**
+     * Apply a deployment configuration. Keys are the names of the settings
+     * with prefix "panda.", settings without key are not changed.
+     * 
+     * @param config deployment configuration
+     */
+    public void configure(Properties config) {
+        setWarmUpUsage(getBoolean(config, "panda.warmUp", this.useWarmUp));
+        setWarmUpOrder(config.getProperty("panda.warmUpOrder", this.warmUpOrder).trim());
+        setWarmUpThreads(getInt(config, "panda.warmUpThreads", this.warmUpThreads));
+        setParseThreads(getInt(config, "panda.parseThreads", this.parseThreads));
+        setCacheSnapshots(getBoolean(config, "panda.cacheSnapshots", this.useCacheSnapshots));
+        String snapshotDirPath = config.getProperty("panda.cacheSnapshotDir",
+                this.cacheSnapshotDirPath);
+        setCacheSnapshotDirPath((snapshotDirPath == null || snapshotDirPath.trim().isEmpty())
+                ? null : snapshotDirPath.trim());
+        // restores snapshots, so it is applied after the snapshot settings
+        setServerCacheUsage(getBoolean(config, "panda.serverCache", this.useServerCaching));
+    }
+
+    private static boolean getBoolean(Properties config, String key, boolean defaultValue) {
+        String value = config.getProperty(key);
+        return (value == null) ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    private static int getInt(Properties config, String key, int defaultValue) {
+        String value = config.getProperty(key);
+        return (value == null) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
     public void setCacheControl(CacheControl cacheControl) {
         this.cacheControl = cacheControl;
     }
@@ -153,4 +491,31 @@ public class PandaSettings {
     public boolean getUseJtidy() {
         return this.useJtidy;
     }
+
+    /**
+     * Returns path of a working directory below WEB-INF of the web
+     * application. Unlike the temporary directory it is neither shared with
+     * other users of the host nor served to clients.
+     * 
+     * @param name name of directory
+     * @return path of directory or null if PANDA is not deployed as web
+     *         application
+     */
+    private static String getWorkDirPath(String name) {
+        try {
+            // classes are located in WEB-INF/classes or WEB-INF/lib/*.jar
+            File location = new File(PandaSettings.class.getProtectionDomain().getCodeSource()
+                    .getLocation().toURI());
+            File webInf = location.getParentFile();
+            if (webInf != null && !webInf.getName().equals("WEB-INF")) {
+                webInf = webInf.getParentFile();
+            }
+            if (webInf != null && webInf.getName().equals("WEB-INF")) {
+                return new File(webInf, name).getPath();
+            }
+        } catch (Exception e) {
+            // location of classes is unknown
+        }
+        return null;
+    }
 }
@@ -50,6 +50,8 @@ public class ResourceMapEntryType {
         private String           filePath;
         private URL              resURL;
         private String           separator;
+        // seconds a document of an URL is cached before it is revalidated
+        private Integer          timeToLive;
 
         public ResourceInfo() {
         }
@@ -96,6 +98,14 @@ public class ResourceMapEntryType {
             this.separator = separator;
         }
 
+        public Integer getTimeToLive() {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(Integer timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
     }
 
 }
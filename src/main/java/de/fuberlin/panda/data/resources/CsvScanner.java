@@ -0,0 +1,459 @@
+package de.fuberlin.panda.data.resources;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Reads records of a UTF-8 encoded CSV file. The file is mapped into memory
+ * and delimiters and quotes are found on the byte level, fields are only
+ * decoded to Strings when they are requested, so cells outside of the
+ * requested table area cost no allocations. The records are the same as the
+ * records of {@link CSVParser} for the format. Formats with escape
+ * characters, comments or headers and files that can't be mapped are read
+ * with {@link CSVParser}.
+ * 
+ * @author Christoph Schrder
+ */
+public class CsvScanner implements Closeable {
+
+    // size of mapped region of file, region is enlarged for longer records
+    private static final long         WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final Charset      UTF8        = Charset.forName("UTF-8");
+
+    // results of scan of a record
+    private static final int          MORE        = -1;
+    private static final int          NO_RECORD   = -2;
+
+    // types of fields
+    private static final byte         PLAIN       = 0;
+    private static final byte         QUOTED      = 1;
+    private static final byte         ESCAPED     = 2;
+
+    private final FileInputStream     in;
+    private final CSVParser           parser;
+    private final Iterator<CSVRecord> records;
+    private CSVRecord                 csvRecord;
+
+    private final int                 delimiter;
+    private final int                 quoteChar;
+    private final boolean             ignoreEmptyLines;
+    private final boolean             ignoreSurroundingSpaces;
+
+    private final long                fileSize;
+    private MappedByteBuffer          window;
+    // used for bulk reads of fields
+    private ByteBuffer                reader;
+    private long                      windowStart;
+    private boolean                   lastWindow;
+    // position of next record in window
+    private int                       position;
+
+    // start, end and type of fields of current record in window
+    private int[]                     starts      = new int[16];
+    private int[]                     ends        = new int[16];
+    private byte[]                    types       = new byte[16];
+    private int                       fieldCount;
+    // fields behind this field are skipped
+    private int                       lastField   = Integer.MAX_VALUE;
+    private long                      recordNumber;
+    private byte[]                    bytes       = new byte[256];
+
+    /**
+     * Scanner reading a mapped file.
+     */
+    private CsvScanner(FileInputStream in, CSVFormat format, long offset, long windowSize)
+            throws IOException {
+        this.in = in;
+        this.parser = null;
+        this.records = null;
+        this.delimiter = format.getDelimiter();
+        // no byte value matches a missing quote character
+        this.quoteChar = (format.getQuoteCharacter() == null) ? Integer.MIN_VALUE : format
+                .getQuoteCharacter();
+        this.ignoreEmptyLines = format.getIgnoreEmptyLines();
+        this.ignoreSurroundingSpaces = format.getIgnoreSurroundingSpaces();
+        this.fileSize = in.getChannel().size();
+        map(offset, windowSize);
+    }
+
+    /**
+     * Scanner reading records of a parser.
+     */
+    private CsvScanner(CSVParser parser) {
+        this.in = null;
+        this.parser = parser;
+        this.records = parser.iterator();
+        this.delimiter = Integer.MIN_VALUE;
+        this.quoteChar = Integer.MIN_VALUE;
+        this.ignoreEmptyLines = false;
+        this.ignoreSurroundingSpaces = false;
+        this.fileSize = 0;
+    }
+
+    /**
+     * Open scanner for a CSV file.
+     * 
+     * @param file CSV file encoded in UTF-8
+     * @param format format of the file
+     * @param offset byte offset of the first record that is read
+     * @return the scanner
+     * @throws IOException if file can't be read
+     */
+    public static CsvScanner open(File file, CSVFormat format, long offset) throws IOException {
+        return open(file, format, offset, WINDOW_SIZE);
+    }
+
+    /**
+     * Open scanner for a CSV file with a custom size of mapped regions.
+     * 
+     * @param file CSV file encoded in UTF-8
+     * @param format format of the file
+     * @param offset byte offset of the first record that is read
+     * @param windowSize initial size of mapped regions in bytes
+     * @return the scanner
+     * @throws IOException if file can't be read
+     */
+    static CsvScanner open(File file, CSVFormat format, long offset, long windowSize)
+            throws IOException {
+        if (supports(format)) {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                return new CsvScanner(in, format, offset, windowSize);
+            } catch (IOException e) {
+                // mapping failed, e.g. address space of 32 bit JVM is exhausted
+                in.close();
+            }
+        }
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            in.getChannel().position(offset);
+            return new CsvScanner(new CSVParser(new InputStreamReader(in, UTF8), format));
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks if records of a format can be found on the byte level.
+     * 
+     * @param format the format
+     * @return true if delimiter and quote are ASCII characters and the format
+     *         does not use escape characters, comments or headers
+     */
+    public static boolean supports(CSVFormat format) {
+        Character quote = format.getQuoteCharacter();
+        return format.getDelimiter() < 128 && format.getDelimiter() != '\r'
+                && format.getDelimiter() != '\n' && (quote == null || quote < 128)
+                && format.getEscapeCharacter() == null && format.getCommentMarker() == null
+                && format.getHeader() == null && format.getNullString() == null;
+    }
+
+    /**
+     * Restrict scanning to the fields up to a field. Fields behind it are
+     * skipped without recording their boundaries or checking their syntax,
+     * {@link #getFieldCount()} counts only the fields up to it. Has no effect
+     * if the format is not supported, see {@link #supports(CSVFormat)}.
+     * 
+     * @param lastField index of last field that is read, 0 based
+     */
+    public void setLastField(int lastField) {
+        this.lastField = lastField;
+    }
+
+    /**
+     * Move to the next record.
+     * 
+     * @return false if there are no more records
+     * @throws IOException if file can't be read or a quoted field is not
+     *             closed
+     */
+    public boolean nextRecord() throws IOException {
+        if (parser != null) {
+            if (!records.hasNext()) {
+                return false;
+            }
+            csvRecord = records.next();
+            recordNumber = parser.getRecordNumber();
+            return true;
+        }
+
+        while (true) {
+            int end = scanRecord(position);
+            if (end == NO_RECORD) {
+                return false;
+            } else if (end != MORE) {
+                position = end;
+                recordNumber++;
+                return true;
+            }
+            // record continues behind mapped region
+            long size = window.limit();
+            if (position == 0) {
+                if (size >= Integer.MAX_VALUE) {
+                    throw new IOException("Record exceeds maximum size");
+                }
+                size = Math.min(2 * size, Integer.MAX_VALUE);
+            }
+            map(windowStart + position, size);
+        }
+    }
+
+    /**
+     * Returns number of the current record, counted from the first record
+     * that was read.
+     * 
+     * @return record number, starting at 1
+     */
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Returns number of fields of the current record, see
+     * {@link #setLastField(int)}.
+     * 
+     * @return number of fields
+     */
+    public int getFieldCount() {
+        return (parser != null) ? csvRecord.size() : fieldCount;
+    }
+
+    /**
+     * Decode a field of the current record.
+     * 
+     * @param index index of field, 0 based
+     * @return content of field
+     */
+    public String getField(int index) {
+        if (parser != null) {
+            return csvRecord.get(index);
+        }
+        if (index >= fieldCount) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+
+        int length = ends[index] - starts[index];
+        if (length > bytes.length) {
+            bytes = new byte[Math.max(length, 2 * bytes.length)];
+        }
+        reader.position(starts[index]);
+        reader.get(bytes, 0, length);
+        if (types[index] == ESCAPED) {
+            // remove second quote of escaped quotes
+            int newLength = 0;
+            for (int i = 0; i < length; i++) {
+                bytes[newLength++] = bytes[i];
+                if (bytes[i] == quoteChar) {
+                    i++;
+                }
+            }
+            length = newLength;
+        }
+
+        String value = new String(bytes, 0, length, UTF8);
+        if (ignoreSurroundingSpaces && types[index] == PLAIN) {
+            value = trim(value);
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (parser != null) {
+            parser.close();
+        } else {
+            in.close();
+        }
+    }
+
+    /**
+     * Map region of file into memory.
+     * 
+     * @param start offset of region in file
+     * @param size maximum size of region
+     * @throws IOException if mapping fails
+     */
+    private void map(long start, long size) throws IOException {
+        size = Math.max(0, Math.min(size, fileSize - start));
+        window = in.getChannel().map(FileChannel.MapMode.READ_ONLY, start, size);
+        reader = window.duplicate();
+        windowStart = start;
+        lastWindow = (start + size >= fileSize);
+        position = 0;
+    }
+
+    /**
+     * Find fields of the record at a position of the mapped region.
+     * 
+     * @param start position in window
+     * @return position of next record, {@link #MORE} if the record continues
+     *         behind the mapped region or {@link #NO_RECORD} at end of file
+     * @throws IOException if a quoted field is not closed
+     */
+    private int scanRecord(int start) throws IOException {
+        int limit = window.limit();
+        int pos = start;
+        if (ignoreEmptyLines) {
+            while (pos < limit && isEndOfLine(window.get(pos))) {
+                pos++;
+            }
+        }
+        if (pos >= limit) {
+            return lastWindow ? NO_RECORD : MORE;
+        }
+
+        fieldCount = 0;
+        while (true) {
+            // fields behind the last requested field are not recorded
+            boolean skip = (fieldCount > lastField);
+            if (ignoreSurroundingSpaces) {
+                while (pos < limit && isWhitespace(window.get(pos))) {
+                    pos++;
+                }
+            }
+
+            if (pos < limit && window.get(pos) == quoteChar) {
+                // quoted field, ends at a single quote
+                int fieldStart = ++pos;
+                byte type = QUOTED;
+                while (true) {
+                    if (pos >= limit) {
+                        if (lastWindow) {
+                            throw new IOException("EOF reached before quoted field finished");
+                        }
+                        return MORE;
+                    }
+                    if (window.get(pos) == quoteChar) {
+                        if (pos + 1 >= limit && !lastWindow) {
+                            return MORE;
+                        } else if (pos + 1 < limit && window.get(pos + 1) == quoteChar) {
+                            type = ESCAPED;
+                            pos += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    pos++;
+                }
+                if (!skip) {
+                    addField(fieldStart, pos, type);
+                }
+                pos++;
+                // only whitespace is allowed between quote and delimiter
+                while (pos < limit && window.get(pos) != delimiter
+                        && !isEndOfLine(window.get(pos))) {
+                    byte b = window.get(pos);
+                    if (!skip && b >= 0 && !Character.isWhitespace((char) b)) {
+                        throw new IOException("Invalid char between quoted field and delimiter");
+                    }
+                    pos++;
+                }
+            } else {
+                int fieldStart = pos;
+                while (pos < limit && window.get(pos) != delimiter
+                        && !isEndOfLine(window.get(pos))) {
+                    pos++;
+                }
+                if (!skip) {
+                    addField(fieldStart, pos, PLAIN);
+                }
+            }
+
+            if (pos >= limit) {
+                return lastWindow ? pos : MORE;
+            }
+            byte b = window.get(pos++);
+            if (b == '\r') {
+                if (pos >= limit && !lastWindow) {
+                    return MORE;
+                } else if (pos < limit && window.get(pos) == '\n') {
+                    pos++;
+                }
+                return pos;
+            } else if (b == '\n') {
+                return pos;
+            }
+            // delimiter, next field follows
+        }
+    }
+
+    private void addField(int start, int end, byte type) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * fieldCount);
+            ends = Arrays.copyOf(ends, 2 * fieldCount);
+            types = Arrays.copyOf(types, 2 * fieldCount);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        types[fieldCount] = type;
+        fieldCount++;
+    }
+
+    private boolean isEndOfLine(byte b) {
+        return b == '\r' || b == '\n';
+    }
+
+    /**
+     * Checks for ASCII whitespace in front of a field, the delimiter is not
+     * whitespace.
+     */
+    private boolean isWhitespace(byte b) {
+        return b >= 0 && b != delimiter && !isEndOfLine(b) && Character.isWhitespace((char) b);
+    }
+
+    /**
+     * Remove whitespace at both ends of a field like {@link CSVParser}, which
+     * uses {@link Character#isWhitespace(char)} instead of
+     * {@link String#trim()}.
+     */
+    private String trim(String value) {
+        int start = 0;
+        int end = value.length();
+        while (start < end && Character.isWhitespace(value.charAt(start))
+                && value.charAt(start) != delimiter) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(value.charAt(end - 1))
+                && value.charAt(end - 1) != delimiter) {
+            end--;
+        }
+        return value.substring(start, end);
+    }
+}
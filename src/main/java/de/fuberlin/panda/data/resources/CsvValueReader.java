@@ -0,0 +1,134 @@
+package de.fuberlin.panda.data.resources;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+
+import de.fuberlin.panda.api.data.ValueExchange.Value;
+import de.fuberlin.panda.data.caching.ColumnSchema;
+import de.fuberlin.panda.data.resources.ResourceHelper.TableArea;
+
+/**
+ * Reads the values of a table area of a CSV file one at a time. Cells are
+ * decoded when the reader reaches them, so the values of huge files can be
+ * written to the client while the file is scanned.
+ * 
+ * @author Christoph Schrder
+ */
+public class CsvValueReader implements ValueReader {
+
+    private final CsvScanner   scanner;
+    private final TableArea    tableArea;
+    private final String       baseURI;
+    // row of first record of scanner
+    private final long         firstRow;
+    // number of records to read, the rest of the file is read by other readers
+    private final long         maxRecords;
+    // types of columns, null if cells are typed by parsing
+    private final ColumnSchema schema;
+
+    // row of current record, next and last column to read
+    private long               row;
+    private int                col      = 0;
+    private int                lastCol  = -1;
+    private boolean            finished = false;
+
+    /**
+     * @param scanner scanner positioned in front of the first record
+     * @param tableArea requested columns/rows
+     * @param baseURI base URI of the values
+     * @param firstRow row of the first record, 0 based
+     * @param maxRecords maximum number of records to read
+     * @param schema schema of the file, null if it isn't inferred yet
+     */
+    public CsvValueReader(CsvScanner scanner, TableArea tableArea, String baseURI,
+            long firstRow, long maxRecords, ColumnSchema schema) {
+        this.scanner = scanner;
+        this.tableArea = tableArea;
+        this.baseURI = baseURI;
+        this.firstRow = firstRow;
+        this.maxRecords = maxRecords;
+        this.schema = schema;
+
+        // columns behind the requested columns are skipped by the scanner
+        if (tableArea.getColEnd() != -1) {
+            scanner.setLastField(tableArea.getColEnd());
+        }
+    }
+
+    @Override
+    public String getBaseURI() {
+        return baseURI;
+    }
+
+    @Override
+    public Value next() throws IOException {
+        while (true) {
+            while (col <= lastCol) {
+                String value = scanner.getField(col);
+                if (!value.isEmpty()) {
+                    return DataCsvResource.createCellValue(row, col++, value, schema);
+                }
+                col++;
+            }
+            if (!nextRow()) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        scanner.close();
+    }
+
+    /**
+     * Move to the next requested row and determine its requested columns.
+     * 
+     * @return false if there are no more requested rows
+     * @throws IOException if file can't be read
+     */
+    private boolean nextRow() throws IOException {
+        boolean allRows = (tableArea.getRowEnd() == -1);
+        while (!finished && scanner.getRecordNumber() < maxRecords && scanner.nextRecord()) {
+            row = firstRow + scanner.getRecordNumber() - 1;
+            // stop if current row > last requested row
+            if (!allRows && row > tableArea.getRowEnd()) {
+                break;
+            }
+            if (allRows || row >= tableArea.getRowStart()) {
+                if (tableArea.getColEnd() == -1) {
+                    // all cells of this row
+                    col = 0;
+                    lastCol = scanner.getFieldCount() - 1;
+                } else {
+                    col = tableArea.getColStart();
+                    lastCol = Math.min(tableArea.getColEnd(), scanner.getFieldCount() - 1);
+                }
+                return true;
+            }
+        }
+        finished = true;
+        return false;
+    }
+}
@@ -25,10 +25,13 @@ package de.fuberlin.panda.data.resources;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.EntityTag;
@@ -36,12 +39,16 @@ import javax.ws.rs.core.PathSegment;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 
 import de.fuberlin.panda.api.data.ValueExchange.Value;
 import de.fuberlin.panda.api.data.ValueExchangeExt;
+import de.fuberlin.panda.data.caching.ColumnSchema;
+import de.fuberlin.panda.data.caching.ColumnSchemaIndex;
+import de.fuberlin.panda.data.caching.RecordOffsetIndex;
+import de.fuberlin.panda.data.caching.RecordOffsetIndex.Offsets;
+import de.fuberlin.panda.data.caching.RecordOffsetIndex.RecordSyntax;
 import de.fuberlin.panda.data.caching.ResourceCache;
+import de.fuberlin.panda.data.caching.RowBlockCache;
 import de.fuberlin.panda.data.configuration.PandaSettings;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
 import de.fuberlin.panda.data.resources.ResourceHelper.TableArea;
@@ -53,8 +60,15 @@ import de.fuberlin.panda.data.resources.ResourceHelper.TableArea;
  */
 public class DataCsvResource {
 
+    // requests to at least this number of rows are streamed to the client
+    public static final int  STREAMING_ROWS  = 1000;
+    // indexed records per chunk of a parallel parse
+    private static final int CHUNK_INTERVALS = 8;
+
     // start and end index for requested columns/rows, -1 = all columns/rows
-    private TableArea tableArea;
+    private TableArea        tableArea;
+    // types of columns of the file, null if cells are typed by parsing
+    private ColumnSchema     schema;
 
     /**
      * Main method of this class to extract table data from CSV document.
@@ -65,6 +79,31 @@ public class DataCsvResource {
      */
     public ValueExchangeExt getCsvValues(UriInfo uriInfo, PandaSettings pandaSettings)
             throws WebApplicationException {
+        ValueReader reader = openCsvValues(uriInfo, pandaSettings);
+        ValueExchangeExt valList = new ValueExchangeExt();
+        valList.setBaseURI(reader.getBaseURI());
+        try {
+            readValues(reader, valList.getValue());
+        } catch (IOException e) {
+            throw new WebApplicationException(404);
+        }
+
+        // return collected values of all selected sheets
+        return valList;
+    }
+
+    /**
+     * Opens reader for the values of a request. Values that are not taken from
+     * the cache are read from the CSV document while the reader is consumed,
+     * so requests to many rows can be streamed to the client, see
+     * {@link #isBulkRequest(String)}.
+     * 
+     * @param uriInfo Jersey URI object
+     * @param pandaSettings PANDA system settings
+     * @return reader of the values, has to be closed
+     */
+    public ValueReader openCsvValues(UriInfo uriInfo, PandaSettings pandaSettings)
+            throws WebApplicationException {
 
         // Get List of all Path Segments
         List<PathSegment> pathSegments = uriInfo.getPathSegments();
@@ -80,61 +119,569 @@ public class DataCsvResource {
         // Get resource cache
         ResourceCache cache = pandaSettings.getResourceCache();
 
-        ValueExchangeExt valList = new ValueExchangeExt();
-        valList.setBaseURI("/" + resID + "/");
+        String baseURI = "/" + resID + "/";
 
         try {
             File file = new File(filePath);
-            Date lastModified = new Date(file.lastModified());
-            EntityTag eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
+            EntityTag eTag = pandaSettings.getResourceWatcher().getVersion(resID).getETag();
 
-            // lookup values in the cache if caching is on
-            if (pandaSettings.getServerCacheUsage() && cache.checkValidityResource(resID, eTag)) {
+            // lookup values in the cache if caching is on, a missing resource is parsed
+            // once into the cache by one of the concurrent requests for it, huge files
+            // are only cached in blocks of the requested rows and read from the nearest
+            // indexed record in front of the first requested row
+            boolean inCache = false;
+            boolean partial = false;
+            if (pandaSettings.getServerCacheUsage()) {
+                inCache = cache.checkValidityResource(resID, eTag);
+                partial = !inCache && usesPartialCache(pandaSettings, file);
+                if (!inCache && !partial) {
+                    inCache = cache.loadResource(resID, eTag,
+                            createCacheFill(pandaSettings, resID, eTag));
+                }
+            }
+            if (inCache) {
                 String path = uriInfo.getPath();
                 path = path.substring(path.indexOf(resID));
-                valList = cache.getValues(path, resInfo.getType());
+                ValueExchangeExt valList = cache.getValues(path, resInfo.getType());
+                return new ListValueReader(valList.getValue(), valList.getBaseURI());
+            } else if (partial) {
+                // huge files are not scanned for a schema, cells are typed by parsing
+                Offsets offsets = getRecordOffsets(cache.getOffsetIndex(), resID, eTag, file,
+                        csvDelimiter, reference);
+                return openBlockReader(file, csvDelimiter, reference, resID, eTag,
+                        cache.getBlockCache(), offsets, cache.getParsePool(), baseURI);
             } else {
+                // resource is not cached or still filled in background
                 if (!file.exists()) {
                     throw new WebApplicationException(404);
                 }
-                valList.addValues(processCsv(file, csvDelimiter, reference));
-
-                // add resource to cache if not already done
-                if (pandaSettings.getServerCacheUsage()
-                        && !cache.checkValidityResource(resID, eTag)) {
-                    ValueExchangeExt newCacheValues = new ValueExchangeExt();
-                    newCacheValues.addValues(processCsv(file, csvDelimiter, "*"));
-                    newCacheValues.setBaseURI("/" + resID + "/");
-                    cache.addResourceValues(newCacheValues, resInfo.getType(), resID, eTag);
+                if (pandaSettings.getServerCacheUsage()) {
+                    this.schema = getSchema(cache.getSchemaIndex(), resID, eTag, file,
+                            csvDelimiter, cache.getParsePool());
                 }
+                Offsets offsets = getRecordOffsets(cache.getOffsetIndex(), resID, eTag, file,
+                        csvDelimiter, reference);
+                return openFileReader(file, csvDelimiter, reference, offsets,
+                        cache.getParsePool(), baseURI);
             }
         } catch (WebApplicationException e) {
             throw e;
         } catch (IOException e) {
             throw new WebApplicationException(404);
         }
+    }
 
-        // return collected values of all selected sheets
-        return valList;
+    /**
+     * Checks if a request covers so many rows that its values should be
+     * streamed to the client instead of being collected in a list.
+     * 
+     * @param reference reference to cell or table (see:
+     *            JerseyCsvResource.class)
+     * @return true if all rows or at least {@link #STREAMING_ROWS} rows are
+     *         requested
+     */
+    public static boolean isBulkRequest(String reference) {
+        TableArea area = ResourceHelper.evalTableReference(reference);
+        if (area == null) {
+            return false;
+        }
+        return area.getRowEnd() == -1
+                || area.getRowEnd() - area.getRowStart() + 1 >= STREAMING_ROWS;
+    }
+
+    /**
+     * Parses the whole CSV document of a resource and adds all values to the
+     * cache.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @throws IOException
+     */
+    public void fillCache(PandaSettings pandaSettings, String resID, EntityTag eTag)
+            throws IOException {
+        ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
+        File file = new File(resInfo.getFilePath());
+        Offsets offsets = getRecordOffsets(pandaSettings.getResourceCache().getOffsetIndex(),
+                resID, eTag, file, resInfo.getSeparator(), "*");
+        this.schema = pandaSettings.getResourceCache().getSchemaIndex().getSchema(resID, eTag);
+
+        ValueExchangeExt newCacheValues = new ValueExchangeExt();
+        newCacheValues.setBaseURI("/" + resID + "/");
+        readValues(openFileReader(file, resInfo.getSeparator(), "*", offsets, pandaSettings
+                .getResourceCache().getParsePool(), newCacheValues.getBaseURI()),
+                newCacheValues.getValue());
+        pandaSettings.getResourceCache().addResourceValues(newCacheValues, resInfo.getType(),
+                resID, eTag);
+    }
+
+    /**
+     * Checks if a CSV file is too large to be filled completely into the cache.
+     * Such files are cached in blocks of rows by the {@link RowBlockCache}.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param file CSV file
+     * @return true if only requested blocks of the file should be cached
+     */
+    public static boolean usesPartialCache(PandaSettings pandaSettings, File file) {
+        return file.length() >= pandaSettings.getPartialCacheSize();
+    }
+
+    /**
+     * Returns index of record offsets of a huge CSV file if the first
+     * requested row is behind the first indexed record or all rows are
+     * requested. The index is built on first use for each version of the
+     * file.
+     * 
+     * @param offsetIndex index of record offsets
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @param file CSV file
+     * @param separator delimiter used for columns
+     * @param reference reference to cell or table (see:
+     *            JerseyCsvResource.class)
+     * @return offsets of records or null if the file is parsed from the start
+     * @throws IOException
+     */
+    private Offsets getRecordOffsets(RecordOffsetIndex offsetIndex, String resID,
+            EntityTag eTag, File file, String separator, String reference) throws IOException {
+        TableArea area = ResourceHelper.evalTableReference(reference);
+        boolean allRows = (area != null && area.getRowEnd() == -1);
+        if (area == null || (area.getRowStart() < RecordOffsetIndex.INTERVAL && !allRows)
+                || file.length() < RecordOffsetIndex.MIN_FILE_SIZE) {
+            return null;
+        }
+        // records can only be found by the index if fields are not escaped
+        CSVFormat format = createFormat(separator);
+        if (format.getEscapeCharacter() != null || format.getCommentMarker() != null
+                || format.getDelimiter() > 127) {
+            return null;
+        }
+        return offsetIndex.getOffsets(resID, eTag, file, new RecordSyntax(
+                format.getDelimiter(), format.getQuoteCharacter(), format.getIgnoreEmptyLines(),
+                format.getIgnoreSurroundingSpaces()));
+    }
+
+    /**
+     * Returns column schema of the current version of a CSV file. A missing
+     * schema is inferred in the background for following requests. Only used
+     * if server caching is on and the file is not cached in blocks of rows,
+     * since the inference reads the whole file.
+     * 
+     * @param schemaIndex index of column schemas
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @param file CSV file
+     * @param separator delimiter used for columns
+     * @param parsePool executor of the inference
+     * @return the schema or null if cells have to be typed by parsing
+     */
+    private ColumnSchema getSchema(ColumnSchemaIndex schemaIndex, String resID, EntityTag eTag,
+            File file, String separator, Executor parsePool) {
+        ColumnSchema schema = schemaIndex.getSchema(resID, eTag);
+        if (schema == null) {
+            schemaIndex.inferSchema(resID, eTag, createSchemaInference(file, separator, eTag),
+                    parsePool);
+        }
+        return schema;
+    }
+
+    /**
+     * Creates job for {@link ColumnSchemaIndex#inferSchema} that reads all
+     * cells of a CSV file.
+     * 
+     * @param file CSV file
+     * @param separator delimiter used for columns
+     * @param eTag EntityTag of resource
+     * @return the job, returns null if the file changed during the job
+     */
+    private static Callable<ColumnSchema> createSchemaInference(final File file,
+            final String separator, final EntityTag eTag) {
+        return new Callable<ColumnSchema>() {
+            @Override
+            public ColumnSchema call() throws IOException {
+                long lastModified = file.lastModified();
+                long length = file.length();
+                ColumnSchema.Builder builder = new ColumnSchema.Builder(eTag);
+                CsvScanner scanner = CsvScanner.open(file, createFormat(separator), 0);
+                try {
+                    while (scanner.nextRecord()) {
+                        builder.addRecord();
+                        for (int col = 0; col < scanner.getFieldCount(); col++) {
+                            builder.addCell(col, scanner.getField(col));
+                        }
+                    }
+                } finally {
+                    scanner.close();
+                }
+                // schema may not match the version of the EntityTag
+                if (file.lastModified() != lastModified || file.length() != length) {
+                    return null;
+                }
+                return builder.build();
+            }
+        };
+    }
+
+    /**
+     * Creates job for {@link ResourceCache#loadResource} that fills the cache
+     * with a CSV document. The job uses its own instance of this class, so it
+     * can run concurrently to the request.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @return the fill job
+     */
+    public static Callable<Void> createCacheFill(final PandaSettings pandaSettings,
+            final String resID, final EntityTag eTag) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                new DataCsvResource().fillCache(pandaSettings, resID, eTag);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Opens reader for the values of a request to a CSV file. All rows of an
+     * indexed file are parsed in chunks of {@link #CHUNK_INTERVALS} indexed
+     * records on the parse pool and returned in row order.
+     * 
+     * @param file CSV file
+     * @param separator delimiter used for columns
+     * @param reference reference to cell or table (see:
+     *            JerseyCsvResource.class)
+     * @param offsets offsets of records to skip records in front of the first
+     *            requested row or to parse all rows in parallel chunks, null
+     *            to parse from the start
+     * @param parsePool executor of the chunk parses
+     * @param baseURI base URI of the values
+     * @return reader of the values
+     * @throws IOException
+     */
+    private ValueReader openFileReader(File file, String separator, String reference,
+            Offsets offsets, ThreadPoolExecutor parsePool, String baseURI) throws IOException {
+        // analyze request and set start/end indexes for columns/rows
+        this.tableArea = ResourceHelper.evalTableReference(reference);
+
+        // all rows are parsed in parallel if the file is indexed
+        if (tableArea.getRowEnd() == -1 && offsets != null && offsets.size() > 1) {
+            long rowsPerChunk = (long) CHUNK_INTERVALS * RecordOffsetIndex.INTERVAL;
+            List<Callable<List<Value>>> chunks = new ArrayList<Callable<List<Value>>>();
+            for (int i = 0; i < offsets.size(); i += CHUNK_INTERVALS) {
+                long chunkStart = i * (long) RecordOffsetIndex.INTERVAL;
+                // last chunk is read to the end of the file
+                long chunkRows = (i + CHUNK_INTERVALS < offsets.size()) ? rowsPerChunk
+                        : Long.MAX_VALUE;
+                chunks.add(createChunkParse(file, separator, offsets, chunkStart, chunkRows));
+            }
+            return new ParallelValueReader(parsePool, chunks,
+                    2 * parsePool.getMaximumPoolSize(), baseURI);
+        }
+
+        // row of first parsed record
+        long firstRow = (offsets == null) ? 0 : offsets.getRecord(tableArea.getRowStart());
+        return new CsvValueReader(openScanner(file, separator, offsets, firstRow), tableArea,
+                baseURI, firstRow, Long.MAX_VALUE, schema);
+    }
+
+    /**
+     * Creates job that parses a chunk of records of a CSV file. Chunks start
+     * at indexed records, so quoted fields with line breaks never cross the
+     * border of two chunks and rows are numbered from the indexed record.
+     * 
+     * @param file CSV file
+     * @param separator delimiter used for columns
+     * @param offsets offsets of records
+     * @param chunkStart indexed record the chunk starts with
+     * @param chunkRows number of records of the chunk
+     * @return the job, returns the values of the requested columns
+     */
+    private Callable<List<Value>> createChunkParse(final File file, final String separator,
+            final Offsets offsets, final long chunkStart, final long chunkRows) {
+        return new Callable<List<Value>>() {
+            @Override
+            public List<Value> call() throws IOException {
+                List<Value> valList = new ArrayList<Value>();
+                readValues(new CsvValueReader(openScanner(file, separator, offsets, chunkStart),
+                        tableArea, null, chunkStart, chunkRows, schema), valList);
+                return valList;
+            }
+        };
+    }
+
+    /**
+     * Opens reader for the values of a request to a huge CSV file with the
+     * partial cache. If the file is indexed, requests to several blocks of
+     * rows load the blocks in parallel, other requests are answered by
+     * {@link #processCsvBlocks}.
+     * 
+     * @param file CSV file
+     * @param separator delimiter used for columns
+     * @param reference reference to cell or table (see:
+     *            JerseyCsvResource.class)
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @param blockCache cache for blocks of rows
+     * @param offsets offsets of records to skip records in front of the first
+     *            missing block or to load blocks in parallel, null to parse
+     *            from the start
+     * @param parsePool executor of the block loads
+     * @param baseURI base URI of the values
+     * @return reader of the values
+     * @throws IOException
+     */
+    private ValueReader openBlockReader(File file, String separator, String reference,
+            String resID, EntityTag eTag, RowBlockCache blockCache, Offsets offsets,
+            ThreadPoolExecutor parsePool, String baseURI) throws IOException {
+        // analyze request and set start/end indexes for columns/rows
+        this.tableArea = ResourceHelper.evalTableReference(reference);
+
+        if (offsets != null && offsets.size() > 1) {
+            // last block that may contain records of the file
+            long maxBlock = offsets.size() * (long) RecordOffsetIndex.INTERVAL
+                    / RowBlockCache.BLOCK_ROWS;
+            boolean allRows = (tableArea.getRowEnd() == -1);
+            long firstBlock = allRows ? 0 : tableArea.getRowStart() / RowBlockCache.BLOCK_ROWS;
+            long lastBlock = allRows ? maxBlock : Math.min(maxBlock, tableArea.getRowEnd()
+                    / RowBlockCache.BLOCK_ROWS);
+            if (lastBlock > firstBlock) {
+                List<Callable<List<Value>>> loads = new ArrayList<Callable<List<Value>>>();
+                for (long block = firstBlock; block <= lastBlock; block++) {
+                    loads.add(createBlockLoad(file, separator, resID, eTag, blockCache, offsets,
+                            block));
+                }
+                return new ParallelValueReader(parsePool, loads,
+                        2 * parsePool.getMaximumPoolSize(), baseURI);
+            }
+        }
+        return new ListValueReader(processCsvBlocks(file, separator, reference, resID, eTag,
+                blockCache, offsets), baseURI);
+    }
+
+    /**
+     * Read all values of a reader and close it.
+     * 
+     * @param reader the reader
+     * @param valList list the values are added to
+     * @throws IOException
+     */
+    private static void readValues(ValueReader reader, List<Value> valList) throws IOException {
+        try {
+            for (Value value = reader.next(); value != null; value = reader.next()) {
+                valList.add(value);
+            }
+        } finally {
+            reader.close();
+        }
     }
 
     /**
-     * Processing of request to CSV file, returns list of values.
+     * Processing of request to a huge CSV file with the partial cache. Only
+     * the blocks of rows that contain requested rows are read, missing blocks
+     * are parsed in a single pass over the file and added to the cache.
      * 
      * @param file CSV file
      * @param separator delimiter used for columns
      * @param reference reference to cell or table (see:
      *            JerseyCsvResource.class)
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @param blockCache cache for blocks of rows
+     * @param offsets offsets of records to skip records in front of the first
+     *            missing block, null to parse from the start
      * @return list of values as {@code LinkedList<Value>}
      * @throws IOException
      */
-    private LinkedList<Value> processCsv(File file, String separator, String reference)
+    private LinkedList<Value> processCsvBlocks(File file, String separator, String reference,
+            String resID, EntityTag eTag, RowBlockCache blockCache, Offsets offsets)
             throws IOException {
         // analyze request and set start/end indexes for columns/rows
         this.tableArea = ResourceHelper.evalTableReference(reference);
 
         LinkedList<Value> valList = new LinkedList<Value>();
 
+        boolean allRows = (tableArea.getRowEnd() == -1);
+        long firstBlock = allRows ? 0 : tableArea.getRowStart() / RowBlockCache.BLOCK_ROWS;
+        long lastBlock = allRows ? Long.MAX_VALUE : tableArea.getRowEnd()
+                / RowBlockCache.BLOCK_ROWS;
+
+        // scanner is opened for the first missing block and reused for following blocks
+        CsvScanner scanner = null;
+        long scannerRow = 0;
+        try {
+            for (long block = firstBlock; block <= lastBlock; block++) {
+                long blockStart = block * RowBlockCache.BLOCK_ROWS;
+                String[][] rows = blockCache.get(resID, block, eTag);
+                if (rows == null) {
+                    if (scanner == null) {
+                        scannerRow = (offsets == null) ? 0 : offsets.getRecord(blockStart);
+                        scanner = openScanner(file, separator, offsets, scannerRow);
+                    }
+                    // skip records of previous blocks
+                    while (scannerRow < blockStart && scanner.nextRecord()) {
+                        scannerRow++;
+                    }
+                    rows = readBlock(scanner);
+                    scannerRow += rows.length;
+                    blockCache.put(resID, block, eTag, rows);
+                }
+                addBlockValues(valList, blockStart, rows);
+
+                // last block of file
+                if (rows.length < RowBlockCache.BLOCK_ROWS) {
+                    break;
+                }
+            }
+        } finally {
+            if (scanner != null) {
+                scanner.close();
+            }
+        }
+
+        return valList;
+    }
+
+    /**
+     * Adds values of the requested cells of a block of rows.
+     * 
+     * @param valList list of values
+     * @param blockStart row of the first row of the block
+     * @param rows cells of each row of the block
+     */
+    private void addBlockValues(List<Value> valList, long blockStart, String[][] rows) {
+        boolean allRows = (tableArea.getRowEnd() == -1);
+        boolean allColumns = (tableArea.getColEnd() == -1);
+        for (int i = 0; i < rows.length; i++) {
+            long row = blockStart + i;
+            if (!allRows && (row < tableArea.getRowStart() || row > tableArea.getRowEnd())) {
+                continue;
+            }
+            int first = allColumns ? 0 : tableArea.getColStart();
+            int last = allColumns ? rows[i].length - 1 : Math.min(tableArea.getColEnd(),
+                    rows[i].length - 1);
+            for (int col = first; col <= last; col++) {
+                // discard empty values
+                if (!rows[i][col].isEmpty()) {
+                    valList.add(createCellValue(row, col, rows[i][col], schema));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates job that returns the requested values of a block of rows of a
+     * huge CSV file. A missing block is read from the nearest indexed record
+     * in front of it and added to the cache.
+     * 
+     * @param file CSV file
+     * @param separator delimiter used for columns
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @param blockCache cache for blocks of rows
+     * @param offsets offsets of records
+     * @param block index of block
+     * @return the job, returns the values of the requested cells of the block
+     */
+    private Callable<List<Value>> createBlockLoad(final File file, final String separator,
+            final String resID, final EntityTag eTag, final RowBlockCache blockCache,
+            final Offsets offsets, final long block) {
+        return new Callable<List<Value>>() {
+            @Override
+            public List<Value> call() throws IOException {
+                long blockStart = block * RowBlockCache.BLOCK_ROWS;
+                String[][] rows = blockCache.get(resID, block, eTag);
+                if (rows == null) {
+                    long scannerRow = offsets.getRecord(blockStart);
+                    CsvScanner scanner = openScanner(file, separator, offsets, scannerRow);
+                    try {
+                        // skip records in front of block
+                        while (scannerRow < blockStart && scanner.nextRecord()) {
+                            scannerRow++;
+                        }
+                        rows = readBlock(scanner);
+                    } finally {
+                        scanner.close();
+                    }
+                    blockCache.put(resID, block, eTag, rows);
+                }
+
+                List<Value> valList = new ArrayList<Value>();
+                addBlockValues(valList, blockStart, rows);
+                return valList;
+            }
+        };
+    }
+
+    /**
+     * Opens scanner for a CSV file at an indexed record.
+     * 
+     * @param file CSV file
+     * @param separator delimiter used for columns
+     * @param offsets offsets of records, null to scan from the start
+     * @param record indexed record the scanner starts with
+     * @return the scanner
+     * @throws IOException
+     */
+    private CsvScanner openScanner(File file, String separator, Offsets offsets, long record)
+            throws IOException {
+        long offset = (offsets == null) ? 0 : offsets.getOffset(record);
+        return CsvScanner.open(file, createFormat(separator), offset);
+    }
+
+    /**
+     * Read cells of next block of records.
+     * 
+     * @param scanner scanner positioned in front of block
+     * @return cells of each row, less than a full block at end of file
+     * @throws IOException
+     */
+    private String[][] readBlock(CsvScanner scanner) throws IOException {
+        LinkedList<String[]> rows = new LinkedList<String[]>();
+        while (rows.size() < RowBlockCache.BLOCK_ROWS && scanner.nextRecord()) {
+            String[] cells = new String[scanner.getFieldCount()];
+            for (int col = 0; col < cells.length; col++) {
+                cells[col] = scanner.getField(col);
+            }
+            rows.add(cells);
+        }
+        return rows.toArray(new String[rows.size()][]);
+    }
+
+    /**
+     * Creates value of a cell. The type is looked up in the schema of the
+     * file, cells of mixed or unknown columns are checked for numbers.
+     * 
+     * @param row index of row, 0 based
+     * @param col index of column, 0 based
+     * @param value content of cell
+     * @param schema schema of the file, null if it isn't inferred yet
+     * @return the value
+     */
+    static Value createCellValue(long row, int col, String value, ColumnSchema schema) {
+        Value cellValue = new Value();
+        String cellRef = ResourceHelper.convertColNumToColRef(col)
+                + new Integer((int) (row + 1)).toString();
+        cellValue.setValue(value);
+        cellValue.setSubURI(cellRef);
+        String type = (schema == null) ? null : schema.getType(col);
+        if (type == null) {
+            type = ResourceHelper.isNumeric(value) ? ColumnSchema.TYPE_DOUBLE
+                    : ColumnSchema.TYPE_STRING;
+        }
+        cellValue.setType(type);
+        return cellValue;
+    }
+
+    /**
+     * Creates CSV format for the delimiter of a resource.
+     * 
+     * @param separator delimiter used for columns
+     * @return the format
+     */
+    private static CSVFormat createFormat(String separator) {
         CSVFormat format;
         switch (separator) {
         case "\u002C":
@@ -149,61 +696,41 @@ public class DataCsvResource {
             format = CSVFormat.EXCEL.withDelimiter(separator.charAt(0));
             break;
         }
+        return format;
+    }
 
-        CSVParser parser = CSVParser.parse(file, Charset.forName("UTF-8"), format);
-
-        boolean allRows, allColumns;
-        allRows = allColumns = false;
-        if (tableArea.getRowEnd() == -1)
-            allRows = true;
-        if (tableArea.getColEnd() == -1)
-            allColumns = true;
+    /**
+     * Reader of values that were already collected in a list.
+     */
+    private static class ListValueReader implements ValueReader {
+        private final Iterator<Value> values;
+        private final String          baseURI;
 
-        // start counting lines (rows) at 1 to be excel conform
-        for (CSVRecord csvRecord : parser) {
-            long row = parser.getRecordNumber() - 1;
-            // stop if current row > last requested row
-            if (row > tableArea.getRowEnd() && !allRows) {
-                break;
-            }
+        private ListValueReader(List<Value> values, String baseURI) {
+            this.values = values.iterator();
+            this.baseURI = baseURI;
+        }
 
-            if (allRows || (row >= tableArea.getRowStart())) {
-
-                if (tableArea.getColStart() < csvRecord.size()) {
-                    // determine indexes for current row
-                    int first = tableArea.getColStart();
-                    int last;
-                    // all cells of this row
-                    if (allColumns) {
-                        first = 0;
-                        last = csvRecord.size() - 1;
-                    } else if (tableArea.getColEnd() >= csvRecord.size()) {
-                        last = csvRecord.size() - 1;
-                    } else {
-                        last = tableArea.getColEnd();
-                    }
+        @Override
+        public String getBaseURI() {
+            return baseURI;
+        }
 
-                    // get cell values
-                    for (int col = first; col <= last; col++) {
-                        Value cellValue = new Value();
-                        String cellRef = ResourceHelper.convertColNumToColRef(col)
-                                + new Integer((int) (row + 1)).toString();
-                        String value = csvRecord.get(col);
-                        cellValue.setValue(value);
-                        cellValue.setSubURI(cellRef);
-                        try {
-                            Double.valueOf(value);
-                            cellValue.setType("xs:double");
-                        } catch (NumberFormatException e) {
-                            cellValue.setType("xs:string");
-                        }
-                        valList.add(cellValue);
-                    }
+        @Override
+        public Value next() {
+            while (values.hasNext()) {
+                Value value = values.next();
+                // discard empty values
+                if (!(value.getValue() == null) && !(value.getValue().toString().isEmpty())) {
+                    return value;
                 }
             }
+            return null;
         }
 
-        return valList;
+        @Override
+        public void close() {
+        }
     }
 
 }
@@ -28,9 +28,9 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
-import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.EntityTag;
@@ -44,6 +44,7 @@ import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import de.fuberlin.panda.api.ReferenceNotFoundException;
 import de.fuberlin.panda.api.data.ValueExchange.Value;
 import de.fuberlin.panda.api.data.ImageData;
 import de.fuberlin.panda.api.data.ValueExchangeExt;
@@ -100,45 +101,26 @@ public class DataExcelResource {
 
         try {
             File file = new File(filePath);
-            Date lastModified = new Date(file.lastModified());
-            EntityTag eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
-
-            // lookup values in the cache if caching is on
-            if (pandaSettings.getServerCacheUsage() && cache.checkValidityResource(resID, eTag)) {
+            EntityTag eTag = pandaSettings.getResourceWatcher().getVersion(resID).getETag();
+
+            // lookup values in the cache if caching is on, a missing resource is parsed
+            // once into the cache by one of the concurrent requests for it
+            boolean inCache = false;
+            if (pandaSettings.getServerCacheUsage()) {
+                inCache = cache.checkValidityResource(resID, eTag)
+                        || cache.loadResource(resID, eTag,
+                                createCacheFill(pandaSettings, resID, eTag));
+            }
+            if (inCache) {
                 String path = uriInfo.getPath();
                 path = path.substring(path.indexOf(resID));
                 valList = cache.getValues(path, resInfo.getType());
             } else {
-                if (resourceType.equals(DataResourceType.XLS)) {
-                    NPOIFSFileSystem fs = new NPOIFSFileSystem(file);
-
-                    // Create Workbook
-                    wb = new HSSFWorkbook(fs.getRoot(), false);
-
-                    fs.close();
-                } else if (resourceType.equals(DataResourceType.XLSX)) {
-                    OPCPackage pkg = OPCPackage.open(file);
-
-                    // Create Workbook
-                    wb = new XSSFWorkbook(pkg);
-
-                    // revert = close without saving
-                    pkg.revert();
-
-                } else {
-                    throw new WebApplicationException(404);
-                }
+                // resource is not cached or still filled in background
+                wb = openWorkbook(file, resourceType);
 
                 // process excel document and get a list of requested values
                 valList = processExcelRequest(wb, resID, requestType, sheetName, reference);
-
-                // add resource to cache if not already done
-                if (pandaSettings.getServerCacheUsage()
-                        && !cache.checkValidityResource(resID, eTag)) {
-                    ValueExchangeExt newCacheValues = processExcelRequest(wb, resID, requestType,
-                            "*", "*");
-                    cache.addResourceValues(newCacheValues, resInfo.getType(), resID, eTag);
-                }
             }
         } catch (WebApplicationException e) {
             throw e;
@@ -150,6 +132,82 @@ public class DataExcelResource {
         return valList;
     }
 
+    /**
+     * Parses the whole XLS/XLSX document of a resource and adds all values to
+     * the cache.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @throws IOException
+     * @throws InvalidFormatException not a OOXML file
+     */
+    public void fillCache(PandaSettings pandaSettings, String resID, EntityTag eTag)
+            throws IOException, InvalidFormatException {
+        this.pandaSettings = pandaSettings;
+        ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
+        Workbook wb = openWorkbook(new File(resInfo.getFilePath()), resInfo.getType());
+
+        ValueExchangeExt newCacheValues = processExcelRequest(wb, resID, "tables", "*", "*");
+        pandaSettings.getResourceCache().addResourceValues(newCacheValues, resInfo.getType(),
+                resID, eTag);
+    }
+
+    /**
+     * Creates job for {@link ResourceCache#loadResource} that fills the cache
+     * with a XLS/XLSX document. The job uses its own instance of this class, so
+     * it can run concurrently to the request.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @return the fill job
+     */
+    public static Callable<Void> createCacheFill(final PandaSettings pandaSettings,
+            final String resID, final EntityTag eTag) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InvalidFormatException {
+                new DataExcelResource().fillCache(pandaSettings, resID, eTag);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Opens a XLS/XLSX document as workbook.
+     * 
+     * @param file the document
+     * @param resourceType type of resource
+     * @return the workbook
+     * @throws IOException
+     * @throws InvalidFormatException not a OOXML file
+     */
+    private Workbook openWorkbook(File file, DataResourceType resourceType) throws IOException,
+            InvalidFormatException {
+        Workbook wb;
+        if (resourceType.equals(DataResourceType.XLS)) {
+            NPOIFSFileSystem fs = new NPOIFSFileSystem(file);
+
+            // Create Workbook
+            wb = new HSSFWorkbook(fs.getRoot(), false);
+
+            fs.close();
+        } else if (resourceType.equals(DataResourceType.XLSX)) {
+            OPCPackage pkg = OPCPackage.open(file);
+
+            // Create Workbook
+            wb = new XSSFWorkbook(pkg);
+
+            // revert = close without saving
+            pkg.revert();
+
+        } else {
+            throw new WebApplicationException(404);
+        }
+        return wb;
+    }
+
     /**
      * Main method of this class to extract a picture from XLS/XLSX document.
      * 
@@ -279,7 +337,11 @@ public class DataExcelResource {
         else {
             valList.setBaseURI("/" + resID + "/" + requestType + "/"
                     + URLEncoder.encode(sheetName, "US-ASCII") + "/");
-            sheets.add(wb.getSheet(sheetName));
+            Sheet sheet = wb.getSheet(sheetName);
+            if (sheet == null) {
+                throw new ReferenceNotFoundException();
+            }
+            sheets.add(sheet);
         }
 
         // iterate requested sheets
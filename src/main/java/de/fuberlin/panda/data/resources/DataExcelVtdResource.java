@@ -25,16 +25,15 @@ package de.fuberlin.panda.data.resources;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 import javax.ws.rs.WebApplicationException;
@@ -47,10 +46,10 @@ import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
 import org.apache.poi.ss.usermodel.DateUtil;
-import org.apache.poi.xssf.eventusermodel.XSSFReader;
-import org.apache.poi.xssf.model.StylesTable;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
 
 import com.ximpleware.AutoPilot;
 import com.ximpleware.EOFException;
@@ -63,6 +62,7 @@ import com.ximpleware.VTDNav;
 import com.ximpleware.XPathEvalException;
 import com.ximpleware.XPathParseException;
 
+import de.fuberlin.panda.api.ReferenceNotFoundException;
 import de.fuberlin.panda.api.data.ValueExchange.Value;
 import de.fuberlin.panda.api.data.ImageData;
 import de.fuberlin.panda.api.data.ValueExchangeExt;
@@ -136,34 +136,34 @@ public class DataExcelVtdResource {
 
         try {
             File file = new File(filePath);
-            Date lastModified = new Date(file.lastModified());
-            EntityTag eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
+            EntityTag eTag = pandaSettings.getResourceWatcher().getVersion(resID).getETag();
 
             // Handling of Excel 2007 or newer (xlsx) documents
             if (!resourceType.equals(DataResourceType.XLSX)) {
                 throw new WebApplicationException(404);
             } else {
-                // lookup values in the cache if caching is on
-                if (pandaSettings.getServerCacheUsage() && cache.checkValidityResource(resID, eTag)) {
+                // lookup values in the cache if caching is on, a missing resource is
+                // parsed once into the cache by one of the concurrent requests for it
+                boolean inCache = false;
+                if (pandaSettings.getServerCacheUsage()) {
+                    inCache = cache.checkValidityResource(resID, eTag)
+                            || cache.loadResource(resID, eTag,
+                                    createCacheFill(pandaSettings, resID, eTag));
+                }
+                if (inCache) {
                     String path = uriInfo.getPath();
                     path = path.substring(path.indexOf(resID));
                     valList = cache.getValues(path, resourceType);
                 } else {
-                    OPCPackage pkg = OPCPackage.open(file);
-                    XSSFReader xssfReader = new XSSFReader(pkg);
-                    valList = processExcelRequest(resID, requestType, sheetName, reference,
-                            xssfReader);
-
-                    // add resource to cache if not already done
-                    if (pandaSettings.getServerCacheUsage()
-                            && !cache.checkValidityResource(resID, eTag)) {
-                        ValueExchangeExt newCacheValues = processExcelRequest(resID, requestType,
-                                "*", "*", xssfReader);
-                        cache.addResourceValues(newCacheValues, resInfo.getType(), resID, eTag);
+                    // resource is not cached or still filled in background
+                    PackagePartReader parts = new PackagePartReader(pandaSettings, resID,
+                            file, eTag);
+                    try {
+                        valList = processExcelRequest(resID, requestType, sheetName, reference,
+                                parts);
+                    } finally {
+                        parts.close();
                     }
-
-                    // use revert instead of close (read only)
-                    pkg.revert();
                 }
             }
         } catch (WebApplicationException e) {
@@ -176,6 +176,63 @@ public class DataExcelVtdResource {
         return valList;
     }
 
+    /**
+     * Parses the whole XLSX document of a resource and adds all values to the
+     * cache.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @throws IOException can't open file
+     * @throws OpenXML4JException not a OOXML file
+     * @throws EncodingException
+     * @throws EOFException
+     * @throws EntityException
+     * @throws ParseException error during parsing
+     * @throws XPathParseException error during parsing
+     * @throws XPathEvalException error during XPath evaluation
+     * @throws NavException error during XML navigation
+     */
+    public void fillCache(PandaSettings pandaSettings, String resID, EntityTag eTag)
+            throws IOException, OpenXML4JException, EncodingException, EOFException,
+            EntityException, ParseException, XPathParseException, XPathEvalException,
+            NavException {
+        this.pandaSettings = pandaSettings;
+        ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
+
+        PackagePartReader parts = new PackagePartReader(pandaSettings, resID, new File(
+                resInfo.getFilePath()), eTag);
+        try {
+            ValueExchangeExt newCacheValues = processExcelRequest(resID, "tables", "*", "*",
+                    parts);
+            pandaSettings.getResourceCache().addResourceValues(newCacheValues,
+                    resInfo.getType(), resID, eTag);
+        } finally {
+            parts.close();
+        }
+    }
+
+    /**
+     * Creates job for {@link ResourceCache#loadResource} that fills the cache
+     * with a XLSX document. The job uses its own instance of this class, so it
+     * can run concurrently to the request.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @return the fill job
+     */
+    public static Callable<Void> createCacheFill(final PandaSettings pandaSettings,
+            final String resID, final EntityTag eTag) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                new DataExcelVtdResource().fillCache(pandaSettings, resID, eTag);
+                return null;
+            }
+        };
+    }
+
     /**
      * Main method of this class to extract a picture from XLSX document.
      * 
@@ -284,7 +341,7 @@ public class DataExcelVtdResource {
      * @param requestType designator of URI scheme
      * @param sheetName name of sheet
      * @param reference table, column, row or cell reference
-     * @param xssfReader package reader of POI
+     * @param parts parts of XLSX package
      * @return list of values as {@code ValueExchangeExt}
      * @throws EncodingException
      * @throws EOFException
@@ -297,16 +354,22 @@ public class DataExcelVtdResource {
      * @throws NavException error during XML navigation
      */
     private ValueExchangeExt processExcelRequest(String resID, String requestType,
-            String sheetName, String reference, XSSFReader xssfReader) throws EncodingException,
-            EOFException, EntityException, InvalidFormatException, ParseException, IOException,
-            XPathParseException, XPathEvalException, NavException {
+            String sheetName, String reference, PackagePartReader parts)
+            throws EncodingException, EOFException, EntityException, InvalidFormatException,
+            ParseException, IOException, XPathParseException, XPathEvalException, NavException {
         ValueExchangeExt valList = new ValueExchangeExt();
 
-        this.sstData = new SharedStringsData(xssfReader);
-        StylesTable styles = xssfReader.getStylesTable();
-        InputStream workBook = xssfReader.getWorkbookData();
+        String workbookPart = parts.getRelatedPartName("/", PackageRelationshipTypes.CORE_DOCUMENT);
+        if (workbookPart == null) {
+            throw new InvalidFormatException("No workbook found in package.");
+        }
+        this.sstData = new SharedStringsData(getRelatedPart(parts, workbookPart,
+                XSSFRelation.SHARED_STRINGS.getRelation()));
+        StylesData styles = new StylesData(getRelatedPart(parts, workbookPart,
+                XSSFRelation.STYLES.getRelation()));
+        byte[] workBook = parts.getPart(workbookPart);
 
-        LinkedHashMap<String, InputStream> sheets = getSheets(workBook, xssfReader, sheetName);
+        LinkedHashMap<String, String> sheets = getSheets(workBook, parts, workbookPart, sheetName);
 
         String xpathExp = buildXPathExp(reference);
         Boolean allSheets = sheetName.equals("*");
@@ -323,8 +386,7 @@ public class DataExcelVtdResource {
             String pathPrefix = "";
             if (allSheets)
                 pathPrefix = URLEncoder.encode(curSheetName, "US-ASCII");
-            InputStream sheetIS = sheets.get(curSheetName);
-            byte[] sheet = IOUtils.toByteArray(sheetIS);
+            byte[] sheet = parts.getPart(sheets.get(curSheetName));
             // evaluate XPath expression for current sheet
             valList.addValues(evalSheet(sheet, xpathExp, reference, styles, pathPrefix));
         }
@@ -349,7 +411,7 @@ public class DataExcelVtdResource {
      * @throws XPathParseException
      */
     private LinkedList<Value> evalSheet(byte[] sheet, String xpathExp, String reference,
-            StylesTable styles, String pathPrefix) throws EncodingException, EOFException,
+            StylesData styles, String pathPrefix) throws EncodingException, EOFException,
             EntityException, ParseException, XPathEvalException, NavException, XPathParseException {
 
         LinkedList<Value> sheetValues = new LinkedList<Value>();
@@ -418,7 +480,7 @@ public class DataExcelVtdResource {
      * @throws XPathParseException indicates error during parsing
      * @throws XPathEvalException indicates error during XPath evaluation
      */
-    private Value evalCell(VTDNav sheetVn, StylesTable styles, String cellRef, String pathPrefix)
+    private Value evalCell(VTDNav sheetVn, StylesData styles, String cellRef, String pathPrefix)
             throws NavException, XPathParseException, XPathEvalException {
         Value cellValue = new Value();
 
@@ -499,14 +561,13 @@ public class DataExcelVtdResource {
             Boolean isDate = false;
             if (DateUtil.isValidExcelDate(cellVal) && !cellStyle.equals("")) {
                 long idx = Long.parseLong(cellStyle);
-                XSSFCellStyle style = styles.getStyleAt((int) idx);
-                int i = style.getDataFormat();
+                int i = styles.getDataFormat((int) idx);
 
                 // save and use
                 if (dateFormats.containsKey(i)) {
                     isDate = dateFormats.get(i);
                 } else {
-                    String f = style.getDataFormatString();
+                    String f = styles.getDataFormatString(i);
                     isDate = DateUtil.isADateFormat(i, f);
                     dateFormats.put(i, isDate);
                 }
@@ -541,13 +602,35 @@ public class DataExcelVtdResource {
         return cellValue;
     }
 
+    /**
+     * Returns a part related to another part of the package.
+     * 
+     * @param parts parts of XLSX package
+     * @param sourcePartName name of source part
+     * @param relationshipType type of relationship
+     * @return content of part or null if there is no such part
+     * @throws IOException can't open file
+     * @throws InvalidFormatException not an OOXML file
+     * @throws ParseException
+     * @throws XPathParseException
+     * @throws XPathEvalException
+     * @throws NavException
+     */
+    private byte[] getRelatedPart(PackagePartReader parts, String sourcePartName,
+            String relationshipType) throws IOException, InvalidFormatException, ParseException,
+            XPathParseException, XPathEvalException, NavException {
+        String partName = parts.getRelatedPartName(sourcePartName, relationshipType);
+        return (partName == null) ? null : parts.getPart(partName);
+    }
+
     /**
      * Method to get all sheets from which data was requested.
      * 
-     * @param workBook excel document
-     * @param xssfReader package reader of POI
+     * @param workBook workbook part of excel document
+     * @param parts parts of XLSX package
+     * @param workbookPart name of workbook part
      * @param sheetName name of excel sheet
-     * @return list of sheets as {@code LinkedHashMap<String, InputStream>}
+     * @return part names of sheets as {@code LinkedHashMap<String, String>}
      * @throws IOException can't open file
      * @throws EncodingException
      * @throws EOFException
@@ -558,16 +641,15 @@ public class DataExcelVtdResource {
      * @throws NavException
      * @throws InvalidFormatException not an OOXML file
      */
-    private LinkedHashMap<String, InputStream> getSheets(InputStream workBook,
-            XSSFReader xssfReader, String sheetName) throws IOException, EncodingException,
+    private LinkedHashMap<String, String> getSheets(byte[] workBook, PackagePartReader parts,
+            String workbookPart, String sheetName) throws IOException, EncodingException,
             EOFException, EntityException, ParseException, XPathParseException, XPathEvalException,
             NavException, InvalidFormatException {
 
-        LinkedHashMap<String, InputStream> sheets = new LinkedHashMap<String, InputStream>();
+        LinkedHashMap<String, String> sheets = new LinkedHashMap<String, String>();
         String relationshipNS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
         VTDGen wbkVg = new VTDGen();
-        byte[] wbByteArr = IOUtils.toByteArray(workBook);
-        wbkVg.setDoc(wbByteArr);
+        wbkVg.setDoc(workBook);
         wbkVg.parse(true);
         VTDNav wbVn = wbkVg.getNav();
         AutoPilot wbAp = new AutoPilot(wbVn);
@@ -584,11 +666,11 @@ public class DataExcelVtdResource {
 
             String relId = wbVn.toRawString(wbVn.getAttrValNS(relationshipNS, "id"));
             String curSheetName = wbVn.toRawString(wbVn.getAttrVal("name"));
-            sheets.put(curSheetName, xssfReader.getSheet(relId));
+            sheets.put(curSheetName, parts.getRelatedPartNameById(workbookPart, relId));
         }
 
         if (sheets.isEmpty()) {
-            throw new WebApplicationException(404);
+            throw new ReferenceNotFoundException();
         }
 
         return sheets;
@@ -627,11 +709,11 @@ public class DataExcelVtdResource {
         private VTDNav    sstVn;
         private AutoPilot sstAp;
 
-        public SharedStringsData(XSSFReader xssfReader) throws InvalidFormatException, IOException,
-                EncodingException, EOFException, EntityException, ParseException {
+        public SharedStringsData(byte[] sstData) throws EncodingException, EOFException,
+                EntityException, ParseException {
             VTDGen sstVg = new VTDGen();
-            byte[] sstData = IOUtils.toByteArray(xssfReader.getSharedStringsData());
-            sstVg.setDoc(sstData);
+            // workbook without text cells may have no shared string table
+            sstVg.setDoc((sstData == null) ? "<sst/>".getBytes() : sstData);
             sstVg.parse(true);
             sstVn = sstVg.getNav();
             sstAp = new AutoPilot(sstVn);
@@ -682,4 +764,68 @@ public class DataExcelVtdResource {
             return val;
         }
     }
+
+    /**
+     * Class used for low level access to number formats of cell styles. The
+     * styles table of POI creates objects for all fonts, fills and borders,
+     * only the number format of a style is needed to detect dates.
+     * 
+     * @author Christoph Schrder
+     */
+    private class StylesData {
+        // number format ID of each cell style
+        private final ArrayList<Integer>       numFmtIDs     = new ArrayList<Integer>();
+        // custom number formats by their ID
+        private final HashMap<Integer, String> customFormats = new HashMap<Integer, String>();
+
+        public StylesData(byte[] stylesData) throws EncodingException, EOFException,
+                EntityException, ParseException, XPathParseException, XPathEvalException,
+                NavException {
+            if (stylesData == null) {
+                return;
+            }
+            VTDGen stylesVg = new VTDGen();
+            stylesVg.setDoc(stylesData);
+            stylesVg.parse(false);
+            VTDNav stylesVn = stylesVg.getNav();
+            AutoPilot stylesAp = new AutoPilot(stylesVn);
+
+            stylesAp.selectXPath("/styleSheet/numFmts/numFmt");
+            while (stylesAp.evalXPath() != -1) {
+                int id = Integer.parseInt(stylesVn.toRawString(stylesVn.getAttrVal("numFmtId")));
+                customFormats.put(id, stylesVn.toString(stylesVn.getAttrVal("formatCode")));
+            }
+
+            stylesAp.resetXPath();
+            stylesAp.selectXPath("/styleSheet/cellXfs/xf");
+            while (stylesAp.evalXPath() != -1) {
+                int idx = stylesVn.getAttrVal("numFmtId");
+                numFmtIDs.add((idx == -1) ? 0 : Integer.parseInt(stylesVn.toRawString(idx)));
+            }
+        }
+
+        /**
+         * Returns number format ID of a cell style.
+         * 
+         * @param styleIdx index of cell style
+         * @return number format ID, 0 (general) for unknown styles
+         */
+        public int getDataFormat(int styleIdx) {
+            if (styleIdx < 0 || styleIdx >= numFmtIDs.size()) {
+                return 0;
+            }
+            return numFmtIDs.get(styleIdx);
+        }
+
+        /**
+         * Returns format string of a number format.
+         * 
+         * @param numFmtID number format ID
+         * @return format string, null if format is unknown
+         */
+        public String getDataFormatString(int numFmtID) {
+            String format = customFormats.get(numFmtID);
+            return (format != null) ? format : BuiltinFormats.getBuiltinFormat(numFmtID);
+        }
+    }
 }
@@ -28,11 +28,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLDecoder;
-import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.EntityTag;
@@ -45,7 +43,10 @@ import org.htmlcleaner.PrettyXmlSerializer;
 import org.htmlcleaner.TagNode;
 import org.w3c.tidy.Tidy;
 
+import de.fuberlin.panda.api.ReferenceNotFoundException;
+import de.fuberlin.panda.data.caching.RemoteResourceCache.DocumentLoader;
 import de.fuberlin.panda.data.caching.ResourceCache;
+import de.fuberlin.panda.data.caching.ResourceCache.ResourceLoad;
 import de.fuberlin.panda.data.configuration.PandaSettings;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
 
@@ -88,31 +89,61 @@ public class DataHtmlResource {
         String xpathExp = absURI.substring(absURI.indexOf(resID) + resID.length() + 1);
 
         try {
-            File file = null;
             EntityTag eTag = null;
 
             if (filePath != null) {
-                file = new File(filePath);
-                Date lastModified = new Date(file.lastModified());
-                eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
+                eTag = pandaSettings.getResourceWatcher().getVersion(resID).getETag();
             }
 
             xpathExp = URLDecoder.decode(xpathExp, "UTF-8");
             // get tidy HTML document (XML)
             byte[] doc = null;
-            // lookup if document in the cache if caching is on
-            if (pandaSettings.getServerCacheUsage() && cache.checkValidityDocument(resID, eTag)) {
+            // lookup if document in the cache if caching is on, concurrent requests for a
+            // missing resource wait until it was loaded by one of them or read it
+            // themselves if loading takes too long
+            boolean useCache = pandaSettings.getServerCacheUsage();
+            boolean remote = useCache && filePath == null;
+            boolean inCache = !remote && useCache && cache.checkValidityDocument(resID, eTag);
+            ResourceLoad load = null;
+            if (!remote && useCache && !inCache) {
+                // no load is returned if another request loaded the document or is
+                // still loading it
+                load = cache.beginLoad(resID, eTag);
+                inCache = (load == null) && cache.checkValidityDocument(resID, eTag);
+            }
+            if (remote) {
+                // documents of URLs expire and are revalidated with the upstream server
+                final boolean useJtidy = pandaSettings.getUseJtidy();
+                doc = cache.getRemoteCache().getDocument(resID, resInfo.getURL(),
+                        new DocumentLoader() {
+                            @Override
+                            public byte[] load(InputStream in) throws IOException {
+                                return useJtidy ? tidyHtml(in) : cleanHtml(in);
+                            }
+                        });
+            } else if (inCache) {
                 doc = (byte[]) cache.getDocument(resID);
             } else {
-                if (pandaSettings.getUseJtidy())
-                    doc = getTidyHtml(pandaSettings, resID);
-                else
-                    doc = getCleanHtml(pandaSettings, resID);
-
-                // add document to cache if not already done
-                if (pandaSettings.getServerCacheUsage()
-                        && !cache.checkValidityDocument(resID, eTag)) {
-                    cache.addDocument(doc, resID, eTag);
+                boolean added = false;
+                try {
+                    if (pandaSettings.getUseJtidy())
+                        doc = getTidyHtml(pandaSettings, resID);
+                    else
+                        doc = getCleanHtml(pandaSettings, resID);
+
+                    // add document to cache if not already done
+                    if (load != null && !cache.checkValidityDocument(resID, eTag)) {
+                        cache.addDocument(doc, resID, eTag);
+                        added = true;
+                    }
+                } finally {
+                    if (load != null) {
+                        cache.endLoad(load);
+                    }
+                }
+                // written in background after waiting requests were released
+                if (added) {
+                    cache.saveSnapshot(resID);
                 }
             }
 
@@ -123,7 +154,7 @@ public class DataHtmlResource {
 
             // 404 if no elements found
             if (xmlRet.length() == 0) {
-                throw new WebApplicationException(404);
+                throw new ReferenceNotFoundException();
             }
         } catch (WebApplicationException e) {
             throw e;
@@ -134,6 +165,43 @@ public class DataHtmlResource {
         return xmlRet;
     }
 
+    /**
+     * Cleans the whole HTML document of a resource and adds it to the cache.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @throws IOException
+     */
+    public void fillCache(PandaSettings pandaSettings, String resID, EntityTag eTag)
+            throws IOException {
+        byte[] doc;
+        if (pandaSettings.getUseJtidy())
+            doc = getTidyHtml(pandaSettings, resID);
+        else
+            doc = getCleanHtml(pandaSettings, resID);
+        pandaSettings.getResourceCache().addDocument(doc, resID, eTag);
+    }
+
+    /**
+     * Creates job that fills the cache with a HTML document.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @return the fill job
+     */
+    public static Callable<Void> createCacheFill(final PandaSettings pandaSettings,
+            final String resID, final EntityTag eTag) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                new DataHtmlResource().fillCache(pandaSettings, resID, eTag);
+                return null;
+            }
+        };
+    }
+
     /**
      * Clean HTML document and return XML as byte array
      * 
@@ -149,6 +217,30 @@ public class DataHtmlResource {
         ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
         String filePath = resInfo.getFilePath();
 
+        // get HTML document, parse HTML
+        InputStream htmlDoc = null;
+        if (filePath != null) {
+            htmlDoc = new FileInputStream(filePath);
+        } else {
+            // Get online resource
+            htmlDoc = ResourceHelper.getOnlineResource(pandaSettings, resID);
+        }
+        try {
+            doc = tidyHtml(htmlDoc);
+        } finally {
+            htmlDoc.close();
+        }
+
+        return doc;
+    }
+
+    /**
+     * Clean HTML document with JTidy.
+     * 
+     * @param htmlDoc HTML document
+     * @return clean XHTML document as {@code byte[]}
+     */
+    private byte[] tidyHtml(InputStream htmlDoc) {
         // properties for HTML cleaning
         Tidy tidy = new Tidy();
         // no output of warnings/errors
@@ -162,21 +254,9 @@ public class DataHtmlResource {
         // set output to XML
         tidy.setXmlOut(true);
 
-        // get HTML document, parse HTML
-        InputStream htmlDoc = null;
-        if (filePath != null) {
-            htmlDoc = new FileInputStream(filePath);
-        } else {
-            // Get online resource
-            URL resURL = pandaSettings.getResourceMap().getMap().get(resID).getURL();
-            htmlDoc = getOnlineResource(resURL);
-        }
-
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         tidy.parse(htmlDoc, out);
-        doc = out.toByteArray();
-
-        return doc;
+        return out.toByteArray();
     }
 
     /**
@@ -194,6 +274,47 @@ public class DataHtmlResource {
         ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
         String filePath = resInfo.getFilePath();
 
+        // get HTML document, parse HTML
+        CleanerProperties props = createCleanerProperties();
+        TagNode tagNode = null;
+        if (filePath != null) {
+            tagNode = new HtmlCleaner(props).clean(new File(filePath));
+        } else {
+            // Get online resource
+            InputStream htmlDoc = ResourceHelper.getOnlineResource(pandaSettings, resID);
+            try {
+                tagNode = new HtmlCleaner(props).clean(htmlDoc);
+            } finally {
+                htmlDoc.close();
+            }
+        }
+
+        PrettyXmlSerializer pXmlS = new PrettyXmlSerializer(props);
+        doc = pXmlS.getAsString(tagNode).getBytes();
+
+        return doc;
+    }
+
+    /**
+     * Clean HTML document with HtmlCleaner.
+     * 
+     * @param htmlDoc HTML document
+     * @return clean XHTML document as {@code byte[]}
+     * @throws IOException
+     */
+    private byte[] cleanHtml(InputStream htmlDoc) throws IOException {
+        CleanerProperties props = createCleanerProperties();
+        TagNode tagNode = new HtmlCleaner(props).clean(htmlDoc);
+        PrettyXmlSerializer pXmlS = new PrettyXmlSerializer(props);
+        return pXmlS.getAsString(tagNode).getBytes();
+    }
+
+    /**
+     * Creates properties for HTML cleaning with HtmlCleaner.
+     * 
+     * @return the properties
+     */
+    private CleanerProperties createCleanerProperties() {
         // properties for HTML cleaning
         CleanerProperties props = new CleanerProperties();
         // preserve namespace prefixes
@@ -220,42 +341,7 @@ public class DataHtmlResource {
         props.setTranslateSpecialEntities(true);
         // if true do not escape valid xml character sequences
         props.setAdvancedXmlEscape(true);
-
-        // get HTML document, parse HTML
-        TagNode tagNode = null;
-        if (filePath != null) {
-            tagNode = new HtmlCleaner(props).clean(new File(filePath));
-        } else {
-            // Get online resource
-            URL resURL = pandaSettings.getResourceMap().getMap().get(resID).getURL();
-            InputStream htmlDoc = getOnlineResource(resURL);
-            tagNode = new HtmlCleaner(props).clean(htmlDoc);
-        }
-
-        PrettyXmlSerializer pXmlS = new PrettyXmlSerializer(props);
-        doc = pXmlS.getAsString(tagNode).getBytes();
-
-        return doc;
-    }
-
-    /**
-     * Retrieve online located resource via URL.
-     * 
-     * @param resURL URL of resource
-     * @return resource as {@code InputStream}
-     */
-    private InputStream getOnlineResource(URL resURL) {
-        InputStream res;
-        try {
-            URLConnection resCon = resURL.openConnection();
-            resCon.setReadTimeout(3000);
-            resCon.setConnectTimeout(1000);
-            resCon.connect();
-            res = resCon.getInputStream();
-        } catch (IOException e) {
-            throw new WebApplicationException(404);
-        }
-        return res;
+        return props;
     }
 
 }
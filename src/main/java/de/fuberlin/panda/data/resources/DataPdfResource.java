@@ -26,9 +26,9 @@ package de.fuberlin.panda.data.resources;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.Date;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.EntityTag;
@@ -103,15 +103,22 @@ public class DataPdfResource {
 
         try {
             File file = new File(filePath);
-            Date lastModified = new Date(file.lastModified());
-            EntityTag eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
-
-            // lookup values in the cache if caching is on
-            if (pandaSettings.getServerCacheUsage() && cache.checkValidityResource(resID, eTag)) {
+            EntityTag eTag = pandaSettings.getResourceWatcher().getVersion(resID).getETag();
+
+            // lookup values in the cache if caching is on, a missing resource is parsed
+            // once into the cache by one of the concurrent requests for it
+            boolean inCache = false;
+            if (pandaSettings.getServerCacheUsage()) {
+                inCache = cache.checkValidityResource(resID, eTag)
+                        || cache.loadResource(resID, eTag,
+                                createCacheFill(pandaSettings, resID, eTag));
+            }
+            if (inCache) {
                 String path = uriInfo.getPath();
                 path = path.substring(path.indexOf(resID));
                 valList = cache.getValues(path, resourceType);
             } else {
+                // resource is not cached or still filled in background
                 PDDocument pdDoc = PDDocument.load(file);
                 if (pdDoc.isEncrypted()) {
                     throw new WebApplicationException(404);
@@ -119,14 +126,6 @@ public class DataPdfResource {
                 valList = getPdfText(pdDoc, pageRef, lineRef);
                 valList.setBaseURI("/" + resID + "/" + requestType + "/" + valList.getBaseURI());
                 pdDoc.close();
-
-                // add resource to cache if not already done
-                if (pandaSettings.getServerCacheUsage()
-                        && !cache.checkValidityResource(resID, eTag)) {
-                    ValueExchangeExt newCacheValues = getPdfText(pdDoc, "*", "*");
-                    newCacheValues.setBaseURI("/" + resID + "/" + requestType + "/");
-                    cache.addResourceValues(newCacheValues, resInfo.getType(), resID, eTag);
-                }
             }
         } catch (WebApplicationException e) {
             throw e;
@@ -137,6 +136,55 @@ public class DataPdfResource {
         return valList;
     }
 
+    /**
+     * Parses the text of all pages of the PDF document of a resource and adds
+     * all values to the cache.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @throws IOException
+     */
+    public void fillCache(PandaSettings pandaSettings, String resID, EntityTag eTag)
+            throws IOException {
+        this.pandaSettings = pandaSettings;
+        ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
+
+        PDDocument pdDoc = PDDocument.load(new File(resInfo.getFilePath()));
+        try {
+            if (pdDoc.isEncrypted()) {
+                throw new WebApplicationException(404);
+            }
+            ValueExchangeExt newCacheValues = getPdfText(pdDoc, "*", "*");
+            newCacheValues.setBaseURI("/" + resID + "/" + "text" + "/");
+            pandaSettings.getResourceCache().addResourceValues(newCacheValues,
+                    resInfo.getType(), resID, eTag);
+        } finally {
+            pdDoc.close();
+        }
+    }
+
+    /**
+     * Creates job for {@link ResourceCache#loadResource} that fills the cache
+     * with a PDF document. The job uses its own instance of this class, so it
+     * can run concurrently to the request.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @return the fill job
+     */
+    public static Callable<Void> createCacheFill(final PandaSettings pandaSettings,
+            final String resID, final EntityTag eTag) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                new DataPdfResource().fillCache(pandaSettings, resID, eTag);
+                return null;
+            }
+        };
+    }
+
     /**
      * Main method of this class to extract a picture from PDF document.
      * 
@@ -25,9 +25,9 @@ package de.fuberlin.panda.data.resources;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 import javax.ws.rs.WebApplicationException;
@@ -53,6 +53,7 @@ import org.apache.poi.xwpf.usermodel.XWPFTable;
 import org.apache.poi.xwpf.usermodel.XWPFTableCell;
 import org.apache.poi.xwpf.usermodel.XWPFTableRow;
 
+import de.fuberlin.panda.api.ReferenceNotFoundException;
 import de.fuberlin.panda.api.data.ValueExchange.Value;
 import de.fuberlin.panda.api.data.ImageData;
 import de.fuberlin.panda.api.data.ValueExchangeExt;
@@ -110,15 +111,22 @@ public class DataWordResource {
 
         try {
             File file = new File(filePath);
-            Date lastModified = new Date(file.lastModified());
-            EntityTag eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
-
-            // lookup values in the cache if caching is on
-            if (pandaSettings.getServerCacheUsage() && cache.checkValidityResource(resID, eTag)) {
+            EntityTag eTag = pandaSettings.getResourceWatcher().getVersion(resID).getETag();
+
+            // lookup values in the cache if caching is on, a missing resource is parsed
+            // once into the cache by one of the concurrent requests for it
+            boolean inCache = false;
+            if (pandaSettings.getServerCacheUsage()) {
+                inCache = cache.checkValidityResource(resID, eTag)
+                        || cache.loadResource(resID, eTag,
+                                createCacheFill(pandaSettings, resID, eTag));
+            }
+            if (inCache) {
                 String path = uriInfo.getPath();
                 path = path.substring(path.indexOf(resID));
                 valList = cache.getValues(path, resourceType);
             } else {
+                // resource is not cached or still filled in background
                 // Handling of Word 97-2003 (doc) documents
                 if (resourceType.equals(DataResourceType.DOC)) {
 
@@ -128,18 +136,6 @@ public class DataWordResource {
                     fs.close();
 
                     valList.addValues(processParagraphRequest(doc, paragraphRef));
-
-                    // add resource to cache if not already done
-                    if (pandaSettings.getServerCacheUsage()
-                            && !cache.checkValidityResource(resID, eTag)) {
-                        ValueExchangeExt textCacheValues = new ValueExchangeExt();
-                        textCacheValues.setBaseURI("/" + resID + "/" + "text" + "/");
-                        textCacheValues.addValues(processParagraphRequest(doc, "*"));
-                        ValueExchangeExt tableCacheValues = processTableRequest(doc, resID,
-                                "tables", "*", "*", "*");
-                        cache.addResourceValues(textCacheValues, resInfo.getType(), resID, eTag);
-                        cache.addResourceValues(tableCacheValues, resInfo.getType(), resID, eTag);
-                    }
                 }
                 // Handling of Word 2007 or newer (docx) documents
                 else if (resourceType.equals(DataResourceType.DOCX)) {
@@ -153,18 +149,6 @@ public class DataWordResource {
                     pkg.revert();
 
                     valList.addValues(processParagraphRequest(docx, paragraphRef));
-
-                    // add resource to cache if not already done
-                    if (pandaSettings.getServerCacheUsage()
-                            && !cache.checkValidityResource(resID, eTag)) {
-                        ValueExchangeExt textCacheValues = new ValueExchangeExt();
-                        textCacheValues.addValues(processParagraphRequest(docx, "*"));
-                        cache.addResourceValues(textCacheValues, resInfo.getType(), resID, eTag);
-
-                        ValueExchangeExt tableCacheValues = new ValueExchangeExt();
-                        tableCacheValues.addValues(processParagraphRequest(docx, "*"));
-                        cache.addResourceValues(tableCacheValues, resInfo.getType(), resID, eTag);
-                    }
                 } else {
                     throw new WebApplicationException(404);
                 }
@@ -214,15 +198,22 @@ public class DataWordResource {
 
         try {
             File file = new File(filePath);
-            Date lastModified = new Date(file.lastModified());
-            EntityTag eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
-
-            // lookup values in the cache if caching is on
-            if (pandaSettings.getServerCacheUsage() && cache.checkValidityResource(resID, eTag)) {
+            EntityTag eTag = pandaSettings.getResourceWatcher().getVersion(resID).getETag();
+
+            // lookup values in the cache if caching is on, a missing resource is parsed
+            // once into the cache by one of the concurrent requests for it
+            boolean inCache = false;
+            if (pandaSettings.getServerCacheUsage()) {
+                inCache = cache.checkValidityResource(resID, eTag)
+                        || cache.loadResource(resID, eTag,
+                                createCacheFill(pandaSettings, resID, eTag));
+            }
+            if (inCache) {
                 String path = uriInfo.getPath();
                 path = path.substring(path.indexOf(resID));
                 valList = cache.getValues(path, resourceType);
             } else {
+                // resource is not cached or still filled in background
                 // Handling of Word 97-2003 (doc) documents
                 if (resourceType.equals(DataResourceType.DOC)) {
                     NPOIFSFileSystem fs = new NPOIFSFileSystem(file);
@@ -232,18 +223,6 @@ public class DataWordResource {
                     // process word document and get a list of requested values
                     valList = processTableRequest(doc, resID, requestType, tablePos, cellRef,
                             paragraphRef);
-
-                    // add resource to cache if not already done
-                    if (pandaSettings.getServerCacheUsage()
-                            && !cache.checkValidityResource(resID, eTag)) {
-                        ValueExchangeExt textCacheValues = new ValueExchangeExt();
-                        textCacheValues.setBaseURI("/" + resID + "/" + "text" + "/");
-                        textCacheValues.addValues(processParagraphRequest(doc, "*"));
-                        ValueExchangeExt tableCacheValues = processTableRequest(doc, resID,
-                                "tables", "*", "*", "*");
-                        cache.addResourceValues(textCacheValues, resInfo.getType(), resID, eTag);
-                        cache.addResourceValues(tableCacheValues, resInfo.getType(), resID, eTag);
-                    }
                 }
                 // Handling of Word 2007 or newer (docx) documents
                 else if (resourceType.equals(DataResourceType.DOCX)) {
@@ -255,18 +234,6 @@ public class DataWordResource {
                     // process word document and get a list of requested values
                     valList = processTableRequest(docx, resID, requestType, tablePos, cellRef,
                             paragraphRef);
-
-                    // add resource to cache if not already done
-                    if (pandaSettings.getServerCacheUsage()
-                            && !cache.checkValidityResource(resID, eTag)) {
-                        ValueExchangeExt textCacheValues = new ValueExchangeExt();
-                        textCacheValues.addValues(processParagraphRequest(docx, "*"));
-                        cache.addResourceValues(textCacheValues, resInfo.getType(), resID, eTag);
-
-                        ValueExchangeExt tableCacheValues = new ValueExchangeExt();
-                        tableCacheValues.addValues(processParagraphRequest(docx, "*"));
-                        cache.addResourceValues(tableCacheValues, resInfo.getType(), resID, eTag);
-                    }
                 } else {
                     throw new WebApplicationException(404);
                 }
@@ -280,6 +247,70 @@ public class DataWordResource {
         return valList;
     }
 
+    /**
+     * Parses all text and table paragraphs of the DOC/DOCX document of a
+     * resource and adds them to the cache.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @throws IOException
+     * @throws InvalidFormatException not a OOXML file
+     */
+    public void fillCache(PandaSettings pandaSettings, String resID, EntityTag eTag)
+            throws IOException, InvalidFormatException {
+        this.pandaSettings = pandaSettings;
+        ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
+        File file = new File(resInfo.getFilePath());
+
+        ValueExchangeExt textCacheValues = new ValueExchangeExt();
+        textCacheValues.setBaseURI("/" + resID + "/" + "text" + "/");
+        ValueExchangeExt tableCacheValues;
+        if (resInfo.getType().equals(DataResourceType.DOC)) {
+            NPOIFSFileSystem fs = new NPOIFSFileSystem(file);
+            HWPFDocument doc = new HWPFDocument(fs.getRoot());
+            fs.close();
+
+            textCacheValues.addValues(processParagraphRequest(doc, "*"));
+            tableCacheValues = processTableRequest(doc, resID, "tables", "*", "*", "*");
+        } else if (resInfo.getType().equals(DataResourceType.DOCX)) {
+            OPCPackage pkg = OPCPackage.open(file);
+            XWPFDocument docx = new XWPFDocument(pkg);
+            // revert = close without saving
+            pkg.revert();
+
+            textCacheValues.addValues(processParagraphRequest(docx, "*"));
+            tableCacheValues = processTableRequest(docx, resID, "tables", "*", "*", "*");
+        } else {
+            throw new WebApplicationException(404);
+        }
+
+        ResourceCache cache = pandaSettings.getResourceCache();
+        cache.addResourceValues(textCacheValues, resInfo.getType(), resID, eTag);
+        cache.addResourceValues(tableCacheValues, resInfo.getType(), resID, eTag);
+    }
+
+    /**
+     * Creates job for {@link ResourceCache#loadResource} that fills the cache
+     * with a DOC/DOCX document. The job uses its own instance of this class, so
+     * it can run concurrently to the request.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @return the fill job
+     */
+    public static Callable<Void> createCacheFill(final PandaSettings pandaSettings,
+            final String resID, final EntityTag eTag) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InvalidFormatException {
+                new DataWordResource().fillCache(pandaSettings, resID, eTag);
+                return null;
+            }
+        };
+    }
+
     /**
      * Main method of this class to extract a picture from DOC/DOCX document.
      * 
@@ -376,6 +407,9 @@ public class DataWordResource {
         } else {
             // get table and position of table
             Integer tPos = Integer.parseInt(tablePos) - 1;
+            if (tPos >= docx.getTables().size()) {
+                throw new ReferenceNotFoundException();
+            }
             tables.add(docx.getTables().get(tPos));
             valList.setBaseURI("/" + resID + "/" + requestType + "/" + tablePos + "/");
         }
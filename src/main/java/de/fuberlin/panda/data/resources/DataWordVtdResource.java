@@ -26,9 +26,9 @@ package de.fuberlin.panda.data.resources;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 import javax.ws.rs.WebApplicationException;
@@ -40,8 +40,6 @@ import org.apache.commons.io.IOUtils;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackagePart;
-import org.apache.poi.openxml4j.opc.PackageRelationship;
-import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
 import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
 
 import com.ximpleware.AutoPilot;
@@ -109,43 +107,29 @@ public class DataWordVtdResource {
 
         try {
             File file = new File(filePath);
-            Date lastModified = new Date(file.lastModified());
-            EntityTag eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
-
-            // lookup values in the cache if caching is on
-            if (pandaSettings.getServerCacheUsage() && cache.checkValidityResource(resID, eTag)) {
+            EntityTag eTag = pandaSettings.getResourceWatcher().getVersion(resID).getETag();
+
+            // lookup values in the cache if caching is on, a missing resource is parsed
+            // once into the cache by one of the concurrent requests for it
+            boolean inCache = false;
+            if (pandaSettings.getServerCacheUsage()) {
+                inCache = cache.checkValidityResource(resID, eTag)
+                        || cache.loadResource(resID, eTag,
+                                createCacheFill(pandaSettings, resID, eTag));
+            }
+            if (inCache) {
                 String path = uriInfo.getPath();
                 path = path.substring(path.indexOf(resID));
                 valList = cache.getValues(path, resourceType);
             } else {
+                // resource is not cached or still filled in background
                 // Handling of Word 2007 or newer (docx) documents
                 if (resourceType.equals(DataResourceType.DOCX)) {
 
-                    // Open Word file
-                    OPCPackage pkg = OPCPackage.open(file);
-
                     // get /word/document.xml
-                    PackageRelationshipCollection rels = pkg
-                            .getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
-                    PackageRelationship docRel = rels.getRelationship(0);
-                    PackagePart docPP = pkg.getPart(docRel);
-                    byte[] document = IOUtils.toByteArray(docPP.getInputStream());
+                    byte[] document = getDocument(resID, file, eTag);
 
                     valList = processTextParagraphs(document, resID, requestType, paragraphRef);
-
-                    // add resource to cache if not already done
-                    if (pandaSettings.getServerCacheUsage()
-                            && !cache.checkValidityResource(resID, eTag)) {
-                        ValueExchangeExt textCacheValues = processTextParagraphs(document, resID,
-                                "text", "*");
-                        ValueExchangeExt tableCacheValues = processTableParagraphs(document, resID,
-                                "tables", "*", "*", "*");
-                        cache.addResourceValues(textCacheValues, resInfo.getType(), resID, eTag);
-                        cache.addResourceValues(tableCacheValues, resInfo.getType(), resID, eTag);
-                    }
-
-                    // use revert instead of close (read only)
-                    pkg.revert();
                 } else {
                     throw new WebApplicationException(404);
                 }
@@ -196,43 +180,31 @@ public class DataWordVtdResource {
 
         try {
             File file = new File(filePath);
-            Date lastModified = new Date(file.lastModified());
-            EntityTag eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
-
-            // lookup values in the cache if caching is on
-            if (pandaSettings.getServerCacheUsage() && cache.checkValidityResource(resID, eTag)) {
+            EntityTag eTag = pandaSettings.getResourceWatcher().getVersion(resID).getETag();
+
+            // lookup values in the cache if caching is on, a missing resource is parsed
+            // once into the cache by one of the concurrent requests for it
+            boolean inCache = false;
+            if (pandaSettings.getServerCacheUsage()) {
+                inCache = cache.checkValidityResource(resID, eTag)
+                        || cache.loadResource(resID, eTag,
+                                createCacheFill(pandaSettings, resID, eTag));
+            }
+            if (inCache) {
                 String path = uriInfo.getPath();
                 path = path.substring(path.indexOf(resID));
                 valList = cache.getValues(path, resourceType);
             } else {
+                // resource is not cached or still filled in background
                 // Handling of Word 2007 or newer (docx) documents
                 if (resourceType.equals(DataResourceType.DOCX)) {
 
-                    // Open OOXML Package
-                    OPCPackage pkg = OPCPackage.open(file);
-
                     // get /word/document.xml
-                    PackageRelationshipCollection rels = pkg
-                            .getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
-                    PackageRelationship docRel = rels.getRelationship(0);
-                    PackagePart docPP = pkg.getPart(docRel);
-                    byte[] document = IOUtils.toByteArray(docPP.getInputStream());
-                    pkg.close();
+                    byte[] document = getDocument(resID, file, eTag);
 
                     // process word document and get a list of requested values
                     valList = processTableParagraphs(document, resID, requestType, tablePos,
                             cellRef, paragraphRef);
-
-                    // add resource to cache if not already done
-                    if (pandaSettings.getServerCacheUsage()
-                            && !cache.checkValidityResource(resID, eTag)) {
-                        ValueExchangeExt textCacheValues = processTextParagraphs(document, resID,
-                                "text", "*");
-                        ValueExchangeExt tableCacheValues = processTableParagraphs(document, resID,
-                                "tables", "*", "*", "*");
-                        cache.addResourceValues(textCacheValues, resInfo.getType(), resID, eTag);
-                        cache.addResourceValues(tableCacheValues, resInfo.getType(), resID, eTag);
-                    }
                 } else {
                     throw new WebApplicationException(404);
                 }
@@ -250,6 +222,79 @@ public class DataWordVtdResource {
         return valList;
     }
 
+    /**
+     * Parses all text and table paragraphs of the DOCX document of a resource
+     * and adds them to the cache.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @throws Exception error during opening or parsing of document
+     */
+    public void fillCache(PandaSettings pandaSettings, String resID, EntityTag eTag)
+            throws Exception {
+        this.pandaSettings = pandaSettings;
+        ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
+        if (!resInfo.getType().equals(DataResourceType.DOCX)) {
+            throw new WebApplicationException(404);
+        }
+
+        // get /word/document.xml
+        byte[] document = getDocument(resID, new File(resInfo.getFilePath()), eTag);
+
+        ValueExchangeExt textCacheValues = processTextParagraphs(document, resID, "text", "*");
+        ValueExchangeExt tableCacheValues = processTableParagraphs(document, resID, "tables",
+                "*", "*", "*");
+        ResourceCache cache = pandaSettings.getResourceCache();
+        cache.addResourceValues(textCacheValues, resInfo.getType(), resID, eTag);
+        cache.addResourceValues(tableCacheValues, resInfo.getType(), resID, eTag);
+    }
+
+    /**
+     * Returns main document part (/word/document.xml) of a DOCX package. The
+     * package is only opened if the part is not cached.
+     * 
+     * @param resID unique ID of resource
+     * @param file DOCX file
+     * @param eTag EntityTag of resource
+     * @return content of document part
+     * @throws Exception error during opening of package or reading of part
+     */
+    private byte[] getDocument(String resID, File file, EntityTag eTag) throws Exception {
+        PackagePartReader parts = new PackagePartReader(pandaSettings, resID, file, eTag);
+        try {
+            String documentPart = parts.getRelatedPartName("/",
+                    PackageRelationshipTypes.CORE_DOCUMENT);
+            if (documentPart == null) {
+                throw new InvalidFormatException("No document found in package.");
+            }
+            return parts.getPart(documentPart);
+        } finally {
+            parts.close();
+        }
+    }
+
+    /**
+     * Creates job for {@link ResourceCache#loadResource} that fills the cache
+     * with a DOCX document. The job uses its own instance of this class, so it
+     * can run concurrently to the request.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @return the fill job
+     */
+    public static Callable<Void> createCacheFill(final PandaSettings pandaSettings,
+            final String resID, final EntityTag eTag) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                new DataWordVtdResource().fillCache(pandaSettings, resID, eTag);
+                return null;
+            }
+        };
+    }
+
     /**
      * Main method of this class to extract a picture DOCX document.
      * 
@@ -27,13 +27,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLDecoder;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.EntityTag;
@@ -44,7 +42,10 @@ import org.apache.commons.io.IOUtils;
 
 import com.ximpleware.*;
 
+import de.fuberlin.panda.api.ReferenceNotFoundException;
+import de.fuberlin.panda.data.caching.RemoteResourceCache.DocumentLoader;
 import de.fuberlin.panda.data.caching.ResourceCache;
+import de.fuberlin.panda.data.caching.ResourceCache.ResourceLoad;
 import de.fuberlin.panda.data.configuration.PandaSettings;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
 
@@ -91,30 +92,64 @@ public class DataXmlResource {
 
             if (filePath != null) {
                 file = new File(filePath);
-                Date lastModified = new Date(file.lastModified());
-                eTag = new EntityTag(resID + "_" + lastModified.getTime(), false);
+                eTag = pandaSettings.getResourceWatcher().getVersion(resID).getETag();
             }
 
             xpathExp = URLDecoder.decode(xpathExp, "UTF-8");
             byte[] doc = null;
-            // lookup if document in the cache if caching is on
-            if (pandaSettings.getServerCacheUsage() && cache.checkValidityResource(resID, eTag)) {
+            // lookup if document in the cache if caching is on, concurrent requests for a
+            // missing resource wait until it was loaded by one of them or read it
+            // themselves if loading takes too long
+            boolean useCache = pandaSettings.getServerCacheUsage();
+            boolean remote = useCache && filePath == null;
+            boolean inCache = !remote && useCache && cache.checkValidityDocument(resID, eTag);
+            ResourceLoad load = null;
+            if (!remote && useCache && !inCache) {
+                // no load is returned if another request loaded the document or is
+                // still loading it
+                load = cache.beginLoad(resID, eTag);
+                inCache = (load == null) && cache.checkValidityDocument(resID, eTag);
+            }
+            if (remote) {
+                // documents of URLs expire and are revalidated with the upstream server
+                doc = cache.getRemoteCache().getDocument(resID, resInfo.getURL(),
+                        new DocumentLoader() {
+                            @Override
+                            public byte[] load(InputStream in) throws IOException {
+                                return IOUtils.toByteArray(in);
+                            }
+                        });
+            } else if (inCache) {
                 doc = (byte[]) cache.getDocument(resID);
             } else {
-                InputStream xmlDoc;
-                if (filePath != null) {
-                    xmlDoc = new FileInputStream(file);
-                } else {
-                    // Get online resource
-                    URL resURL = pandaSettings.getResourceMap().getMap().get(resID).getURL();
-                    xmlDoc = getOnlineResource(resURL);
-                }
-                doc = IOUtils.toByteArray(xmlDoc);
+                boolean added = false;
+                try {
+                    InputStream xmlDoc;
+                    if (filePath != null) {
+                        xmlDoc = new FileInputStream(file);
+                    } else {
+                        // Get online resource
+                        xmlDoc = ResourceHelper.getOnlineResource(pandaSettings, resID);
+                    }
+                    try {
+                        doc = IOUtils.toByteArray(xmlDoc);
+                    } finally {
+                        xmlDoc.close();
+                    }
 
-                // add document to cache if not already done
-                if (pandaSettings.getServerCacheUsage()
-                        && !cache.checkValidityResource(resID, eTag)) {
-                    cache.addDocument(doc, resID, eTag);
+                    // add document to cache if not already done
+                    if (load != null && !cache.checkValidityDocument(resID, eTag)) {
+                        cache.addDocument(doc, resID, eTag);
+                        added = true;
+                    }
+                } finally {
+                    if (load != null) {
+                        cache.endLoad(load);
+                    }
+                }
+                // written in background after waiting requests were released
+                if (added) {
+                    cache.saveSnapshot(resID);
                 }
             }
 
@@ -128,6 +163,45 @@ public class DataXmlResource {
         return xmlRet;
     }
 
+    /**
+     * Reads the whole XML document of a resource and adds it to the cache.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @throws IOException
+     */
+    public void fillCache(PandaSettings pandaSettings, String resID, EntityTag eTag)
+            throws IOException {
+        ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
+        InputStream xmlDoc = new FileInputStream(resInfo.getFilePath());
+        try {
+            pandaSettings.getResourceCache().addDocument(IOUtils.toByteArray(xmlDoc), resID,
+                    eTag);
+        } finally {
+            xmlDoc.close();
+        }
+    }
+
+    /**
+     * Creates job that fills the cache with a XML document.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param eTag EntityTag of resource
+     * @return the fill job
+     */
+    public static Callable<Void> createCacheFill(final PandaSettings pandaSettings,
+            final String resID, final EntityTag eTag) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                new DataXmlResource().fillCache(pandaSettings, resID, eTag);
+                return null;
+            }
+        };
+    }
+
     /**
      * Evaluate XPath expression for XML document, used by other DataResource
      * classes
@@ -167,7 +241,7 @@ public class DataXmlResource {
 
             // 404 if no elements found
             if (elements.length() == 0) {
-                throw new WebApplicationException(404);
+                throw new ReferenceNotFoundException();
             }
 
             xmlRet = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<PANDA"
@@ -363,24 +437,4 @@ public class DataXmlResource {
         return retString;
     }
 
-    /**
-     * Retrieve online resource via URL.
-     * 
-     * @param resURL URL of resource
-     * @return resource as {@code InputStream}
-     */
-    private InputStream getOnlineResource(URL resURL) {
-        InputStream res;
-        try {
-            URLConnection resCon = resURL.openConnection();
-            resCon.setReadTimeout(3000);
-            resCon.setConnectTimeout(1000);
-            resCon.connect();
-            res = resCon.getInputStream();
-        } catch (IOException e) {
-            throw new WebApplicationException(404);
-        }
-        return res;
-    }
-
 }
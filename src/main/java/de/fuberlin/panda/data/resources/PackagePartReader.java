@@ -0,0 +1,204 @@
+package de.fuberlin.panda.data.resources;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+
+import com.ximpleware.AutoPilot;
+import com.ximpleware.NavException;
+import com.ximpleware.ParseException;
+import com.ximpleware.VTDGen;
+import com.ximpleware.VTDNav;
+import com.ximpleware.XPathEvalException;
+import com.ximpleware.XPathParseException;
+
+import de.fuberlin.panda.data.caching.PackagePartCache;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+
+/**
+ * Read access to decompressed parts of an OOXML package (XLSX, DOCX). Parts
+ * are taken from the {@link PackagePartCache} if server caching is on, the
+ * package is only opened if a part is missing in the cache. Relationships
+ * are resolved from the cached relationship parts, so a fully cached package
+ * is never opened. {@link #close()} has to be called after all parts were
+ * read.
+ * 
+ * @author Christoph Schrder
+ */
+public class PackagePartReader {
+    // content of parts that do not exist in the package
+    private static final byte[]    MISSING_PART = new byte[0];
+
+    private final String           resID;
+    private final File             file;
+    private final EntityTag        eTag;
+    // null if parts are not cached
+    private final PackagePartCache partCache;
+    private OPCPackage             pkg;
+
+    /**
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @param file OOXML file of resource
+     * @param eTag EntityTag of resource, parts are not cached if null
+     */
+    public PackagePartReader(PandaSettings pandaSettings, String resID, File file, EntityTag eTag) {
+        this.resID = resID;
+        this.file = file;
+        this.eTag = eTag;
+        if (pandaSettings.getServerCacheUsage() && eTag != null) {
+            this.partCache = pandaSettings.getResourceCache().getPartCache();
+        } else {
+            this.partCache = null;
+        }
+    }
+
+    /**
+     * Returns decompressed content of a part.
+     * 
+     * @param partName name of part, e.g. "/xl/workbook.xml"
+     * @return content of part or null if package has no such part
+     * @throws IOException can't open file
+     * @throws InvalidFormatException not an OOXML file
+     */
+    public byte[] getPart(String partName) throws IOException, InvalidFormatException {
+        byte[] data = null;
+        if (partCache != null) {
+            data = partCache.get(resID, partName, eTag);
+        }
+        if (data == null) {
+            if (pkg == null) {
+                pkg = OPCPackage.open(file);
+            }
+            PackagePart part = pkg.getPart(PackagingURIHelper.createPartName(partName));
+            data = (part == null) ? MISSING_PART : IOUtils.toByteArray(part.getInputStream());
+            if (partCache != null) {
+                partCache.put(resID, partName, eTag, data);
+            }
+        }
+        return (data.length == 0) ? null : data;
+    }
+
+    /**
+     * Returns name of the first part with a relationship of the given type.
+     * 
+     * @param sourcePartName name of source part, "/" for the package
+     * @param relationshipType type of relationship
+     * @return name of target part or null if there is no such relationship
+     * @throws IOException can't open file
+     * @throws InvalidFormatException not an OOXML file
+     * @throws ParseException error during parsing
+     * @throws XPathParseException error during parsing
+     * @throws XPathEvalException error during XPath evaluation
+     * @throws NavException error during XML navigation
+     */
+    public String getRelatedPartName(String sourcePartName, String relationshipType)
+            throws IOException, InvalidFormatException, ParseException, XPathParseException,
+            XPathEvalException, NavException {
+        return findRelationship(sourcePartName, "Type", relationshipType);
+    }
+
+    /**
+     * Returns name of the part with a relationship with the given ID.
+     * 
+     * @param sourcePartName name of source part, "/" for the package
+     * @param relationshipID ID of relationship, e.g. "rId1"
+     * @return name of target part or null if there is no such relationship
+     * @throws IOException can't open file
+     * @throws InvalidFormatException not an OOXML file
+     * @throws ParseException error during parsing
+     * @throws XPathParseException error during parsing
+     * @throws XPathEvalException error during XPath evaluation
+     * @throws NavException error during XML navigation
+     */
+    public String getRelatedPartNameById(String sourcePartName, String relationshipID)
+            throws IOException, InvalidFormatException, ParseException, XPathParseException,
+            XPathEvalException, NavException {
+        return findRelationship(sourcePartName, "Id", relationshipID);
+    }
+
+    /**
+     * Release package if it was opened.
+     */
+    public void close() {
+        if (pkg != null) {
+            // use revert instead of close (read only)
+            pkg.revert();
+            pkg = null;
+        }
+    }
+
+    /**
+     * Look up target of a relationship in the relationship part of a source
+     * part.
+     * 
+     * @param sourcePartName name of source part, "/" for the package
+     * @param attrName attribute to match, "Id" or "Type"
+     * @param attrValue value of attribute
+     * @return name of target part or null if there is no such relationship
+     * @throws IOException can't open file
+     * @throws InvalidFormatException not an OOXML file
+     * @throws ParseException error during parsing
+     * @throws XPathParseException error during parsing
+     * @throws XPathEvalException error during XPath evaluation
+     * @throws NavException error during XML navigation
+     */
+    private String findRelationship(String sourcePartName, String attrName, String attrValue)
+            throws IOException, InvalidFormatException, ParseException, XPathParseException,
+            XPathEvalException, NavException {
+        // relationships of /xl/workbook.xml are stored in /xl/_rels/workbook.xml.rels
+        int nameStart = sourcePartName.lastIndexOf('/') + 1;
+        String relsPartName = sourcePartName.substring(0, nameStart) + "_rels/"
+                + sourcePartName.substring(nameStart) + ".rels";
+        byte[] rels = getPart(relsPartName);
+        if (rels == null) {
+            return null;
+        }
+
+        VTDGen relsVg = new VTDGen();
+        relsVg.setDoc(rels);
+        relsVg.parse(false);
+        VTDNav relsVn = relsVg.getNav();
+        AutoPilot relsAp = new AutoPilot(relsVn);
+        relsAp.selectXPath("/Relationships/Relationship[@" + attrName + "=\"" + attrValue
+                + "\"]");
+        if (relsAp.evalXPath() == -1) {
+            return null;
+        }
+
+        // targets are relative to the source part
+        String target = relsVn.toRawString(relsVn.getAttrVal("Target"));
+        return URI.create(sourcePartName).resolve(target).getRawPath();
+    }
+}
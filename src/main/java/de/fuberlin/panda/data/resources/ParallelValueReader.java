@@ -0,0 +1,131 @@
+package de.fuberlin.panda.data.resources;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.WebApplicationException;
+
+import de.fuberlin.panda.api.data.ValueExchange.Value;
+
+/**
+ * Reads values that are produced by jobs, e.g. parsers of chunks of a file.
+ * The jobs run in parallel on an executor, but only a limited number of jobs
+ * runs ahead of the reader, so the values of a whole file are never held in
+ * memory at once. Values are returned in order of the jobs.
+ * 
+ * @author Christoph Schrder
+ */
+public class ParallelValueReader implements ValueReader {
+
+    private final ExecutorService                 executor;
+    private final Iterator<Callable<List<Value>>> jobs;
+    // submitted jobs in order of their values
+    private final LinkedList<Future<List<Value>>> running = new LinkedList<Future<List<Value>>>();
+    private final int                             maxRunning;
+    private final String                          baseURI;
+
+    // values of the current job
+    private Iterator<Value>                       values  = Collections.<Value> emptyIterator();
+
+    /**
+     * @param executor executor of the jobs
+     * @param jobs jobs in order of their values
+     * @param maxRunning maximum number of jobs that run ahead of the reader
+     * @param baseURI base URI of the values
+     */
+    public ParallelValueReader(ExecutorService executor, List<Callable<List<Value>>> jobs,
+            int maxRunning, String baseURI) {
+        this.executor = executor;
+        this.jobs = jobs.iterator();
+        this.maxRunning = maxRunning;
+        this.baseURI = baseURI;
+        submitJobs();
+    }
+
+    @Override
+    public String getBaseURI() {
+        return baseURI;
+    }
+
+    @Override
+    public Value next() throws IOException {
+        while (!values.hasNext()) {
+            if (running.isEmpty()) {
+                return null;
+            }
+            Future<List<Value>> job = running.removeFirst();
+            submitJobs();
+            values = getValues(job).iterator();
+        }
+        return values.next();
+    }
+
+    @Override
+    public void close() {
+        for (Future<List<Value>> job : running) {
+            job.cancel(true);
+        }
+        running.clear();
+    }
+
+    /**
+     * Submit jobs until the maximum number of jobs is running.
+     */
+    private void submitJobs() {
+        while (running.size() < maxRunning && jobs.hasNext()) {
+            running.add(executor.submit(jobs.next()));
+        }
+    }
+
+    /**
+     * Wait for the values of a job.
+     * 
+     * @param job the job
+     * @return values of the job
+     * @throws IOException if the job failed to read the resource
+     */
+    private List<Value> getValues(Future<List<Value>> job) throws IOException {
+        try {
+            return job.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(503);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -23,10 +23,17 @@ package de.fuberlin.panda.data.resources;
  */
 
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import javax.ws.rs.WebApplicationException;
+
+import de.fuberlin.panda.data.caching.RemoteFetcher;
+import de.fuberlin.panda.data.caching.ResourceCache;
 import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
 
 public class ResourceHelper {
     private static PandaSettings pandaSettings;
@@ -132,7 +139,7 @@ public class ResourceHelper {
             if (offset == 0)
                 offset = 26;
             c = (char) (64 + offset);
-            colID = (int) Math.floor(colID / 26);
+            colID = (colID - offset) / 26;
             colRef = c + colRef;
         }
 
@@ -172,6 +179,159 @@ public class ResourceHelper {
         return gregorianDate;
     }
 
+    /**
+     * Checks if a String is a number accepted by {@link Double#valueOf}
+     * without parsing it and without exceptions for other Strings. Decimal
+     * and hexadecimal numbers with exponent and type suffix, NaN and Infinity
+     * are recognized, surrounding whitespace is ignored.
+     * 
+     * @param value String to check
+     * @return true if the String is a number
+     */
+    public static boolean isNumeric(String value) {
+        int start = 0;
+        int end = value.length();
+        // whitespace and control characters are trimmed like String.trim()
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start < end && (value.charAt(start) == '+' || value.charAt(start) == '-')) {
+            start++;
+        }
+        if (start == end) {
+            return false;
+        }
+
+        char first = value.charAt(start);
+        if (first == 'N') {
+            return end - start == 3 && value.startsWith("NaN", start);
+        } else if (first == 'I') {
+            return end - start == 8 && value.startsWith("Infinity", start);
+        }
+        // optional type suffix, it can't be a digit of a valid number
+        char last = value.charAt(end - 1);
+        if (last == 'f' || last == 'F' || last == 'd' || last == 'D') {
+            end--;
+        }
+        if (first == '0' && start + 1 < end
+                && (value.charAt(start + 1) == 'x' || value.charAt(start + 1) == 'X')) {
+            return isHexNumber(value, start + 2, end);
+        }
+        return isDecimalNumber(value, start, end);
+    }
+
+    /**
+     * Checks if a part of a String is an unsigned decimal number with
+     * optional exponent like "12", "1.5", ".5" or "1e-3".
+     * 
+     * @param value the String
+     * @param start index of first character
+     * @param end index behind last character
+     * @return true if the part is a decimal number
+     */
+    private static boolean isDecimalNumber(String value, int start, int end) {
+        int i = skipDigits(value, start, end, false);
+        int digits = i - start;
+        if (i < end && value.charAt(i) == '.') {
+            int fractionStart = i + 1;
+            i = skipDigits(value, fractionStart, end, false);
+            digits += i - fractionStart;
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            return isExponent(value, i + 1, end);
+        }
+        return i == end;
+    }
+
+    /**
+     * Checks if a part of a String is an unsigned hexadecimal number behind
+     * the prefix "0x" like "1p3", "1.8p1" or ".8p-1". The binary exponent is
+     * mandatory.
+     * 
+     * @param value the String
+     * @param start index of first character behind prefix
+     * @param end index behind last character
+     * @return true if the part is a hexadecimal number
+     */
+    private static boolean isHexNumber(String value, int start, int end) {
+        int i = skipDigits(value, start, end, true);
+        int digits = i - start;
+        if (i < end && value.charAt(i) == '.') {
+            int fractionStart = i + 1;
+            i = skipDigits(value, fractionStart, end, true);
+            digits += i - fractionStart;
+        }
+        if (digits == 0 || i == end || (value.charAt(i) != 'p' && value.charAt(i) != 'P')) {
+            return false;
+        }
+        return isExponent(value, i + 1, end);
+    }
+
+    /**
+     * Checks if a part of a String is a decimal exponent with optional sign.
+     * 
+     * @param value the String
+     * @param start index of first character behind exponent indicator
+     * @param end index behind last character
+     * @return true if the part is an exponent
+     */
+    private static boolean isExponent(String value, int start, int end) {
+        if (start < end && (value.charAt(start) == '+' || value.charAt(start) == '-')) {
+            start++;
+        }
+        int i = skipDigits(value, start, end, false);
+        return i > start && i == end;
+    }
+
+    /**
+     * Returns index of first character that is not an ASCII digit.
+     * 
+     * @param value the String
+     * @param start index of first character
+     * @param end index behind last character
+     * @param hex true if hexadecimal digits are skipped
+     * @return index of first non digit or end
+     */
+    private static int skipDigits(String value, int start, int end, boolean hex) {
+        int i = start;
+        while (i < end) {
+            char c = value.charAt(i);
+            if (!((c >= '0' && c <= '9')
+                    || (hex && ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))))) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Retrieve online located resource via URL. The resource is read from the
+     * local mirror of the {@link RemoteFetcher}, which is revalidated with the
+     * upstream server after the time to live of the resource.
+     * 
+     * @param pandaSettings PANDA system settings
+     * @param resID unique ID of resource
+     * @return resource as {@code InputStream}
+     * @throws WebApplicationException HTTP 404 if resource can't be fetched
+     */
+    public static InputStream getOnlineResource(PandaSettings pandaSettings, String resID) {
+        ResourceInfo resInfo = pandaSettings.getResourceMap().getMap().get(resID);
+        ResourceCache cache = pandaSettings.getResourceCache();
+        try {
+            return cache.getRemoteFetcher().open(resInfo.getURL(),
+                    cache.getRemoteCache().getTimeToLive(resID));
+        } catch (IOException e) {
+            throw new WebApplicationException(404);
+        }
+    }
+
     /**
      * Contains start and end indexes for table requests. If value == -1 all
      * values of a row/column are requested.
@@ -0,0 +1,52 @@
+package de.fuberlin.panda.data.resources;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import de.fuberlin.panda.api.data.ValueExchange.Value;
+
+/**
+ * Source of the values of a request that are read one at a time, so they can
+ * be written to the client without collecting them in a list first.
+ * 
+ * @author Christoph Schrder
+ */
+public interface ValueReader extends Closeable {
+
+    /**
+     * Returns base URI of the values.
+     * 
+     * @return base URI
+     */
+    String getBaseURI();
+
+    /**
+     * Read the next value. Empty values are skipped.
+     * 
+     * @return the value or null if there are no more values
+     * @throws IOException if the resource can't be read
+     */
+    Value next() throws IOException;
+}
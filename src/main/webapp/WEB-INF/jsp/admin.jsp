@@ -19,8 +19,18 @@
   <http://www.gnu.org/licenses/gpl-3.0.html>.
   #L%
   --%>
+<%@page import="de.fuberlin.panda.data.caching.CacheLoader"%>
+<%@page import="de.fuberlin.panda.data.caching.CacheStatistics.Summary"%>
+<%@page import="de.fuberlin.panda.data.caching.CacheWarmUp"%>
+<%@page import="de.fuberlin.panda.data.caching.NegativeResultCache"%>
+<%@page import="de.fuberlin.panda.data.caching.PackagePartCache"%>
+<%@page import="de.fuberlin.panda.data.caching.RowBlockCache"%>
+<%@page import="de.fuberlin.panda.data.caching.RemoteFetcher"%>
+<%@page import="de.fuberlin.panda.data.caching.RemoteResourceCache"%>
+<%@page import="de.fuberlin.panda.data.caching.ResponseCache"%>
 <%@page import="de.fuberlin.panda.data.configuration.PandaSettings"%>
 <%@page import="de.fuberlin.panda.enums.RangeDelimiter"%>
+<%@page import="org.apache.commons.lang3.StringEscapeUtils"%>
 <%@ page language="java" contentType="text/html; charset=ISO-8859-1"
 	pageEncoding="ISO-8859-1"%>
 <!DOCTYPE html PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN" "http://www.w3.org/TR/html4/loose.dtd">
@@ -41,6 +51,36 @@
 				<td><input type="checkbox" name="useServerCaching" value="true"
 					<%=pandaSettings.getServerCacheUsage() ? "checked='checked'" : ""%>></td>
 			</tr>
+			<tr>
+				<td>Background Cache Fill:</td>
+				<td><input type="checkbox" name="useAsyncCacheFill" value="true"
+					<%=pandaSettings.getAsyncCacheFill() ? "checked='checked'" : ""%>></td>
+			</tr>
+			<tr>
+				<td>Cache Snapshots:</td>
+				<td><input type="checkbox" name="useCacheSnapshots" value="true"
+					<%=pandaSettings.getCacheSnapshots() ? "checked='checked'" : ""%>></td>
+			</tr>
+			<tr>
+				<td>Response Cache:</td>
+				<td><input type="checkbox" name="useResponseCache" value="true"
+					<%=pandaSettings.getResponseCacheUsage() ? "checked='checked'" : ""%>></td>
+			</tr>
+			<tr>
+				<td>Document Compression:</td>
+				<td><input type="checkbox" name="useDocCompression" value="true"
+					<%=pandaSettings.getDocumentCompression() ? "checked='checked'" : ""%>></td>
+			</tr>
+			<tr>
+				<td>Cache Warm-Up:</td>
+				<td><input type="checkbox" name="useWarmUp" value="true"
+					<%=pandaSettings.getWarmUpUsage() ? "checked='checked'" : ""%>></td>
+			</tr>
+			<tr>
+				<td>Warm-Up Order:</td>
+				<td><input type="text" name="warmUpOrder" size="30"
+					value="<%=StringEscapeUtils.escapeHtml4(pandaSettings.getWarmUpOrder())%>"></td>
+			</tr>
 			<tr>
 				<td>Namespace Awareness:</td>
 				<td><input type="checkbox" name="namespaceAwareness"
@@ -78,6 +118,135 @@
 						%>
 				</select></td>
 			</tr>
+			<tr>
+				<td>Cache Memory Limit (MB):</td>
+				<td><input type="text" name="cacheMemoryLimit" size="8"
+					value="<%=pandaSettings.getCacheMemoryLimit() / (1024 * 1024)%>"></td>
+			</tr>
+			<tr>
+				<td>Negative Cache Time (s):</td>
+				<td><input type="text" name="negativeCacheTime" size="8"
+					value="<%=pandaSettings.getNegativeCacheTime()%>"></td>
+			</tr>
+			<tr>
+				<td>Remote Cache Time (s):</td>
+				<td><input type="text" name="remoteCacheTime" size="8"
+					value="<%=pandaSettings.getRemoteCacheTime()%>"></td>
+			</tr>
+			<tr>
+				<td>Compression Threshold (KB):</td>
+				<td><input type="text" name="compressionThreshold" size="8"
+					value="<%=pandaSettings.getDocumentCompressionThreshold() / 1024%>"></td>
+			</tr>
+			<tr>
+				<td>Partial CSV Caching From (MB):</td>
+				<td><input type="text" name="partialCacheSize" size="8"
+					value="<%=pandaSettings.getPartialCacheSize() / (1024 * 1024)%>"></td>
+			</tr>
+			<tr>
+				<td>Cache Usage:</td>
+				<td><%=pandaSettings.getResourceCache().getEstimatedSize() / (1024 * 1024)%> MB,
+					<%=pandaSettings.getResourceCache().getEvictionCount()%> evictions</td>
+			</tr>
+			<tr>
+				<td>Cache Requests:</td>
+				<td>
+					<%
+					    Summary cacheStatistics = pandaSettings.getResourceCache().getStatistics()
+					            .getSummary(pandaSettings.getResourceCache().getEstimatedSize());
+					%>
+					<%=cacheStatistics.getHits()%> hits,
+					<%=cacheStatistics.getMisses()%> misses,
+					<%=cacheStatistics.getFills()%> fills,
+					<%=cacheStatistics.getInvalidations()%> invalidations
+					(<a href="cache">details</a>)</td>
+			</tr>
+			<tr>
+				<td>Response Cache Usage:</td>
+				<td>
+					<%
+					    ResponseCache responseCache = pandaSettings.getResourceCache().getResponseCache();
+					%>
+					<%=responseCache.getEstimatedSize() / 1024%> KB,
+					<%=responseCache.getHitCount()%> hits,
+					<%=responseCache.getMissCount()%> misses</td>
+			</tr>
+			<tr>
+				<td>Part Cache Usage:</td>
+				<td>
+					<%
+					    PackagePartCache partCache = pandaSettings.getResourceCache().getPartCache();
+					%>
+					<%=partCache.getEstimatedSize() / (1024 * 1024)%> MB,
+					<%=partCache.getHitCount()%> hits,
+					<%=partCache.getMissCount()%> misses</td>
+			</tr>
+			<tr>
+				<td>Block Cache Usage:</td>
+				<td>
+					<%
+					    RowBlockCache blockCache = pandaSettings.getResourceCache().getBlockCache();
+					%>
+					<%=blockCache.getEstimatedSize() / (1024 * 1024)%> MB,
+					<%=blockCache.getBlockCount()%> blocks,
+					<%=blockCache.getHitCount()%> hits,
+					<%=blockCache.getMissCount()%> misses</td>
+			</tr>
+			<tr>
+				<td>Remote Revalidations:</td>
+				<td>
+					<%
+					    RemoteResourceCache remoteCache = pandaSettings.getResourceCache().getRemoteCache();
+					%>
+					<%=remoteCache.getRevalidationCount()%> revalidations,
+					<%=remoteCache.getNotModifiedCount()%> not modified</td>
+			</tr>
+			<tr>
+				<td>Remote Fetches:</td>
+				<td>
+					<%
+					    RemoteFetcher remoteFetcher = pandaSettings.getResourceCache().getRemoteFetcher();
+					%>
+					<%=remoteFetcher.getDownloadCount()%> downloads,
+					<%=remoteFetcher.getNotModifiedCount()%> not modified,
+					<%=remoteFetcher.getMirrorHitCount()%> mirror hits</td>
+			</tr>
+			<tr>
+				<td>Negative Cache Usage:</td>
+				<td>
+					<%
+					    NegativeResultCache negativeResults = pandaSettings.getResourceCache()
+					            .getNegativeResultCache();
+					%>
+					<%=negativeResults.size()%> missing references,
+					<%=negativeResults.getHitCount()%> hits</td>
+			</tr>
+			<tr>
+				<td>Cache Fill:</td>
+				<td>
+					<%
+					    CacheLoader loader = pandaSettings.getResourceCache().getLoader();
+					    for (String resID : loader.getRunningResources()) {
+					        out.print(resID + " (" + loader.getRunningTime(resID) + " ms), ");
+					    }
+					%>
+					<%=loader.getQueueSize()%> queued,
+					<%=loader.getCompletedCount()%> completed,
+					<%=loader.getFailedCount()%> failed</td>
+			</tr>
+			<tr>
+				<td>Warm-Up Progress:</td>
+				<td>
+					<%
+					    CacheWarmUp warmUp = pandaSettings.getCacheWarmUp();
+					%>
+					<%=warmUp.isRunning() ? "running" : "ready"%>,
+					<%=warmUp.getDoneCount()%> of <%=warmUp.getTotalCount()%> done
+					(<%=warmUp.getWarmedCount()%> cached,
+					<%=warmUp.getSkippedCount()%> skipped,
+					<%=warmUp.getFailedCount()%> failed),
+					<%=Math.max(0, warmUp.getElapsedTime()) / 1000%> s</td>
+			</tr>
 		</table>
 		<br /> <input type="submit" value="Set Configuration" />
 	</form>
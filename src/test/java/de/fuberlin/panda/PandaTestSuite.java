@@ -29,10 +29,12 @@ import org.junit.runners.Suite.SuiteClasses;
 
 import de.fuberlin.panda.api.jersey.JerseyTestSuite;
 import de.fuberlin.panda.data.caching.ResourceCacheTestSuite;
+import de.fuberlin.panda.data.resources.CsvScannerTest;
 import de.fuberlin.panda.data.resources.ResourceHelperTest;
 
 @RunWith(Suite.class)
-@SuiteClasses({ JerseyTestSuite.class, ResourceCacheTestSuite.class, ResourceHelperTest.class })
+@SuiteClasses({ JerseyTestSuite.class, ResourceCacheTestSuite.class, ResourceHelperTest.class,
+        CsvScannerTest.class })
 public class PandaTestSuite {
 
 }
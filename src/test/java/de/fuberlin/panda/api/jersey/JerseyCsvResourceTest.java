@@ -23,9 +23,15 @@ package de.fuberlin.panda.api.jersey;
  */
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.HashMap;
 
 import javax.ws.rs.core.Application;
@@ -38,6 +44,10 @@ import org.glassfish.jersey.test.spi.TestContainerFactory;
 import org.junit.Test;
 import org.xml.sax.SAXException;
 
+import de.fuberlin.panda.data.caching.RecordOffsetIndex;
+import de.fuberlin.panda.data.caching.ResponseCache;
+import de.fuberlin.panda.data.caching.RowBlockCache;
+import de.fuberlin.panda.data.configuration.PandaSettings;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
 import de.fuberlin.panda.enums.DataResourceType;
@@ -52,6 +62,7 @@ public class JerseyCsvResourceTest extends JerseyTest {
         this.testConfig = new TestResourceConfig();
         testConfig.getResourceSettings().setResourceMap(this.getResourceMap());
         testConfig.register(JerseyExcelResource.class);
+        testConfig.register(ResponseCacheFilter.class);
         return testConfig;
     }
 
@@ -83,6 +94,98 @@ public class JerseyCsvResourceTest extends JerseyTest {
         assertTrue(myDiff.identical());
     }
 
+    @Test
+    public void testResponseCacheCsv() throws SAXException, IOException {
+        PandaSettings pandaSettings = testConfig.getResourceSettings();
+        pandaSettings.setServerCacheUsage(true);
+        ResponseCache responseCache = pandaSettings.getResourceCache().getResponseCache();
+
+        final String response = target("/data/CsvTest/I4000").request(MediaType.APPLICATION_XML)
+                .get(String.class);
+        final String cachedResponse = target("/data/CsvTest/I4000").request(
+                MediaType.APPLICATION_XML).get(String.class);
+        assertEquals(response, cachedResponse);
+        assertEquals(1, responseCache.getHitCount());
+
+        // other media types are cached separately
+        target("/data/CsvTest/I4000").request(MediaType.APPLICATION_JSON).get(String.class);
+        assertEquals(1, responseCache.getHitCount());
+    }
+
+    @Test
+    public void testPartialCacheCsv() throws SAXException, IOException {
+        PandaSettings pandaSettings = testConfig.getResourceSettings();
+        pandaSettings.setPartialCacheSize(0);
+        pandaSettings.setResponseCacheUsage(false);
+        pandaSettings.setCacheSnapshots(false);
+        pandaSettings.setServerCacheUsage(true);
+        RowBlockCache blockCache = pandaSettings.getResourceCache().getBlockCache();
+
+        final String response = target("/data/CsvTest/H*").request(MediaType.APPLICATION_XML)
+                .get(String.class);
+        final String checkResponse = TestHelper.getTestFile(rootPath + "csv/columnRequest.xml");
+        Diff myDiff = new Diff(checkResponse, response);
+        System.out.println("testPartialCacheCsv: " + myDiff.toString());
+        assertTrue(myDiff.identical());
+        assertEquals(1, blockCache.getBlockCount());
+
+        // second request is served from cached block, value cache is not filled
+        final String cellResponse = target("/data/CsvTest/I4000").request(
+                MediaType.APPLICATION_XML).get(String.class);
+        final String checkCellResponse = TestHelper.getTestFile(rootPath
+                + "csv/singleCellRequest.xml");
+        assertTrue(new Diff(checkCellResponse, cellResponse).identical());
+        assertEquals(1, blockCache.getHitCount());
+        assertFalse(pandaSettings.getResourceCache().checkValidityResource("CsvTest",
+                pandaSettings.getResourceWatcher().getVersion("CsvTest").getETag()));
+    }
+
+    @Test
+    public void testChunkedRequestCsv() throws IOException {
+        // file with more than one chunk of indexed records, quoted fields with
+        // line breaks around the borders of indexed records
+        int records = 10 * RecordOffsetIndex.INTERVAL + 300;
+        File file = Files.createTempFile("panda-chunks", ".csv").toFile();
+        try {
+            Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+            for (int i = 0; i < records; i++) {
+                int pos = i % RecordOffsetIndex.INTERVAL;
+                if (pos <= 1 || pos >= RecordOffsetIndex.INTERVAL - 2) {
+                    writer.write("\"multi\nline " + i + "\"," + i + ",\"say \"\"hi\"\"\"\n");
+                } else {
+                    writer.write("a" + i + "," + i + ",padding padding padding padding padding"
+                            + " padding padding padding padding padding padding padding"
+                            + " padding padding padding padding padding\n");
+                }
+            }
+            writer.close();
+            assertTrue(file.length() >= RecordOffsetIndex.MIN_FILE_SIZE);
+
+            PandaSettings pandaSettings = testConfig.getResourceSettings();
+            ResourceInfo resInfo = new ResourceInfo(DataResourceType.CSV, file.getPath());
+            resInfo.setSeparator(",");
+            pandaSettings.getResourceMap().getMap().put("ChunkTest", resInfo);
+
+            // all rows are parsed in chunks, a range of rows is parsed sequentially
+            final String response = target("/data/ChunkTest/*").request(
+                    MediaType.APPLICATION_XML).get(String.class);
+            assertEquals(1, pandaSettings.getResourceCache().getOffsetIndex().size());
+            final String checkResponse = target("/data/ChunkTest/A1:C" + records).request(
+                    MediaType.APPLICATION_XML).get(String.class);
+            assertEquals(checkResponse, response);
+            assertTrue(response.contains("subURI=\"B9001\">9000<"));
+            assertTrue(response.contains("subURI=\"A8193\">multi\nline 8192<"));
+
+            final String columnResponse = target("/data/ChunkTest/A*").request(
+                    MediaType.APPLICATION_XML).get(String.class);
+            final String checkColumnResponse = target("/data/ChunkTest/A1:A" + records)
+                    .request(MediaType.APPLICATION_XML).get(String.class);
+            assertEquals(checkColumnResponse, columnResponse);
+        } finally {
+            file.delete();
+        }
+    }
+
     @Test
     public void testSingleCellRequestCsv() throws SAXException, IOException {
         final String response = target("/data/CsvTest/I4000").request(MediaType.APPLICATION_XML)
@@ -23,6 +23,7 @@ package de.fuberlin.panda.api.jersey;
  */
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -30,6 +31,7 @@ import java.util.HashMap;
 
 import javax.ws.rs.core.Application;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import org.custommonkey.xmlunit.Diff;
 import org.glassfish.jersey.test.JerseyTest;
@@ -38,6 +40,8 @@ import org.glassfish.jersey.test.spi.TestContainerFactory;
 import org.junit.Test;
 import org.xml.sax.SAXException;
 
+import de.fuberlin.panda.data.caching.NegativeResultCache;
+import de.fuberlin.panda.data.configuration.PandaSettings;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
 import de.fuberlin.panda.enums.DataResourceType;
@@ -51,6 +55,8 @@ public class JerseyExcelResourceXlsxTest extends JerseyTest {
         this.testConfig = new TestResourceConfig();
         testConfig.getResourceSettings().setResourceMap(this.getResourceMap());
         testConfig.register(JerseyExcelResource.class);
+        testConfig.register(ResponseCacheFilter.class);
+        testConfig.register(ReferenceNotFoundMapper.class);
         return testConfig;
     }
 
@@ -81,6 +87,25 @@ public class JerseyExcelResourceXlsxTest extends JerseyTest {
         assertTrue(myDiff.identical());
     }
 
+    @Test
+    public void testMissingSheetXlsx() {
+        PandaSettings pandaSettings = testConfig.getResourceSettings();
+        pandaSettings.setServerCacheUsage(true);
+        NegativeResultCache negativeResults = pandaSettings.getResourceCache()
+                .getNegativeResultCache();
+
+        Response response = target("/data/ExcelTest/tables/NoSheet/A6").request(
+                MediaType.APPLICATION_XML).get();
+        assertEquals(404, response.getStatus());
+        assertEquals(1, negativeResults.size());
+
+        // second request is answered from negative cache
+        response = target("/data/ExcelTest/tables/NoSheet/A6").request(
+                MediaType.APPLICATION_JSON).get();
+        assertEquals(404, response.getStatus());
+        assertEquals(1, negativeResults.getHitCount());
+    }
+
     @Test
     public void testSingleCellRequestVtdXlsx() throws SAXException, IOException {
         testConfig.getResourceSettings().setVtdUsage(true);
@@ -30,7 +30,8 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({ JerseyCsvResourceTest.class, JerseyExcelResourceXlsTest.class,
         JerseyExcelResourceXlsxTest.class, JerseyWordResourceDocTest.class,
-        JerseyWordResourceDocxTest.class, JerseyHtmlResourceTest.class, JerseyXmlResourceTest.class })
+        JerseyWordResourceDocxTest.class, JerseyHtmlResourceTest.class, JerseyXmlResourceTest.class,
+        ValueStreamingOutputTest.class })
 public class JerseyTestSuite {
 
 }
@@ -23,6 +23,7 @@ package de.fuberlin.panda.api.jersey;
  */
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -30,6 +31,7 @@ import java.util.HashMap;
 
 import javax.ws.rs.core.Application;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import org.custommonkey.xmlunit.Diff;
 import org.glassfish.jersey.test.JerseyTest;
@@ -38,6 +40,8 @@ import org.glassfish.jersey.test.spi.TestContainerFactory;
 import org.junit.Test;
 import org.xml.sax.SAXException;
 
+import de.fuberlin.panda.data.caching.NegativeResultCache;
+import de.fuberlin.panda.data.configuration.PandaSettings;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
 import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
 import de.fuberlin.panda.enums.DataResourceType;
@@ -51,6 +55,8 @@ public class JerseyXmlResourceTest extends JerseyTest {
         this.testConfig = new TestResourceConfig();
         testConfig.getResourceSettings().setResourceMap(this.getResourceMap());
         testConfig.register(JerseyExcelResource.class);
+        testConfig.register(ResponseCacheFilter.class);
+        testConfig.register(ReferenceNotFoundMapper.class);
         testConfig.getResourceSettings().setNamespaceAwareness(true);
         return testConfig;
     }
@@ -69,6 +75,28 @@ public class JerseyXmlResourceTest extends JerseyTest {
         return resourceMap;
     }
 
+    @Test
+    public void testMissingReference() {
+        PandaSettings pandaSettings = testConfig.getResourceSettings();
+        pandaSettings.setServerCacheUsage(true);
+        NegativeResultCache negativeResults = pandaSettings.getResourceCache()
+                .getNegativeResultCache();
+
+        // invalid expression is no missing reference
+        Response response = target("/data/XmlTest/Document(").request(
+                MediaType.APPLICATION_XML).get();
+        assertEquals(404, response.getStatus());
+        assertEquals(0, negativeResults.size());
+
+        // expression without result is remembered
+        response = target("/data/XmlTest//NoElement").request(MediaType.APPLICATION_XML).get();
+        assertEquals(404, response.getStatus());
+        assertEquals(1, negativeResults.size());
+        response = target("/data/XmlTest//NoElement").request(MediaType.APPLICATION_XML).get();
+        assertEquals(404, response.getStatus());
+        assertEquals(1, negativeResults.getHitCount());
+    }
+
     @Test
     public void documentRequestXml() throws SAXException, IOException {
         final String response = target("/data/XmlTest//").request(MediaType.APPLICATION_XML).get(
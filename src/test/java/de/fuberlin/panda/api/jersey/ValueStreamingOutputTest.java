@@ -0,0 +1,156 @@
+package de.fuberlin.panda.api.jersey;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.fuberlin.panda.api.data.ValueExchange.Value;
+import de.fuberlin.panda.api.data.ValueExchangeExt;
+import de.fuberlin.panda.data.resources.ValueReader;
+
+public class ValueStreamingOutputTest {
+    private final HashMap<Class<?>, ContextResolver<?>> resolvers = new HashMap<Class<?>, ContextResolver<?>>();
+
+    @Test
+    public void testXml() throws IOException, JAXBException {
+        ValueExchangeExt valList = createValues();
+
+        // default marshaller does not format output
+        Marshaller marshaller = JAXBContext.newInstance(ValueExchangeExt.class)
+                .createMarshaller();
+        assertEquals(marshal(valList, marshaller),
+                stream(valList, MediaType.APPLICATION_XML_TYPE));
+
+        JaxbMarshallerProvider provider = new JaxbMarshallerProvider();
+        resolvers.put(Marshaller.class, provider);
+        assertEquals(marshal(valList, provider.getContext(ValueExchangeExt.class)),
+                stream(valList, MediaType.APPLICATION_XML_TYPE));
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        ValueExchangeExt valList = createValues();
+
+        JacksonObjectMapperProvider provider = new JacksonObjectMapperProvider();
+        resolvers.put(ObjectMapper.class, provider);
+        assertEquals(provider.getContext(ValueExchangeExt.class).writeValueAsString(valList),
+                stream(valList, MediaType.APPLICATION_JSON_TYPE));
+    }
+
+    private ValueExchangeExt createValues() {
+        ValueExchangeExt valList = new ValueExchangeExt();
+        valList.setBaseURI("/CsvTest/");
+        String[] values = { "plain", "1.5", "a<b>&\"c'", "mlut\t x " };
+        for (int i = 0; i < values.length; i++) {
+            Value value = new Value();
+            value.setValue(values[i]);
+            value.setType(i == 1 ? "xs:double" : "xs:string");
+            value.setSubURI("A" + (i + 1));
+            valList.addValue(value);
+        }
+        return valList;
+    }
+
+    private String marshal(ValueExchangeExt valList, Marshaller marshaller)
+            throws JAXBException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marshaller.marshal(valList, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String stream(ValueExchangeExt valList, MediaType mediaType) throws IOException {
+        final Iterator<Value> values = valList.getValue().iterator();
+        final String baseURI = valList.getBaseURI();
+        ValueReader reader = new ValueReader() {
+            @Override
+            public String getBaseURI() {
+                return baseURI;
+            }
+
+            @Override
+            public Value next() {
+                return values.hasNext() ? values.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ValueStreamingOutput(reader, reader.next(), mediaType, new TestProviders())
+                .write(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Providers with the context resolvers of the test.
+     */
+    private class TestProviders implements Providers {
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> ContextResolver<T> getContextResolver(Class<T> contextType,
+                MediaType mediaType) {
+            return (ContextResolver<T>) resolvers.get(contextType);
+        }
+
+        @Override
+        public <T> MessageBodyReader<T> getMessageBodyReader(Class<T> type, Type genericType,
+                Annotation[] annotations, MediaType mediaType) {
+            return null;
+        }
+
+        @Override
+        public <T> MessageBodyWriter<T> getMessageBodyWriter(Class<T> type, Type genericType,
+                Annotation[] annotations, MediaType mediaType) {
+            return null;
+        }
+
+        @Override
+        public <T extends Throwable> ExceptionMapper<T> getExceptionMapper(Class<T> type) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.data.caching.CacheStatistics.Summary;
+import de.fuberlin.panda.data.caching.ResourceCache.ResourceLoad;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+
+public class CacheStatisticsTest {
+    private final EntityTag eTag = new EntityTag("A_0", false);
+    private PandaSettings   pandaSettings;
+    private ResourceCache   testCache;
+
+    @Before
+    public void setupCache() {
+        pandaSettings = new PandaSettings();
+        testCache = pandaSettings.getResourceCache();
+    }
+
+    @Test
+    public void testHitsAndFills() {
+        ResourceLoad load = testCache.beginLoad("A", eTag);
+        testCache.addDocument("<a/>".getBytes(), "A", eTag);
+        testCache.endLoad(load);
+        testCache.getDocument("A");
+        testCache.getDocument("A");
+
+        Summary summary = getSummary("A");
+        assertEquals(2, summary.getHits());
+        assertEquals(1, summary.getMisses());
+        assertEquals(1, summary.getFills());
+        assertTrue(summary.getEstimatedSize() > 0);
+        assertEquals(2.0 / 3, summary.getHitRate(), 0.001);
+        assertEquals(2, testCache.getStatistics().getSummary(0).getHits());
+    }
+
+    @Test
+    public void testInvalidationAndEviction() {
+        testCache.addDocument("<a/>".getBytes(), "A", eTag);
+        assertFalse(testCache.checkValidityDocument("A", new EntityTag("A_1", false)));
+        assertEquals(1, getSummary("A").getInvalidations());
+
+        // failed loads are not counted as fill
+        testCache.endLoad(testCache.beginLoad("A", eTag));
+        assertEquals(0, getSummary("A").getFills());
+
+        testCache.addDocument("<a/>".getBytes(), "A", eTag);
+        assertTrue(testCache.evict("A"));
+        assertFalse(testCache.evict("A"));
+        assertEquals(1, getSummary("A").getEvictions());
+        assertEquals(0, getSummary("A").getEstimatedSize());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        testCache.addDocument("<a/>".getBytes(), "A", eTag);
+        testCache.getDocument("A");
+        CacheManagement.register(pandaSettings);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(CacheManagement.OBJECT_NAME);
+        CompositeData total = (CompositeData) server.getAttribute(name, "Total");
+        assertEquals(1L, total.get("hits"));
+        assertEquals(Boolean.TRUE, server.invoke(name, "evict", new Object[] { "A" },
+                new String[] { String.class.getName() }));
+        assertEquals(0, testCache.getEstimatedSize());
+        CacheManagement.unregister();
+        assertFalse(server.isRegistered(name));
+    }
+
+    private Summary getSummary(String resID) {
+        return testCache.getStatistics().getSummary(resID, testCache.getEstimatedSize(resID));
+    }
+}
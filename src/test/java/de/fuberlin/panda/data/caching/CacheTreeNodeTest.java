@@ -0,0 +1,112 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.api.data.ValueExchange.Value;
+
+public class CacheTreeNodeTest {
+    private CacheTreeNode node;
+
+    @Before
+    public void setupNode() {
+        node = new CacheTreeNode();
+        for (String key : new String[] { "10", "2", "1", "body", "07", "100" }) {
+            node.addChild(key, new CacheTreeNode());
+        }
+    }
+
+    @Test
+    public void testToIndex() {
+        assertEquals(0, CacheTreeNode.toIndex("0"));
+        assertEquals(4711, CacheTreeNode.toIndex("4711"));
+        assertEquals(-1, CacheTreeNode.toIndex("07"));
+        assertEquals(-1, CacheTreeNode.toIndex("A1"));
+        assertEquals(-1, CacheTreeNode.toIndex(""));
+        assertEquals(-1, CacheTreeNode.toIndex("12345678901"));
+    }
+
+    @Test
+    public void testIndexedChildren() {
+        assertEquals(4, node.getIndexCount());
+        assertEquals(1, node.getIndex(0));
+        assertEquals(100, node.getIndex(3));
+        assertSame(node.getChild(10), node.getChild("10"));
+        assertTrue(node.containsKey("07"));
+        assertFalse(node.containsKey("7"));
+        assertEquals(Arrays.asList("1", "2", "10", "100", "07", "body"),
+                Arrays.asList(node.getKeySet().toArray()));
+    }
+
+    @Test
+    public void testIndexRange() {
+        // range 2 to 50 contains 2 and 10
+        assertEquals(1, node.getStartPosition(2));
+        assertEquals(3, node.getEndPosition(50));
+        // range between two indices is empty
+        assertEquals(node.getStartPosition(3), node.getEndPosition(9));
+        assertEquals(4, node.getStartPosition(101));
+    }
+
+    @Test
+    public void testKeyRange() {
+        assertEquals(Arrays.asList("body"), Arrays.asList(node.getKeySubset("aaaa", "cccc")
+                .toArray()));
+        // numeric keys inside a range with non numeric endpoints are included
+        assertEquals(Arrays.asList("07", "10"), Arrays.asList(node.getKeySubset("05", "10")
+                .toArray()));
+        assertEquals(Arrays.asList("07", "10", "100", "body"), Arrays.asList(node
+                .getKeySubset("07", "body").toArray()));
+        assertTrue(node.getKeySubset("10", "05").isEmpty());
+    }
+
+    @Test
+    public void testRemoveChild() {
+        node.removeChild("2");
+        node.removeChild("body");
+        assertNull(node.getChild(2));
+        assertEquals(3, node.getIndexCount());
+        assertEquals(10, node.getIndex(1));
+        assertEquals(1, node.getNameSet().size());
+    }
+
+    @Test
+    public void testCopy() {
+        CacheTreeNode copy = new CacheTreeNode(node);
+        copy.addChild(5, new Value());
+        copy.addChild("head", new Value());
+        assertEquals(4, node.getIndexCount());
+        assertNull(node.getChild("head"));
+        assertEquals(5, copy.getIndexCount());
+        assertSame(node.getChild(100), copy.getChild(100));
+    }
+}
@@ -0,0 +1,147 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
+import de.fuberlin.panda.enums.DataResourceType;
+
+public class CacheWarmUpTest {
+    private final String  rootPath = "src/test/resources/testdata/";
+    // maximum time to wait for warm-up in milliseconds
+    private final long    timeout  = 30000;
+    private PandaSettings pandaSettings;
+    private CacheWarmUp   warmUp;
+
+    @Before
+    public void setupSettings() throws Exception {
+        HashMap<String, ResourceInfo> resMap = new HashMap<String, ResourceInfo>();
+        ResourceInfo csvInfo = new ResourceInfo(DataResourceType.CSV, rootPath
+                + "csv/MOTsitelist.csv");
+        csvInfo.setSeparator(",");
+        resMap.put("CsvTest", csvInfo);
+        resMap.put("HtmlTest", new ResourceInfo(DataResourceType.HTML, rootPath
+                + "html/02050399.html"));
+        resMap.put("UrlTest", new ResourceInfo(DataResourceType.XML, new URL(
+                "http://localhost/test.xml")));
+        ResourceMap resourceMap = new ResourceMap();
+        resourceMap.setMap(resMap);
+
+        pandaSettings = new PandaSettings();
+        pandaSettings.setResourceMap(resourceMap);
+        pandaSettings.setCacheSnapshots(false);
+        warmUp = pandaSettings.getCacheWarmUp();
+    }
+
+    @Test
+    public void testOrder() {
+        pandaSettings.setWarmUpOrder("*");
+        assertEquals(Arrays.asList("CsvTest", "HtmlTest", "UrlTest"),
+                warmUp.getOrderedResources());
+        pandaSettings.setWarmUpOrder("UrlTest, *");
+        assertEquals(Arrays.asList("UrlTest", "CsvTest", "HtmlTest"),
+                warmUp.getOrderedResources());
+        pandaSettings.setWarmUpOrder("HtmlTest,*, CsvTest");
+        assertEquals(Arrays.asList("HtmlTest", "UrlTest", "CsvTest"),
+                warmUp.getOrderedResources());
+        // unknown and repeated resources are ignored
+        pandaSettings.setWarmUpOrder("HtmlTest, Unknown, HtmlTest");
+        assertEquals(Arrays.asList("HtmlTest"), warmUp.getOrderedResources());
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        pandaSettings.setServerCacheUsage(true);
+        pandaSettings.setWarmUpUsage(true);
+        assertFalse(warmUp.isReady());
+        assertTrue(warmUp.start());
+        long end = System.currentTimeMillis() + timeout;
+        while (!warmUp.isReady() && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        assertTrue(warmUp.isReady());
+        assertEquals(3, warmUp.getDoneCount());
+        assertEquals(2, warmUp.getWarmedCount());
+        assertEquals(1, warmUp.getSkippedCount());
+        assertEquals(0, warmUp.getFailedCount());
+
+        ResourceCache cache = pandaSettings.getResourceCache();
+        ResourceWatcher watcher = pandaSettings.getResourceWatcher();
+        assertTrue(cache.checkValidityResource("CsvTest", watcher.getVersion("CsvTest")
+                .getETag()));
+        assertTrue(cache.checkValidityDocument("HtmlTest", watcher.getVersion("HtmlTest")
+                .getETag()));
+    }
+
+    @Test
+    public void testWarmUpWithoutCache() {
+        assertFalse(warmUp.start());
+        assertTrue(warmUp.isReady());
+        assertEquals(-1, warmUp.getElapsedTime());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testShutdown() {
+        pandaSettings.setServerCacheUsage(true);
+        assertTrue(warmUp.start());
+        pandaSettings.shutdown();
+        assertFalse(warmUp.isRunning());
+        assertTrue(pandaSettings.getResourceCache().getParsePool().isShutdown());
+        // threads of the cache are stopped as well
+        pandaSettings.getResourceCache().getLoader().submitTask(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    @Test
+    public void testConfiguration() {
+        Properties config = new Properties();
+        config.setProperty("panda.warmUp", "true");
+        config.setProperty("panda.warmUpOrder", " HtmlTest, * ");
+        config.setProperty("panda.warmUpThreads", "3");
+        config.setProperty("panda.parseThreads", "5");
+        pandaSettings.configure(config);
+        assertTrue(pandaSettings.getWarmUpUsage());
+        assertEquals("HtmlTest, *", pandaSettings.getWarmUpOrder());
+        assertEquals(3, pandaSettings.getWarmUpThreads());
+        assertEquals(5, pandaSettings.getResourceCache().getParsePool().getMaximumPoolSize());
+        assertFalse(pandaSettings.getServerCacheUsage());
+        // enabled warm-up is not ready before it has finished
+        assertFalse(warmUp.isReady());
+    }
+}
@@ -0,0 +1,170 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.Test;
+
+import de.fuberlin.panda.data.caching.ColumnSchema.Column;
+
+public class ColumnSchemaTest {
+    private final EntityTag eTag = new EntityTag("A_0", false);
+
+    @Test
+    public void testInference() {
+        String[][] records = { { "id", "price", "date", "note", "" },
+                { "1", "2.5", "2014-01-31", "", "" }, { "2", "-1e3", "2014-12-01", "abc" },
+                { "3", "", "2015-02-28", "4" } };
+        ColumnSchema schema = build(records);
+        assertEquals(5, schema.getColumnCount());
+
+        // numbers with a header are mixed
+        Column id = schema.getColumn(0);
+        assertEquals(ColumnSchema.TYPE_DOUBLE, id.getType());
+        assertTrue(id.isMixed());
+        assertFalse(id.isNullable());
+        assertNull(schema.getType(0));
+
+        Column price = schema.getColumn(1);
+        assertTrue(price.isMixed());
+        assertTrue(price.isNullable());
+
+        // header doesn't match the date format
+        Column date = schema.getColumn(2);
+        assertEquals(ColumnSchema.TYPE_STRING, schema.getType(2));
+        assertFalse(date.isMixed());
+        assertNull(date.getDateFormat());
+
+        Column note = schema.getColumn(3);
+        assertTrue(note.isMixed());
+        assertTrue(note.isNullable());
+
+        // only empty or missing cells
+        Column empty = schema.getColumn(4);
+        assertNull(empty.getType());
+        assertTrue(empty.isNullable());
+        assertNull(schema.getType(4));
+
+        assertNull(schema.getColumn(5));
+        assertNull(schema.getType(5));
+    }
+
+    @Test
+    public void testSingleTypes() {
+        String[][] records = { { "1", "2014-01-31", "31.01.2014", "12/31/2014", "a" },
+                { "0x1p3", "2014-12-01", "01.12.2014", "01/02/2014", "2014-13-01" },
+                { " 3 ", "2015-02-28", "28.02.2015", "02/03/2014", "" } };
+        ColumnSchema schema = build(records);
+
+        assertEquals(ColumnSchema.TYPE_DOUBLE, schema.getType(0));
+        assertNull(schema.getColumn(0).getDateFormat());
+        assertEquals(ColumnSchema.TYPE_STRING, schema.getType(1));
+        assertEquals("yyyy-MM-dd", schema.getColumn(1).getDateFormat());
+        assertEquals("dd.MM.yyyy", schema.getColumn(2).getDateFormat());
+        assertEquals("MM/dd/yyyy", schema.getColumn(3).getDateFormat());
+        // invalid month
+        assertEquals(ColumnSchema.TYPE_STRING, schema.getType(4));
+        assertNull(schema.getColumn(4).getDateFormat());
+        assertTrue(schema.getColumn(4).isNullable());
+    }
+
+    @Test
+    public void testIndex() {
+        ColumnSchemaIndex index = new ColumnSchemaIndex();
+        final ColumnSchema schema = build(new String[][] { { "1" } });
+        Callable<ColumnSchema> inference = new Callable<ColumnSchema>() {
+            @Override
+            public ColumnSchema call() {
+                return schema;
+            }
+        };
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+
+        assertNull(index.getSchema("A", eTag));
+        index.inferSchema("A", eTag, inference, direct);
+        assertEquals(schema, index.getSchema("A", eTag));
+        assertNull(index.getSchema("A", new EntityTag("A_1", false)));
+        assertEquals(1, index.size());
+
+        index.removeResource("A");
+        assertNull(index.getSchema("A", eTag));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testFailedInference() {
+        ColumnSchemaIndex index = new ColumnSchemaIndex();
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<ColumnSchema> inference = new Callable<ColumnSchema>() {
+            @Override
+            public ColumnSchema call() throws IOException {
+                calls.incrementAndGet();
+                throw new IOException();
+            }
+        };
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+
+        // failed inference is not repeated for the same version
+        index.inferSchema("A", eTag, inference, direct);
+        index.inferSchema("A", eTag, inference, direct);
+        assertEquals(1, calls.get());
+        assertNull(index.getSchema("A", eTag));
+
+        index.inferSchema("A", new EntityTag("A_1", false), inference, direct);
+        assertEquals(2, calls.get());
+        index.removeResource("A");
+        index.inferSchema("A", eTag, inference, direct);
+        assertEquals(3, calls.get());
+    }
+
+    private ColumnSchema build(String[][] records) {
+        ColumnSchema.Builder builder = new ColumnSchema.Builder(eTag);
+        for (String[] record : records) {
+            builder.addRecord();
+            for (int col = 0; col < record.length; col++) {
+                builder.addCell(col, record[col]);
+            }
+        }
+        return builder.build();
+    }
+}
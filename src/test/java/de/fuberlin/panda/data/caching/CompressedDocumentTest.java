@@ -0,0 +1,95 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.data.configuration.PandaSettings;
+
+public class CompressedDocumentTest {
+    private final EntityTag eTag = new EntityTag("A_0", false);
+    private PandaSettings   pandaSettings;
+    private byte[]          doc;
+
+    @Before
+    public void setupDocument() {
+        pandaSettings = new PandaSettings();
+        StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; xml.length() < 2 * CompressedDocument.BLOCK_SIZE + 1000; i++) {
+            xml.append("<entry id=\"" + i + "\"><title>Entry " + i + "</title></entry>");
+        }
+        xml.append("</feed>");
+        doc = xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        CompressedDocument compressed = CompressedDocument.compress(doc);
+        assertEquals(3, compressed.getBlocks().length);
+        assertTrue(compressed.getCompressedSize() < doc.length / 4);
+        assertArrayEquals(doc, compressed.decompress());
+
+        byte[] empty = new byte[0];
+        assertArrayEquals(empty, CompressedDocument.compress(empty).decompress());
+    }
+
+    @Test
+    public void testThreshold() {
+        ResourceCache cache = pandaSettings.getResourceCache();
+        pandaSettings.setDocumentCompression(true);
+        pandaSettings.setDocumentCompressionThreshold(doc.length);
+        cache.addDocument(doc, "A", eTag);
+        assertTrue(cache.getEstimatedSize() < doc.length / 4);
+        assertArrayEquals(doc, (byte[]) cache.getDocument("A"));
+
+        // documents below threshold are stored uncompressed
+        byte[] small = "<feed/>".getBytes(StandardCharsets.UTF_8);
+        cache.addDocument(small, "B", eTag);
+        assertArrayEquals(small, (byte[]) cache.getDocument("B"));
+        assertTrue(cache.getDocument("B") == cache.getDocument("B"));
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CacheSnapshotStore.writeObject(new DataOutputStream(bytes),
+                CompressedDocument.compress(doc));
+        Object restored = CacheSnapshotStore.readObject(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        assertTrue(restored instanceof CompressedDocument);
+        assertArrayEquals(doc, ((CompressedDocument) restored).decompress());
+    }
+}
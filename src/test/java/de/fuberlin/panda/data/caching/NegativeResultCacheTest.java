@@ -0,0 +1,91 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.data.configuration.PandaSettings;
+
+public class NegativeResultCacheTest {
+    private final EntityTag     eTag = new EntityTag("A_0", false);
+    private PandaSettings       pandaSettings;
+    private NegativeResultCache testCache;
+
+    @Before
+    public void setupCache() {
+        pandaSettings = new PandaSettings();
+        testCache = pandaSettings.getResourceCache().getNegativeResultCache();
+    }
+
+    @Test
+    public void testMissingReference() {
+        assertFalse(testCache.contains("A", "data/A/tables/Sheet9/A1", eTag));
+        testCache.put("A", "data/A/tables/Sheet9/A1", eTag);
+        assertTrue(testCache.contains("A", "data/A/tables/Sheet9/A1", eTag));
+        assertFalse(testCache.contains("A", "data/A/tables/Sheet1/A1", eTag));
+        assertEquals(1, testCache.getHitCount());
+
+        // result is not valid for new version of resource
+        assertFalse(testCache.contains("A", "data/A/tables/Sheet9/A1", new EntityTag("A_1",
+                false)));
+        assertEquals(0, testCache.size());
+    }
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+        pandaSettings.setNegativeCacheTime(0);
+        testCache.put("A", "data/A/text/9/*", eTag);
+        assertFalse(testCache.contains("A", "data/A/text/9/*", eTag));
+
+        testCache.setTimeToLive(20);
+        testCache.put("A", "data/A/text/9/*", eTag);
+        Thread.sleep(50);
+        assertFalse(testCache.contains("A", "data/A/text/9/*", eTag));
+    }
+
+    @Test
+    public void testInvalidation() {
+        testCache.put("A", "data/A/text/9/*", eTag);
+        testCache.put("B", "data/B/text/9/*", eTag);
+        pandaSettings.getResourceCache().removeDocument("A");
+        assertFalse(testCache.contains("A", "data/A/text/9/*", eTag));
+        assertTrue(testCache.contains("B", "data/B/text/9/*", eTag));
+    }
+
+    @Test
+    public void testResourceLimit() {
+        testCache.put("B", "data/B/text/9/*", eTag);
+        for (int i = 0; i <= 1000; i++) {
+            testCache.put("A", "data/A/text/" + i + "/*", eTag);
+        }
+        assertTrue(testCache.size() <= 1001);
+        assertTrue(testCache.contains("A", "data/A/text/1000/*", eTag));
+        assertTrue(testCache.contains("B", "data/B/text/9/*", eTag));
+    }
+}
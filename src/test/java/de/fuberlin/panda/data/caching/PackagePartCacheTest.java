@@ -0,0 +1,122 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
+import de.fuberlin.panda.data.resources.DataExcelVtdResource;
+import de.fuberlin.panda.data.resources.DataWordVtdResource;
+import de.fuberlin.panda.enums.DataResourceType;
+
+public class PackagePartCacheTest {
+    private final String     rootPath = "src/test/resources/testdata/";
+    private final EntityTag  eTag     = new EntityTag("A_0", false);
+    private PandaSettings    pandaSettings;
+    private PackagePartCache testCache;
+
+    @Before
+    public void setupCache() {
+        pandaSettings = new PandaSettings();
+        pandaSettings.setCacheSnapshots(false);
+        pandaSettings.setPartCacheMemoryLimit(10000);
+        testCache = pandaSettings.getResourceCache().getPartCache();
+    }
+
+    @Test
+    public void testGetPart() {
+        testCache.put("A", "/xl/workbook.xml", eTag, new byte[] { 1, 2 });
+        assertArrayEquals(new byte[] { 1, 2 }, testCache.get("A", "/xl/workbook.xml", eTag));
+        assertNull(testCache.get("A", "/xl/styles.xml", eTag));
+        // part of an older version is not used
+        assertNull(testCache.get("A", "/xl/workbook.xml", new EntityTag("A_1", false)));
+        assertEquals(1, testCache.getHitCount());
+        assertEquals(2, testCache.getMissCount());
+    }
+
+    @Test
+    public void testEviction() {
+        for (int i = 0; i < 10; i++) {
+            testCache.put("A", "/xl/worksheets/sheet" + i + ".xml", eTag, new byte[2000]);
+        }
+        assertTrue(testCache.getEstimatedSize() <= 10000);
+        assertNull(testCache.get("A", "/xl/worksheets/sheet0.xml", eTag));
+
+        // parts larger than half of the budget are not cached
+        testCache.put("B", "/word/document.xml", eTag, new byte[6000]);
+        assertNull(testCache.get("B", "/word/document.xml", eTag));
+
+        testCache.removeResource("A");
+        assertEquals(0, testCache.getEstimatedSize());
+    }
+
+    @Test
+    public void testRefillFromParts() throws Exception {
+        pandaSettings.setPartCacheMemoryLimit(64 * 1024 * 1024);
+        pandaSettings.setResourceMap(getResourceMap());
+        pandaSettings.setServerCacheUsage(true);
+        ResourceCache cache = pandaSettings.getResourceCache();
+
+        new DataExcelVtdResource().fillCache(pandaSettings, "ExcelTest", eTag);
+        new DataWordVtdResource().fillCache(pandaSettings, "WordTest", eTag);
+        long size = testCache.getEstimatedSize();
+        assertTrue(size > 0);
+        int cellCount = cache.getValues("/ExcelTest/tables/*/*", DataResourceType.XLSX)
+                .getValue().size();
+
+        // values evicted from cache are parsed again from cached parts
+        cache.removeResourceValues("ExcelTest");
+        cache.removeResourceValues("WordTest");
+        assertEquals(size, testCache.getEstimatedSize());
+        long missCount = testCache.getMissCount();
+        long hitCount = testCache.getHitCount();
+        new DataExcelVtdResource().fillCache(pandaSettings, "ExcelTest", eTag);
+        new DataWordVtdResource().fillCache(pandaSettings, "WordTest", eTag);
+        assertEquals(missCount, testCache.getMissCount());
+        assertTrue(testCache.getHitCount() > hitCount);
+        assertEquals(cellCount, cache.getValues("/ExcelTest/tables/*/*", DataResourceType.XLSX)
+                .getValue().size());
+    }
+
+    private ResourceMap getResourceMap() {
+        HashMap<String, ResourceInfo> resMap = new HashMap<String, ResourceInfo>();
+        resMap.put("ExcelTest", new ResourceInfo(DataResourceType.XLSX, rootPath
+                + "msexcel/Driving-Licence-Tables-Nov2012.xlsx"));
+        resMap.put("WordTest", new ResourceInfo(DataResourceType.DOCX, rootPath
+                + "msword/July_Spend_Publication_v1.0.docx"));
+        ResourceMap resourceMap = new ResourceMap();
+        resourceMap.setMap(resMap);
+        return resourceMap;
+    }
+}
@@ -0,0 +1,138 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.data.caching.RecordOffsetIndex.Offsets;
+import de.fuberlin.panda.data.caching.RecordOffsetIndex.RecordSyntax;
+
+public class RecordOffsetIndexTest {
+    private final EntityTag eTag = new EntityTag("A_0", false);
+    private File            file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("panda-index", ".csv").toFile();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testQuotedLineBreaks() throws IOException {
+        // quoted fields with line breaks, escaped quotes, CRLF and empty lines
+        Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < 5000; i++) {
+            if (i % 7 == 0) {
+                writer.write("\"multi\nline " + i + "\",\"say \"\"hi\"\"\r\n\",x\r\n");
+            } else if (i % 11 == 0) {
+                writer.write("\n" + i + ",mlut,\"a,b\"\n");
+            } else {
+                writer.write(i + ",plain,quote\"inside\n");
+            }
+        }
+        writer.close();
+
+        checkOffsets(CSVFormat.DEFAULT);
+        checkOffsets(CSVFormat.EXCEL);
+    }
+
+    @Test
+    public void testVersions() throws IOException {
+        Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < 3000; i++) {
+            writer.write(i + "\n");
+        }
+        writer.close();
+
+        RecordOffsetIndex index = new RecordOffsetIndex();
+        RecordSyntax syntax = new RecordSyntax(',', '"', true, false);
+        Offsets offsets = index.getOffsets("A", eTag, file, syntax);
+        assertSame(offsets, index.getOffsets("A", eTag, file, syntax));
+        assertEquals(2048, offsets.getRecord(2500));
+        assertEquals(2048, offsets.getRecord(9000));
+        assertEquals(10 * 2 + 90 * 3 + 900 * 4 + 1048 * 5, offsets.getOffset(2500));
+
+        // index of old version is replaced
+        Offsets newOffsets = index.getOffsets("A", new EntityTag("A_1", false), file, syntax);
+        assertFalse(newOffsets == offsets);
+        assertEquals(1, index.size());
+        index.removeResource("A");
+        assertEquals(0, index.size());
+    }
+
+    /**
+     * Compare records read from indexed offsets with records of a parser
+     * started at the begin of the file.
+     */
+    private void checkOffsets(CSVFormat format) throws IOException {
+        CSVParser parser = CSVParser.parse(file, StandardCharsets.UTF_8, format);
+        List<CSVRecord> records = parser.getRecords();
+        parser.close();
+
+        Offsets offsets = RecordOffsetIndex.scan(file, eTag, new RecordSyntax(
+                format.getDelimiter(), format.getQuoteCharacter(), format.getIgnoreEmptyLines(),
+                format.getIgnoreSurroundingSpaces()));
+        for (long row = 0; row < records.size(); row += RecordOffsetIndex.INTERVAL) {
+            assertEquals(row, offsets.getRecord(row));
+            FileInputStream in = new FileInputStream(file);
+            in.getChannel().position(offsets.getOffset(row));
+            CSVParser rowParser = new CSVParser(new InputStreamReader(in,
+                    StandardCharsets.UTF_8), format);
+            assertEquals(getValues(records.get((int) row)), getValues(rowParser.iterator()
+                    .next()));
+            rowParser.close();
+        }
+    }
+
+    private List<String> getValues(CSVRecord csvRecord) {
+        List<String> values = new ArrayList<String>();
+        for (String value : csvRecord) {
+            values.add(value);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,200 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.fuberlin.panda.data.caching.RemoteFetcher.MirrorEntry;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+
+public class RemoteFetcherTest {
+    private final AtomicInteger  requestCount  = new AtomicInteger();
+    private final AtomicInteger  downloadCount = new AtomicInteger();
+    private final CountDownLatch release       = new CountDownLatch(1);
+    private volatile boolean     blocking      = false;
+    private HttpServer           server;
+    private URL                  url;
+    private PandaSettings        pandaSettings;
+    private File                 mirrorDir;
+    private RemoteFetcher        testFetcher;
+
+    /**
+     * Local HTTP server which answers conditional requests with 304. While
+     * blocking, responses are delayed until the test releases them.
+     */
+    @Before
+    public void setupServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/data.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                if (blocking) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                exchange.getResponseHeaders().add("ETag", "\"1\"");
+                if ("\"1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    downloadCount.incrementAndGet();
+                    byte[] body = "<data>1</data>".getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort() + "/data.xml");
+
+        pandaSettings = new PandaSettings();
+        mirrorDir = Files.createTempDirectory("panda-mirror").toFile();
+        pandaSettings.setRemoteMirrorDirPath(mirrorDir.getPath());
+        testFetcher = new RemoteFetcher(pandaSettings);
+    }
+
+    @After
+    public void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testMirrorHit() throws IOException {
+        assertEquals("<data>1</data>", read(testFetcher.open(url, 60000)));
+        assertEquals("<data>1</data>", read(testFetcher.open(url, 60000)));
+        assertEquals(1, requestCount.get());
+        assertEquals(1, testFetcher.getMirrorHitCount());
+    }
+
+    @Test
+    public void testNotModified() throws IOException {
+        MirrorEntry entry = testFetcher.fetch(url, 60000);
+        MirrorEntry revalidated = testFetcher.fetch(url, 0);
+
+        assertEquals(2, requestCount.get());
+        assertEquals(1, downloadCount.get());
+        assertEquals(1, testFetcher.getNotModifiedCount());
+        assertEquals(entry.getFetched(), revalidated.getFetched());
+        assertEquals("<data>1</data>", read(revalidated.open()));
+    }
+
+    @Test
+    public void testConcurrentFetches() throws Exception {
+        blocking = true;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<MirrorEntry>> fetches = new ArrayList<Future<MirrorEntry>>();
+        for (int i = 0; i < 4; i++) {
+            fetches.add(executor.submit(new Callable<MirrorEntry>() {
+                @Override
+                public MirrorEntry call() throws IOException {
+                    return testFetcher.fetch(url, 0);
+                }
+            }));
+        }
+        // wait until first fetch reached the server, then let it finish
+        for (int i = 0; i < 100 && requestCount.get() == 0; i++) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        MirrorEntry entry = fetches.get(0).get();
+        for (Future<MirrorEntry> fetch : fetches) {
+            assertSame(entry, fetch.get());
+        }
+        executor.shutdown();
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void testValidatedInFuture() throws IOException {
+        testFetcher.fetch(url, 60000);
+        for (File file : mirrorDir.listFiles()) {
+            if (file.getName().endsWith(".properties")) {
+                Properties info = new Properties();
+                info.setProperty("eTag", "\"1\"");
+                info.setProperty("fetched", "0");
+                info.setProperty("validated", Long.toString(Long.MAX_VALUE));
+                OutputStream out = new FileOutputStream(file);
+                info.store(out, null);
+                out.close();
+            }
+        }
+
+        // entry read from disk must not be valid forever
+        new RemoteFetcher(pandaSettings).fetch(url, 0);
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test
+    public void testNoMirrorDirectory() throws IOException {
+        pandaSettings.setRemoteMirrorDirPath(null);
+        assertEquals("<data>1</data>", read(testFetcher.open(url, 60000)));
+        assertEquals("<data>1</data>", read(testFetcher.open(url, 60000)));
+        assertEquals(1, requestCount.get());
+    }
+
+    private String read(InputStream in) throws IOException {
+        try {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+}
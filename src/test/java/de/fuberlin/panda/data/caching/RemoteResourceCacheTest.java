@@ -0,0 +1,162 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.fuberlin.panda.data.caching.RemoteResourceCache.DocumentLoader;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
+import de.fuberlin.panda.enums.DataResourceType;
+
+public class RemoteResourceCacheTest {
+    private final AtomicInteger  requestCount = new AtomicInteger();
+    private final DocumentLoader loader       = new BytesLoader();
+    private volatile String      content      = "<feed>v1</feed>";
+    private HttpServer           server;
+    private URL                  url;
+    private ResourceInfo         resInfo;
+    private PandaSettings        pandaSettings;
+    private RemoteResourceCache  testCache;
+
+    /**
+     * Local HTTP server which answers conditional requests with 304 if the
+     * content did not change.
+     */
+    @Before
+    public void setupServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/feed.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                String eTag = "\"" + content.hashCode() + "\"";
+                exchange.getResponseHeaders().add("ETag", eTag);
+                if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    byte[] body = content.getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort() + "/feed.xml");
+
+        resInfo = new ResourceInfo(DataResourceType.XML, url);
+        HashMap<String, ResourceInfo> resMap = new HashMap<String, ResourceInfo>();
+        resMap.put("Feed", resInfo);
+        ResourceMap resourceMap = new ResourceMap();
+        resourceMap.setMap(resMap);
+
+        pandaSettings = new PandaSettings();
+        pandaSettings.setResourceMap(resourceMap);
+        pandaSettings.setCacheSnapshots(false);
+        pandaSettings.setRemoteMirrorDirPath(Files.createTempDirectory("panda-mirror").toString());
+        pandaSettings.setServerCacheUsage(true);
+        testCache = pandaSettings.getResourceCache().getRemoteCache();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testFreshDocument() throws IOException {
+        assertEquals("<feed>v1</feed>", getDocument());
+        assertEquals("<feed>v1</feed>", getDocument());
+        assertEquals(1, requestCount.get());
+        assertEquals(0, testCache.getRevalidationCount());
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        resInfo.setTimeToLive(0);
+        getDocument();
+        EntityTag eTag = testCache.getVersion("Feed").getETag();
+
+        assertEquals("<feed>v1</feed>", getDocument());
+        for (int i = 0; i < 100 && testCache.getNotModifiedCount() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, testCache.getNotModifiedCount());
+        assertEquals(2, requestCount.get());
+        assertEquals(eTag, testCache.getVersion("Feed").getETag());
+    }
+
+    @Test
+    public void testModified() throws Exception {
+        resInfo.setTimeToLive(0);
+        getDocument();
+        EntityTag eTag = testCache.getVersion("Feed").getETag();
+        content = "<feed>v2</feed>";
+
+        // stale document is served while revalidating
+        assertEquals("<feed>v1</feed>", getDocument());
+        for (int i = 0; i < 100 && eTag.equals(testCache.getVersion("Feed").getETag()); i++) {
+            Thread.sleep(50);
+        }
+        resInfo.setTimeToLive(60);
+        assertEquals("<feed>v2</feed>", getDocument());
+        assertEquals(0, testCache.getNotModifiedCount());
+        assertFalse(pandaSettings.getResourceCache().checkValidityDocument("Feed", eTag));
+    }
+
+    private String getDocument() throws IOException {
+        return new String(testCache.getDocument("Feed", url, loader), StandardCharsets.UTF_8);
+    }
+
+    private static class BytesLoader implements DocumentLoader {
+        @Override
+        public byte[] load(InputStream in) throws IOException {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
@@ -23,6 +23,8 @@ package de.fuberlin.panda.data.caching;
  */
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -182,4 +184,15 @@ public class ResourceCacheTestCsv {
         assertTrue(myDiff.identical());
     }
 
+    @Test
+    public void testCacheValuesNotShared() {
+        // values of different requests must not share subURIs
+        ValueExchange cellList = this.testCache.getValues("/CsvTest/B2", DataResourceType.CSV);
+        ValueExchange tableList = this.testCache.getValues("/CsvTest/B2:E5",
+                DataResourceType.CSV);
+
+        assertNotSame(cellList.getValue().get(0), tableList.getValue().get(0));
+        assertEquals("B2", cellList.getValue().get(0).getSubURI());
+    }
+
 }
@@ -0,0 +1,147 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.enums.DataResourceType;
+
+public class ResourceCacheTestEviction {
+    private final int     docSize   = 3000;
+    private PandaSettings pandaSettings;
+    private ResourceCache testCache;
+
+    @Before
+    public void setupCache() {
+        pandaSettings = new PandaSettings();
+        pandaSettings.setCacheMemoryLimit(10000);
+        testCache = pandaSettings.getResourceCache();
+    }
+
+    @Test
+    public void testEvictionOrder() {
+        addDocument("A");
+        addDocument("B");
+        // second request promotes A to protected segment
+        assertNotNull(testCache.getDocument("A"));
+        addDocument("C");
+        assertEquals(0, testCache.getEvictionCount());
+
+        // budget exceeded, B is least recently used resource in probation
+        addDocument("D");
+        assertEquals(1, testCache.getEvictionCount());
+        assertNull(testCache.getDocument("B"));
+        assertNotNull(testCache.getDocument("A"));
+        assertNotNull(testCache.getDocument("C"));
+        assertNotNull(testCache.getDocument("D"));
+        assertTrue(testCache.getEstimatedSize() <= pandaSettings.getCacheMemoryLimit());
+    }
+
+    @Test
+    public void testEvictionOnLimitChange() {
+        testCache.addResourceValue("/CsvTest/A1", "a", "xs:string", DataResourceType.CSV);
+        testCache.addResourceValue("/CsvTest/B1", "b", "xs:string", DataResourceType.CSV);
+        assertTrue(testCache.getEstimatedSize("CsvTest") > 0);
+
+        pandaSettings.setCacheMemoryLimit(0);
+        assertEquals(0, testCache.getEstimatedSize());
+        assertEquals(1, testCache.getEvictionCount());
+    }
+
+    @Test
+    public void testRemovePartOfResource() {
+        EntityTag eTag = new EntityTag("CsvTest_0", false);
+        testCache.addDocument(new byte[docSize], "CsvTest", eTag);
+        long docEstimate = testCache.getEstimatedSize("CsvTest");
+        testCache.addResourceValue("/CsvTest/A1", "a", "xs:string", DataResourceType.CSV);
+        long totalEstimate = testCache.getEstimatedSize("CsvTest");
+        assertTrue(totalEstimate > docEstimate);
+
+        // document stays accounted after values were removed
+        testCache.removeResourceValues("CsvTest");
+        assertEquals(docEstimate, testCache.getEstimatedSize("CsvTest"));
+        assertEquals(docEstimate, testCache.getEstimatedSize());
+
+        // values stay accounted after document was removed
+        testCache.addResourceValue("/CsvTest/A1", "a", "xs:string", DataResourceType.CSV);
+        testCache.removeDocument("CsvTest");
+        assertEquals(totalEstimate - docEstimate, testCache.getEstimatedSize("CsvTest"));
+
+        testCache.removeResourceValues("CsvTest");
+        assertEquals(0, testCache.getEstimatedSize());
+    }
+
+    @Test
+    public void testConcurrentChanges() throws InterruptedException {
+        pandaSettings.setCacheMemoryLimit(Long.MAX_VALUE);
+        final EntityTag eTag = new EntityTag("CsvTest_0", false);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int column = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 1; i <= 200; i++) {
+                        testCache.addDocument(new byte[docSize], "CsvTest", eTag);
+                        testCache.addResourceValue("/CsvTest/" + (char) ('A' + column) + i, "a",
+                                "xs:string", DataResourceType.CSV);
+                        testCache.removeDocument("CsvTest");
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // only the values are left and accounted exactly once
+        long valueEstimate = testCache.getEstimatedSize("CsvTest");
+        assertEquals(valueEstimate, testCache.getEstimatedSize());
+        testCache.removeResourceValues("CsvTest");
+        assertEquals(0, testCache.getEstimatedSize());
+        testCache.addDocument(new byte[docSize], "CsvTest", eTag);
+        long docEstimate = testCache.getEstimatedSize();
+        for (int t = 0; t < threads.length; t++) {
+            for (int i = 1; i <= 200; i++) {
+                testCache.addResourceValue("/CsvTest/" + (char) ('A' + t) + i, "a",
+                        "xs:string", DataResourceType.CSV);
+            }
+        }
+        assertEquals(valueEstimate + docEstimate, testCache.getEstimatedSize());
+    }
+
+    private void addDocument(String resID) {
+        testCache.addDocument(new byte[docSize], resID, new EntityTag(resID + "_0", false));
+    }
+}
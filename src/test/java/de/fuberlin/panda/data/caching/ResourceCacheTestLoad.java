@@ -0,0 +1,288 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.data.caching.ResourceCache.ResourceLoad;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+
+public class ResourceCacheTestLoad {
+    private final int       threads = 8;
+    private final EntityTag eTag    = new EntityTag("A_0", false);
+    private PandaSettings   pandaSettings;
+    private ResourceCache   testCache;
+    private ExecutorService executor;
+
+    @Before
+    public void setupCache() {
+        pandaSettings = new PandaSettings();
+        testCache = pandaSettings.getResourceCache();
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSingleLoader() throws Exception {
+        final AtomicInteger loaders = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] results = new Future<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            results[i] = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    start.await();
+                    ResourceLoad load = testCache.beginLoad("A", eTag);
+                    if (load != null) {
+                        try {
+                            loaders.incrementAndGet();
+                            // give other requests time to wait for this load
+                            Thread.sleep(100);
+                            testCache.addDocument(new byte[10], "A", eTag);
+                        } finally {
+                            testCache.endLoad(load);
+                        }
+                        return true;
+                    }
+                    return false;
+                }
+            });
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, loaders.get());
+        assertTrue(testCache.checkValidityDocument("A", eTag));
+    }
+
+    @Test
+    public void testFailedLoad() throws Exception {
+        ResourceLoad load = testCache.beginLoad("A", eTag);
+        assertNotNull(load);
+        Future<ResourceLoad> waiting = submitBeginLoad();
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        // first loader gives up without filling the cache, waiting request
+        // has to load the resource itself
+        testCache.endLoad(load);
+        ResourceLoad secondLoad = waiting.get(10, TimeUnit.SECONDS);
+        assertNotNull(secondLoad);
+        testCache.endLoad(secondLoad);
+    }
+
+    @Test
+    public void testEndLoadOfOtherCaller() throws Exception {
+        ResourceLoad load = testCache.beginLoad("A", eTag);
+        testCache.endLoad(load);
+        ResourceLoad secondLoad = testCache.beginLoad("A", eTag);
+        assertNotNull(secondLoad);
+
+        // ending the first load again must not finish the running load
+        testCache.endLoad(load);
+        Future<ResourceLoad> waiting = submitBeginLoad();
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        testCache.endLoad(secondLoad);
+        testCache.endLoad(waiting.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLoadWaitTime() throws Exception {
+        pandaSettings.setCacheLoadWaitTime(50);
+        ResourceLoad load = testCache.beginLoad("A", eTag);
+
+        // waiting request gives up and reads the resource itself
+        assertNull(submitBeginLoad().get(10, TimeUnit.SECONDS));
+        testCache.endLoad(load);
+    }
+
+    @Test
+    public void testLoadOfOtherVersion() throws Exception {
+        testCache.addDocument(new byte[10], "A", eTag);
+        ResourceLoad load = testCache.beginLoad("A", new EntityTag("A_1", false));
+        assertNotNull(load);
+        testCache.endLoad(load);
+    }
+
+    @Test
+    public void testBackgroundFill() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        ResourceLoad load = testCache.beginLoad("A", eTag);
+        testCache.fillResource(load, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                release.await();
+                testCache.addDocument(new byte[10], "A", eTag);
+                return null;
+            }
+        });
+        Future<ResourceLoad> waiting = submitBeginLoad();
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        // request returns before fill job was executed, waiting requests read
+        // the resource themselves
+        testCache.endLoad(load);
+        assertNull(waiting.get(10, TimeUnit.SECONDS));
+        assertFalse(testCache.checkValidityDocument("A", eTag));
+
+        release.countDown();
+        assertTrue(testCache.awaitLoad(load, 10000));
+        assertTrue(testCache.checkValidityDocument("A", eTag));
+        assertEquals(1, testCache.getLoader().getCompletedCount());
+    }
+
+    @Test
+    public void testFailedBackgroundFill() throws Exception {
+        ResourceLoad load = testCache.beginLoad("A", eTag);
+        testCache.fillResource(load, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                throw new IOException();
+            }
+        });
+        testCache.endLoad(load);
+        assertTrue(testCache.awaitLoad(load, 10000));
+
+        // resource has to be loaded again after failed job
+        load = testCache.beginLoad("A", eTag);
+        assertNotNull(load);
+        testCache.endLoad(load);
+        assertEquals(1, testCache.getLoader().getFailedCount());
+    }
+
+    @Test
+    public void testSynchronousFill() {
+        pandaSettings.setAsyncCacheFill(false);
+        ResourceLoad load = testCache.beginLoad("A", eTag);
+        testCache.fillResource(load, new Callable<Void>() {
+            @Override
+            public Void call() {
+                testCache.addDocument(new byte[10], "A", eTag);
+                return null;
+            }
+        });
+        assertTrue(testCache.checkValidityDocument("A", eTag));
+        testCache.endLoad(load);
+
+        // load was finished by endLoad
+        load = testCache.beginLoad("A", eTag);
+        assertNotNull(load);
+        testCache.endLoad(load);
+    }
+
+    @Test
+    public void testLoadResource() throws Exception {
+        pandaSettings.setAsyncCacheFill(false);
+        assertTrue(testCache.loadResource("A", eTag, createDocumentFill("A", null)));
+        assertTrue(testCache.checkValidityDocument("A", eTag));
+
+        // request is answered from the result of the background fill
+        pandaSettings.setAsyncCacheFill(true);
+        long completed = testCache.getLoader().getCompletedCount();
+        assertTrue(testCache.loadResource("B", eTag, createDocumentFill("B", null)));
+        assertTrue(testCache.checkValidityDocument("B", eTag));
+        assertEquals(completed + 1, testCache.getLoader().getCompletedCount());
+
+        // request has to extract values itself if background fill takes too
+        // long
+        pandaSettings.setCacheFillWaitTime(50);
+        CountDownLatch release = new CountDownLatch(1);
+        assertFalse(testCache.loadResource("C", eTag, createDocumentFill("C", release)));
+        release.countDown();
+        for (int i = 0; i < 100 && !testCache.checkValidityDocument("C", eTag); i++) {
+            Thread.sleep(100);
+        }
+        // later requests find the filled resource
+        assertTrue(testCache.loadResource("C", eTag, createDocumentFill("C", null)));
+    }
+
+    @Test
+    public void testLoadResourceQueued() throws Exception {
+        // all threads of the loader are busy
+        CountDownLatch release = new CountDownLatch(1);
+        int loaderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        for (int i = 0; i < loaderThreads; i++) {
+            testCache.getLoader().submit("Busy" + i, createDocumentFill("Busy" + i, release));
+        }
+
+        // request doesn't wait for a queued fill job
+        pandaSettings.setCacheFillWaitTime(10000);
+        long start = System.currentTimeMillis();
+        assertFalse(testCache.loadResource("A", eTag, createDocumentFill("A", null)));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        release.countDown();
+        for (int i = 0; i < 100 && !testCache.checkValidityDocument("A", eTag); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(testCache.checkValidityDocument("A", eTag));
+    }
+
+    private Future<ResourceLoad> submitBeginLoad() {
+        return executor.submit(new Callable<ResourceLoad>() {
+            @Override
+            public ResourceLoad call() {
+                return testCache.beginLoad("A", eTag);
+            }
+        });
+    }
+
+    private Callable<Void> createDocumentFill(final String resID, final CountDownLatch release) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                if (release != null) {
+                    release.await();
+                }
+                testCache.addDocument(new byte[10], resID, eTag);
+                return null;
+            }
+        };
+    }
+}
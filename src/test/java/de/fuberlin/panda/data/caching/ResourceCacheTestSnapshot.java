@@ -0,0 +1,233 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.api.data.ValueExchange.Value;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
+import de.fuberlin.panda.data.resources.DataCsvResource;
+import de.fuberlin.panda.enums.DataResourceType;
+
+public class ResourceCacheTestSnapshot {
+    private final String rootPath = "src/test/resources/testdata/";
+    // maximum time to wait for restore of snapshots in milliseconds
+    private final long   timeout  = 10000;
+    private ResourceMap  resourceMap;
+    private File         snapshotDir;
+    private File         docFile;
+
+    @Before
+    public void setupResources() throws Exception {
+        snapshotDir = Files.createTempDirectory("panda-snapshots").toFile();
+        docFile = File.createTempFile("panda", ".xml");
+        Files.write(docFile.toPath(), "<a>b</a>".getBytes("UTF-8"));
+
+        HashMap<String, ResourceInfo> resMap = new HashMap<String, ResourceInfo>();
+        ResourceInfo csvInfo = new ResourceInfo(DataResourceType.CSV, rootPath
+                + "csv/MOTsitelist.csv");
+        csvInfo.setSeparator(",");
+        resMap.put("CsvTest", csvInfo);
+        resMap.put("XmlTest", new ResourceInfo(DataResourceType.XML, docFile.getPath()));
+        resourceMap = new ResourceMap();
+        resourceMap.setMap(resMap);
+    }
+
+    @After
+    public void deleteResources() {
+        for (File file : snapshotDir.listFiles()) {
+            file.delete();
+        }
+        snapshotDir.delete();
+        docFile.delete();
+    }
+
+    @Test
+    public void testRestoreValues() throws Exception {
+        PandaSettings oldSettings = createSettings();
+        ResourceCache oldCache = oldSettings.getResourceCache();
+        EntityTag eTag = oldSettings.getResourceWatcher().getVersion("CsvTest").getETag();
+        assertTrue(oldCache.loadResource("CsvTest", eTag,
+                DataCsvResource.createCacheFill(oldSettings, "CsvTest", eTag)));
+        waitForSnapshot("CsvTest");
+
+        PandaSettings newSettings = createSettings();
+        ResourceCache newCache = newSettings.getResourceCache();
+        newSettings.setServerCacheUsage(true);
+        waitForRestore(newCache);
+        assertTrue(newCache.checkValidityResource("CsvTest", eTag));
+        assertEquals(oldCache.getEstimatedSize("CsvTest"), newCache.getEstimatedSize("CsvTest"));
+
+        List<Value> oldValues = oldCache.getValues("/CsvTest/*", DataResourceType.CSV).getValue();
+        List<Value> newValues = newCache.getValues("/CsvTest/*", DataResourceType.CSV).getValue();
+        assertEquals(oldValues.size(), newValues.size());
+        for (int i = 0; i < oldValues.size(); i++) {
+            assertEquals(oldValues.get(i).getValue(), newValues.get(i).getValue());
+            assertEquals(oldValues.get(i).getType(), newValues.get(i).getType());
+            assertEquals(oldValues.get(i).getSubURI(), newValues.get(i).getSubURI());
+        }
+    }
+
+    @Test
+    public void testRestoreDocument() throws Exception {
+        PandaSettings oldSettings = createSettings();
+        EntityTag eTag = oldSettings.getResourceWatcher().getVersion("XmlTest").getETag();
+        byte[] doc = Files.readAllBytes(docFile.toPath());
+        oldSettings.getResourceCache().addDocument(doc, "XmlTest", eTag);
+        oldSettings.getResourceCache().saveSnapshot("XmlTest");
+        waitForSnapshot("XmlTest");
+
+        PandaSettings newSettings = createSettings();
+        ResourceCache newCache = newSettings.getResourceCache();
+        assertEquals(1, newCache.loadSnapshots());
+        waitForRestore(newCache);
+        assertTrue(newCache.checkValidityDocument("XmlTest", eTag));
+        assertArrayEquals(doc, (byte[]) newCache.getDocument("XmlTest"));
+    }
+
+    @Test
+    public void testRestoreAtStartup() throws Exception {
+        PandaSettings oldSettings = createSettings();
+        EntityTag eTag = oldSettings.getResourceWatcher().getVersion("XmlTest").getETag();
+        oldSettings.getResourceCache().addDocument(new byte[10], "XmlTest", eTag);
+        oldSettings.getResourceCache().saveSnapshot("XmlTest");
+        waitForSnapshot("XmlTest");
+
+        PandaSettings newSettings = new PandaSettings();
+        newSettings.setResourceMap(resourceMap);
+        Properties config = new Properties();
+        config.setProperty("panda.serverCache", "true");
+        config.setProperty("panda.cacheSnapshotDir", snapshotDir.getPath());
+        newSettings.configure(config);
+        assertEquals(snapshotDir.getPath(), newSettings.getCacheSnapshotDirPath());
+        waitForRestore(newSettings.getResourceCache());
+        assertTrue(newSettings.getResourceCache().checkValidityDocument("XmlTest", eTag));
+    }
+
+    @Test
+    public void testDefaultSnapshotDirectory() {
+        // default directory is kept when the web application is deployed again
+        String dirPath = new PandaSettings().getCacheSnapshotDirPath();
+        assertTrue(dirPath.startsWith(System.getProperty("user.home")));
+    }
+
+    @Test
+    public void testOutdatedSnapshot() throws Exception {
+        PandaSettings oldSettings = createSettings();
+        EntityTag eTag = oldSettings.getResourceWatcher().getVersion("XmlTest").getETag();
+        oldSettings.getResourceCache().addDocument(new byte[10], "XmlTest", eTag);
+        oldSettings.getResourceCache().saveSnapshot("XmlTest");
+        waitForSnapshot("XmlTest");
+        File snapshot = new File(snapshotDir, "XmlTest.snapshot");
+
+        // file is changed while server is down
+        docFile.setLastModified(docFile.lastModified() + 10000);
+
+        PandaSettings newSettings = createSettings();
+        ResourceCache newCache = newSettings.getResourceCache();
+        assertEquals(1, newCache.loadSnapshots());
+        waitForRestore(newCache);
+        assertEquals(null, newCache.getDocument("XmlTest"));
+        assertFalse(snapshot.exists());
+    }
+
+    @Test
+    public void testSnapshotsDisabled() throws Exception {
+        PandaSettings settings = createSettings();
+        settings.setCacheSnapshots(false);
+        EntityTag eTag = settings.getResourceWatcher().getVersion("XmlTest").getETag();
+        settings.getResourceCache().addDocument(new byte[10], "XmlTest", eTag);
+        settings.getResourceCache().saveSnapshot("XmlTest");
+        assertEquals(0, snapshotDir.listFiles().length);
+    }
+
+    @Test
+    public void testNoSnapshotDirectory() throws Exception {
+        PandaSettings settings = createSettings();
+        settings.setCacheSnapshotDirPath(null);
+        EntityTag eTag = settings.getResourceWatcher().getVersion("XmlTest").getETag();
+        settings.getResourceCache().addDocument(new byte[10], "XmlTest", eTag);
+        settings.getResourceCache().saveSnapshot("XmlTest");
+        assertEquals(0, settings.getResourceCache().loadSnapshots());
+        assertEquals(0, snapshotDir.listFiles().length);
+    }
+
+    @Test
+    public void testPrivateSnapshotDirectory() throws Exception {
+        assertTrue(snapshotDir.delete());
+        PandaSettings settings = createSettings();
+        EntityTag eTag = settings.getResourceWatcher().getVersion("XmlTest").getETag();
+        settings.getResourceCache().addDocument(new byte[10], "XmlTest", eTag);
+        settings.getResourceCache().saveSnapshot("XmlTest");
+        waitForSnapshot("XmlTest");
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rwx------", PosixFilePermissions.toString(Files
+                    .getPosixFilePermissions(snapshotDir.toPath())));
+        }
+    }
+
+    private PandaSettings createSettings() {
+        PandaSettings pandaSettings = new PandaSettings();
+        pandaSettings.setResourceMap(resourceMap);
+        pandaSettings.setAsyncCacheFill(false);
+        pandaSettings.setCacheSnapshotDirPath(snapshotDir.getPath());
+        return pandaSettings;
+    }
+
+    private void waitForSnapshot(String resID) throws InterruptedException {
+        File snapshot = new File(snapshotDir, resID + ".snapshot");
+        long end = System.currentTimeMillis() + timeout;
+        while (!snapshot.exists() && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        assertTrue(snapshot.exists());
+    }
+
+    private void waitForRestore(ResourceCache cache) throws InterruptedException {
+        CacheLoader loader = cache.getLoader();
+        long end = System.currentTimeMillis() + timeout;
+        while (loader.getCompletedCount() + loader.getFailedCount() == 0
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, loader.getFailedCount());
+    }
+}
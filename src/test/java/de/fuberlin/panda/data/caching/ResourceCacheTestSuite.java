@@ -29,7 +29,13 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ ResourceCacheTestCsv.class, ResourceCacheTestDocx.class,
-        ResourceCacheTestXlsx.class })
+        ResourceCacheTestXlsx.class, ResourceCacheTestEviction.class, ResourceCacheTestLoad.class,
+        TableCacheNodeTest.class, ResourceWatcherTest.class,
+        ResourceCacheTestSnapshot.class, CacheWarmUpTest.class, ResponseCacheTest.class,
+        CacheTreeNodeTest.class, NegativeResultCacheTest.class, PackagePartCacheTest.class,
+        CompressedDocumentTest.class, RowBlockCacheTest.class, RemoteResourceCacheTest.class,
+        RemoteFetcherTest.class, CacheStatisticsTest.class, RecordOffsetIndexTest.class,
+        ColumnSchemaTest.class })
 public class ResourceCacheTestSuite {
 
 }
@@ -0,0 +1,154 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.data.caching.ResourceWatcher.ResourceVersion;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMap;
+import de.fuberlin.panda.data.configuration.resourcemap.ResourceMapEntryType.ResourceInfo;
+import de.fuberlin.panda.enums.DataResourceType;
+
+public class ResourceWatcherTest {
+    // maximum time to wait for detection of a change in milliseconds
+    private final long      timeout = 10000;
+    private PandaSettings   pandaSettings;
+    private ResourceWatcher watcher;
+    private File            dir;
+    private File            file;
+
+    @Before
+    public void setupResources() throws IOException {
+        dir = Files.createTempDirectory("panda-watcher").toFile();
+        file = new File(dir, "test.csv");
+        writeFile("a,b");
+
+        HashMap<String, ResourceInfo> resMap = new HashMap<String, ResourceInfo>();
+        resMap.put("A", new ResourceInfo(DataResourceType.CSV, file.getPath()));
+        resMap.put("B", new ResourceInfo(DataResourceType.XML, new URL("http://localhost/b.xml")));
+        ResourceMap resourceMap = new ResourceMap();
+        resourceMap.setMap(resMap);
+
+        pandaSettings = new PandaSettings();
+        pandaSettings.setResourceMap(resourceMap);
+        pandaSettings.setResourcePollInterval(1);
+        watcher = pandaSettings.getResourceWatcher();
+    }
+
+    @After
+    public void deleteResources() {
+        watcher.shutdown();
+        file.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testVersion() {
+        ResourceVersion version = watcher.getVersion("A");
+        assertTrue(version.exists());
+        assertEquals(file.lastModified(), version.getLastModified().getTime());
+        assertEquals(new EntityTag("A_" + file.lastModified(), false), version.getETag());
+        // version is only read once
+        assertSame(version, watcher.getVersion("A"));
+        // resources with URL have no version
+        assertNull(watcher.getVersion("B"));
+    }
+
+    @Test
+    public void testWatchedChange() throws Exception {
+        watcher.getVersion("A");
+        assertEquals(1, watcher.getWatchedDirCount());
+        checkInvalidation();
+    }
+
+    @Test
+    public void testPolledChange() throws Exception {
+        pandaSettings.setResourcePolling(true);
+        watcher.getVersion("A");
+        assertEquals(0, watcher.getWatchedDirCount());
+        assertEquals(1, watcher.getPolledDirCount());
+        checkInvalidation();
+    }
+
+    @Test
+    public void testDeletedFile() throws Exception {
+        ResourceVersion version = watcher.getVersion("A");
+        file.delete();
+        long end = System.currentTimeMillis() + timeout;
+        while (watcher.getVersion("A") == version && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+        assertFalse(watcher.getVersion("A").exists());
+    }
+
+    /**
+     * Change file of a cached resource and check that the resource gets a new
+     * version and is removed from cache.
+     */
+    private void checkInvalidation() throws Exception {
+        ResourceCache cache = pandaSettings.getResourceCache();
+        ResourceVersion version = watcher.getVersion("A");
+        cache.addDocument(new byte[10], "A", version.getETag());
+        assertTrue(cache.checkValidityDocument("A", version.getETag()));
+
+        writeFile("a,b,c");
+        file.setLastModified(file.lastModified() + 10000);
+        EntityTag newETag = new EntityTag("A_" + file.lastModified(), false);
+
+        // writing and touching the file may be detected as separate changes
+        long end = System.currentTimeMillis() + timeout;
+        while (!newETag.equals(watcher.getVersion("A").getETag())
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+        assertEquals(newETag, watcher.getVersion("A").getETag());
+        assertTrue(watcher.getInvalidationCount() > 0);
+        assertNull(cache.getDocument("A"));
+    }
+
+    private void writeFile(String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fuberlin.panda.data.caching.ResponseCache.CachedResponse;
+import de.fuberlin.panda.data.configuration.PandaSettings;
+import de.fuberlin.panda.enums.DataResourceType;
+
+public class ResponseCacheTest {
+    private final int     entitySize = 300;
+    private PandaSettings pandaSettings;
+    private ResponseCache testCache;
+
+    @Before
+    public void setupCache() {
+        pandaSettings = new PandaSettings();
+        pandaSettings.setResponseCacheMemoryLimit(10000);
+        testCache = pandaSettings.getResourceCache().getResponseCache();
+    }
+
+    @Test
+    public void testGetResponse() {
+        String key = createKey("/data/A/1", "A");
+        assertNull(testCache.get(key));
+        testCache.put("A", key, new byte[] { 1, 2, 3 }, MediaType.APPLICATION_XML_TYPE);
+
+        CachedResponse response = testCache.get(key);
+        assertNotNull(response);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, response.getEntity());
+        assertEquals(MediaType.APPLICATION_XML_TYPE, response.getMediaType());
+        assertEquals(1, testCache.getHitCount());
+        assertEquals(1, testCache.getMissCount());
+
+        // new version of resource has a different key
+        assertNull(testCache.get(createKey("/data/A/1", "A2")));
+    }
+
+    @Test
+    public void testEviction() {
+        for (int i = 0; i < 40; i++) {
+            putResponse("A", "/data/A/" + i);
+        }
+        assertTrue(testCache.getEstimatedSize() <= 10000);
+        assertNull(testCache.get(createKey("/data/A/0", "A")));
+        assertNotNull(testCache.get(createKey("/data/A/39", "A")));
+
+        // responses larger than a tenth of the budget are not cached
+        String key = createKey("/data/B", "B");
+        testCache.put("B", key, new byte[2000], MediaType.APPLICATION_XML_TYPE);
+        assertNull(testCache.get(key));
+    }
+
+    @Test
+    public void testInvalidation() {
+        putResponse("CsvTest", "/data/CsvTest/A1");
+        putResponse("CsvTest", "/data/CsvTest/B1");
+        putResponse("Doc", "/data/Doc");
+
+        ResourceCache resourceCache = pandaSettings.getResourceCache();
+        resourceCache.addResourceValue("/CsvTest/A1", "a", "xs:string", DataResourceType.CSV);
+        resourceCache.removeResourceValues("CsvTest");
+        assertNull(testCache.get(createKey("/data/CsvTest/A1", "CsvTest")));
+        assertNull(testCache.get(createKey("/data/CsvTest/B1", "CsvTest")));
+        assertNotNull(testCache.get(createKey("/data/Doc", "Doc")));
+
+        resourceCache.removeDocument("Doc");
+        assertNull(testCache.get(createKey("/data/Doc", "Doc")));
+        assertEquals(0, testCache.getEstimatedSize());
+    }
+
+    private void putResponse(String resID, String uri) {
+        testCache.put(resID, createKey(uri, resID), new byte[entitySize],
+                MediaType.APPLICATION_XML_TYPE);
+    }
+
+    private String createKey(String uri, String eTag) {
+        return ResponseCache.createKey(uri, MediaType.APPLICATION_XML, new EntityTag(eTag
+                + "_0", false));
+    }
+}
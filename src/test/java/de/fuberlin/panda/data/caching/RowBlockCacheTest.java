@@ -0,0 +1,83 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RowBlockCacheTest {
+    private final EntityTag eTag = new EntityTag("A_0", false);
+    private RowBlockCache   testCache;
+    private String[][]      rows;
+
+    @Before
+    public void setupCache() {
+        testCache = new RowBlockCache(4 * 1024 * 1024);
+        rows = new String[RowBlockCache.BLOCK_ROWS][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new String[] { "row" + i, Integer.toString(i) };
+        }
+    }
+
+    @Test
+    public void testGetBlock() {
+        assertNull(testCache.get("A", 0, eTag));
+        testCache.put("A", 0, eTag, rows);
+        assertSame(rows, testCache.get("A", 0, eTag));
+        assertNull(testCache.get("A", 1, eTag));
+        assertEquals(1, testCache.getHitCount());
+        assertEquals(2, testCache.getMissCount());
+
+        // blocks are not valid for new version of resource
+        assertNull(testCache.get("A", 0, new EntityTag("A_1", false)));
+    }
+
+    @Test
+    public void testEviction() {
+        for (int block = 0; block < 10; block++) {
+            testCache.put("A", block, eTag, rows);
+        }
+        assertTrue(testCache.getEstimatedSize() <= 4 * 1024 * 1024);
+        assertTrue(testCache.getBlockCount() < 10);
+
+        // least recently used blocks are evicted first
+        assertNull(testCache.get("A", 0, eTag));
+        assertSame(rows, testCache.get("A", 9, eTag));
+    }
+
+    @Test
+    public void testRemoveResource() {
+        testCache.put("A", 0, eTag, rows);
+        testCache.put("B", 0, eTag, rows);
+        testCache.removeResource("A");
+        assertNull(testCache.get("A", 0, eTag));
+        assertSame(rows, testCache.get("B", 0, eTag));
+        assertEquals(1, testCache.getBlockCount());
+    }
+}
@@ -0,0 +1,125 @@
+package de.fuberlin.panda.data.caching;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TableCacheNodeTest {
+    private TableCacheNode table;
+
+    @Before
+    public void setupTable() {
+        table = new TableCacheNode();
+        table.addCell(0, 0, "a", "xs:string");
+        table.addCell(0, 2, "1.5", "xs:double");
+        table.addCell(40, 1, "a", "xs:string");
+    }
+
+    @Test
+    public void testGetCell() {
+        assertEquals("1.5", table.getValue(0, 2));
+        assertEquals("xs:double", table.getType(0, 2));
+        assertEquals("a", table.getValue(40, 1));
+        assertEquals("xs:string", table.getType(40, 1));
+        assertEquals(41, table.getRowCount());
+        assertEquals(3, table.getColumnCount());
+    }
+
+    @Test
+    public void testEmptyCell() {
+        assertFalse(table.containsCell(0, 1));
+        assertFalse(table.containsCell(41, 0));
+        assertFalse(table.containsCell(0, 3));
+        assertNull(table.getValue(1, 0));
+        assertNull(table.getType(1, 0));
+    }
+
+    @Test
+    public void testDictionary() {
+        // known value only needs space for cell
+        assertEquals(CacheSizeEstimator.estimateTableCell(),
+                table.addCell(5, 0, "a", "xs:string"));
+        assertTrue(table.addCell(6, 0, "b", "xs:string") > CacheSizeEstimator
+                .estimateTableCell());
+    }
+
+    @Test
+    public void testCellNotReplaced() {
+        assertEquals(0, table.addCell(0, 0, "b", "xs:string"));
+        assertEquals("a", table.getValue(0, 0));
+    }
+
+    @Test
+    public void testCopy() {
+        table.trimToSize();
+        TableCacheNode copy = new TableCacheNode(table);
+        copy.addCell(1, 0, "b", "xs:string");
+        copy.addCell(60, 5, "c", "xs:string");
+
+        assertEquals("b", copy.getValue(1, 0));
+        assertEquals("a", copy.getValue(40, 1));
+        assertFalse(table.containsCell(1, 0));
+        assertFalse(table.containsCell(60, 5));
+        assertEquals(41, table.getRowCount());
+    }
+
+    @Test
+    public void testCopiesOfSameTable() {
+        // values fill more than one block of the dictionary
+        for (int row = 0; row < 3000; row++) {
+            table.addCell(row, 3, "v" + row, "xs:string");
+        }
+        table.trimToSize();
+
+        // cells added one by one, every cell to a new copy
+        TableCacheNode first = new TableCacheNode(table);
+        first.addCell(3000, 3, "x", "xs:string");
+        first.trimToSize();
+        first = new TableCacheNode(first);
+        first.addCell(3001, 3, "v5", "xs:string");
+        first.trimToSize();
+        TableCacheNode second = new TableCacheNode(table);
+        second.addCell(3000, 3, "y", "xs:string");
+        second.addCell(1, 0, "z", "xs:string");
+
+        assertEquals("x", first.getValue(3000, 3));
+        assertEquals("v5", first.getValue(3001, 3));
+        assertEquals("y", second.getValue(3000, 3));
+        assertEquals("z", second.getValue(1, 0));
+        assertFalse(first.containsCell(1, 0));
+        assertFalse(table.containsCell(3000, 3));
+        assertFalse(table.containsCell(1, 0));
+        for (int row = 0; row < 3000; row++) {
+            assertEquals("v" + row, table.getValue(row, 3));
+            assertEquals("v" + row, first.getValue(row, 3));
+            assertEquals("v" + row, second.getValue(row, 3));
+        }
+    }
+}
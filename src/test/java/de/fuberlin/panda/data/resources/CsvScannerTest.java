@@ -0,0 +1,136 @@
+package de.fuberlin.panda.data.resources;
+
+/*
+ * #%L
+ * PANDA-DEEPLINKING
+ * %%
+ * Copyright (C) 2014 Freie Universitaet Berlin
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CsvScannerTest {
+    // quoted fields with delimiters, line breaks and escaped quotes, CRLF, empty lines,
+    // surrounding spaces, empty fields and multi-byte characters, % is replaced by the
+    // delimiter of the format
+    private static final String CONTENT = "a,b;c\t d %x\r\n\"x%y\"%\"multi\nline\"%\"say \"\"hi\"\"\"\n"
+                                                + "\n  \"sp\" %mlut% \"q\"\r\n%%\nquote\"inside%\"\"\n"
+                                                + "\"\" \n\"last\"%end";
+    private File                file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("panda-scanner", ".csv").toFile();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testDialects() throws IOException {
+        checkRecords(CSVFormat.DEFAULT, 1024, Integer.MAX_VALUE);
+        checkRecords(CSVFormat.TDF, 1024, Integer.MAX_VALUE);
+        checkRecords(CSVFormat.EXCEL.withDelimiter(';'), 1024, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testSmallWindows() throws IOException {
+        // records are split between mapped regions and exceed their size
+        for (int windowSize = 1; windowSize < 16; windowSize++) {
+            checkRecords(CSVFormat.DEFAULT, windowSize, Integer.MAX_VALUE);
+            checkRecords(CSVFormat.TDF, windowSize, Integer.MAX_VALUE);
+            checkRecords(CSVFormat.EXCEL.withDelimiter(';'), windowSize, Integer.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void testLastField() throws IOException {
+        // fields behind the last field are skipped
+        for (int lastField = 0; lastField < 4; lastField++) {
+            for (int windowSize = 3; windowSize < 1024; windowSize *= 16) {
+                checkRecords(CSVFormat.DEFAULT, windowSize, lastField);
+                checkRecords(CSVFormat.TDF, windowSize, lastField);
+                checkRecords(CSVFormat.EXCEL.withDelimiter(';'), windowSize, lastField);
+            }
+        }
+    }
+
+    @Test
+    public void testFallback() throws IOException {
+        CSVFormat format = CSVFormat.DEFAULT.withCommentMarker('#');
+        assertTrue(CsvScanner.supports(CSVFormat.DEFAULT));
+        assertFalse(CsvScanner.supports(format));
+        checkRecords(format, 1024, Integer.MAX_VALUE);
+        checkRecords(format, 1024, 1);
+    }
+
+    /**
+     * Compare records of scanner with records of the parser, only fields up
+     * to the last field are compared.
+     */
+    private void checkRecords(CSVFormat format, long windowSize, int lastField)
+            throws IOException {
+        String content = CONTENT.replace('%', format.getDelimiter());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        CSVParser parser = CSVParser.parse(file, StandardCharsets.UTF_8, format);
+        List<List<String>> expected = new ArrayList<List<String>>();
+        for (CSVRecord csvRecord : parser) {
+            List<String> values = new ArrayList<String>();
+            for (int i = 0; i < csvRecord.size() && i <= lastField; i++) {
+                values.add(csvRecord.get(i));
+            }
+            expected.add(values);
+        }
+        parser.close();
+
+        List<List<String>> records = new ArrayList<List<String>>();
+        CsvScanner scanner = CsvScanner.open(file, format, 0, windowSize);
+        scanner.setLastField(lastField);
+        while (scanner.nextRecord()) {
+            assertEquals(records.size() + 1, scanner.getRecordNumber());
+            if (CsvScanner.supports(format)) {
+                assertTrue(scanner.getFieldCount() - 1 <= lastField);
+            }
+            List<String> values = new ArrayList<String>();
+            for (int i = 0; i < scanner.getFieldCount() && i <= lastField; i++) {
+                values.add(scanner.getField(i));
+            }
+            records.add(values);
+        }
+        scanner.close();
+        assertEquals(expected, records);
+    }
+}
@@ -25,6 +25,8 @@ package de.fuberlin.panda.data.resources;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 import de.fuberlin.panda.data.resources.ResourceHelper.TableArea;
@@ -52,6 +54,13 @@ public class ResourceHelperTest {
         assertEquals("AA", aa);
     }
 
+    @Test
+    public void testConvertColNumToColRefAZ() {
+        // last column of 2 letter reference starting with A
+        String az = ResourceHelper.convertColNumToColRef(51);
+        assertEquals("AZ", az);
+    }
+
     @Test
     public void testConvertColNumToColRefHBS() {
         // random reference
@@ -155,4 +164,39 @@ public class ResourceHelperTest {
         TableArea table = ResourceHelper.evalTableReference("D4:G8");
         assertEquals(table, new TableArea(3, 7, 3, 6));
     }
+
+    @Test
+    public void testIsNumeric() {
+        String[] values = { "1", "-1", "+1.5", " 42 ", "\t3\n", "1.", ".5", ".", "", " ", "-",
+                "+", "1e5", "1E-5", "1e", "1e+", "2.5e+3d", "7f", "7F", "7D", "7x", "1dd", "d",
+                "1.2.3", "1 2", "- 1", "NaN", "-NaN", "NaNd", "nan", "Infinity", "-Infinity",
+                "+Infinity", "Infinit", "Infinityf", "0x1p3", "0X1.8P-1", "0x.8p1", "0x1.p1",
+                "-0xAp0d", "0x1", "0xp1", "0x.p1", "0x1p", "0x1pd", "0xfd", "0d", "00.00e00",
+                "1_000", "1,5", "\u0661", "e5", "0x1p1\u0000" };
+        for (String value : values) {
+            assertEquals(value, isDouble(value), ResourceHelper.isNumeric(value));
+        }
+
+        // random Strings of characters that may occur in numbers
+        String chars = "0123456789.eE+-xXpPfFdDaN ";
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder value = new StringBuilder();
+            int length = random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                value.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            assertEquals(value.toString(), isDouble(value.toString()),
+                    ResourceHelper.isNumeric(value.toString()));
+        }
+    }
+
+    private boolean isDouble(String value) {
+        try {
+            Double.valueOf(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
 }